@@ -0,0 +1,65 @@
+package com.example.fuelQuotaManagementSystem.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT issue and the per-request validation done by the auth filter
+ * (username + expiry, each currently a full parse and signature check).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtTokenProviderBenchmark {
+
+	private final JwtTokenProvider jwtTokenProvider = new JwtTokenProvider();
+
+	private UserDetailsImpl userDetails;
+	private Authentication authentication;
+	private String token;
+
+	@Setup
+	public void setUp() {
+		ReflectionTestUtils.setField(jwtTokenProvider, "jwtSecret",
+				"fuelQuotaManagementSystemSecretKeyForJwtTokenGenerationThatIsLongEnough");
+		ReflectionTestUtils.setField(jwtTokenProvider, "jwtExpirationInMs", 86_400_000L);
+
+		userDetails = new UserDetailsImpl(42L, "station_colombo_07", "colombo07@stations.lk", "{noop}password",
+				List.of(new SimpleGrantedAuthority("ROLE_STATION_OWNER")));
+		authentication = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+		token = jwtTokenProvider.generateToken(authentication);
+	}
+
+	@Benchmark
+	public String generateToken() {
+		return jwtTokenProvider.generateToken(authentication);
+	}
+
+	@Benchmark
+	public String getUsernameFromToken() {
+		return jwtTokenProvider.getUsernameFromToken(token);
+	}
+
+	@Benchmark
+	public boolean validateToken() {
+		return jwtTokenProvider.validateToken(token, userDetails);
+	}
+}
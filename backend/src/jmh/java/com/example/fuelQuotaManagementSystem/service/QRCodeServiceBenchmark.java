@@ -0,0 +1,65 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QR code generation (two Jackson writes + SHA-256 + Base64) and the two decode paths
+ * (Base64 + Jackson read + Jackson write + SHA-256) used by every station scan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QRCodeServiceBenchmark {
+
+	@Param({"Car", "Motorcycle", "Lorry"})
+	private String vehicleType;
+
+	private final QRCodeService qrCodeService = new QRCodeService();
+
+	private Vehicle vehicle;
+	private String qrCode;
+
+	@Setup
+	public void setUp() {
+		vehicle = new Vehicle();
+		vehicle.setId(184_223L);
+		vehicle.setRegistrationNumber("WP CAB-4821");
+		vehicle.setChassisNumber("NZE141-9043817");
+		vehicle.setVehicleType(vehicleType);
+		vehicle.setFuelType("Lorry".equals(vehicleType) ? "Diesel" : "Petrol");
+		vehicle.setEngineCapacity("Motorcycle".equals(vehicleType) ? 150.0 : 1500.0);
+		qrCode = qrCodeService.generateQRCode(vehicle);
+	}
+
+	@Benchmark
+	public String generateQRCode() {
+		return qrCodeService.generateQRCode(vehicle);
+	}
+
+	@Benchmark
+	public String decodeQRCode() {
+		return qrCodeService.decodeQRCode(qrCode);
+	}
+
+	@Benchmark
+	public Map<String, Object> getVehicleInfoFromQR() {
+		return qrCodeService.getVehicleInfoFromQR(qrCode);
+	}
+}
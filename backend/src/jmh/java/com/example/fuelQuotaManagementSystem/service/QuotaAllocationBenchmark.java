@@ -0,0 +1,59 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Quota allocation policy evaluated for every new quota and monthly reset, over a realistic
+ * registration mix (mostly motorcycles and cars, as entered by owners: mixed case).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuotaAllocationBenchmark {
+
+	private static final String[] VEHICLE_TYPES = {
+			"Motorcycle", "motorcycle", "Motorcycle", "Car", "car", "Car",
+			"Three Wheeler", "three wheeler", "Lorry", "Bus"
+	};
+	private static final String[] FUEL_TYPES = {
+			"Petrol", "Petrol", "PETROL", "Petrol", "Diesel", "petrol",
+			"Petrol", "Petrol", "Diesel", "Diesel"
+	};
+	private static final Double[] ENGINE_CAPACITIES = {
+			125.0, 150.0, 100.0, 1000.0, 2400.0, 1500.0,
+			200.0, 200.0, 4000.0, 6000.0
+	};
+
+	private final FuelQuotaService fuelQuotaService = new FuelQuotaService();
+
+	// Other field-injected collaborators stay null; allocation only needs the policy (built-in default rules)
+	@Setup
+	public void setUp() {
+		ReflectionTestUtils.setField(fuelQuotaService, "quotaAllocationPolicy", new QuotaAllocationPolicy());
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(10)
+	public void calculateQuotaAllocation(Blackhole blackhole) {
+		for (int i = 0; i < VEHICLE_TYPES.length; i++) {
+			blackhole.consume(fuelQuotaService.calculateQuotaAllocation(VEHICLE_TYPES[i], FUEL_TYPES[i], ENGINE_CAPACITIES[i]));
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.example.fuelQuotaManagementSystem.config;
+
+import com.example.fuelQuotaManagementSystem.service.ClusterScheduler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+
+/**
+ * One-time move of quota/transaction amounts from the old litre DOUBLE columns to the
+ * *_ml BIGINT columns. Hibernate adds the new columns but never touches the old ones,
+ * which are NOT NULL and would reject every new insert, so they are copied and made
+ * nullable here. The old columns keep their values as a backup; copying only happens
+ * while a column is still NOT NULL, so later starts do nothing.
+ *
+ * Dropping the old columns is a separate, explicit step: start one node with
+ * migration.drop-litre-columns=true once the millilitre values have been checked.
+ * Both steps run on one node at a time through the cluster lease.
+ */
+@Configuration
+public class MillilitreColumnMigration {
+
+    private static final String COPY_JOB = "litre-column-migration";
+    private static final String DROP_JOB = "litre-column-drop";
+
+    private static final String[][] FUEL_QUOTA_COLUMNS = {
+            {"allocated_quota", "allocated_quota_ml"},
+            {"remaining_quota", "remaining_quota_ml"}
+    };
+
+    private static final String[][] FUEL_TRANSACTION_COLUMNS = {
+            {"amount", "amount_ml"},
+            {"quota_before_transaction", "quota_before_transaction_ml"},
+            {"quota_after_transaction", "quota_after_transaction_ml"}
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ClusterScheduler clusterScheduler;
+
+    @Value("${migration.drop-litre-columns:false}")
+    private boolean dropLitreColumns;
+
+    @Bean
+    @Order(0)
+    public CommandLineRunner migrateLitreColumns() {
+        return args -> {
+            migrate("fuel_quotas", FUEL_QUOTA_COLUMNS);
+            migrate("fuel_transactions", FUEL_TRANSACTION_COLUMNS);
+
+            if (dropLitreColumns) {
+                drop("fuel_quotas", FUEL_QUOTA_COLUMNS);
+                drop("fuel_transactions", FUEL_TRANSACTION_COLUMNS);
+            }
+        };
+    }
+
+    private void migrate(String table, String[][] columns) {
+        for (String[] column : columns) {
+            String litreColumn = column[0];
+            String millilitreColumn = column[1];
+            if (!Boolean.FALSE.equals(isNullable(table, litreColumn))) {
+                continue;
+            }
+
+            clusterScheduler.runExclusive(COPY_JOB, table + "." + litreColumn, () -> {
+                int copied = jdbcTemplate.update("UPDATE " + table + " SET " + millilitreColumn +
+                        " = ROUND(" + litreColumn + " * 1000) WHERE " + litreColumn + " IS NOT NULL");
+                jdbcTemplate.execute("ALTER TABLE " + table + " MODIFY COLUMN " + litreColumn + " DOUBLE NULL");
+
+                System.out.println("Migrated " + table + "." + litreColumn + " to " + millilitreColumn +
+                        " (" + copied + " rows); the old column is kept until migration.drop-litre-columns=true");
+            });
+        }
+    }
+
+    // Only columns already copied (made nullable) on an earlier start are dropped
+    private void drop(String table, String[][] columns) {
+        for (String[] column : columns) {
+            String litreColumn = column[0];
+            if (!Boolean.TRUE.equals(isNullable(table, litreColumn))) {
+                continue;
+            }
+
+            clusterScheduler.runExclusive(DROP_JOB, table + "." + litreColumn, () -> {
+                jdbcTemplate.execute("ALTER TABLE " + table + " DROP COLUMN " + litreColumn);
+                System.out.println("Dropped " + table + "." + litreColumn);
+            });
+        }
+    }
+
+    // Null when the column does not exist
+    private Boolean isNullable(String table, String column) {
+        return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            try (ResultSet columns = metaData.getColumns(connection.getCatalog(), null, table, column)) {
+                return columns.next() ? columns.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls : null;
+            }
+        });
+    }
+}
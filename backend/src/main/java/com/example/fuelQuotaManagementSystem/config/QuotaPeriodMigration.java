@@ -0,0 +1,132 @@
+package com.example.fuelQuotaManagementSystem.config;
+
+import com.example.fuelQuotaManagementSystem.entity.FuelQuota;
+import com.example.fuelQuotaManagementSystem.service.ClusterScheduler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Backfills fuel_quotas.period for rows created before the column existed, removes
+ * duplicate quota rows left behind by concurrent creation (keeping the most consumed
+ * balance, so nobody gets fuel back), and creates the (vehicle_id, fuel_type, period)
+ * unique index when Hibernate could not because of those duplicates.
+ * Does nothing on a clean database. Each step runs on one node at a time through the
+ * cluster lease, so nodes starting together neither race the deletes nor fail on a
+ * second ALTER TABLE.
+ */
+@Configuration
+public class QuotaPeriodMigration {
+
+    private static final String JOB = "quota-period-migration";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ClusterScheduler clusterScheduler;
+
+    @Bean
+    @Order(1)
+    public CommandLineRunner migrateQuotaPeriods() {
+        return args -> {
+            clusterScheduler.runExclusive(JOB, "period-backfill", this::backfillPeriods);
+
+            // Duplicates can only appear while the index is missing; removed right before creating it
+            if (!indexExists("fuel_quotas", FuelQuota.UNIQUE_VEHICLE_FUEL_PERIOD)) {
+                clusterScheduler.runExclusive(JOB, "unique-index", () -> {
+                    removeDuplicates();
+                    createUniqueIndex();
+                });
+            }
+        };
+    }
+
+    private void backfillPeriods() {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT id, start_date FROM fuel_quotas WHERE period IS NULL OR period = ''");
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> args = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            long startDate = ((Number) row.get("start_date")).longValue();
+            String period = YearMonth.from(Instant.ofEpochMilli(startDate).atZone(ZoneId.systemDefault())).toString();
+            args.add(new Object[]{period, ((Number) row.get("id")).longValue()});
+        }
+        jdbcTemplate.batchUpdate("UPDATE fuel_quotas SET period = ? WHERE id = ?", args);
+
+        System.out.println("Backfilled fuel_quotas.period for " + rows.size() + " rows");
+    }
+
+    private void removeDuplicates() {
+        List<Map<String, Object>> groups = jdbcTemplate.queryForList(
+                "SELECT vehicle_id, fuel_type, period FROM fuel_quotas " +
+                        "GROUP BY vehicle_id, fuel_type, period HAVING COUNT(*) > 1");
+
+        int removed = 0;
+        for (Map<String, Object> group : groups) {
+            List<Long> ids = jdbcTemplate.queryForList(
+                    "SELECT id FROM fuel_quotas WHERE vehicle_id = ? AND fuel_type = ? AND period = ? " +
+                            "ORDER BY remaining_quota_ml ASC, id ASC",
+                    Long.class, group.get("vehicle_id"), group.get("fuel_type"), group.get("period"));
+
+            for (Long id : ids.subList(1, ids.size())) {
+                removed += jdbcTemplate.update("DELETE FROM fuel_quotas WHERE id = ?", id);
+            }
+        }
+
+        if (removed > 0) {
+            System.out.println("Removed " + removed + " duplicate fuel_quotas rows");
+        }
+    }
+
+    private void createUniqueIndex() {
+        if (indexExists("fuel_quotas", FuelQuota.UNIQUE_VEHICLE_FUEL_PERIOD)) {
+            return;
+        }
+        try {
+            jdbcTemplate.execute("ALTER TABLE fuel_quotas ADD CONSTRAINT " + FuelQuota.UNIQUE_VEHICLE_FUEL_PERIOD +
+                    " UNIQUE (vehicle_id, fuel_type, period)");
+        } catch (DataAccessException e) {
+            // Created in the meantime (e.g. by Hibernate's schema update on another node)
+            if (indexExists("fuel_quotas", FuelQuota.UNIQUE_VEHICLE_FUEL_PERIOD)) {
+                return;
+            }
+            throw e;
+        }
+        System.out.println("Created unique index " + FuelQuota.UNIQUE_VEHICLE_FUEL_PERIOD);
+    }
+
+    private boolean indexExists(String table, String index) {
+        Boolean exists = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            try (ResultSet indexes = metaData.getIndexInfo(connection.getCatalog(), null, table, true, false)) {
+                while (indexes.next()) {
+                    // MySQL names the index after the constraint, H2 appends a suffix
+                    String name = indexes.getString("INDEX_NAME");
+                    if (name != null && name.toLowerCase().startsWith(index.toLowerCase())) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+        return Boolean.TRUE.equals(exists);
+    }
+}
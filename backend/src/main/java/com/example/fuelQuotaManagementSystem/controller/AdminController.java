@@ -7,11 +7,18 @@ import com.example.fuelQuotaManagementSystem.entity.Role;
 import com.example.fuelQuotaManagementSystem.entity.User;
 import com.example.fuelQuotaManagementSystem.repository.UserRepository;
 import com.example.fuelQuotaManagementSystem.service.AdminService;
+import com.example.fuelQuotaManagementSystem.service.QuotaJobService;
+import com.example.fuelQuotaManagementSystem.service.TransactionExportService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -31,6 +38,10 @@ public class AdminController {
     @Autowired
     private UserRepository userRepository;
 
+    // Streamed exports of a long date range outlast the container's 30 second async timeout
+    @Value("${export.timeout-ms:1800000}")
+    private long exportTimeoutMillis;
+
 
     //Get admin dashboard with system overview
 
@@ -185,16 +196,17 @@ public class AdminController {
     }
 
 
-     //Bulk allocate quotas for all vehicles
+     //Bulk allocate quotas for all vehicles; waits up to waitSeconds and returns the job's counts and timing
 
     @PostMapping("/quota/bulk-allocate")
     public ResponseEntity<?> bulkAllocateQuotas(@RequestParam String vehicleType,
                                                 @RequestParam String fuelType,
                                                 @RequestParam Double quotaAmount,
-                                                @RequestParam String period) {
+                                                @RequestParam String period,
+                                                @RequestParam(defaultValue = "30") int waitSeconds) {
         try {
-            int affectedVehicles = adminService.bulkAllocateQuotas(vehicleType, fuelType, quotaAmount, period);
-            return ResponseEntity.ok(new MessageResponse("Quotas allocated successfully for " + affectedVehicles + " vehicles!"));
+            return ResponseEntity.ok(adminService.bulkAllocateQuotas(vehicleType, fuelType, quotaAmount, period,
+                    waitSeconds * 1000L));
         } catch (Exception e) {
             return ResponseEntity.badRequest()
                     .body(new MessageResponse("Error allocating quotas: " + e.getMessage()));
@@ -213,8 +225,9 @@ public class AdminController {
                         .body(new MessageResponse("Invalid confirmation code for quota reset!"));
             }
 
-            int resetCount = adminService.resetAllQuotas();
-            return ResponseEntity.ok(new MessageResponse("All quotas reset successfully! " + resetCount + " quotas were reset."));
+            QuotaJobService.JobProgress job = adminService.resetAllQuotas();
+            return ResponseEntity.ok(new MessageResponse("Quota reset started as job " + job.getId() + " for " +
+                    job.getTotalVehicles() + " vehicles!"));
         } catch (Exception e) {
             return ResponseEntity.badRequest()
                     .body(new MessageResponse("Error resetting quotas: " + e.getMessage()));
@@ -222,6 +235,98 @@ public class AdminController {
     }
 
 
+     //Recent bulk quota jobs with progress, rate and ETA
+
+    @GetMapping("/jobs")
+    public ResponseEntity<?> getQuotaJobs() {
+        try {
+            return ResponseEntity.ok(adminService.getQuotaJobs());
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error loading quota jobs: " + e.getMessage()));
+        }
+    }
+
+
+     //Progress of one bulk quota job
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<?> getQuotaJob(@PathVariable Long jobId) {
+        try {
+            return ResponseEntity.ok(adminService.getQuotaJob(jobId));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error loading quota job: " + e.getMessage()));
+        }
+    }
+
+
+     //Scheduled job leases and recent runs: which node ran what, and for how long
+
+    @GetMapping("/scheduler")
+    public ResponseEntity<?> getSchedulerStatus() {
+        try {
+            return ResponseEntity.ok(adminService.getSchedulerStatus());
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error loading scheduler status: " + e.getMessage()));
+        }
+    }
+
+
+     //Create every vehicle's quota for a period (default: current month) with bulk SQL and queue the SMS
+
+    @PostMapping("/quota/rollover")
+    public ResponseEntity<?> rolloverQuotas(@RequestParam(required = false) String period) {
+        try {
+            return ResponseEntity.ok(adminService.rolloverQuotas(period));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error rolling over quotas: " + e.getMessage()));
+        }
+    }
+
+
+     //Close a finished period (yyyy-MM): archive its quotas and write its utilisation summary
+
+    @PostMapping("/quota/close-period")
+    public ResponseEntity<?> closeQuotaPeriod(@RequestParam String period) {
+        try {
+            return ResponseEntity.ok(adminService.closeQuotaPeriod(period));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error closing quota period: " + e.getMessage()));
+        }
+    }
+
+
+     //Get the quota allocation rules and when they were last compiled
+
+    @GetMapping("/quota/policy")
+    public ResponseEntity<?> getQuotaAllocationPolicy() {
+        try {
+            return ResponseEntity.ok(adminService.getQuotaAllocationPolicy());
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error loading quota allocation policy: " + e.getMessage()));
+        }
+    }
+
+
+     //Recompile the quota allocation rules table and swap it in (the previous policy stays active on error)
+
+    @PostMapping("/quota/policy/reload")
+    public ResponseEntity<?> reloadQuotaAllocationPolicy() {
+        try {
+            int ruleCount = adminService.reloadQuotaAllocationPolicy();
+            return ResponseEntity.ok(new MessageResponse("Quota allocation policy reloaded with " + ruleCount + " rules!"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error reloading quota allocation policy: " + e.getMessage()));
+        }
+    }
+
+
      //Get system health status
 
     @GetMapping("/system/health")
@@ -250,26 +355,51 @@ public class AdminController {
     }
 
 
-     //Export system data (CSV format)
+     //Quota allocation SMS fan-out: queued, in progress, sent and failed notices, rate and ETA
 
-    @GetMapping("/export/transactions")
-    public ResponseEntity<?> exportTransactionData(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
-                                                   @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
-                                                   @RequestParam(required = false) String format) {
+    @GetMapping("/system/notifications/fan-out")
+    public ResponseEntity<?> getNotificationFanOutStatus() {
         try {
-            String exportData = adminService.exportTransactionData(startDate, endDate, format != null ? format : "CSV");
-
-            return ResponseEntity.ok()
-                    .header("Content-Type", "text/csv")
-                    .header("Content-Disposition", "attachment; filename=fuel_transactions_" + startDate + "_to_" + endDate + ".csv")
-                    .body(exportData);
+            return ResponseEntity.ok(adminService.getNotificationFanOutStats());
         } catch (Exception e) {
             return ResponseEntity.badRequest()
-                    .body(new MessageResponse("Error exporting data: " + e.getMessage()));
+                    .body(new MessageResponse("Error fetching notification fan-out statistics: " + e.getMessage()));
         }
     }
 
 
+     //Export transactions as CSV or NDJSON (optionally gzipped), streamed straight from the database
+
+    @GetMapping("/export/transactions")
+    public Object exportTransactionData(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+                                        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+                                        @RequestParam(required = false) String format,
+                                        @RequestParam(defaultValue = "false") boolean gzip,
+                                        HttpServletRequest request, HttpServletResponse response) {
+        String exportFormat = format != null ? format : TransactionExportService.FORMAT_CSV;
+        if (!TransactionExportService.isSupportedFormat(exportFormat)) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error exporting data: Export format not supported"));
+        }
+        if (endDate.isBefore(startDate)) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error exporting data: End date is before start date"));
+        }
+
+        boolean ndjson = TransactionExportService.FORMAT_NDJSON.equalsIgnoreCase(exportFormat);
+        String filename = "fuel_transactions_" + startDate + "_to_" + endDate + (ndjson ? ".ndjson" : ".csv") + (gzip ? ".gz" : "");
+        String contentType = gzip ? "application/gzip" : ndjson ? "application/x-ndjson" : "text/csv";
+
+        // Applies to this request's async processing only
+        WebAsyncUtils.getAsyncManager(request).getAsyncWebRequest().setTimeout(exportTimeoutMillis);
+        response.setContentType(contentType);
+        response.setHeader("Content-Disposition", "attachment; filename=" + filename);
+        // Returned bare: wrapped in a ResponseEntity<?> it would not be recognised as a stream
+        StreamingResponseBody body = out -> adminService.exportTransactionData(startDate, endDate, exportFormat, gzip, out);
+        return body;
+    }
+
+
      //Get top fuel-consuming vehicles
 
     @GetMapping("/analytics/top-consumers")
@@ -301,6 +431,21 @@ public class AdminController {
     }
 
 
+     //Recompute the daily fuel rollups of a date range from the transactions
+
+    @PostMapping("/analytics/rollups/rebuild")
+    public ResponseEntity<?> rebuildFuelRollups(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+                                                @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        try {
+            int days = adminService.rebuildFuelRollups(startDate, endDate);
+            return ResponseEntity.ok(new MessageResponse("Rebuilt daily fuel rollups for " + days + " days"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error rebuilding fuel rollups: " + e.getMessage()));
+        }
+    }
+
+
      //Get database statistics
 
     @GetMapping("/system/database-stats")
@@ -9,6 +9,7 @@ import com.example.fuelQuotaManagementSystem.entity.User;
 import com.example.fuelQuotaManagementSystem.repository.UserRepository;
 import com.example.fuelQuotaManagementSystem.security.JwtTokenProvider;
 import com.example.fuelQuotaManagementSystem.security.UserDetailsImpl;
+import com.example.fuelQuotaManagementSystem.service.DashboardSnapshotCache;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -40,6 +41,9 @@ public class AuthController {
     @Autowired
     JwtTokenProvider jwtTokenProvider;
 
+    @Autowired
+    DashboardSnapshotCache dashboardSnapshotCache;
+
     @PostMapping("/signin")
     public ResponseEntity<?> authenticateUser(@Valid @RequestBody LoginRequest loginRequest) {
 
@@ -105,6 +109,7 @@ public class AuthController {
 
         user.setRoles(roles);
         userRepository.save(user);
+        dashboardSnapshotCache.registrationRecorded();
 
         return ResponseEntity.ok(new MessageResponse("User registered successfully!"));
     }
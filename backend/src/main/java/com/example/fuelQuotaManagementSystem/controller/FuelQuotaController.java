@@ -1,22 +1,27 @@
 package com.example.fuelQuotaManagementSystem.controller;
 
+import com.example.fuelQuotaManagementSystem.dto.FuelPumpBatchRequest;
+import com.example.fuelQuotaManagementSystem.dto.FuelPumpBatchResponse;
 import com.example.fuelQuotaManagementSystem.dto.FuelPumpRequest;
+import com.example.fuelQuotaManagementSystem.dto.FuelPumpResult;
 import com.example.fuelQuotaManagementSystem.dto.FuelQuotaResponse;
 import com.example.fuelQuotaManagementSystem.dto.MessageResponse;
+import com.example.fuelQuotaManagementSystem.dto.ScanPumpRequest;
 import com.example.fuelQuotaManagementSystem.entity.FuelStation;
 import com.example.fuelQuotaManagementSystem.entity.FuelTransaction;
-import com.example.fuelQuotaManagementSystem.entity.User;
 import com.example.fuelQuotaManagementSystem.entity.Vehicle;
 import com.example.fuelQuotaManagementSystem.repository.FuelStationRepository;
 import com.example.fuelQuotaManagementSystem.repository.FuelTransactionRepository;
 import com.example.fuelQuotaManagementSystem.repository.UserRepository;
 import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
 import com.example.fuelQuotaManagementSystem.security.UserDetailsImpl;
+import com.example.fuelQuotaManagementSystem.service.FuelPumpService;
 import com.example.fuelQuotaManagementSystem.service.FuelQuotaService;
-import com.example.fuelQuotaManagementSystem.service.NotificationService;
 import com.example.fuelQuotaManagementSystem.service.QRCodeService;
+import com.example.fuelQuotaManagementSystem.util.FuelUnits;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -49,10 +54,10 @@ public class FuelQuotaController {
     private FuelQuotaService fuelQuotaService;
 
     @Autowired
-    private QRCodeService qrCodeService;
+    private FuelPumpService fuelPumpService;
 
     @Autowired
-    private NotificationService notificationService;
+    private QRCodeService qrCodeService;
 
 
      //Check fuel quota for a vehicle by QR code scan (Mobile App - Station Operators)
@@ -78,15 +83,16 @@ public class FuelQuotaController {
                 }
             }
 
-            // Find vehicle by registration number
-            Optional<Vehicle> vehicleOptional = vehicleRepository.findByRegistrationNumber(registrationNumber);
+            // Find vehicle by registration number (projection: no qrCode column or owner roles)
+            Optional<VehicleRepository.VehiclePumpView> vehicleOptional =
+                    vehicleRepository.findPumpViewByRegistrationNumber(registrationNumber);
             if (!vehicleOptional.isPresent()) {
                 return ResponseEntity.badRequest()
                         .body(new MessageResponse("Vehicle not found! Registration: " + registrationNumber +
                                 ". Please ensure the vehicle is registered in the fuel quota system."));
             }
 
-            Vehicle vehicle = vehicleOptional.get();
+            VehicleRepository.VehiclePumpView vehicle = vehicleOptional.get();
 
             // Get quota information for vehicle's fuel type
             FuelQuotaService.FuelQuotaInfo quotaInfo = fuelQuotaService.getQuotaInfo(vehicle, vehicle.getFuelType());
@@ -97,11 +103,11 @@ public class FuelQuotaController {
                     vehicle.getVehicleType(),
                     vehicle.getFuelType(),
                     vehicle.getEngineCapacity(),
-                    vehicle.getOwner().getFullName(),
-                    vehicle.getOwner().getPhoneNumber(),
-                    quotaInfo.getAllocatedQuota(),
-                    quotaInfo.getRemainingQuota(),
-                    quotaInfo.getUsedQuota(),
+                    vehicle.getOwnerName(),
+                    vehicle.getOwnerPhoneNumber(),
+                    FuelUnits.toLitres(quotaInfo.getAllocatedQuotaMl()),
+                    FuelUnits.toLitres(quotaInfo.getRemainingQuotaMl()),
+                    FuelUnits.toLitres(quotaInfo.getUsedQuotaMl()),
                     quotaInfo.getUsagePercentage(),
                     quotaInfo.isExpiringSoon(),
                     formatTimestamp(quotaInfo.getStartDate()),
@@ -152,9 +158,9 @@ public class FuelQuotaController {
                     vehicle.getEngineCapacity(),
                     vehicle.getOwner().getFullName(),
                     vehicle.getOwner().getPhoneNumber(),
-                    quotaInfo.getAllocatedQuota(),
-                    quotaInfo.getRemainingQuota(),
-                    quotaInfo.getUsedQuota(),
+                    FuelUnits.toLitres(quotaInfo.getAllocatedQuotaMl()),
+                    FuelUnits.toLitres(quotaInfo.getRemainingQuotaMl()),
+                    FuelUnits.toLitres(quotaInfo.getUsedQuotaMl()),
                     quotaInfo.getUsagePercentage(),
                     quotaInfo.isExpiringSoon(),
                     formatTimestamp(quotaInfo.getStartDate()),
@@ -174,115 +180,113 @@ public class FuelQuotaController {
     @PostMapping("/pump")
     @PreAuthorize("hasRole('STATION_OWNER') or hasRole('ADMIN')")
     public ResponseEntity<?> recordFuelPump(@Valid @RequestBody FuelPumpRequest request,
-                                            Authentication authentication) {
-        try {
-            // Get current user (station operator)
-            UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-            Optional<User> userOptional = userRepository.findById(userDetails.getId());
-            if (!userOptional.isPresent()) {
-                return ResponseEntity.badRequest()
-                        .body(new MessageResponse("User not found!"));
-            }
-
-            // Find vehicle
-            Optional<Vehicle> vehicleOptional = vehicleRepository.findById(request.getVehicleId());
-            if (!vehicleOptional.isPresent()) {
-                return ResponseEntity.badRequest()
-                        .body(new MessageResponse("Vehicle not found!"));
-            }
-
-            Vehicle vehicle = vehicleOptional.get();
-
-            // Find fuel station
-            Optional<FuelStation> stationOptional = fuelStationRepository.findById(request.getStationId());
-            if (!stationOptional.isPresent()) {
+                                            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        // Header wins over the body field so retrying clients can keep the payload unchanged
+        if (idempotencyKey != null && !idempotencyKey.trim().isEmpty()) {
+            if (idempotencyKey.length() > 64) {
                 return ResponseEntity.badRequest()
-                        .body(new MessageResponse("Fuel station not found!"));
+                        .body(new MessageResponse("Idempotency-Key must be at most 64 characters"));
             }
+            request.setIdempotencyKey(idempotencyKey.trim());
+        }
 
-            FuelStation station = stationOptional.get();
-
-            // Validate fuel type matches vehicle
-            if (!vehicle.getFuelType().equalsIgnoreCase(request.getFuelType())) {
-                return ResponseEntity.badRequest()
-                        .body(new MessageResponse("Fuel type mismatch! Vehicle uses " + vehicle.getFuelType()));
+        try {
+            // Deduct quota, record the transaction and queue the SMS in one DB transaction
+            FuelPumpResult result = fuelPumpService.recordPump(request);
+            return ResponseEntity.ok(pumpResponse(request, result));
+
+        } catch (DataIntegrityViolationException e) {
+            // Lost the race against a concurrent request with the same key - answer with its result
+            FuelPumpResult previous = request.getIdempotencyKey() != null
+                    ? fuelPumpService.findPreviousResult(request.getIdempotencyKey(), request.getVehicleId())
+                    : null;
+            if (previous != null) {
+                return ResponseEntity.ok(pumpResponse(request, previous));
             }
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error recording fuel pump: " + e.getMostSpecificCause().getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error recording fuel pump: " + e.getMessage()));
+        }
+    }
 
-            // Validate pump amount
-            if (request.getAmount() <= 0) {
-                return ResponseEntity.badRequest()
-                        .body(new MessageResponse("Invalid fuel amount!"));
-            }
 
-            if (request.getAmount() > 100) { // Maximum 100L per transaction
-                return ResponseEntity.badRequest()
-                        .body(new MessageResponse("Maximum 100 liters allowed per transaction!"));
-            }
+     //Scan QR and record the pump in one request (Mobile App - Station Operators)
 
-            // Check if vehicle has sufficient quota
-            if (!fuelQuotaService.hasSufficientQuota(vehicle, request.getFuelType(), request.getAmount())) {
-                double remainingQuota = fuelQuotaService.getRemainingQuota(vehicle, request.getFuelType());
+    @PostMapping("/pump/scan")
+    @PreAuthorize("hasRole('STATION_OWNER') or hasRole('ADMIN')")
+    public ResponseEntity<?> scanAndPump(@Valid @RequestBody ScanPumpRequest request,
+                                         @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        if (idempotencyKey != null && !idempotencyKey.trim().isEmpty()) {
+            if (idempotencyKey.length() > 64) {
                 return ResponseEntity.badRequest()
-                        .body(new MessageResponse("Insufficient quota! Remaining: " + remainingQuota + "L"));
+                        .body(new MessageResponse("Idempotency-Key must be at most 64 characters"));
             }
+            request.setIdempotencyKey(idempotencyKey.trim());
+        }
 
-            // Get quota before transaction
-            double quotaBefore = fuelQuotaService.getRemainingQuota(vehicle, request.getFuelType());
-
-            // Deduct fuel from quota
-            boolean success = fuelQuotaService.deductFuel(vehicle, request.getFuelType(), request.getAmount());
-            if (!success) {
-                return ResponseEntity.badRequest()
-                        .body(new MessageResponse("Failed to deduct fuel quota!"));
+        try {
+            // Decode, vehicle lookup, deduction, transaction insert and SMS outbox row in one DB transaction
+            return ResponseEntity.ok(fuelPumpService.scanAndPump(request));
+
+        } catch (DataIntegrityViolationException e) {
+            // Lost the race against a concurrent request with the same key - answer with its result
+            FuelPumpResult previous = request.getIdempotencyKey() != null
+                    ? fuelPumpService.findPreviousResult(request.getIdempotencyKey(), null)
+                    : null;
+            Optional<VehicleRepository.VehiclePumpView> vehicle = previous != null
+                    ? vehicleRepository.findPumpViewById(previous.getVehicleId())
+                    : Optional.empty();
+            if (vehicle.isPresent()) {
+                return ResponseEntity.ok(fuelPumpService.toScanPumpResponse(
+                        vehicle.get(), vehicle.get().getFuelType(), previous));
             }
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error recording fuel pump: " + e.getMostSpecificCause().getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error recording fuel pump: " + e.getMessage()));
+        }
+    }
 
-            // Get quota after transaction
-            double quotaAfter = fuelQuotaService.getRemainingQuota(vehicle, request.getFuelType());
-
-            // Create transaction record
-            FuelTransaction transaction = new FuelTransaction();
-            transaction.setVehicle(vehicle);
-            transaction.setStation(station);
-            transaction.setFuelType(request.getFuelType());
-            transaction.setAmount(request.getAmount());
-            transaction.setQuotaBeforeTransaction(quotaBefore);
-            transaction.setQuotaAfterTransaction(quotaAfter);
-            transaction.setNotificationSent(false);
+    private MessageResponse pumpResponse(FuelPumpRequest request, FuelPumpResult result) {
+        if (Boolean.TRUE.equals(result.getReplayed())) {
+            return new MessageResponse(
+                    String.format("Fuel pump already recorded (transaction %d). Remaining quota: %.1fL",
+                            result.getTransactionId(), result.getQuotaAfter()));
+        }
+        return new MessageResponse(
+                String.format("Fuel pumped successfully! %.1fL %s dispensed. Remaining quota: %.1fL",
+                        request.getAmount(), request.getFuelType(), result.getQuotaAfter()));
+    }
 
-            FuelTransaction savedTransaction = fuelTransactionRepository.save(transaction);
 
-            // Send notification to vehicle owner
-            try {
-                boolean notificationSent = notificationService.sendFuelTransactionNotification(
-                        vehicle.getOwner().getPhoneNumber(),
-                        vehicle.getOwner().getEmail(),
-                        vehicle.getRegistrationNumber(),
-                        request.getFuelType(),
-                        request.getAmount(),
-                        station.getName(),
-                        quotaAfter,
-                        savedTransaction.getId()
-                );
-
-                // Update notification status
-                savedTransaction.setNotificationSent(notificationSent);
-                fuelTransactionRepository.save(savedTransaction);
-
-            } catch (Exception e) {
-                // Log notification error but don't fail the transaction
-                System.err.println("Failed to send notification: " + e.getMessage());
-                savedTransaction.setNotificationSent(false);
-                fuelTransactionRepository.save(savedTransaction);
-            }
+     //Record a batch of queued fuel pumping transactions (stations syncing offline dispenses)
 
-            return ResponseEntity.ok(new MessageResponse(
-                    String.format("Fuel pumped successfully! %.1fL %s dispensed. Remaining quota: %.1fL",
-                            request.getAmount(), request.getFuelType(), quotaAfter)
+    @PostMapping("/pump/batch")
+    @PreAuthorize("hasRole('STATION_OWNER') or hasRole('ADMIN')")
+    public ResponseEntity<?> recordFuelPumpBatch(@Valid @RequestBody FuelPumpBatchRequest request) {
+        try {
+            List<FuelPumpResult> results = fuelPumpService.recordPumpBatch(request.getPumps());
+            int successful = (int) results.stream().filter(FuelPumpResult::getSuccess).count();
+
+            return ResponseEntity.ok(new FuelPumpBatchResponse(
+                    results.size(),
+                    successful,
+                    results.size() - successful,
+                    results
             ));
 
         } catch (Exception e) {
             return ResponseEntity.badRequest()
-                    .body(new MessageResponse("Error recording fuel pump: " + e.getMessage()));
+                    .body(new MessageResponse("Error recording fuel pump batch: " + e.getMessage()));
         }
     }
 
@@ -391,9 +395,9 @@ public class FuelQuotaController {
             public final String vehicleRegNo = transaction.getVehicle().getRegistrationNumber();
             public final String stationName = transaction.getStation().getName();
             public final String fuelType = transaction.getFuelType();
-            public final Double amount = transaction.getAmount();
-            public final Double quotaBefore = transaction.getQuotaBeforeTransaction();
-            public final Double quotaAfter = transaction.getQuotaAfterTransaction();
+            public final Double amount = FuelUnits.toLitres(transaction.getAmountMl());
+            public final Double quotaBefore = FuelUnits.toLitres(transaction.getQuotaBeforeTransactionMl());
+            public final Double quotaAfter = FuelUnits.toLitres(transaction.getQuotaAfterTransactionMl());
             public final Boolean notificationSent = transaction.isNotificationSent(); // Fixed: using isNotificationSent()
             public final String timestamp = formatTimestamp(transaction.getTimestamp());
         };
@@ -9,6 +9,7 @@ import com.example.fuelQuotaManagementSystem.entity.Vehicle;
 import com.example.fuelQuotaManagementSystem.repository.UserRepository;
 import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
 import com.example.fuelQuotaManagementSystem.security.UserDetailsImpl;
+import com.example.fuelQuotaManagementSystem.service.DashboardSnapshotCache;
 import com.example.fuelQuotaManagementSystem.service.MotorTrafficService;
 import com.example.fuelQuotaManagementSystem.service.QRCodeService;
 import jakarta.validation.Valid;
@@ -39,6 +40,9 @@ public class VehicleController {
     @Autowired
     private QRCodeService qrCodeService;
 
+    @Autowired
+    private DashboardSnapshotCache dashboardSnapshotCache;
+
 
      //Register a new vehicle (Vehicle Owner only)
 
@@ -98,6 +102,7 @@ public class VehicleController {
 
             // Save vehicle
             Vehicle savedVehicle = vehicleRepository.save(vehicle);
+            dashboardSnapshotCache.registrationRecorded();
 
             return ResponseEntity.ok(new VehicleResponse(
                     savedVehicle.getId(),
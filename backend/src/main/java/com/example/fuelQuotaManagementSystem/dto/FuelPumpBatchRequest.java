@@ -0,0 +1,20 @@
+package com.example.fuelQuotaManagementSystem.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Batch of queued dispenses replayed by a station (items are validated one by one)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FuelPumpBatchRequest {
+
+    @NotEmpty(message = "At least one pump record is required")
+    @Size(max = 1000, message = "Maximum 1000 pump records per batch")
+    private List<FuelPumpRequest> pumps;
+}
@@ -0,0 +1,17 @@
+package com.example.fuelQuotaManagementSystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FuelPumpBatchResponse {
+    private Integer totalRecords;
+    private Integer successfulRecords;
+    private Integer failedRecords;
+    private List<FuelPumpResult> results;
+}
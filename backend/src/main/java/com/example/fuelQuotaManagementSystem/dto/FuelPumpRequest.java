@@ -3,6 +3,7 @@ package com.example.fuelQuotaManagementSystem.dto;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -25,4 +26,8 @@ public class FuelPumpRequest {
     @NotNull(message = "Amount is required")
     @Min(value = 1, message = "Amount must be at least 1 liter")
     private Double amount; // Amount in liters
+
+    // Optional client-generated UUID, unique across all stations; a replay with the same key returns the original result
+    @Size(max = 64, message = "Idempotency key must be at most 64 characters")
+    private String idempotencyKey;
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package com.example.fuelQuotaManagementSystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Outcome of a single pump record within a batch
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FuelPumpResult {
+    private Integer index;
+    private Long vehicleId;
+    private Boolean success;
+    private String message;
+    private Long transactionId;
+    // Litres recorded; on a replay, the amount of the original request
+    private Double amount;
+    private Double quotaBefore;
+    private Double quotaAfter;
+
+    // True when an idempotency key matched an earlier request and nothing was deducted
+    private Boolean replayed;
+}
@@ -0,0 +1,33 @@
+package com.example.fuelQuotaManagementSystem.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Scan-and-pump request: QR payload plus amount, replaces the scan + pump round trips
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScanPumpRequest {
+
+    @NotBlank(message = "QR data is required")
+    private String qrData;
+
+    @NotNull(message = "Station ID is required")
+    private Long stationId;
+
+    // Optional; defaults to the vehicle's registered fuel type
+    private String fuelType;
+
+    @NotNull(message = "Amount is required")
+    @Min(value = 1, message = "Amount must be at least 1 liter")
+    private Double amount; // Amount in liters
+
+    // Optional client-generated UUID, unique across all stations (see FuelPumpRequest)
+    @Size(max = 64, message = "Idempotency key must be at most 64 characters")
+    private String idempotencyKey;
+}
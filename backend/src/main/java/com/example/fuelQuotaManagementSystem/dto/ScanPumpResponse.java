@@ -0,0 +1,22 @@
+package com.example.fuelQuotaManagementSystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScanPumpResponse {
+    private Long vehicleId;
+    private String registrationNumber;
+    private String vehicleType;
+    private String fuelType;
+    private String ownerName;
+    private Long transactionId;
+    private Double amount;
+    private Double quotaBefore;
+    private Double quotaAfter;
+    private Boolean replayed;
+    private String message;
+}
@@ -0,0 +1,46 @@
+package com.example.fuelQuotaManagementSystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Daily rollup of fuel_transactions per station and fuel type, kept up to date in the
+ * transaction that records each pump. Reports and dashboards read these rows, so their
+ * cost grows with days and stations rather than with transactions.
+ */
+@Entity
+@Table(name = "daily_station_fuel_stats", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_daily_station_fuel_stats_date_station_fuel", columnNames = {"stat_date", "station_id", "fuel_type"})
+}, indexes = {
+        @Index(name = "idx_daily_station_fuel_stats_station_date", columnList = "station_id, stat_date")
+})
+@Data
+public class DailyStationFuelStats {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // ISO date (e.g. "2024-05-31") in the server's time zone
+    @Column(name = "stat_date", nullable = false, length = 10)
+    private String statDate;
+
+    @Column(name = "station_id", nullable = false)
+    private Long stationId;
+
+    @Column(name = "fuel_type", nullable = false)
+    private String fuelType;
+
+    private long transactionCount;
+
+    // Millilitres (see FuelUnits)
+    private long amountMl;
+
+    // Distinct vehicles served by this station on the day
+    private long vehicleCount;
+
+    // Vehicles whose first pump of the day was here; summed over stations it counts the day's distinct vehicles
+    private long newVehicleCount;
+
+    private Long updatedAt;
+}
@@ -0,0 +1,38 @@
+package com.example.fuelQuotaManagementSystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Fuel pumped by a vehicle on a day, kept up to date in the transaction that records each
+ * pump. The consumption leaderboards are built from these rows and subtract the days that
+ * slide out of their window.
+ */
+@Entity
+@Table(name = "daily_vehicle_consumption", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_daily_vehicle_consumption_vehicle_date", columnNames = {"vehicle_id", "consumption_date"})
+}, indexes = {
+        @Index(name = "idx_daily_vehicle_consumption_date", columnList = "consumption_date")
+})
+@Data
+public class DailyVehicleConsumption {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "vehicle_id", nullable = false)
+    private Long vehicleId;
+
+    // ISO date (e.g. "2024-05-31") in the server's time zone
+    @Column(name = "consumption_date", nullable = false, length = 10)
+    private String consumptionDate;
+
+    // Millilitres (see FuelUnits)
+    private long amountMl;
+
+    private long transactionCount;
+
+    // Epoch millis of the vehicle's last pump of the day
+    private Long lastTimestamp;
+}
@@ -0,0 +1,30 @@
+package com.example.fuelQuotaManagementSystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Which vehicles pumped at which station on a day. Only used to keep the distinct vehicle
+ * counts of DailyStationFuelStats exact; rows older than a few days are pruned. A row with
+ * station id FuelRollupService.ANY_STATION records that the vehicle pumped somewhere that day.
+ */
+@Entity
+@Table(name = "daily_vehicle_visits", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_daily_vehicle_visits_date_vehicle_station", columnNames = {"visit_date", "vehicle_id", "station_id"})
+})
+@Data
+public class DailyVehicleVisit {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "visit_date", nullable = false, length = 10)
+    private String visitDate;
+
+    @Column(name = "vehicle_id", nullable = false)
+    private Long vehicleId;
+
+    @Column(name = "station_id", nullable = false)
+    private Long stationId;
+}
@@ -4,10 +4,14 @@ import jakarta.persistence.*;
 import lombok.Data;
 
 @Entity
-@Table(name = "fuel_quotas")
+@Table(name = "fuel_quotas", uniqueConstraints = @UniqueConstraint(
+        name = FuelQuota.UNIQUE_VEHICLE_FUEL_PERIOD, columnNames = {"vehicle_id", "fuel_type", "period"}),
+        indexes = @Index(name = "idx_fuel_quotas_period", columnList = "period"))
 @Data
 public class FuelQuota {
 
+    public static final String UNIQUE_VEHICLE_FUEL_PERIOD = "uk_fuel_quotas_vehicle_fuel_period";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -19,15 +23,24 @@ public class FuelQuota {
     @Column(nullable = false)
     private String fuelType;
 
-    @Column(nullable = false)
-    private Double allocatedQuota;
+    // Quota balances in millilitres (see FuelUnits)
+    @Column(name = "allocated_quota_ml", nullable = false)
+    private long allocatedQuotaMl;
 
-    @Column(nullable = false)
-    private Double remainingQuota;
+    @Column(name = "remaining_quota_ml", nullable = false)
+    private long remainingQuotaMl;
 
     // Weekly or monthly allocation period
     private String allocationPeriod;
 
+    // Period key (YearMonth, e.g. "2024-05"); at most one quota row per vehicle, fuel type and period
+    @Column(nullable = false, length = 7)
+    private String period;
+
+    // Set on rows created by the bulk rollover until their "new quota" SMS is queued; null otherwise
+    @Column(name = "allocation_notice_pending")
+    private Boolean allocationNoticePending;
+
     // Start and end date for this quota period
     private Long startDate;
     private Long endDate;
@@ -0,0 +1,46 @@
+package com.example.fuelQuotaManagementSystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * A quota of a closed period, moved out of fuel_quotas when the period is closed. Keeps
+ * only what utilisation reports need; the id is the original fuel_quotas id, so archiving
+ * a row twice is a no-op.
+ */
+@Entity
+@Table(name = "fuel_quota_history", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_fuel_quota_history_vehicle_fuel_period", columnNames = {"vehicle_id", "fuel_type", "period"})
+}, indexes = {
+        @Index(name = "idx_fuel_quota_history_period_type", columnList = "period, vehicle_type")
+})
+@Data
+public class FuelQuotaHistory {
+
+    @Id
+    private Long id;
+
+    @Column(name = "vehicle_id", nullable = false)
+    private Long vehicleId;
+
+    // Vehicle type when the period was closed
+    @Column(name = "vehicle_type")
+    private String vehicleType;
+
+    @Column(name = "fuel_type", nullable = false)
+    private String fuelType;
+
+    @Column(nullable = false, length = 7)
+    private String period;
+
+    // Millilitres (see FuelUnits)
+    @Column(name = "allocated_quota_ml", nullable = false)
+    private long allocatedQuotaMl;
+
+    @Column(name = "used_quota_ml", nullable = false)
+    private long usedQuotaMl;
+
+    // Timestamps
+    private Long createdAt;
+    private Long closedAt;
+}
@@ -6,7 +6,9 @@ import jakarta.persistence.*;
 import lombok.Data;
 
 @Entity
-@Table(name = "fuel_transactions")
+@Table(name = "fuel_transactions", indexes = {
+        @Index(name = "idx_fuel_transactions_timestamp", columnList = "timestamp")
+})
 @Data
 public class FuelTransaction {
 
@@ -25,18 +27,23 @@ public class FuelTransaction {
     @Column(nullable = false)
     private String fuelType;
 
-    @Column(nullable = false)
-    private Double amount;
+    // Amounts in millilitres (see FuelUnits)
+    @Column(name = "amount_ml", nullable = false)
+    private long amountMl;
 
-    @Column(nullable = false)
-    private Double quotaBeforeTransaction;
+    @Column(name = "quota_before_transaction_ml", nullable = false)
+    private long quotaBeforeTransactionMl;
 
-    @Column(nullable = false)
-    private Double quotaAfterTransaction;
+    @Column(name = "quota_after_transaction_ml", nullable = false)
+    private long quotaAfterTransactionMl;
 
     // Notification status
     private boolean notificationSent;
 
+    // Client idempotency key; unique so a retried pump can never be recorded twice
+    @Column(unique = true, length = 64)
+    private String idempotencyKey;
+
     // Timestamps
     private Long timestamp;
 
@@ -0,0 +1,25 @@
+package com.example.fuelQuotaManagementSystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * First day currently counted in a leaderboard window's totals. Sliding the window
+ * subtracts the days before the new start and moves startDate on, under this row's lock.
+ */
+@Entity
+@Table(name = "leaderboard_windows")
+@Data
+public class LeaderboardWindow {
+
+    @Id
+    @Column(name = "window_name", length = 10)
+    private String windowName;
+
+    // ISO date; null for the all-time window
+    @Column(name = "start_date", length = 10)
+    private String startDate;
+
+    private Long builtAt;
+    private Long slidAt;
+}
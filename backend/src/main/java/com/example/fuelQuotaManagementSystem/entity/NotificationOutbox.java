@@ -0,0 +1,65 @@
+package com.example.fuelQuotaManagementSystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+@Entity
+@Table(name = "notification_outbox", indexes = {
+        @Index(name = "idx_outbox_status_type", columnList = "status, notificationType, id"),
+        @Index(name = "idx_outbox_type_due", columnList = "notificationType, status, nextAttemptAt"),
+        @Index(name = "idx_outbox_claim", columnList = "claimToken"),
+        @Index(name = "idx_outbox_status_claimed", columnList = "status, claimedAt")
+})
+@Data
+public class NotificationOutbox {
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_IN_PROGRESS = "IN_PROGRESS";
+    public static final String STATUS_SENT = "SENT";
+    public static final String STATUS_FAILED = "FAILED";
+
+    public static final String TYPE_FUEL_TRANSACTION = "FUEL_TRANSACTION";
+    public static final String TYPE_LOW_QUOTA_WARNING = "LOW_QUOTA_WARNING";
+    public static final String TYPE_QUOTA_ALLOCATION = "QUOTA_ALLOCATION";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String notificationType;
+
+    private String phoneNumber;
+
+    @Column(nullable = false, length = 500)
+    private String message;
+
+    // Set for fuel transaction notifications so notificationSent can be updated
+    private Long transactionId;
+
+    @Column(nullable = false)
+    private String status;
+
+    private int attempts;
+
+    // Not sent before this time (epoch millis), pushed back after each failed attempt
+    private Long nextAttemptAt;
+
+    // Identifies the worker batch that claimed this row
+    private String claimToken;
+
+    // When the row was claimed (epoch millis); claims older than the claim timeout are released
+    private Long claimedAt;
+
+    // Timestamps
+    private Long createdAt;
+    private Long processedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = System.currentTimeMillis();
+        if (this.status == null) {
+            this.status = STATUS_PENDING;
+        }
+    }
+}
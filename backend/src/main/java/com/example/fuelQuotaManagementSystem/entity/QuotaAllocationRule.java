@@ -0,0 +1,65 @@
+package com.example.fuelQuotaManagementSystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One row of the quota allocation policy. Rules are matched on period, vehicle type and
+ * fuel type ("*" matches anything without a more specific rule), then on engine capacity
+ * band: the first rule whose maxEngineCapacity (inclusive, null = unbounded) covers the
+ * vehicle wins. Changes take effect on every node after POST /api/admin/quota/policy/reload.
+ */
+@Entity
+@Table(name = "quota_allocation_rules", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_quota_allocation_rules_band",
+                columnNames = {"period", "vehicle_type", "fuel_type", "max_engine_capacity"})
+})
+@Data
+@NoArgsConstructor
+public class QuotaAllocationRule {
+
+    public static final String ANY = "*";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // MONTHLY
+    @Column(nullable = false, length = 20)
+    private String period;
+
+    @Column(nullable = false)
+    private String vehicleType;
+
+    @Column(nullable = false)
+    private String fuelType;
+
+    private Double maxEngineCapacity;
+
+    @Column(name = "quota_ml", nullable = false)
+    private long quotaMl;
+
+    // Timestamps
+    private Long createdAt;
+    private Long updatedAt;
+
+    public QuotaAllocationRule(String period, String vehicleType, String fuelType, Double maxEngineCapacity, long quotaMl) {
+        this.period = period;
+        this.vehicleType = vehicleType;
+        this.fuelType = fuelType;
+        this.maxEngineCapacity = maxEngineCapacity;
+        this.quotaMl = quotaMl;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = System.currentTimeMillis();
+        this.updatedAt = System.currentTimeMillis();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        this.updatedAt = System.currentTimeMillis();
+    }
+}
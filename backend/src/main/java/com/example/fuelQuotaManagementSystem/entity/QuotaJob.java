@@ -0,0 +1,87 @@
+package com.example.fuelQuotaManagementSystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * A bulk quota job (reset all, bulk allocate, monthly reset). Vehicles are paged by id
+ * into QuotaJobChunk rows; lastChunkedVehicleId is the keyset checkpoint paging resumes
+ * from after a restart. The running node refreshes heartbeatAt; once it is too old,
+ * another node adopts the job.
+ */
+@Entity
+@Table(name = "quota_jobs", indexes = {
+        @Index(name = "idx_quota_jobs_status", columnList = "status")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_quota_jobs_running_key", columnNames = "running_key")
+})
+@Data
+public class QuotaJob {
+
+    public static final String TYPE_RESET_ALL = "RESET_ALL";
+    public static final String TYPE_BULK_ALLOCATE = "BULK_ALLOCATE";
+    public static final String TYPE_MONTHLY_RESET = "MONTHLY_RESET";
+
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_COMPLETED_WITH_ERRORS = "COMPLETED_WITH_ERRORS";
+    public static final String STATUS_FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String jobType;
+
+    @Column(nullable = false)
+    private String status;
+
+    // Quota period the job writes (YearMonth)
+    @Column(nullable = false, length = 7)
+    private String period;
+
+    // Optional filters (lower case); null means all
+    private String vehicleTypeFilter;
+    private String fuelTypeFilter;
+
+    // Fixed allocation for bulk allocate; null means the allocation policy decides
+    private Long allocatedQuotaMl;
+
+    // Node currently running the job, and when it last confirmed it still is
+    private String nodeId;
+    private Long heartbeatAt;
+
+    // jobType:period while RUNNING, null afterwards; the unique key allows one running job per type and period
+    @Column(name = "running_key", length = 50)
+    private String runningKey;
+
+    private long totalVehicles;
+    private long processedVehicles;
+    private long failedVehicles;
+
+    // Keyset checkpoint: every vehicle id up to here has been assigned to a chunk
+    private long lastChunkedVehicleId;
+    private boolean pagingComplete;
+
+    @Column(length = 500)
+    private String errorMessage;
+
+    // Timestamps; startedAt and processedAtStart are reset on resume so rate/ETA reflect the current run
+    private Long createdAt;
+    private Long startedAt;
+    private long processedAtStart;
+    private Long updatedAt;
+    private Long finishedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = System.currentTimeMillis();
+        this.updatedAt = System.currentTimeMillis();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        this.updatedAt = System.currentTimeMillis();
+    }
+}
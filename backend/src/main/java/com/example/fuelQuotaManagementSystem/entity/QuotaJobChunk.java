@@ -0,0 +1,55 @@
+package com.example.fuelQuotaManagementSystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * One unit of work of a QuotaJob: the matching vehicles with ids in
+ * [firstVehicleId, lastVehicleId]. A chunk is processed and marked DONE in the same
+ * transaction, so a chunk is never applied twice across restarts.
+ */
+@Entity
+@Table(name = "quota_job_chunks", indexes = {
+        @Index(name = "idx_quota_job_chunks_job_status", columnList = "jobId, status")
+})
+@Data
+public class QuotaJobChunk {
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long jobId;
+
+    private long firstVehicleId;
+    private long lastVehicleId;
+    private int vehicleCount;
+
+    @Column(nullable = false)
+    private String status;
+
+    private int attempts;
+
+    @Column(length = 500)
+    private String errorMessage;
+
+    // Timestamps
+    private Long createdAt;
+    private Long updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = System.currentTimeMillis();
+        this.updatedAt = System.currentTimeMillis();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        this.updatedAt = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.fuelQuotaManagementSystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Quota utilisation of a closed period per vehicle type, written when the period is closed
+ * so historical reports read a handful of rows instead of every quota.
+ */
+@Entity
+@Table(name = "quota_period_summaries", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_quota_period_summaries_period_type", columnNames = {"period", "vehicle_type"})
+})
+@Data
+public class QuotaPeriodSummary {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 7)
+    private String period;
+
+    @Column(name = "vehicle_type", nullable = false)
+    private String vehicleType;
+
+    // Number of quotas (one per vehicle and fuel type)
+    private long vehicleCount;
+
+    // Millilitres (see FuelUnits)
+    private long allocatedQuotaMl;
+    private long usedQuotaMl;
+
+    private long fullyUtilizedCount;
+    private long notUsedCount;
+
+    private Long closedAt;
+}
@@ -0,0 +1,24 @@
+package com.example.fuelQuotaManagementSystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Single-row version counter for the quota allocation rules. The reload endpoint bumps it
+ * and every node reloads its compiled policy when it sees a version it has not loaded.
+ * The node whose INSERT IGNORE creates the row is the one that seeds the default rules.
+ */
+@Entity
+@Table(name = "quota_policy_version")
+@Data
+public class QuotaPolicyVersion {
+
+    public static final long ID = 1L;
+
+    @Id
+    private Long id;
+
+    private long version;
+
+    private Long updatedAt;
+}
@@ -0,0 +1,47 @@
+package com.example.fuelQuotaManagementSystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * One instance of a scheduled job (e.g. the monthly reset for 2025-03) and the node that
+ * ran it. The (jobName, instanceKey) unique key makes sure an instance runs only once
+ * across the cluster, even when nodes fire the same cron at slightly different times.
+ */
+@Entity
+@Table(name = "scheduled_job_runs", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_scheduled_job_runs_job_instance", columnNames = {"job_name", "instance_key"})
+})
+@Data
+public class ScheduledJobRun {
+
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_SUCCEEDED = "SUCCEEDED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 100)
+    private String jobName;
+
+    @Column(nullable = false, length = 50)
+    private String instanceKey;
+
+    @Column(nullable = false)
+    private String nodeId;
+
+    @Column(nullable = false)
+    private String status;
+
+    // Greater than 1 when a node took over an instance that failed or whose node died
+    private int attempts;
+
+    private Long startedAt;
+    private Long finishedAt;
+    private Long durationMillis;
+
+    @Column(length = 500)
+    private String errorMessage;
+}
@@ -0,0 +1,27 @@
+package com.example.fuelQuotaManagementSystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Cluster-wide lease for a scheduled job. The owner renews leaseUntil while the job runs;
+ * once it has passed (the owner died or released it), any node may take the lease over.
+ */
+@Entity
+@Table(name = "scheduler_leases")
+@Data
+public class SchedulerLease {
+
+    @Id
+    @Column(length = 100)
+    private String jobName;
+
+    // Node holding (or last holding) the lease
+    private String owner;
+
+    // Epoch millis; 0 once released
+    private long leaseUntil;
+
+    private Long acquiredAt;
+    private Long renewedAt;
+}
@@ -0,0 +1,37 @@
+package com.example.fuelQuotaManagementSystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Running fuel total of a vehicle over one leaderboard window ("week", "month", "year" or
+ * "all"). The index on (window_name, amount_ml) keeps each window sorted, so the top
+ * consumers are the first rows of an index scan.
+ */
+@Entity
+@Table(name = "vehicle_consumption_totals", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_vehicle_consumption_totals_window_vehicle", columnNames = {"window_name", "vehicle_id"})
+}, indexes = {
+        @Index(name = "idx_vehicle_consumption_totals_window_amount", columnList = "window_name, amount_ml, vehicle_id")
+})
+@Data
+public class VehicleConsumptionTotal {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "window_name", nullable = false, length = 10)
+    private String windowName;
+
+    @Column(name = "vehicle_id", nullable = false)
+    private Long vehicleId;
+
+    // Millilitres (see FuelUnits)
+    @Column(name = "amount_ml", nullable = false)
+    private long amountMl;
+
+    private long transactionCount;
+
+    private Long lastTimestamp;
+}
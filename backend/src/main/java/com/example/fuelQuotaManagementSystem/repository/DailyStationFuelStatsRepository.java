@@ -0,0 +1,70 @@
+package com.example.fuelQuotaManagementSystem.repository;
+
+import com.example.fuelQuotaManagementSystem.entity.DailyStationFuelStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.List;
+
+// Date arguments are ISO dates ("yyyy-MM-dd"), inclusive
+public interface DailyStationFuelStatsRepository extends JpaRepository<DailyStationFuelStats, Long> {
+
+    @Query("SELECT s.fuelType AS fuelType, SUM(s.transactionCount) AS transactionCount, SUM(s.amountMl) AS amountMl " +
+            "FROM DailyStationFuelStats s WHERE s.statDate BETWEEN :fromDate AND :toDate GROUP BY s.fuelType")
+    List<FuelTotal> sumByFuelType(@Param("fromDate") String fromDate, @Param("toDate") String toDate);
+
+    @Query("SELECT s.fuelType AS fuelType, SUM(s.transactionCount) AS transactionCount, SUM(s.amountMl) AS amountMl " +
+            "FROM DailyStationFuelStats s GROUP BY s.fuelType")
+    List<FuelTotal> sumAllByFuelType();
+
+    @Query("SELECT s.fuelType AS fuelType, SUM(s.transactionCount) AS transactionCount, SUM(s.amountMl) AS amountMl " +
+            "FROM DailyStationFuelStats s WHERE s.stationId = :stationId AND s.statDate BETWEEN :fromDate AND :toDate " +
+            "GROUP BY s.fuelType")
+    List<FuelTotal> sumByFuelTypeForStation(@Param("stationId") Long stationId,
+                                            @Param("fromDate") String fromDate,
+                                            @Param("toDate") String toDate);
+
+    @Query("SELECT s.fuelType AS fuelType, SUM(s.transactionCount) AS transactionCount, SUM(s.amountMl) AS amountMl " +
+            "FROM DailyStationFuelStats s WHERE s.stationId = :stationId GROUP BY s.fuelType")
+    List<FuelTotal> sumAllByFuelTypeForStation(@Param("stationId") Long stationId);
+
+    // fuelType null = any
+    @Query("SELECT s.stationId AS stationId, SUM(s.transactionCount) AS transactionCount, SUM(s.amountMl) AS amountMl " +
+            "FROM DailyStationFuelStats s WHERE s.statDate BETWEEN :fromDate AND :toDate " +
+            "AND (:fuelType IS NULL OR LOWER(s.fuelType) = LOWER(:fuelType)) GROUP BY s.stationId")
+    List<StationTotal> sumByStation(@Param("fromDate") String fromDate,
+                                    @Param("toDate") String toDate,
+                                    @Param("fuelType") String fuelType);
+
+    // fuelType null = any; vehicleCount is the day's distinct vehicles
+    @Query("SELECT s.statDate AS statDate, SUM(s.transactionCount) AS transactionCount, SUM(s.amountMl) AS amountMl, " +
+            "SUM(s.newVehicleCount) AS vehicleCount, COUNT(DISTINCT s.stationId) AS stationCount " +
+            "FROM DailyStationFuelStats s WHERE s.statDate BETWEEN :fromDate AND :toDate " +
+            "AND (:fuelType IS NULL OR LOWER(s.fuelType) = LOWER(:fuelType)) GROUP BY s.statDate ORDER BY s.statDate")
+    List<DayTotal> sumByDay(@Param("fromDate") String fromDate,
+                            @Param("toDate") String toDate,
+                            @Param("fuelType") String fuelType);
+
+    @Query("SELECT MIN(s.statDate) FROM DailyStationFuelStats s")
+    String findFirstDate();
+
+    interface FuelTotal {
+        String getFuelType();
+        long getTransactionCount();
+        long getAmountMl();
+    }
+
+    interface StationTotal {
+        Long getStationId();
+        long getTransactionCount();
+        long getAmountMl();
+    }
+
+    interface DayTotal {
+        String getStatDate();
+        long getTransactionCount();
+        long getAmountMl();
+        long getVehicleCount();
+        long getStationCount();
+    }
+}
@@ -1,10 +1,140 @@
 package com.example.fuelQuotaManagementSystem.repository;
 
 import com.example.fuelQuotaManagementSystem.entity.FuelQuota;
-import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.List;
 import java.util.Optional;
 
 public interface FuelQuotaRepository extends JpaRepository<FuelQuota, Long> {
-    Optional<FuelQuota> findByVehicleAndFuelTypeAndEndDateGreaterThanEqual(Vehicle vehicle, String fuelType, Long currentDate);
-}
\ No newline at end of file
+    Optional<FuelQuota> findByVehicleIdAndFuelTypeAndPeriod(Long vehicleId, String fuelType, String period);
+
+    // Creates the period's quota unless a row for (vehicle, fuel type, period) already exists; returns rows inserted
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO fuel_quotas (vehicle_id, fuel_type, period, allocated_quota_ml, remaining_quota_ml, " +
+            "allocation_period, start_date, end_date, created_at, updated_at) " +
+            "VALUES (:vehicleId, :fuelType, :period, :allocatedMl, :allocatedMl, :allocationPeriod, :startDate, :endDate, :now, :now)",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("vehicleId") Long vehicleId,
+                       @Param("fuelType") String fuelType,
+                       @Param("period") String period,
+                       @Param("allocatedMl") long allocatedMl,
+                       @Param("allocationPeriod") String allocationPeriod,
+                       @Param("startDate") long startDate,
+                       @Param("endDate") long endDate,
+                       @Param("now") long now);
+
+    // Locking read: sees a row committed by a concurrent insertIfAbsent even inside an older REPEATABLE READ
+    // snapshot. Exclusive so two callers that go on to deduct cannot deadlock upgrading a shared lock.
+    @Transactional
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT q FROM FuelQuota q WHERE q.vehicle.id = :vehicleId AND q.fuelType = :fuelType AND q.period = :period")
+    Optional<FuelQuota> findLatestByVehicleIdAndFuelTypeAndPeriod(@Param("vehicleId") Long vehicleId,
+                                                                 @Param("fuelType") String fuelType,
+                                                                 @Param("period") String period);
+
+    // Conditional deduction: only succeeds when the period's quota still covers the amount
+    @Modifying
+    @Query("UPDATE FuelQuota q SET q.remainingQuotaMl = q.remainingQuotaMl - :amountMl, q.updatedAt = :now " +
+            "WHERE q.vehicle.id = :vehicleId AND q.fuelType = :fuelType " +
+            "AND q.period = :period AND q.remainingQuotaMl >= :amountMl")
+    int deductIfSufficient(@Param("vehicleId") Long vehicleId,
+                           @Param("fuelType") String fuelType,
+                           @Param("period") String period,
+                           @Param("amountMl") long amountMl,
+                           @Param("now") long now);
+
+    // In-place reset of a period's balance; the row itself is never deleted
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE FuelQuota q SET q.allocatedQuotaMl = :allocatedMl, q.remainingQuotaMl = :allocatedMl, q.updatedAt = :now " +
+            "WHERE q.vehicle.id = :vehicleId AND q.fuelType = :fuelType AND q.period = :period")
+    int resetBalance(@Param("vehicleId") Long vehicleId,
+                     @Param("fuelType") String fuelType,
+                     @Param("period") String period,
+                     @Param("allocatedMl") long allocatedMl,
+                     @Param("now") long now);
+
+    // Set-based bulk allocation over a vehicle id range; filters in lower case, null = any
+    String VEHICLE_FILTER = "(:vehicleType IS NULL OR LOWER(v.vehicle_type) = :vehicleType) " +
+            "AND (:fuelType IS NULL OR LOWER(v.fuel_type) = :fuelType)";
+
+    // Sets the period's existing quotas of the matching vehicles to the amount (as a reset: remaining = allocated)
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query(value = "UPDATE fuel_quotas SET allocated_quota_ml = :allocatedMl, remaining_quota_ml = :allocatedMl, updated_at = :now " +
+            "WHERE period = :period AND vehicle_id BETWEEN :firstId AND :lastId AND EXISTS (SELECT 1 FROM vehicles v " +
+            "WHERE v.id = fuel_quotas.vehicle_id AND v.fuel_type = fuel_quotas.fuel_type AND " + VEHICLE_FILTER + ")",
+            nativeQuery = true)
+    int allocateExisting(@Param("period") String period,
+                         @Param("firstId") long firstId,
+                         @Param("lastId") long lastId,
+                         @Param("vehicleType") String vehicleType,
+                         @Param("fuelType") String fuelType,
+                         @Param("allocatedMl") long allocatedMl,
+                         @Param("now") long now);
+
+    // Creates the period's quota with the amount for matching vehicles that have none yet
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO fuel_quotas (vehicle_id, fuel_type, period, allocated_quota_ml, remaining_quota_ml, " +
+            "allocation_period, start_date, end_date, created_at, updated_at) " +
+            "SELECT v.id, v.fuel_type, :period, :allocatedMl, :allocatedMl, :allocationPeriod, :startDate, :endDate, :now, :now " +
+            "FROM vehicles v WHERE v.id BETWEEN :firstId AND :lastId AND " + VEHICLE_FILTER,
+            nativeQuery = true)
+    int allocateMissing(@Param("period") String period,
+                        @Param("firstId") long firstId,
+                        @Param("lastId") long lastId,
+                        @Param("vehicleType") String vehicleType,
+                        @Param("fuelType") String fuelType,
+                        @Param("allocatedMl") long allocatedMl,
+                        @Param("allocationPeriod") String allocationPeriod,
+                        @Param("startDate") long startDate,
+                        @Param("endDate") long endDate,
+                        @Param("now") long now);
+
+    @Query("SELECT q.id AS id, q.allocatedQuotaMl AS allocatedQuotaMl, q.remainingQuotaMl AS remainingQuotaMl " +
+            "FROM FuelQuota q WHERE q.vehicle.id = :vehicleId AND q.fuelType = :fuelType AND q.period = :period")
+    Optional<QuotaBalance> findBalance(@Param("vehicleId") Long vehicleId,
+                                       @Param("fuelType") String fuelType,
+                                       @Param("period") String period);
+
+    @Query("SELECT COALESCE(SUM(q.allocatedQuotaMl), 0) AS allocatedQuotaMl, COALESCE(SUM(q.remainingQuotaMl), 0) AS remainingQuotaMl " +
+            "FROM FuelQuota q WHERE q.period = :period")
+    PeriodTotals sumPeriod(@Param("period") String period);
+
+    interface PeriodTotals {
+        long getAllocatedQuotaMl();
+        long getRemainingQuotaMl();
+    }
+
+    // Utilisation of an open period per vehicle type, aggregated in the database
+    @Query("SELECT v.vehicleType AS vehicleType, COUNT(q) AS vehicleCount, SUM(q.allocatedQuotaMl) AS allocatedQuotaMl, " +
+            "SUM(q.allocatedQuotaMl - q.remainingQuotaMl) AS usedQuotaMl, " +
+            "SUM(CASE WHEN q.remainingQuotaMl <= 0 THEN 1 ELSE 0 END) AS fullyUtilizedCount, " +
+            "SUM(CASE WHEN q.remainingQuotaMl = q.allocatedQuotaMl THEN 1 ELSE 0 END) AS notUsedCount " +
+            "FROM FuelQuota q JOIN q.vehicle v WHERE q.period = :period GROUP BY v.vehicleType")
+    List<PeriodUtilization> summarizePeriod(@Param("period") String period);
+
+    interface PeriodUtilization {
+        String getVehicleType();
+        long getVehicleCount();
+        long getAllocatedQuotaMl();
+        long getUsedQuotaMl();
+        long getFullyUtilizedCount();
+        long getNotUsedCount();
+    }
+
+    // Read-only view of the active quota row, always read straight from the database
+    interface QuotaBalance {
+        Long getId();
+        long getAllocatedQuotaMl();
+        long getRemainingQuotaMl();
+    }
+}
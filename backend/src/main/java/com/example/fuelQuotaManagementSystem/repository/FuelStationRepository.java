@@ -2,10 +2,34 @@ package com.example.fuelQuotaManagementSystem.repository;
 
 import com.example.fuelQuotaManagementSystem.entity.FuelStation;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface FuelStationRepository extends JpaRepository<FuelStation, Long> {
     List<FuelStation> findByOwnerId(Long ownerId);
     Optional<FuelStation> findByRegistrationNumber(String registrationNumber);
-}
\ No newline at end of file
+
+    // Pump lookups: station name only, without the owner join
+    @Query("SELECT s.id AS id, s.name AS name FROM FuelStation s WHERE s.id = :id")
+    Optional<StationPumpView> findPumpViewById(@Param("id") Long id);
+
+    @Query("SELECT s.id AS id, s.name AS name FROM FuelStation s WHERE s.id IN :ids")
+    List<StationPumpView> findPumpViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT COUNT(s) AS stationCount, COALESCE(SUM(CASE WHEN s.isActive = true THEN 1 ELSE 0 END), 0) AS activeCount " +
+            "FROM FuelStation s")
+    StationCounts countStations();
+
+    interface StationCounts {
+        long getStationCount();
+        long getActiveCount();
+    }
+
+    interface StationPumpView {
+        Long getId();
+        String getName();
+    }
+}
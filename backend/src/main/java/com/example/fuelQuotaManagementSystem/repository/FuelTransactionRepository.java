@@ -3,11 +3,24 @@ package com.example.fuelQuotaManagementSystem.repository;
 import com.example.fuelQuotaManagementSystem.entity.FuelTransaction;
 import com.example.fuelQuotaManagementSystem.entity.Vehicle;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface FuelTransactionRepository extends JpaRepository<FuelTransaction, Long> {
     List<FuelTransaction> findByVehicleOrderByTimestampDesc(Vehicle vehicle);
     List<FuelTransaction> findByVehicleIdOrderByTimestampDesc(Long vehicleId);
 
     List<FuelTransaction> findByStationIdOrderByTimestampDesc(Long stationId);
+
+    Optional<FuelTransaction> findByIdempotencyKey(String idempotencyKey);
+
+    List<FuelTransaction> findByIdempotencyKeyIn(Collection<String> idempotencyKeys);
+
+    @Modifying
+    @Query("UPDATE FuelTransaction t SET t.notificationSent = true WHERE t.id IN :ids")
+    int markNotificationsSent(@Param("ids") Collection<Long> ids);
 }
\ No newline at end of file
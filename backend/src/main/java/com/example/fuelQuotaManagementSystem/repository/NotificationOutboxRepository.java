@@ -0,0 +1,72 @@
+package com.example.fuelQuotaManagementSystem.repository;
+
+import com.example.fuelQuotaManagementSystem.entity.NotificationOutbox;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
+import java.util.List;
+
+public interface NotificationOutboxRepository extends JpaRepository<NotificationOutbox, Long> {
+
+    // The general drain skips the fan-out type, which has its own throttled worker, and rows still backing off
+    @Query("SELECT o.id FROM NotificationOutbox o WHERE o.status = 'PENDING' AND o.notificationType <> :excludedType " +
+            "AND (o.nextAttemptAt IS NULL OR o.nextAttemptAt <= :now) ORDER BY o.id")
+    List<Long> findDueIdsExcludingType(@Param("excludedType") String excludedType, @Param("now") long now,
+                                       Pageable pageable);
+
+    // Pending rows of one type whose retry time has come, oldest first
+    @Query("SELECT o.id FROM NotificationOutbox o WHERE o.notificationType = :type AND o.status = 'PENDING' " +
+            "AND o.nextAttemptAt <= :now ORDER BY o.nextAttemptAt")
+    List<Long> findDueIdsByType(@Param("type") String type, @Param("now") long now, Pageable pageable);
+
+    @Query("SELECT o.status AS status, COUNT(o) AS count FROM NotificationOutbox o " +
+            "WHERE o.notificationType = :type GROUP BY o.status")
+    List<StatusCount> countByStatusForType(@Param("type") String type);
+
+    // Rows of one type created in [from, to] that are in the given status (e.g. gave up after the last attempt)
+    long countByNotificationTypeAndStatusAndCreatedAtBetween(String notificationType, String status, Long from, Long to);
+
+    List<NotificationOutbox> findByClaimToken(String claimToken);
+
+    // Only rows still pending are claimed, so concurrent workers never pick up the same row
+    @Modifying
+    @Query("UPDATE NotificationOutbox o SET o.status = 'IN_PROGRESS', o.claimToken = :claimToken, o.claimedAt = :now " +
+            "WHERE o.id IN :ids AND o.status = 'PENDING'")
+    int claim(@Param("ids") Collection<Long> ids, @Param("claimToken") String claimToken, @Param("now") long now);
+
+    // Outcomes only apply while the batch still holds its claim (it may have been released as stale)
+    @Modifying
+    @Query("UPDATE NotificationOutbox o SET o.status = :status, o.processedAt = :now, o.attempts = o.attempts + 1, " +
+            "o.claimToken = NULL, o.claimedAt = NULL WHERE o.id IN :ids AND o.claimToken = :claimToken")
+    int updateStatus(@Param("ids") Collection<Long> ids, @Param("claimToken") String claimToken,
+                     @Param("status") String status, @Param("now") long now);
+
+    // Failed attempt with retries left: back to the queue, not before nextAttemptAt
+    @Modifying
+    @Query("UPDATE NotificationOutbox o SET o.status = 'PENDING', o.nextAttemptAt = :nextAttemptAt, o.processedAt = :now, " +
+            "o.attempts = o.attempts + 1, o.claimToken = NULL, o.claimedAt = NULL " +
+            "WHERE o.id IN :ids AND o.claimToken = :claimToken")
+    int reschedule(@Param("ids") Collection<Long> ids, @Param("claimToken") String claimToken,
+                   @Param("nextAttemptAt") long nextAttemptAt, @Param("now") long now);
+
+    // Claims older than the cutoff belong to a worker that died (or hung): hand them back to the queue
+    @Modifying
+    @Query("UPDATE NotificationOutbox o SET o.status = 'PENDING', o.claimToken = NULL, o.claimedAt = NULL " +
+            "WHERE o.status = 'IN_PROGRESS' AND (o.claimedAt IS NULL OR o.claimedAt < :cutoff) " +
+            "AND o.notificationType <> :excludedType")
+    int releaseStaleClaimsExcludingType(@Param("excludedType") String excludedType, @Param("cutoff") long cutoff);
+
+    @Modifying
+    @Query("UPDATE NotificationOutbox o SET o.status = 'PENDING', o.claimToken = NULL, o.claimedAt = NULL " +
+            "WHERE o.status = 'IN_PROGRESS' AND (o.claimedAt IS NULL OR o.claimedAt < :cutoff) " +
+            "AND o.notificationType = :type")
+    int releaseStaleClaimsForType(@Param("type") String type, @Param("cutoff") long cutoff);
+
+    interface StatusCount {
+        String getStatus();
+        long getCount();
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.fuelQuotaManagementSystem.repository;
+
+import com.example.fuelQuotaManagementSystem.entity.QuotaAllocationRule;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface QuotaAllocationRuleRepository extends JpaRepository<QuotaAllocationRule, Long> {
+}
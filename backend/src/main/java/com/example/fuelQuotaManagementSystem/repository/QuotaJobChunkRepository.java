@@ -0,0 +1,26 @@
+package com.example.fuelQuotaManagementSystem.repository;
+
+import com.example.fuelQuotaManagementSystem.entity.QuotaJobChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.List;
+
+public interface QuotaJobChunkRepository extends JpaRepository<QuotaJobChunk, Long> {
+
+    List<QuotaJobChunk> findByJobIdAndStatusNotOrderById(Long jobId, String status);
+
+    long countByJobIdAndStatus(Long jobId, String status);
+
+    // Locks the chunk row for the applying transaction; 0 when it is already DONE (applied by another node)
+    @Modifying
+    @Query("UPDATE QuotaJobChunk c SET c.updatedAt = :now WHERE c.id = :id AND c.status <> 'DONE'")
+    int claim(@Param("id") Long id, @Param("now") long now);
+
+    @Modifying
+    @Query("UPDATE QuotaJobChunk c SET c.status = :status, c.vehicleCount = :vehicleCount, " +
+            "c.attempts = c.attempts + :attempts, c.errorMessage = :errorMessage, c.updatedAt = :now WHERE c.id = :id")
+    int updateStatus(@Param("id") Long id, @Param("status") String status, @Param("vehicleCount") int vehicleCount,
+                     @Param("attempts") int attempts, @Param("errorMessage") String errorMessage, @Param("now") long now);
+}
@@ -0,0 +1,54 @@
+package com.example.fuelQuotaManagementSystem.repository;
+
+import com.example.fuelQuotaManagementSystem.entity.QuotaJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.List;
+
+public interface QuotaJobRepository extends JpaRepository<QuotaJob, Long> {
+
+    List<QuotaJob> findByStatusAndNodeId(String status, String nodeId);
+
+    // RUNNING jobs whose node has stopped heartbeating
+    @Query("SELECT j FROM QuotaJob j WHERE j.status = 'RUNNING' AND (j.heartbeatAt IS NULL OR j.heartbeatAt < :cutoff)")
+    List<QuotaJob> findOrphaned(@Param("cutoff") long cutoff);
+
+    // Takes a job over for this node; returns 0 when its owner is alive (or another node adopted it first)
+    @Transactional
+    @Modifying
+    @Query("UPDATE QuotaJob j SET j.nodeId = :nodeId, j.heartbeatAt = :now, j.updatedAt = :now WHERE j.id = :id " +
+            "AND j.status = 'RUNNING' AND (j.nodeId = :nodeId OR j.heartbeatAt IS NULL OR j.heartbeatAt < :cutoff)")
+    int adopt(@Param("id") Long id, @Param("nodeId") String nodeId, @Param("cutoff") long cutoff, @Param("now") long now);
+
+    // Returns 0 once another node has adopted the job
+    @Transactional
+    @Modifying
+    @Query("UPDATE QuotaJob j SET j.heartbeatAt = :now WHERE j.id = :id AND j.status = 'RUNNING' AND j.nodeId = :nodeId")
+    int heartbeat(@Param("id") Long id, @Param("nodeId") String nodeId, @Param("now") long now);
+
+    List<QuotaJob> findTop50ByOrderByIdDesc();
+
+    boolean existsByJobTypeAndPeriodAndStatus(String jobType, String period, String status);
+
+    // Counters are bumped in the chunk's transaction, so they always match the DONE/FAILED chunks
+    @Modifying
+    @Query("UPDATE QuotaJob j SET j.processedVehicles = j.processedVehicles + :processed, " +
+            "j.failedVehicles = j.failedVehicles + :failed, j.updatedAt = :now WHERE j.id = :id")
+    int addProgress(@Param("id") Long id, @Param("processed") long processed,
+                    @Param("failed") long failed, @Param("now") long now);
+
+    // Fenced on the owner: a node that lost the job cannot add chunks behind the adopter's back
+    @Modifying
+    @Query("UPDATE QuotaJob j SET j.lastChunkedVehicleId = :lastVehicleId, j.updatedAt = :now " +
+            "WHERE j.id = :id AND j.nodeId = :nodeId AND j.lastChunkedVehicleId = :previousVehicleId")
+    int advanceCheckpoint(@Param("id") Long id, @Param("nodeId") String nodeId,
+                          @Param("previousVehicleId") long previousVehicleId,
+                          @Param("lastVehicleId") long lastVehicleId, @Param("now") long now);
+
+    @Modifying
+    @Query("UPDATE QuotaJob j SET j.pagingComplete = true, j.updatedAt = :now WHERE j.id = :id AND j.nodeId = :nodeId")
+    int markPagingComplete(@Param("id") Long id, @Param("nodeId") String nodeId, @Param("now") long now);
+}
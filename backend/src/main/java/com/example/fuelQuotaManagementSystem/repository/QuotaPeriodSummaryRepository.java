@@ -0,0 +1,10 @@
+package com.example.fuelQuotaManagementSystem.repository;
+
+import com.example.fuelQuotaManagementSystem.entity.QuotaPeriodSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.List;
+
+public interface QuotaPeriodSummaryRepository extends JpaRepository<QuotaPeriodSummary, Long> {
+
+    List<QuotaPeriodSummary> findByPeriodOrderByVehicleType(String period);
+}
@@ -0,0 +1,51 @@
+package com.example.fuelQuotaManagementSystem.repository;
+
+import com.example.fuelQuotaManagementSystem.entity.ScheduledJobRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.List;
+import java.util.Optional;
+
+public interface ScheduledJobRunRepository extends JpaRepository<ScheduledJobRun, Long> {
+
+    Optional<ScheduledJobRun> findByJobNameAndInstanceKey(String jobName, String instanceKey);
+
+    List<ScheduledJobRun> findTop50ByOrderByIdDesc();
+
+    // Claims a job instance; returns rows inserted (0 when some node already claimed it)
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO scheduled_job_runs (job_name, instance_key, node_id, status, attempts, started_at) " +
+            "VALUES (:jobName, :instanceKey, :nodeId, 'RUNNING', 1, :now)", nativeQuery = true)
+    int claim(@Param("jobName") String jobName,
+              @Param("instanceKey") String instanceKey,
+              @Param("nodeId") String nodeId,
+              @Param("now") long now);
+
+    // Re-claims an instance that failed, or whose node died mid-run (only called while holding the job's lease)
+    @Transactional
+    @Modifying
+    @Query("UPDATE ScheduledJobRun r SET r.nodeId = :nodeId, r.status = 'RUNNING', r.attempts = r.attempts + 1, " +
+            "r.startedAt = :now, r.finishedAt = NULL, r.durationMillis = NULL, r.errorMessage = NULL " +
+            "WHERE r.jobName = :jobName AND r.instanceKey = :instanceKey AND r.status <> 'SUCCEEDED'")
+    int reclaim(@Param("jobName") String jobName,
+                @Param("instanceKey") String instanceKey,
+                @Param("nodeId") String nodeId,
+                @Param("now") long now);
+
+    // Only while this node still holds the job's lease; returns 0 once another node may have taken over
+    @Transactional
+    @Modifying
+    @Query("UPDATE ScheduledJobRun r SET r.status = :status, r.finishedAt = :now, r.durationMillis = :now - r.startedAt, " +
+            "r.errorMessage = :errorMessage WHERE r.jobName = :jobName AND r.instanceKey = :instanceKey AND r.nodeId = :nodeId " +
+            "AND EXISTS (SELECT l FROM SchedulerLease l WHERE l.jobName = :jobName AND l.owner = :nodeId AND l.leaseUntil >= :now)")
+    int complete(@Param("jobName") String jobName,
+                 @Param("instanceKey") String instanceKey,
+                 @Param("nodeId") String nodeId,
+                 @Param("status") String status,
+                 @Param("errorMessage") String errorMessage,
+                 @Param("now") long now);
+}
@@ -0,0 +1,45 @@
+package com.example.fuelQuotaManagementSystem.repository;
+
+import com.example.fuelQuotaManagementSystem.entity.SchedulerLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface SchedulerLeaseRepository extends JpaRepository<SchedulerLease, String> {
+
+    // First acquisition of a job's lease; returns rows inserted (0 when the row already exists)
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO scheduler_leases (job_name, owner, lease_until, acquired_at, renewed_at) " +
+            "VALUES (:jobName, :owner, :leaseUntil, :now, :now)", nativeQuery = true)
+    int insertIfAbsent(@Param("jobName") String jobName,
+                       @Param("owner") String owner,
+                       @Param("leaseUntil") long leaseUntil,
+                       @Param("now") long now);
+
+    // Takes the lease if it has expired (or is already ours); the row lock makes exactly one node win
+    @Transactional
+    @Modifying
+    @Query("UPDATE SchedulerLease l SET l.owner = :owner, l.leaseUntil = :leaseUntil, l.acquiredAt = :now, l.renewedAt = :now " +
+            "WHERE l.jobName = :jobName AND (l.leaseUntil < :now OR l.owner = :owner)")
+    int tryAcquire(@Param("jobName") String jobName,
+                   @Param("owner") String owner,
+                   @Param("leaseUntil") long leaseUntil,
+                   @Param("now") long now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE SchedulerLease l SET l.leaseUntil = :leaseUntil, l.renewedAt = :now " +
+            "WHERE l.jobName = :jobName AND l.owner = :owner")
+    int renew(@Param("jobName") String jobName,
+              @Param("owner") String owner,
+              @Param("leaseUntil") long leaseUntil,
+              @Param("now") long now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE SchedulerLease l SET l.leaseUntil = 0 WHERE l.jobName = :jobName AND l.owner = :owner")
+    int release(@Param("jobName") String jobName, @Param("owner") String owner);
+}
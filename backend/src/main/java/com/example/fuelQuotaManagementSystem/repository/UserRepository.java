@@ -1,7 +1,10 @@
 package com.example.fuelQuotaManagementSystem.repository;
 
+import com.example.fuelQuotaManagementSystem.entity.Role;
 import com.example.fuelQuotaManagementSystem.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
@@ -9,4 +12,12 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
     boolean existsByUsername(String username);
     boolean existsByEmail(String email);
+
+    @Query("SELECT r AS role, COUNT(u) AS userCount FROM User u JOIN u.roles r GROUP BY r")
+    List<RoleCount> countByRole();
+
+    interface RoleCount {
+        Role getRole();
+        long getUserCount();
+    }
 }
\ No newline at end of file
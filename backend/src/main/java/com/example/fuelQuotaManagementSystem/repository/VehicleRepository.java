@@ -1,7 +1,11 @@
 package com.example.fuelQuotaManagementSystem.repository;
 
 import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -9,4 +13,65 @@ public interface VehicleRepository extends JpaRepository<Vehicle, Long> {
     Optional<Vehicle> findByRegistrationNumber(String registrationNumber);
     List<Vehicle> findByOwnerId(Long ownerId);
     boolean existsByRegistrationNumber(String registrationNumber);
-}
\ No newline at end of file
+
+    String PUMP_VIEW_SELECT = "SELECT v.id AS id, v.registrationNumber AS registrationNumber, " +
+            "v.vehicleType AS vehicleType, v.fuelType AS fuelType, v.engineCapacity AS engineCapacity, " +
+            "o.fullName AS ownerName, o.phoneNumber AS ownerPhoneNumber " +
+            "FROM Vehicle v JOIN v.owner o ";
+
+    // Pump/scan lookups: one joined row, no qrCode TEXT column and no owner roles collection
+    @Query(PUMP_VIEW_SELECT + "WHERE v.id = :id")
+    Optional<VehiclePumpView> findPumpViewById(@Param("id") Long id);
+
+    @Query(PUMP_VIEW_SELECT + "WHERE v.registrationNumber = :registrationNumber")
+    Optional<VehiclePumpView> findPumpViewByRegistrationNumber(@Param("registrationNumber") String registrationNumber);
+
+    @Query(PUMP_VIEW_SELECT + "WHERE v.id IN :ids")
+    List<VehiclePumpView> findPumpViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Bulk quota jobs: keyset paging over vehicle ids, filters given in lower case (null = any)
+    String JOB_FILTER = "(:vehicleType IS NULL OR LOWER(v.vehicleType) = :vehicleType) " +
+            "AND (:fuelType IS NULL OR LOWER(v.fuelType) = :fuelType) ";
+
+    @Query("SELECT v.id FROM Vehicle v WHERE v.id > :afterId AND " + JOB_FILTER + "ORDER BY v.id")
+    List<Long> findJobIdsAfter(@Param("afterId") long afterId, @Param("vehicleType") String vehicleType,
+                               @Param("fuelType") String fuelType, Pageable pageable);
+
+    @Query("SELECT COUNT(v) FROM Vehicle v WHERE " + JOB_FILTER)
+    long countForJob(@Param("vehicleType") String vehicleType, @Param("fuelType") String fuelType);
+
+    @Query("SELECT v.id AS id, v.registrationNumber AS registrationNumber, v.vehicleType AS vehicleType, " +
+            "v.fuelType AS fuelType, v.engineCapacity AS engineCapacity, o.phoneNumber AS ownerPhoneNumber " +
+            "FROM Vehicle v JOIN v.owner o WHERE v.id BETWEEN :firstId AND :lastId AND " + JOB_FILTER + "ORDER BY v.id")
+    List<VehicleQuotaView> findJobChunk(@Param("firstId") long firstId, @Param("lastId") long lastId,
+                                        @Param("vehicleType") String vehicleType, @Param("fuelType") String fuelType);
+
+    @Query("SELECT v.vehicleType AS vehicleType, COUNT(v) AS vehicleCount FROM Vehicle v GROUP BY v.vehicleType")
+    List<VehicleTypeCount> countByVehicleType();
+
+    interface VehicleTypeCount {
+        String getVehicleType();
+        long getVehicleCount();
+    }
+
+    // Only the vehicle columns the pump path reads
+    interface VehiclePumpView {
+        Long getId();
+        String getRegistrationNumber();
+        String getVehicleType();
+        String getFuelType();
+        Double getEngineCapacity();
+        String getOwnerName();
+        String getOwnerPhoneNumber();
+    }
+
+    // Only the vehicle columns a quota reset reads
+    interface VehicleQuotaView {
+        Long getId();
+        String getRegistrationNumber();
+        String getVehicleType();
+        String getFuelType();
+        Double getEngineCapacity();
+        String getOwnerPhoneNumber();
+    }
+}
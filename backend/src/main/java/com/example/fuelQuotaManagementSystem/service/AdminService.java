@@ -1,16 +1,18 @@
 package com.example.fuelQuotaManagementSystem.service;
 
 import com.example.fuelQuotaManagementSystem.dto.admin.AdminDashboardResponse;
-import com.example.fuelQuotaManagementSystem.dto.admin.TopFuelConsumer;
 import com.example.fuelQuotaManagementSystem.dto.admin.UsageTrendsData;
 import com.example.fuelQuotaManagementSystem.entity.*;
 import com.example.fuelQuotaManagementSystem.repository.*;
+import com.example.fuelQuotaManagementSystem.util.FuelUnits;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -33,93 +35,123 @@ public class AdminService {
     @Autowired
     private FuelQuotaRepository fuelQuotaRepository;
 
+    @Autowired
+    private NotificationOutboxRepository notificationOutboxRepository;
+
     @Autowired
     private FuelQuotaService fuelQuotaService;
 
+    @Autowired
+    private QuotaAllocationPolicy quotaAllocationPolicy;
+
+    @Autowired
+    private QuotaAllocationRuleRepository quotaAllocationRuleRepository;
+
+    @Autowired
+    private QuotaRolloverService quotaRolloverService;
+
+    @Autowired
+    private QuotaJobService quotaJobService;
+
+    @Autowired
+    private ClusterScheduler clusterScheduler;
+
+    @Autowired
+    private NotificationFanOutService notificationFanOutService;
+
+    @Autowired
+    private QuotaArchiveService quotaArchiveService;
+
+    @Autowired
+    private DailyStationFuelStatsRepository dailyStationFuelStatsRepository;
+
+    @Autowired
+    private FuelRollupService fuelRollupService;
+
+    @Autowired
+    private DashboardSnapshotCache dashboardSnapshotCache;
+
+    @Autowired
+    private TransactionExportService transactionExportService;
+
+    @Autowired
+    private ConsumptionLeaderboardService consumptionLeaderboardService;
+
 
-     //Generate comprehensive admin dashboard
+     //Generate comprehensive admin dashboard (a cached snapshot, see DashboardSnapshotCache)
 
     public AdminDashboardResponse getSystemDashboard() {
-        // Get all data
-        List<User> allUsers = userRepository.findAll();
-        List<Vehicle> allVehicles = vehicleRepository.findAll();
-        List<FuelStation> allStations = fuelStationRepository.findAll();
-        List<FuelTransaction> allTransactions = fuelTransactionRepository.findAll();
+        return dashboardSnapshotCache.getAdminDashboard(this::computeSystemDashboard);
+    }
 
+    // A fixed set of grouped aggregates; no entity is loaded
+    private AdminDashboardResponse computeSystemDashboard() {
         // Get today's date range
         LocalDate today = LocalDate.now();
         long startOfDay = today.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
         long endOfDay = today.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
 
         // User statistics
-        long totalVehicleOwners = allUsers.stream().filter(u -> u.getRoles().contains(Role.ROLE_VEHICLE_OWNER)).count();
-        long totalStationOwners = allUsers.stream().filter(u -> u.getRoles().contains(Role.ROLE_STATION_OWNER)).count();
-        long totalAdmins = allUsers.stream().filter(u -> u.getRoles().contains(Role.ROLE_ADMIN)).count();
+        long totalUsers = userRepository.count();
+        Map<Role, Long> usersByRole = new EnumMap<>(Role.class);
+        for (UserRepository.RoleCount roleCount : userRepository.countByRole()) {
+            usersByRole.put(roleCount.getRole(), roleCount.getUserCount());
+        }
+        long totalVehicleOwners = usersByRole.getOrDefault(Role.ROLE_VEHICLE_OWNER, 0L);
+        long totalStationOwners = usersByRole.getOrDefault(Role.ROLE_STATION_OWNER, 0L);
+        long totalAdmins = usersByRole.getOrDefault(Role.ROLE_ADMIN, 0L);
 
         // Vehicle statistics
-        long totalCars = allVehicles.stream().filter(v -> "Car".equalsIgnoreCase(v.getVehicleType())).count();
-        long totalMotorcycles = allVehicles.stream().filter(v -> "Motorcycle".equalsIgnoreCase(v.getVehicleType())).count();
-        long totalThreeWheelers = allVehicles.stream().filter(v -> "Three Wheeler".equalsIgnoreCase(v.getVehicleType())).count();
+        List<VehicleRepository.VehicleTypeCount> vehicleTypes = vehicleRepository.countByVehicleType();
+        long totalVehicles = vehicleTypes.stream().mapToLong(VehicleRepository.VehicleTypeCount::getVehicleCount).sum();
+        long totalCars = countVehicles(vehicleTypes, "Car");
+        long totalMotorcycles = countVehicles(vehicleTypes, "Motorcycle");
+        long totalThreeWheelers = countVehicles(vehicleTypes, "Three Wheeler");
 
         // Station statistics
-        long activeStations = allStations.stream().filter(FuelStation::isActive).count();
-        long inactiveStations = allStations.size() - activeStations;
-
-        // Today's transaction statistics
-        List<FuelTransaction> todayTransactions = allTransactions.stream()
-                .filter(t -> t.getTimestamp() >= startOfDay && t.getTimestamp() <= endOfDay)
-                .collect(Collectors.toList());
-
-        double todayPetrol = todayTransactions.stream()
-                .filter(t -> "Petrol".equalsIgnoreCase(t.getFuelType()))
-                .mapToDouble(FuelTransaction::getAmount)
-                .sum();
+        FuelStationRepository.StationCounts stationCounts = fuelStationRepository.countStations();
+        long activeStations = stationCounts.getActiveCount();
+        long inactiveStations = stationCounts.getStationCount() - activeStations;
 
-        double todayDiesel = todayTransactions.stream()
-                .filter(t -> "Diesel".equalsIgnoreCase(t.getFuelType()))
-                .mapToDouble(FuelTransaction::getAmount)
-                .sum();
+        // Today's and total transaction statistics from the daily rollups
+        List<DailyStationFuelStatsRepository.FuelTotal> todayTotals =
+                dailyStationFuelStatsRepository.sumByFuelType(today.toString(), today.toString());
+        List<DailyStationFuelStatsRepository.FuelTotal> allTotals = dailyStationFuelStatsRepository.sumAllByFuelType();
 
-        // Total transaction statistics
-        double totalPetrol = allTransactions.stream()
-                .filter(t -> "Petrol".equalsIgnoreCase(t.getFuelType()))
-                .mapToDouble(FuelTransaction::getAmount)
-                .sum();
+        double todayPetrol = FuelUnits.toLitres(sumAmountMl(todayTotals, "Petrol"));
+        double todayDiesel = FuelUnits.toLitres(sumAmountMl(todayTotals, "Diesel"));
 
-        double totalDiesel = allTransactions.stream()
-                .filter(t -> "Diesel".equalsIgnoreCase(t.getFuelType()))
-                .mapToDouble(FuelTransaction::getAmount)
-                .sum();
+        double totalPetrol = FuelUnits.toLitres(sumAmountMl(allTotals, "Petrol"));
+        double totalDiesel = FuelUnits.toLitres(sumAmountMl(allTotals, "Diesel"));
 
         // Current month quota statistics
-        List<FuelQuota> allQuotas = fuelQuotaRepository.findAll();
-        double currentMonthAllocated = allQuotas.stream().mapToDouble(FuelQuota::getAllocatedQuota).sum();
-        double currentMonthUsed = currentMonthAllocated - allQuotas.stream().mapToDouble(FuelQuota::getRemainingQuota).sum();
+        FuelQuotaRepository.PeriodTotals quotaTotals = fuelQuotaRepository.sumPeriod(YearMonth.from(today).toString());
+        long currentMonthAllocatedMl = quotaTotals.getAllocatedQuotaMl();
+        long currentMonthRemainingMl = quotaTotals.getRemainingQuotaMl();
+        double currentMonthAllocated = FuelUnits.toLitres(currentMonthAllocatedMl);
+        double currentMonthUsed = FuelUnits.toLitres(currentMonthAllocatedMl - currentMonthRemainingMl);
         double utilizationPercentage = currentMonthAllocated > 0 ? (currentMonthUsed / currentMonthAllocated) * 100 : 0;
 
         // System health
-        int failedNotifications = (int) allTransactions.stream()
-                .filter(t -> t.getTimestamp() >= startOfDay && t.getTimestamp() <= endOfDay)
-                .filter(t -> !t.isNotificationSent())
-                .count();
+        int failedNotifications = countFailedPumpNotifications(startOfDay, endOfDay);
 
         return new AdminDashboardResponse(
-                (long) allUsers.size(),
+                totalUsers,
                 totalVehicleOwners,
                 totalStationOwners,
                 totalAdmins,
-                (long) allVehicles.size(),
+                totalVehicles,
                 totalCars,
                 totalMotorcycles,
                 totalThreeWheelers,
-                (long) allStations.size(),
+                stationCounts.getStationCount(),
                 activeStations,
                 inactiveStations,
-                (long) todayTransactions.size(),
+                sumTransactionCount(todayTotals),
                 todayPetrol,
                 todayDiesel,
                 todayPetrol + todayDiesel,
-                (long) allTransactions.size(),
+                sumTransactionCount(allTotals),
                 totalPetrol,
                 totalDiesel,
                 totalPetrol + totalDiesel,
@@ -197,7 +229,9 @@ public class AdminService {
         }
 
         user.setRoles(newRoles);
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        dashboardSnapshotCache.registrationRecorded();
+        return savedUser;
     }
 
 
@@ -210,41 +244,31 @@ public class AdminService {
 
 
     public Object getFuelConsumptionReport(LocalDate startDate, LocalDate endDate, String fuelType) {
-        long startTimestamp = startDate.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        long endTimestamp = endDate.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-
-        List<FuelTransaction> transactions = fuelTransactionRepository.findAll().stream()
-                .filter(t -> t.getTimestamp() >= startTimestamp && t.getTimestamp() <= endTimestamp)
-                .filter(t -> fuelType == null || fuelType.isEmpty() || fuelType.equalsIgnoreCase(t.getFuelType()))
+        String fuelFilter = fuelType == null || fuelType.isEmpty() ? null : fuelType;
+
+        List<DailyStationFuelStatsRepository.DayTotal> days = dailyStationFuelStatsRepository
+                .sumByDay(startDate.toString(), endDate.toString(), fuelFilter);
+        List<DailyStationFuelStatsRepository.StationTotal> stations = dailyStationFuelStatsRepository
+                .sumByStation(startDate.toString(), endDate.toString(), fuelFilter);
+        List<DailyStationFuelStatsRepository.FuelTotal> fuels = dailyStationFuelStatsRepository
+                .sumByFuelType(startDate.toString(), endDate.toString()).stream()
+                .filter(f -> fuelFilter == null || fuelFilter.equalsIgnoreCase(f.getFuelType()))
                 .collect(Collectors.toList());
 
-        double totalPetrol = transactions.stream()
-                .filter(t -> "Petrol".equalsIgnoreCase(t.getFuelType()))
-                .mapToDouble(FuelTransaction::getAmount)
-                .sum();
-
-        double totalDiesel = transactions.stream()
-                .filter(t -> "Diesel".equalsIgnoreCase(t.getFuelType()))
-                .mapToDouble(FuelTransaction::getAmount)
-                .sum();
+        double totalPetrol = FuelUnits.toLitres(sumAmountMl(fuels, "Petrol"));
+        double totalDiesel = FuelUnits.toLitres(sumAmountMl(fuels, "Diesel"));
+        long transactionCount = sumTransactionCount(fuels);
 
         // Find most active station
-        String mostActiveStation = transactions.stream()
-                .collect(Collectors.groupingBy(t -> t.getStation().getName(), Collectors.counting()))
-                .entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
+        String mostActiveStation = stations.stream()
+                .max(Comparator.comparingLong(DailyStationFuelStatsRepository.StationTotal::getTransactionCount))
+                .map(station -> stationName(station.getStationId()))
                 .orElse("N/A");
 
         // Find peak consumption day
-        String peakDay = transactions.stream()
-                .collect(Collectors.groupingBy(
-                        t -> LocalDate.ofInstant(java.time.Instant.ofEpochMilli(t.getTimestamp()), ZoneId.systemDefault()),
-                        Collectors.summingDouble(FuelTransaction::getAmount)
-                ))
-                .entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .map(e -> e.getKey().toString())
+        String peakDay = days.stream()
+                .max(Comparator.comparingLong(DailyStationFuelStatsRepository.DayTotal::getAmountMl))
+                .map(DailyStationFuelStatsRepository.DayTotal::getStatDate)
                 .orElse("N/A");
 
         return new Object() {
@@ -254,50 +278,99 @@ public class AdminService {
             public final Double totalPetrolConsumed = totalPetrol;
             public final Double totalDieselConsumed = totalDiesel;
             public final Double totalFuelConsumed = totalPetrol + totalDiesel;
-            public final Integer totalTransactions = transactions.size();
-            public final Double averageFuelPerTransaction = transactions.size() > 0 ? (totalPetrol + totalDiesel) / transactions.size() : 0.0;
+            public final Integer totalTransactions = (int) transactionCount;
+            public final Double averageFuelPerTransaction = transactionCount > 0 ? (totalPetrol + totalDiesel) / transactionCount : 0.0;
             public final String mostActiveStations = mostActiveStation;
             public final String peakConsumptionDay = peakDay;
         };
     }
 
+    // Vehicle types are matched case-insensitively, as the dashboard always did
+    private static long countVehicles(List<VehicleRepository.VehicleTypeCount> counts, String vehicleType) {
+        return counts.stream()
+                .filter(c -> vehicleType.equalsIgnoreCase(c.getVehicleType()))
+                .mapToLong(VehicleRepository.VehicleTypeCount::getVehicleCount)
+                .sum();
+    }
+
+    private static long sumAmountMl(List<DailyStationFuelStatsRepository.FuelTotal> totals, String fuelType) {
+        return totals.stream()
+                .filter(t -> fuelType.equalsIgnoreCase(t.getFuelType()))
+                .mapToLong(DailyStationFuelStatsRepository.FuelTotal::getAmountMl)
+                .sum();
+    }
+
+    private static long sumTransactionCount(List<DailyStationFuelStatsRepository.FuelTotal> totals) {
+        return totals.stream().mapToLong(DailyStationFuelStatsRepository.FuelTotal::getTransactionCount).sum();
+    }
+
+    private String stationName(Long stationId) {
+        return fuelStationRepository.findById(stationId).map(FuelStation::getName).orElse("Station " + stationId);
+    }
 
-    public Object getQuotaUtilizationReport(String month) {
-        List<FuelQuota> quotas = fuelQuotaRepository.findAll();
 
-        if (month != null && !month.isEmpty()) {
-            // Filter by specific month if provided
-            // This is a simplified filter - in production you'd parse the month parameter properly
-            LocalDate targetMonth = LocalDate.parse(month + "-01");
-            long monthStart = targetMonth.withDayOfMonth(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-            long monthEnd = targetMonth.withDayOfMonth(targetMonth.lengthOfMonth()).atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    /**
+     * Closed periods are read from their precomputed summary rows; the current (or a not yet
+     * closed) period is aggregated per vehicle type in the database.
+     */
+    public Object getQuotaUtilizationReport(String month) {
+        YearMonth period = parsePeriod(month);
 
-            quotas = quotas.stream()
-                    .filter(q -> q.getStartDate() >= monthStart && q.getEndDate() <= monthEnd)
+        List<QuotaPeriodSummary> summaries = quotaArchiveService.getSummaries(period);
+        boolean closed = !summaries.isEmpty();
+        if (!closed) {
+            summaries = fuelQuotaRepository.summarizePeriod(period.toString()).stream()
+                    .map(utilization -> toSummary(period, utilization))
                     .collect(Collectors.toList());
         }
 
-        double totalAllocated = quotas.stream().mapToDouble(FuelQuota::getAllocatedQuota).sum();
-        double totalUsed = quotas.stream().mapToDouble(q -> q.getAllocatedQuota() - q.getRemainingQuota()).sum();
-        double totalRemaining = quotas.stream().mapToDouble(FuelQuota::getRemainingQuota).sum();
+        long quotaCount = summaries.stream().mapToLong(QuotaPeriodSummary::getVehicleCount).sum();
+        long allocatedMl = summaries.stream().mapToLong(QuotaPeriodSummary::getAllocatedQuotaMl).sum();
+        long usedMl = summaries.stream().mapToLong(QuotaPeriodSummary::getUsedQuotaMl).sum();
+        double totalAllocated = FuelUnits.toLitres(allocatedMl);
+        double totalUsed = FuelUnits.toLitres(usedMl);
 
-        long fullyUtilized = quotas.stream().filter(q -> q.getRemainingQuota() <= 0).count();
-        long notUsed = quotas.stream().filter(q -> q.getRemainingQuota().equals(q.getAllocatedQuota())).count();
+        long fullyUtilized = summaries.stream().mapToLong(QuotaPeriodSummary::getFullyUtilizedCount).sum();
+        long notUsed = summaries.stream().mapToLong(QuotaPeriodSummary::getNotUsedCount).sum();
 
-        List<FuelQuota> finalQuotas = quotas;
+        List<QuotaPeriodSummary> finalSummaries = summaries;
         return new Object() {
             public final String months = month != null ? month : LocalDate.now().getMonth().toString();
-            public final Long totalVehicles = (long) finalQuotas.size();
+            public final String source = closed ? "summary" : "live";
+            public final Long totalVehicles = quotaCount;
             public final Double totalQuotaAllocated = totalAllocated;
             public final Double totalQuotaUsed = totalUsed;
-            public final Double totalQuotaRemaining = totalRemaining;
+            public final Double totalQuotaRemaining = FuelUnits.toLitres(allocatedMl - usedMl);
             public final Double utilizationPercentage = totalAllocated > 0 ? (totalUsed / totalAllocated) * 100 : 0.0;
             public final Long vehiclesFullyUtilized = fullyUtilized;
             public final Long vehiclesNotUsed = notUsed;
-            public final Double averageUtilizationPerVehicle = finalQuotas.size() > 0 ? totalUsed / finalQuotas.size() : 0.0;
+            public final Double averageUtilizationPerVehicle = quotaCount > 0 ? totalUsed / quotaCount : 0.0;
+            public final List<QuotaPeriodSummary> byVehicleType = finalSummaries;
         };
     }
 
+    private static QuotaPeriodSummary toSummary(YearMonth period, FuelQuotaRepository.PeriodUtilization utilization) {
+        QuotaPeriodSummary summary = new QuotaPeriodSummary();
+        summary.setPeriod(period.toString());
+        summary.setVehicleType(utilization.getVehicleType());
+        summary.setVehicleCount(utilization.getVehicleCount());
+        summary.setAllocatedQuotaMl(utilization.getAllocatedQuotaMl());
+        summary.setUsedQuotaMl(utilization.getUsedQuotaMl());
+        summary.setFullyUtilizedCount(utilization.getFullyUtilizedCount());
+        summary.setNotUsedCount(utilization.getNotUsedCount());
+        return summary;
+    }
+
+
+     //Move a finished period's quotas to the history table and write its summary
+
+    public QuotaArchiveService.CloseResult closeQuotaPeriod(String period) {
+        if (period == null || !period.matches("\\d{4}-\\d{2}")) {
+            throw new IllegalArgumentException("Period must be given as yyyy-MM");
+        }
+        return quotaArchiveService.closePeriod(YearMonth.parse(period));
+    }
+
 
     public Object getVehicleRegistrationReport(LocalDate startDate, LocalDate endDate) {
         long startTimestamp = startDate.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
@@ -339,37 +412,28 @@ public class AdminService {
 
 
     public Object getStationPerformanceReport(LocalDate startDate, LocalDate endDate) {
-        long startTimestamp = startDate.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        long endTimestamp = endDate.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-
-        List<FuelTransaction> transactions = fuelTransactionRepository.findAll().stream()
-                .filter(t -> t.getTimestamp() >= startTimestamp && t.getTimestamp() <= endTimestamp)
-                .collect(Collectors.toList());
+        List<DailyStationFuelStatsRepository.StationTotal> stationTotals = dailyStationFuelStatsRepository
+                .sumByStation(startDate.toString(), endDate.toString(), null);
 
         List<FuelStation> activeStations = fuelStationRepository.findAll().stream()
                 .filter(FuelStation::isActive)
                 .collect(Collectors.toList());
 
         // Station performance analysis
-        Map<String, Long> stationTransactionCount = transactions.stream()
-                .collect(Collectors.groupingBy(t -> t.getStation().getName(), Collectors.counting()));
-
-        Map<String, Double> stationFuelDispensed = transactions.stream()
-                .collect(Collectors.groupingBy(t -> t.getStation().getName(),
-                        Collectors.summingDouble(FuelTransaction::getAmount)));
-
-        String topStation = stationTransactionCount.entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
+        String topStation = stationTotals.stream()
+                .max(Comparator.comparingLong(DailyStationFuelStatsRepository.StationTotal::getTransactionCount))
+                .map(station -> stationName(station.getStationId()))
                 .orElse("N/A");
 
-        String leastActiveStation = stationTransactionCount.entrySet().stream()
-                .min(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
+        String leastActiveStation = stationTotals.stream()
+                .min(Comparator.comparingLong(DailyStationFuelStatsRepository.StationTotal::getTransactionCount))
+                .map(station -> stationName(station.getStationId()))
                 .orElse("N/A");
 
-        double totalFuelDispensed = transactions.stream().mapToDouble(FuelTransaction::getAmount).sum();
-        double avgTransactionsPerStation = activeStations.size() > 0 ? (double) transactions.size() / activeStations.size() : 0;
+        long transactionCount = stationTotals.stream().mapToLong(DailyStationFuelStatsRepository.StationTotal::getTransactionCount).sum();
+        double totalFuelDispensed = FuelUnits.toLitres(stationTotals.stream()
+                .mapToLong(DailyStationFuelStatsRepository.StationTotal::getAmountMl).sum());
+        double avgTransactionsPerStation = activeStations.size() > 0 ? (double) transactionCount / activeStations.size() : 0;
         double avgFuelPerStation = activeStations.size() > 0 ? totalFuelDispensed / activeStations.size() : 0;
 
         return new Object() {
@@ -377,7 +441,7 @@ public class AdminService {
             public final String periodStartDate = startDate.toString();
             public final String periodEndDate = endDate.toString();
             public final Integer totalActiveStations = activeStations.size();
-            public final Long totalTransactions = (long) transactions.size();
+            public final Long totalTransactions = transactionCount;
             public final Double totalFuelDispenseds = totalFuelDispensed;
             public final String topPerformingStation = topStation;
             public final String leastActiveStations = leastActiveStation;
@@ -387,52 +451,46 @@ public class AdminService {
     }
 
 
-    public int bulkAllocateQuotas(String vehicleType, String fuelType, Double quotaAmount, String period) {
-        List<Vehicle> vehicles = vehicleRepository.findAll();
-
-        // Filter by vehicle type
-        if (!"All".equalsIgnoreCase(vehicleType)) {
-            vehicles = vehicles.stream()
-                    .filter(v -> vehicleType.equalsIgnoreCase(v.getVehicleType()))
-                    .collect(Collectors.toList());
+    public QuotaJobService.JobProgress bulkAllocateQuotas(String vehicleType, String fuelType, Double quotaAmount,
+                                                          String period, long waitMillis) throws InterruptedException {
+        // quotaAmount (litres) overrides the allocation policy for the matching vehicles
+        Long allocatedQuotaMl = quotaAmount != null ? FuelUnits.toMillilitres(quotaAmount) : null;
+        if (allocatedQuotaMl != null && allocatedQuotaMl < 0) {
+            throw new IllegalArgumentException("Quota amount cannot be negative");
         }
 
-        // Filter by fuel type
-        if (!"Both".equalsIgnoreCase(fuelType)) {
-            vehicles = vehicles.stream()
-                    .filter(v -> fuelType.equalsIgnoreCase(v.getFuelType()))
-                    .collect(Collectors.toList());
-        }
+        QuotaJobService.JobProgress job = quotaJobService.startJob(QuotaJob.TYPE_BULK_ALLOCATE, parsePeriod(period),
+                vehicleType, fuelType, allocatedQuotaMl);
+        return waitMillis > 0 ? quotaJobService.awaitJob(job.getId(), waitMillis) : job;
+    }
 
-        int affectedVehicles = 0;
-        for (Vehicle vehicle : vehicles) {
-            try {
-                // Reset current quota to new amount
-                fuelQuotaService.resetQuota(vehicle, vehicle.getFuelType());
-                affectedVehicles++;
-            } catch (Exception e) {
-                System.err.println("Failed to allocate quota for vehicle: " + vehicle.getRegistrationNumber());
-            }
-        }
 
-        return affectedVehicles;
+    public QuotaJobService.JobProgress resetAllQuotas() {
+        return quotaJobService.startJob(QuotaJob.TYPE_RESET_ALL, YearMonth.now(), null, null, null);
     }
 
 
-    public int resetAllQuotas() {
-        List<Vehicle> allVehicles = vehicleRepository.findAll();
-        int resetCount = 0;
+    public List<QuotaJobService.JobProgress> getQuotaJobs() {
+        return quotaJobService.getRecentJobs();
+    }
 
-        for (Vehicle vehicle : allVehicles) {
-            try {
-                fuelQuotaService.resetQuota(vehicle, vehicle.getFuelType());
-                resetCount++;
-            } catch (Exception e) {
-                System.err.println("Failed to reset quota for vehicle: " + vehicle.getRegistrationNumber());
-            }
-        }
 
-        return resetCount;
+    public QuotaJobService.JobProgress getQuotaJob(Long jobId) {
+        return quotaJobService.getJob(jobId);
+    }
+
+    // Pump SMS that used up their outbox attempts; queued or backing-off ones are not failures yet
+    private int countFailedPumpNotifications(long from, long to) {
+        return (int) notificationOutboxRepository.countByNotificationTypeAndStatusAndCreatedAtBetween(
+                NotificationOutbox.TYPE_FUEL_TRANSACTION, NotificationOutbox.STATUS_FAILED, from, to);
+    }
+
+    // "yyyy-MM" targets that month; anything else (e.g. "monthly") the current month
+    private static YearMonth parsePeriod(String period) {
+        if (period != null && period.matches("\\d{4}-\\d{2}")) {
+            return YearMonth.parse(period);
+        }
+        return YearMonth.now();
     }
 
 
@@ -441,11 +499,11 @@ public class AdminService {
         boolean notificationServiceUp = true; // In real app, test notification service
 
         List<User> allUsers = userRepository.findAll();
-        List<FuelTransaction> todayTransactions = getTodayTransactions();
 
-        int failedNotifications = (int) todayTransactions.stream()
-                .filter(t -> !t.isNotificationSent())
-                .count();
+        LocalDate today = LocalDate.now();
+        int failedNotifications = countFailedPumpNotifications(
+                today.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli(),
+                today.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
 
         return new Object() {
             public final Boolean overallHealth = dbConnected && notificationServiceUp && failedNotifications < 10;
@@ -482,151 +540,57 @@ public class AdminService {
     }
 
 
-    public String exportTransactionData(LocalDate startDate, LocalDate endDate, String format) {
-        long startTimestamp = startDate.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        long endTimestamp = endDate.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-
-        List<FuelTransaction> transactions = fuelTransactionRepository.findAll().stream()
-                .filter(t -> t.getTimestamp() >= startTimestamp && t.getTimestamp() <= endTimestamp)
-                .collect(Collectors.toList());
-
-        if ("CSV".equalsIgnoreCase(format)) {
-            StringBuilder csv = new StringBuilder();
-            csv.append("Transaction ID,Vehicle Registration,Station Name,Fuel Type,Amount,Date,Time,Notification Sent\n");
-
-            for (FuelTransaction transaction : transactions) {
-                LocalDate date = LocalDate.ofInstant(java.time.Instant.ofEpochMilli(transaction.getTimestamp()), ZoneId.systemDefault());
-                csv.append(String.format("%d,%s,%s,%s,%.2f,%s,%s,%s\n",
-                        transaction.getId(),
-                        transaction.getVehicle().getRegistrationNumber(),
-                        transaction.getStation().getName(),
-                        transaction.getFuelType(),
-                        transaction.getAmount(),
-                        date.toString(),
-                        date.atStartOfDay().format(DateTimeFormatter.ofPattern("HH:mm:ss")),
-                        transaction.isNotificationSent() ? "Yes" : "No"
-                ));
-            }
-            return csv.toString();
-        }
-
-        return "Export format not supported";
+    public NotificationFanOutService.FanOutStats getNotificationFanOutStats() {
+        return notificationFanOutService.getStats();
     }
 
 
-    public Object getTopFuelConsumers(int limit, String period) {
-        List<FuelTransaction> transactions = fuelTransactionRepository.findAll();
-
-        // Filter by period if specified
-        if (period != null && !period.isEmpty()) {
-            LocalDate cutoffDate = LocalDate.now();
-            switch (period.toLowerCase()) {
-                case "week":
-                    cutoffDate = cutoffDate.minusWeeks(1);
-                    break;
-                case "month":
-                    cutoffDate = cutoffDate.minusMonths(1);
-                    break;
-                case "year":
-                    cutoffDate = cutoffDate.minusYears(1);
-                    break;
-            }
+    public void exportTransactionData(LocalDate startDate, LocalDate endDate, String format, boolean gzip,
+                                      OutputStream out) throws IOException {
+        long started = System.currentTimeMillis();
+        long rows = transactionExportService.export(startDate, endDate, format, gzip, out);
+        System.out.println("Exported " + rows + " transactions (" + startDate + " to " + endDate + ", " + format +
+                (gzip ? ", gzip" : "") + ") in " + (System.currentTimeMillis() - started) + " ms");
+    }
 
-            long cutoffTimestamp = cutoffDate.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-            transactions = transactions.stream()
-                    .filter(t -> t.getTimestamp() >= cutoffTimestamp)
-                    .collect(Collectors.toList());
-        }
 
-        // Group by vehicle and calculate consumption
-        Map<String, List<FuelTransaction>> vehicleTransactions = transactions.stream()
-                .collect(Collectors.groupingBy(t -> t.getVehicle().getRegistrationNumber()));
-
-        List<TopFuelConsumer> topConsumers = vehicleTransactions.entrySet().stream()
-                .map(entry -> {
-                    String regNo = entry.getKey();
-                    List<FuelTransaction> vTransactions = entry.getValue();
-                    FuelTransaction firstTransaction = vTransactions.get(0);
-
-                    double totalFuel = vTransactions.stream().mapToDouble(FuelTransaction::getAmount).sum();
-                    int transactionCount = vTransactions.size();
-                    double avgPerTransaction = transactionCount > 0 ? totalFuel / transactionCount : 0;
-
-                    String lastTransactionDate = vTransactions.stream()
-                            .max(Comparator.comparing(FuelTransaction::getTimestamp))
-                            .map(t -> LocalDate.ofInstant(java.time.Instant.ofEpochMilli(t.getTimestamp()), ZoneId.systemDefault()).toString())
-                            .orElse("N/A");
-
-                    return new TopFuelConsumer(
-                            regNo,
-                            firstTransaction.getVehicle().getVehicleType(),
-                            firstTransaction.getVehicle().getFuelType(),
-                            firstTransaction.getVehicle().getOwner().getFullName(),
-                            totalFuel,
-                            transactionCount,
-                            avgPerTransaction,
-                            lastTransactionDate
-                    );
-                })
-                .sorted((a, b) -> Double.compare(b.getTotalFuelConsumed(), a.getTotalFuelConsumed()))
-                .limit(limit)
-                .collect(Collectors.toList());
+     //Top consumers of the last week, month or year (all time without a period), from the maintained leaderboards
 
-        return topConsumers;
+    public Object getTopFuelConsumers(int limit, String period) {
+        return consumptionLeaderboardService.getTopConsumers(period, limit);
     }
 
 
     public Object getSystemUsageTrends(LocalDate startDate, LocalDate endDate, String groupBy) {
-        long startTimestamp = startDate.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        long endTimestamp = endDate.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-
-        List<FuelTransaction> transactions = fuelTransactionRepository.findAll().stream()
-                .filter(t -> t.getTimestamp() >= startTimestamp && t.getTimestamp() <= endTimestamp)
+        return dailyStationFuelStatsRepository.sumByDay(startDate.toString(), endDate.toString(), null).stream()
+                .map(day -> new UsageTrendsData(
+                        day.getStatDate(),
+                        (int) day.getTransactionCount(),
+                        FuelUnits.toLitres(day.getAmountMl()),
+                        (int) day.getVehicleCount(),
+                        (int) day.getStationCount()
+                ))
                 .collect(Collectors.toList());
+    }
 
-        // Group transactions by date
-        Map<LocalDate, List<FuelTransaction>> dailyTransactions = transactions.stream()
-                .collect(Collectors.groupingBy(t ->
-                        LocalDate.ofInstant(java.time.Instant.ofEpochMilli(t.getTimestamp()), ZoneId.systemDefault())
-                ));
-
-        List<UsageTrendsData> trends = dailyTransactions.entrySet().stream()
-                .map(entry -> {
-                    LocalDate date = entry.getKey();
-                    List<FuelTransaction> dayTransactions = entry.getValue();
-
-                    double totalFuel = dayTransactions.stream().mapToDouble(FuelTransaction::getAmount).sum();
-                    int uniqueVehicles = (int) dayTransactions.stream()
-                            .map(t -> t.getVehicle().getId())
-                            .distinct()
-                            .count();
-                    int activeStations = (int) dayTransactions.stream()
-                            .map(t -> t.getStation().getId())
-                            .distinct()
-                            .count();
-
-                    return new UsageTrendsData(
-                            date.toString(),
-                            dayTransactions.size(),
-                            totalFuel,
-                            uniqueVehicles,
-                            activeStations
-                    );
-                })
-                .sorted(Comparator.comparing(UsageTrendsData::getDate))
-                .collect(Collectors.toList());
 
-        return trends;
+    public int rebuildFuelRollups(LocalDate startDate, LocalDate endDate) {
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("End date is before start date");
+        }
+        int days = fuelRollupService.rebuild(startDate, endDate);
+        consumptionLeaderboardService.rebuild(startDate, endDate);
+        return days;
     }
 
 
     public Object getDatabaseStatistics() {
         return new Object() {
-            public final Long totalUsers = (long) userRepository.findAll().size();
-            public final Long totalVehicles = (long) vehicleRepository.findAll().size();
-            public final Long totalStations = (long) fuelStationRepository.findAll().size();
-            public final Long totalTransactions = (long) fuelTransactionRepository.findAll().size();
-            public final Long totalQuotas = (long) fuelQuotaRepository.findAll().size();
+            public final Long totalUsers = userRepository.count();
+            public final Long totalVehicles = vehicleRepository.count();
+            public final Long totalStations = fuelStationRepository.count();
+            public final Long totalTransactions = fuelTransactionRepository.count();
+            public final Long totalQuotas = fuelQuotaRepository.count();
             public final String databaseSize = "2.4 GB"; // Mock database size
             public final String oldestRecord = "2024-01-01"; // Mock oldest record
             public final String newestRecord = LocalDate.now().toString();
@@ -636,6 +600,35 @@ public class AdminService {
     }
 
 
+    public QuotaRolloverService.RolloverResult rolloverQuotas(String period) {
+        YearMonth month = (period == null || period.isEmpty()) ? YearMonth.now() : YearMonth.parse(period);
+        return quotaRolloverService.rollover(month);
+    }
+
+
+    public Object getSchedulerStatus() {
+        return new Object() {
+            public final String nodeId = clusterScheduler.getNodeId();
+            public final List<SchedulerLease> leases = clusterScheduler.getLeases();
+            public final List<ScheduledJobRun> recentRuns = clusterScheduler.getRecentRuns();
+        };
+    }
+
+
+    public Object getQuotaAllocationPolicy() {
+        return new Object() {
+            public final Long loadedAt = quotaAllocationPolicy.getLoadedAt();
+            public final Integer activeRuleCount = quotaAllocationPolicy.getRuleCount();
+            public final List<QuotaAllocationRule> rules = quotaAllocationRuleRepository.findAll();
+        };
+    }
+
+
+    public int reloadQuotaAllocationPolicy() {
+        return quotaAllocationPolicy.reload();
+    }
+
+
     public String triggerDatabaseBackup(String backupType) {
         // In a real implementation, this would trigger actual backup processes
         String backupId = "BACKUP_" + System.currentTimeMillis();
@@ -0,0 +1,284 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.ScheduledJobRun;
+import com.example.fuelQuotaManagementSystem.entity.SchedulerLease;
+import com.example.fuelQuotaManagementSystem.repository.ScheduledJobRunRepository;
+import com.example.fuelQuotaManagementSystem.repository.SchedulerLeaseRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Runs scheduled jobs on exactly one node of the cluster.
+ *
+ * Every node fires the same cron, then competes for the job's row in scheduler_leases with a
+ * conditional UPDATE (or INSERT IGNORE for the very first run): only the node whose statement
+ * changed the row holds the lease. While the job runs the lease is renewed every third of its
+ * length, so a node that dies loses it within scheduler.lease-ms and another node can take
+ * over. The job instance (e.g. the period of the monthly reset) is then claimed in
+ * scheduled_job_runs, which keeps an instance from running twice when the nodes' crons fire
+ * a little apart, and records which node ran it and for how long.
+ *
+ * A node can lose a lease while its job still runs (a long GC pause or a database outage
+ * outlasting scheduler.lease-ms), and another node may then start the same instance. The
+ * run's completion is therefore only recorded while the lease row still names this node,
+ * and a failed renewal marks the lease lost: long jobs call checkLease() between their
+ * steps and abort instead of writing on.
+ *
+ * A node also remembers the leases it holds: a second runExclusive (or holdLease) for a lease
+ * this node already holds is refused, since the lease row alone cannot tell two callers on
+ * the same node apart.
+ */
+@Service
+public class ClusterScheduler {
+
+    @Autowired
+    private SchedulerLeaseRepository schedulerLeaseRepository;
+
+    @Autowired
+    private ScheduledJobRunRepository scheduledJobRunRepository;
+
+    @Value("${scheduler.lease-ms:600000}")
+    private long leaseMillis;
+
+    // Must be unique per running instance; defaults to host name and process id
+    @Value("${scheduler.node-id:}")
+    private String configuredNodeId;
+
+    private String nodeId;
+    private ThreadPoolTaskScheduler renewals;
+
+    // Leases held for the node's lifetime (see holdLease), released on shutdown
+    private final Map<String, ScheduledFuture<?>> heldLeases = new ConcurrentHashMap<>();
+
+    // Every lease this node holds (runExclusive and holdLease), so no second caller here takes it again
+    private final Set<String> localLeases = ConcurrentHashMap.newKeySet();
+
+    // Lease of the runExclusive job running on the current thread, for checkLease()
+    private final ThreadLocal<RunLease> currentLease = new ThreadLocal<>();
+
+
+    @PostConstruct
+    public void start() {
+        nodeId = configuredNodeId != null && !configuredNodeId.isBlank()
+                ? configuredNodeId
+                : hostName() + ":" + ProcessHandle.current().pid();
+
+        renewals = new ThreadPoolTaskScheduler();
+        renewals.setPoolSize(1);
+        renewals.setThreadNamePrefix("scheduler-lease-");
+        renewals.initialize();
+    }
+
+    @PreDestroy
+    public void stop() {
+        heldLeases.forEach((leaseName, renewal) -> {
+            renewal.cancel(false);
+            schedulerLeaseRepository.release(leaseName, nodeId);
+        });
+        renewals.shutdown();
+    }
+
+
+     //Run the task if this node wins the job's lease and the instance has not run yet; returns whether it ran
+
+    public boolean runExclusive(String jobName, String instanceKey, Runnable task) {
+        if (!acquireLease(jobName)) {
+            System.out.println("Skipping " + jobName + " [" + instanceKey + "]: lease held by another node or run");
+            return false;
+        }
+
+        RunLease lease = new RunLease(jobName, System.currentTimeMillis() + leaseMillis);
+        ScheduledFuture<?> renewal = renewals.scheduleAtFixedRate(() -> {
+            long renewedAt = System.currentTimeMillis();
+            if (!lease.lost && renewLease(jobName)) {
+                lease.validUntil = renewedAt + leaseMillis;
+            } else {
+                lease.lost = true;
+            }
+        }, Instant.now().plusMillis(leaseRenewalMillis()), Duration.ofMillis(leaseRenewalMillis()));
+        try {
+            if (!claimInstance(jobName, instanceKey)) {
+                System.out.println("Skipping " + jobName + " [" + instanceKey + "]: already run by another node");
+                return false;
+            }
+
+            System.out.println("Running " + jobName + " [" + instanceKey + "] on node " + nodeId);
+            String errorMessage = null;
+            currentLease.set(lease);
+            try {
+                task.run();
+            } catch (Exception e) {
+                errorMessage = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                System.err.println("ERROR in scheduled job " + jobName + " [" + instanceKey + "]: " + errorMessage);
+                e.printStackTrace();
+            } finally {
+                currentLease.remove();
+            }
+
+            // Fenced on the lease: a node that lost it leaves the outcome to the node that took over
+            if (scheduledJobRunRepository.complete(jobName, instanceKey, nodeId,
+                    errorMessage == null ? ScheduledJobRun.STATUS_SUCCEEDED : ScheduledJobRun.STATUS_FAILED,
+                    truncate(errorMessage), System.currentTimeMillis()) == 0) {
+                System.err.println("Lost the lease for " + jobName + " [" + instanceKey + "] before it finished; " +
+                        "its outcome was not recorded");
+            }
+            return true;
+
+        } finally {
+            renewal.cancel(false);
+            schedulerLeaseRepository.release(jobName, nodeId);
+            localLeases.remove(jobName);
+        }
+    }
+
+
+     //Hold a lease for as long as this node runs (components that must be active on one node only)
+
+    /**
+     * Returns false when another node holds the lease. Once held, the lease is renewed in the
+     * background; if a renewal fails, onLost runs and the lease is given up, since another
+     * node may take it over as soon as it expires.
+     */
+    public boolean holdLease(String leaseName, Runnable onLost) {
+        if (!acquireLease(leaseName)) {
+            return false;
+        }
+
+        ScheduledFuture<?>[] renewal = new ScheduledFuture<?>[1];
+        renewal[0] = renewals.scheduleAtFixedRate(() -> {
+            if (!renewLease(leaseName)) {
+                renewal[0].cancel(false);
+                heldLeases.remove(leaseName);
+                localLeases.remove(leaseName);
+                onLost.run();
+            }
+        }, Instant.now().plusMillis(leaseRenewalMillis()), Duration.ofMillis(leaseRenewalMillis()));
+        heldLeases.put(leaseName, renewal[0]);
+        return true;
+    }
+
+
+
+     //Abort a runExclusive job that no longer holds its lease; call between steps (no-op outside runExclusive)
+
+    public void checkLease() {
+        RunLease lease = currentLease.get();
+        if (lease == null) {
+            return;
+        }
+        // validUntil also covers a pause long enough that the renewal task has not run yet
+        if (lease.lost || System.currentTimeMillis() >= lease.validUntil) {
+            lease.lost = true;
+            throw new IllegalStateException("Lost the lease for " + lease.jobName + " - another node may be running it");
+        }
+    }
+
+
+     //Whether another node holds the lease and it has not expired
+
+    public boolean isLeaseHeldElsewhere(String leaseName) {
+        return schedulerLeaseRepository.findById(leaseName)
+                .map(lease -> !nodeId.equals(lease.getOwner()) && lease.getLeaseUntil() >= System.currentTimeMillis())
+                .orElse(false);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public List<SchedulerLease> getLeases() {
+        return schedulerLeaseRepository.findAll();
+    }
+
+    public List<ScheduledJobRun> getRecentRuns() {
+        return scheduledJobRunRepository.findTop50ByOrderByIdDesc();
+    }
+
+    // tryAcquire also takes a lease still naming this node (e.g. after a restart with a fixed scheduler.node-id),
+    // so a lease already held on this node is refused here first
+    private boolean acquireLease(String jobName) {
+        if (!localLeases.add(jobName)) {
+            return false;
+        }
+        boolean acquired = false;
+        try {
+            long now = System.currentTimeMillis();
+            acquired = schedulerLeaseRepository.tryAcquire(jobName, nodeId, now + leaseMillis, now) == 1
+                    || schedulerLeaseRepository.insertIfAbsent(jobName, nodeId, now + leaseMillis, now) == 1;
+            return acquired;
+        } finally {
+            if (!acquired) {
+                localLeases.remove(jobName);
+            }
+        }
+    }
+
+    // Returns false when the lease is no longer ours (or could not be renewed)
+    private boolean renewLease(String jobName) {
+        try {
+            long now = System.currentTimeMillis();
+            if (schedulerLeaseRepository.renew(jobName, nodeId, now + leaseMillis, now) == 0) {
+                System.err.println("Lost the lease for " + jobName + " - another node may take over");
+                return false;
+            }
+            return true;
+        } catch (Exception e) {
+            System.err.println("Failed to renew the lease for " + jobName + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private long leaseRenewalMillis() {
+        return Math.max(leaseMillis / 3, 1000);
+    }
+
+    private boolean claimInstance(String jobName, String instanceKey) {
+        long now = System.currentTimeMillis();
+        if (scheduledJobRunRepository.claim(jobName, instanceKey, nodeId, now) == 1) {
+            return true;
+        }
+        // A RUNNING row belongs to a node that died or lost the lease; that node can no longer record
+        // an outcome (complete is fenced on the lease) and aborts at its next checkLease(). It is never a
+        // live run of this node, which keeps the job in localLeases until the run has finished.
+        return scheduledJobRunRepository.reclaim(jobName, instanceKey, nodeId, now) == 1;
+    }
+
+    private static final class RunLease {
+        private final String jobName;
+        private volatile long validUntil;
+        private volatile boolean lost;
+
+        private RunLease(String jobName, long validUntil) {
+            this.jobName = jobName;
+            this.validUntil = validUntil;
+        }
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "localhost";
+        }
+    }
+}
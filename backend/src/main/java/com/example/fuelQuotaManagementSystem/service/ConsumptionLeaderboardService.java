@@ -0,0 +1,317 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.dto.admin.TopFuelConsumer;
+import com.example.fuelQuotaManagementSystem.util.FuelUnits;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Top fuel consumer leaderboards for the last week, month and year and for all time.
+ *
+ * Every pump adds to its vehicle's row in daily_vehicle_consumption and to the vehicle's
+ * running total in each window (vehicle_consumption_totals), in the pump's transaction. The
+ * totals are indexed by (window, amount), so the top K of a window is read in K index
+ * entries. Once a day the week, month and year windows slide: the days that fell out are
+ * subtracted from the totals and vehicles left with nothing are dropped, which touches
+ * only the vehicles that pumped on those days.
+ */
+@Service
+public class ConsumptionLeaderboardService {
+
+    public static final String SLIDE_JOB = "leaderboard-slide";
+    public static final String INIT_JOB = "leaderboard-init";
+
+    public static final String WINDOW_WEEK = "week";
+    public static final String WINDOW_MONTH = "month";
+    public static final String WINDOW_YEAR = "year";
+    public static final String WINDOW_ALL = "all";
+
+    private static final List<String> WINDOWS = List.of(WINDOW_WEEK, WINDOW_MONTH, WINDOW_YEAR, WINDOW_ALL);
+
+    private static final String TOTALS_UPSERT_SQL =
+            "INSERT INTO vehicle_consumption_totals (window_name, vehicle_id, amount_ml, transaction_count, last_timestamp) VALUES ";
+
+    private static final String DAILY_UPSERT_SQL =
+            "INSERT INTO daily_vehicle_consumption (vehicle_id, consumption_date, amount_ml, transaction_count, last_timestamp) VALUES ";
+
+    private static final String UPSERT_UPDATE_SQL =
+            " ON DUPLICATE KEY UPDATE amount_ml = amount_ml + VALUES(amount_ml), " +
+                    "transaction_count = transaction_count + VALUES(transaction_count), " +
+                    "last_timestamp = GREATEST(last_timestamp, VALUES(last_timestamp))";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ClusterScheduler clusterScheduler;
+
+
+     //Add recorded pumps to the leaderboards (call inside the pumps' transaction)
+
+    public void recordPumps(List<FuelRollupService.PumpRecord> pumps) {
+        // Per vehicle and day: amount, transactions, last timestamp; sorted for a stable lock order
+        Map<String, long[]> deltas = new TreeMap<>();
+        for (FuelRollupService.PumpRecord pump : pumps) {
+            long[] delta = deltas.computeIfAbsent(pump.vehicleId() + "|" + toDate(pump.timestamp()), k -> new long[3]);
+            delta[0] += pump.amountMl();
+            delta[1]++;
+            delta[2] = Math.max(delta[2], pump.timestamp());
+        }
+
+        LocalDate today = LocalDate.now();
+        List<Object> totalArgs = new ArrayList<>();
+        List<Object> dailyArgs = new ArrayList<>();
+        for (String window : WINDOWS) {
+            LocalDate start = windowStart(window, today);
+            for (Map.Entry<String, long[]> entry : deltas.entrySet()) {
+                String[] key = entry.getKey().split("\\|", 2);
+                if (start != null && LocalDate.parse(key[1]).isBefore(start)) {
+                    continue;
+                }
+                long[] delta = entry.getValue();
+                totalArgs.addAll(List.of(window, Long.parseLong(key[0]), delta[0], delta[1], delta[2]));
+            }
+        }
+        for (Map.Entry<String, long[]> entry : deltas.entrySet()) {
+            String[] key = entry.getKey().split("\\|", 2);
+            long[] delta = entry.getValue();
+            dailyArgs.addAll(List.of(Long.parseLong(key[0]), key[1], delta[0], delta[1], delta[2]));
+        }
+
+        // Totals before the daily rows: building or sliding a window locks them in that order too
+        if (!totalArgs.isEmpty()) {
+            jdbcTemplate.update(TOTALS_UPSERT_SQL + valueRows(totalArgs.size() / 5) + UPSERT_UPDATE_SQL, totalArgs.toArray());
+        }
+        if (!dailyArgs.isEmpty()) {
+            jdbcTemplate.update(DAILY_UPSERT_SQL + valueRows(dailyArgs.size() / 5) + UPSERT_UPDATE_SQL, dailyArgs.toArray());
+        }
+    }
+
+    // Top consumers of a window ("week", "month", "year"; null or empty for all time)
+    public List<TopFuelConsumer> getTopConsumers(String period, int limit) {
+        String window = toWindow(period);
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1");
+        }
+
+        return jdbcTemplate.query("SELECT v.registration_number, v.vehicle_type, v.fuel_type, u.full_name, " +
+                        "t.amount_ml, t.transaction_count, t.last_timestamp " +
+                        "FROM vehicle_consumption_totals t JOIN vehicles v ON v.id = t.vehicle_id " +
+                        "LEFT JOIN users u ON u.id = v.owner_id " +
+                        "WHERE t.window_name = ? ORDER BY t.amount_ml DESC, t.vehicle_id DESC LIMIT ?",
+                (row, rowNum) -> {
+                    double totalFuel = FuelUnits.toLitres(row.getLong("amount_ml"));
+                    int transactionCount = (int) row.getLong("transaction_count");
+                    long lastTimestamp = row.getLong("last_timestamp");
+                    String lastTransactionDate = row.wasNull() ? "N/A" : toDate(lastTimestamp);
+                    return new TopFuelConsumer(
+                            row.getString("registration_number"),
+                            row.getString("vehicle_type"),
+                            row.getString("fuel_type"),
+                            row.getString("full_name"),
+                            totalFuel,
+                            transactionCount,
+                            transactionCount > 0 ? totalFuel / transactionCount : 0,
+                            lastTransactionDate
+                    );
+                }, window, limit);
+    }
+
+
+     //Slide the week, month and year windows past yesterday - every day at 0:01 AM
+
+    @Scheduled(cron = "${leaderboard.slide-cron:0 1 0 * * ?}")
+    public void slideWindowsDaily() {
+        clusterScheduler.runExclusive(SLIDE_JOB, LocalDate.now().toString(), this::slideWindows);
+    }
+
+    public void slideWindows() {
+        LocalDate today = LocalDate.now();
+        for (String window : WINDOWS) {
+            LocalDate start = windowStart(window, today);
+            if (start != null) {
+                slideWindow(window, start);
+            }
+        }
+    }
+
+    // Nodes starting together would backfill and build the same rows; one does it, the others skip
+    @EventListener(ApplicationReadyEvent.class)
+    public void initializeOnStartup() {
+        clusterScheduler.runExclusive(INIT_JOB, LocalDate.now().toString(), this::initialize);
+    }
+
+    private void initialize() {
+        int days = backfill();
+        if (days > 0) {
+            System.out.println("Backfilled daily vehicle consumption for " + days + " days");
+        }
+        for (String window : WINDOWS) {
+            buildWindow(window, false);
+        }
+        slideWindows();
+    }
+
+    /**
+     * Recomputes daily vehicle consumption for each day in [from, to] from fuel_transactions,
+     * then rebuilds every window from it. For repair, like FuelRollupService.rebuild.
+     */
+    public int rebuild(LocalDate from, LocalDate to) {
+        int days = 0;
+        for (LocalDate date = to; !date.isBefore(from); date = date.minusDays(1)) {
+            // Stop if the lease was lost mid-run (no-op for a manual rebuild)
+            clusterScheduler.checkLease();
+            rebuildDay(date);
+            days++;
+        }
+        for (String window : WINDOWS) {
+            buildWindow(window, true);
+        }
+        return days;
+    }
+
+    // Every day before the first day with consumption rows (everything on a fresh table)
+    private int backfill() {
+        Long firstTimestamp = jdbcTemplate.queryForObject("SELECT MIN(timestamp) FROM fuel_transactions", Long.class);
+        if (firstTimestamp == null) {
+            return 0;
+        }
+
+        LocalDate from = LocalDate.parse(toDate(firstTimestamp));
+        String firstRecorded = jdbcTemplate.queryForObject("SELECT MIN(consumption_date) FROM daily_vehicle_consumption", String.class);
+        LocalDate to = firstRecorded != null ? LocalDate.parse(firstRecorded).minusDays(1) : LocalDate.now();
+
+        int days = 0;
+        for (LocalDate date = to; !date.isBefore(from); date = date.minusDays(1)) {
+            clusterScheduler.checkLease();
+            rebuildDay(date);
+            days++;
+        }
+        return days;
+    }
+
+    private void rebuildDay(LocalDate date) {
+        String day = date.toString();
+        long start = date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long end = date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM daily_vehicle_consumption WHERE consumption_date = ?", day);
+            jdbcTemplate.update("INSERT INTO daily_vehicle_consumption (vehicle_id, consumption_date, amount_ml, " +
+                            "transaction_count, last_timestamp) " +
+                            "SELECT vehicle_id, ?, SUM(amount_ml), COUNT(*), MAX(timestamp) FROM fuel_transactions " +
+                            "WHERE timestamp >= ? AND timestamp < ? GROUP BY vehicle_id",
+                    day, start, end);
+        });
+    }
+
+    // Recomputes the window's totals from daily_vehicle_consumption; unless forced, only if never built
+    private void buildWindow(String window, boolean force) {
+        jdbcTemplate.update("INSERT IGNORE INTO leaderboard_windows (window_name) VALUES (?)", window);
+        LocalDate start = windowStart(window, LocalDate.now());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<String, Object> state = jdbcTemplate.queryForMap(
+                    "SELECT built_at FROM leaderboard_windows WHERE window_name = ? FOR UPDATE", window);
+            if (!force && state.get("built_at") != null) {
+                return;
+            }
+
+            jdbcTemplate.update("DELETE FROM vehicle_consumption_totals WHERE window_name = ?", window);
+            jdbcTemplate.update("INSERT INTO vehicle_consumption_totals (window_name, vehicle_id, amount_ml, " +
+                            "transaction_count, last_timestamp) " +
+                            "SELECT ?, vehicle_id, SUM(amount_ml), SUM(transaction_count), MAX(last_timestamp) " +
+                            "FROM daily_vehicle_consumption WHERE consumption_date >= ? GROUP BY vehicle_id",
+                    window, start != null ? start.toString() : "");
+            jdbcTemplate.update("UPDATE leaderboard_windows SET start_date = ?, built_at = ? WHERE window_name = ?",
+                    start != null ? start.toString() : null, System.currentTimeMillis(), window);
+        });
+        System.out.println("Built " + window + " fuel consumption leaderboard");
+    }
+
+    // Subtracts the days in [current start, newStart) from the window's totals
+    private void slideWindow(String window, LocalDate newStart) {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Map<String, Object>> states = jdbcTemplate.queryForList(
+                    "SELECT start_date, built_at FROM leaderboard_windows WHERE window_name = ? FOR UPDATE", window);
+            if (states.isEmpty() || states.get(0).get("built_at") == null) {
+                return;
+            }
+            String currentStart = (String) states.get(0).get("start_date");
+            if (currentStart == null || currentStart.compareTo(newStart.toString()) >= 0) {
+                return;
+            }
+
+            int updated = jdbcTemplate.update("UPDATE vehicle_consumption_totals t SET " +
+                            "amount_ml = amount_ml - (SELECT SUM(d.amount_ml) FROM daily_vehicle_consumption d " +
+                            "WHERE d.vehicle_id = t.vehicle_id AND d.consumption_date >= ? AND d.consumption_date < ?), " +
+                            "transaction_count = transaction_count - (SELECT SUM(d.transaction_count) FROM daily_vehicle_consumption d " +
+                            "WHERE d.vehicle_id = t.vehicle_id AND d.consumption_date >= ? AND d.consumption_date < ?) " +
+                            "WHERE t.window_name = ? AND t.vehicle_id IN (SELECT vehicle_id FROM daily_vehicle_consumption " +
+                            "WHERE consumption_date >= ? AND consumption_date < ?)",
+                    currentStart, newStart.toString(), currentStart, newStart.toString(),
+                    window, currentStart, newStart.toString());
+            int removed = jdbcTemplate.update(
+                    "DELETE FROM vehicle_consumption_totals WHERE window_name = ? AND transaction_count <= 0", window);
+            jdbcTemplate.update("UPDATE leaderboard_windows SET start_date = ?, slid_at = ? WHERE window_name = ?",
+                    newStart.toString(), System.currentTimeMillis(), window);
+
+            System.out.println("Slid " + window + " fuel consumption leaderboard to " + newStart + ": " +
+                    updated + " vehicles updated, " + removed + " removed");
+        });
+    }
+
+    private static String toWindow(String period) {
+        if (period == null || period.isEmpty()) {
+            return WINDOW_ALL;
+        }
+        String window = period.toLowerCase();
+        if (!WINDOWS.contains(window)) {
+            throw new IllegalArgumentException("Unknown period: " + period + " (use week, month or year)");
+        }
+        return window;
+    }
+
+    // First day counted in the window on the given day; null for all time. A window ends today
+    // and spans a week, month or year of days including today, e.g. the week is today and the 6 days before.
+    private static LocalDate windowStart(String window, LocalDate today) {
+        switch (window) {
+            case WINDOW_WEEK:
+                return today.minusWeeks(1).plusDays(1);
+            case WINDOW_MONTH:
+                return today.minusMonths(1).plusDays(1);
+            case WINDOW_YEAR:
+                return today.minusYears(1).plusDays(1);
+            default:
+                return null;
+        }
+    }
+
+    private static String valueRows(int count) {
+        StringBuilder rows = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            rows.append(i == 0 ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+        }
+        return rows.toString();
+    }
+
+    private static String toDate(long timestamp) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()).toString();
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived snapshots of the admin dashboard and of each station's dashboard.
+ *
+ * A snapshot is served until it is older than dashboard.cache.ttl-ms. Pumps, registrations
+ * and station changes mark the affected snapshots dirty once their transaction commits; a
+ * dirty snapshot is recomputed on the next read, but at most once per
+ * dashboard.cache.dirty-refresh-ms, so a busy station does not turn every refresh into a
+ * recomputation. Only one caller computes a snapshot at a time: concurrent readers get the
+ * previous snapshot meanwhile, or wait for the computation when there is none yet.
+ *
+ * Dirty marks are local to this node; on other nodes changes show up within the TTL.
+ */
+@Component
+public class DashboardSnapshotCache {
+
+    private static final String ADMIN_KEY = "admin";
+    private static final String STATION_KEY_PREFIX = "station:";
+
+    @Value("${dashboard.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${dashboard.cache.ttl-ms:15000}")
+    private long ttlMillis;
+
+    @Value("${dashboard.cache.dirty-refresh-ms:1000}")
+    private long dirtyRefreshMillis;
+
+    private final ConcurrentMap<String, Slot<?>> slots = new ConcurrentHashMap<>();
+
+
+    public <V> V getAdminDashboard(Supplier<V> loader) {
+        return get(ADMIN_KEY, loader);
+    }
+
+    public <V> V getStationDashboard(Long stationId, Supplier<V> loader) {
+        return get(STATION_KEY_PREFIX + stationId, loader);
+    }
+
+
+     //A pump changes the station's dashboard and the admin dashboard
+
+    public void pumpRecorded(Long stationId) {
+        afterCommit(() -> {
+            markDirty(ADMIN_KEY);
+            markDirty(STATION_KEY_PREFIX + stationId);
+        });
+    }
+
+    public void pumpsRecorded(Iterable<Long> stationIds) {
+        afterCommit(() -> {
+            markDirty(ADMIN_KEY);
+            for (Long stationId : stationIds) {
+                markDirty(STATION_KEY_PREFIX + stationId);
+            }
+        });
+    }
+
+    // New user, vehicle or station; role changes
+    public void registrationRecorded() {
+        afterCommit(() -> markDirty(ADMIN_KEY));
+    }
+
+    public void stationChanged(Long stationId) {
+        afterCommit(() -> {
+            markDirty(ADMIN_KEY);
+            markDirty(STATION_KEY_PREFIX + stationId);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <V> V get(String key, Supplier<V> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        Slot<V> slot = (Slot<V>) slots.computeIfAbsent(key, k -> new Slot<>());
+        long now = System.currentTimeMillis();
+
+        Snapshot<V> current = slot.snapshot;
+        if (current != null && isFresh(slot, current, now)) {
+            return current.value;
+        }
+
+        CompletableFuture<Snapshot<V>> computation;
+        boolean leader = false;
+        synchronized (slot) {
+            current = slot.snapshot;
+            if (current != null && isFresh(slot, current, now)) {
+                return current.value;
+            }
+            computation = slot.inFlight;
+            if (computation == null) {
+                computation = new CompletableFuture<>();
+                slot.inFlight = computation;
+                leader = true;
+            }
+        }
+
+        if (!leader) {
+            // Someone else is recomputing: the previous snapshot will do
+            if (current != null) {
+                return current.value;
+            }
+            try {
+                return computation.join().value;
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        try {
+            // Read the version first: a change committed while computing leaves the snapshot dirty
+            long version = slot.version.get();
+            Snapshot<V> snapshot = new Snapshot<>(loader.get(), System.currentTimeMillis(), version);
+            slot.snapshot = snapshot;
+            computation.complete(snapshot);
+            return snapshot.value;
+        } catch (RuntimeException | Error e) {
+            // A slot that never loaded (e.g. an unknown station id) is not kept, so bad ids cannot grow the map
+            if (slot.snapshot == null) {
+                slots.remove(key, slot);
+            }
+            computation.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (slot) {
+                slot.inFlight = null;
+            }
+        }
+    }
+
+    private boolean isFresh(Slot<?> slot, Snapshot<?> snapshot, long now) {
+        long age = now - snapshot.computedAt;
+        if (age >= ttlMillis) {
+            return false;
+        }
+        return snapshot.version == slot.version.get() || age < dirtyRefreshMillis;
+    }
+
+    private void markDirty(String key) {
+        Slot<?> slot = slots.get(key);
+        if (slot != null) {
+            slot.version.incrementAndGet();
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static class Slot<V> {
+        private final AtomicLong version = new AtomicLong();
+        private volatile Snapshot<V> snapshot;
+        private CompletableFuture<Snapshot<V>> inFlight;
+    }
+
+    private record Snapshot<V>(V value, long computedAt, long version) {
+    }
+}
@@ -0,0 +1,491 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.dto.FuelPumpRequest;
+import com.example.fuelQuotaManagementSystem.dto.FuelPumpResult;
+import com.example.fuelQuotaManagementSystem.dto.ScanPumpRequest;
+import com.example.fuelQuotaManagementSystem.dto.ScanPumpResponse;
+import com.example.fuelQuotaManagementSystem.entity.FuelTransaction;
+import com.example.fuelQuotaManagementSystem.entity.NotificationOutbox;
+import com.example.fuelQuotaManagementSystem.repository.FuelStationRepository;
+import com.example.fuelQuotaManagementSystem.repository.FuelTransactionRepository;
+import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+import com.example.fuelQuotaManagementSystem.util.FuelUnits;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class FuelPumpService {
+
+    @Autowired
+    private VehicleRepository vehicleRepository;
+
+    @Autowired
+    private FuelStationRepository fuelStationRepository;
+
+    @Autowired
+    private FuelTransactionRepository fuelTransactionRepository;
+
+    @Autowired
+    private FuelQuotaService fuelQuotaService;
+
+    @Autowired
+    private NotificationOutboxService notificationOutboxService;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+
+    @Autowired
+    private QRCodeService qrCodeService;
+
+    @Autowired
+    private FuelRollupService fuelRollupService;
+
+    @Autowired
+    private DashboardSnapshotCache dashboardSnapshotCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Minimum and maximum liters allowed per transaction (the minimum matches the request DTOs' @Min)
+    private static final double MIN_PUMP_AMOUNT = 1.0;
+    private static final double MAX_PUMP_AMOUNT = 100.0;
+
+    // Length of the fuel_transactions.idempotency_key column
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 64;
+
+    private static final String KEY_REUSED_MESSAGE = "Idempotency key was already used for another vehicle!";
+
+    private static final String INSERT_TRANSACTION_SQL =
+            "INSERT INTO fuel_transactions (vehicle_id, station_id, fuel_type, amount_ml, " +
+                    "quota_before_transaction_ml, quota_after_transaction_ml, notification_sent, timestamp, idempotency_key) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+
+     //Record a single pump: quota deduction, transaction insert and SMS outbox row commit together
+
+    @Transactional
+    public FuelPumpResult recordPump(FuelPumpRequest request) {
+        String idempotencyKey = request.getIdempotencyKey();
+        if (idempotencyKey != null) {
+            FuelPumpResult previous = findPreviousResult(idempotencyKey, request.getVehicleId());
+            if (previous != null) {
+                return previous;
+            }
+        }
+
+        VehicleRepository.VehiclePumpView vehicle = vehicleRepository.findPumpViewById(request.getVehicleId())
+                .orElseThrow(() -> new IllegalArgumentException("Vehicle not found!"));
+
+        FuelStationRepository.StationPumpView station = fuelStationRepository.findPumpViewById(request.getStationId())
+                .orElseThrow(() -> new IllegalArgumentException("Fuel station not found!"));
+
+        return pump(vehicle, station, request.getFuelType(), request.getAmount(), idempotencyKey);
+    }
+
+
+     //Scan-and-pump: verify the QR, resolve the vehicle and record the pump in one DB transaction
+
+    @Transactional
+    public ScanPumpResponse scanAndPump(ScanPumpRequest request) {
+        String registrationNumber;
+        try {
+            registrationNumber = qrCodeService.decodeQRCode(request.getQrData());
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid QR code!");
+        }
+
+        VehicleRepository.VehiclePumpView vehicle = vehicleRepository.findPumpViewByRegistrationNumber(registrationNumber)
+                .orElseThrow(() -> new IllegalArgumentException("Vehicle not found! Registration: " + registrationNumber));
+
+        String fuelType = request.getFuelType() != null ? request.getFuelType() : vehicle.getFuelType();
+        String idempotencyKey = request.getIdempotencyKey();
+
+        FuelPumpResult result = idempotencyKey != null ? findPreviousResult(idempotencyKey, vehicle.getId()) : null;
+        if (result == null) {
+            FuelStationRepository.StationPumpView station = fuelStationRepository.findPumpViewById(request.getStationId())
+                    .orElseThrow(() -> new IllegalArgumentException("Fuel station not found!"));
+            result = pump(vehicle, station, fuelType, request.getAmount(), idempotencyKey);
+        }
+
+        return toScanPumpResponse(vehicle, vehicle.getFuelType(), result);
+    }
+
+    // The amount comes from the result, so a replay reports what was recorded rather than what the retry asked for
+    public ScanPumpResponse toScanPumpResponse(VehicleRepository.VehiclePumpView vehicle, String fuelType,
+                                               FuelPumpResult result) {
+        return new ScanPumpResponse(
+                vehicle.getId(),
+                vehicle.getRegistrationNumber(),
+                vehicle.getVehicleType(),
+                fuelType,
+                vehicle.getOwnerName(),
+                result.getTransactionId(),
+                result.getAmount(),
+                result.getQuotaBefore(),
+                result.getQuotaAfter(),
+                result.getReplayed(),
+                result.getMessage()
+        );
+    }
+
+    private FuelPumpResult pump(VehicleRepository.VehiclePumpView vehicle, FuelStationRepository.StationPumpView station,
+                                String fuelType, Double amount, String idempotencyKey) {
+        String validationError = validatePump(vehicle.getFuelType(), fuelType, amount);
+        if (validationError != null) {
+            throw new IllegalArgumentException(validationError);
+        }
+
+        // Stored as the vehicle spells it, so rollups and reports see one fuel type whatever the request's casing
+        fuelType = vehicle.getFuelType();
+        long amountMl = FuelUnits.toMillilitres(amount);
+        FuelQuotaService.QuotaDeduction deduction =
+                fuelQuotaService.deductFuelAtomically(vehicle, fuelType, amountMl);
+        if (!deduction.isApplied()) {
+            throw new IllegalArgumentException("Insufficient quota! Remaining: " + FuelUnits.toLitres(deduction.getQuotaAfterMl()) + "L");
+        }
+
+        FuelTransaction transaction = new FuelTransaction();
+        // Reference proxies: the insert only needs the foreign keys
+        transaction.setVehicle(vehicleRepository.getReferenceById(vehicle.getId()));
+        transaction.setStation(fuelStationRepository.getReferenceById(station.getId()));
+        transaction.setFuelType(fuelType);
+        transaction.setAmountMl(amountMl);
+        transaction.setQuotaBeforeTransactionMl(deduction.getQuotaBeforeMl());
+        transaction.setQuotaAfterTransactionMl(deduction.getQuotaAfterMl());
+        transaction.setNotificationSent(false);
+        transaction.setIdempotencyKey(idempotencyKey);
+
+        // A concurrent request with the same key fails here on the unique index and rolls back
+        FuelTransaction savedTransaction = fuelTransactionRepository.save(transaction);
+        fuelRollupService.recordPump(vehicle.getId(), station.getId(), fuelType, amountMl, savedTransaction.getTimestamp());
+        dashboardSnapshotCache.pumpRecorded(station.getId());
+
+        notificationOutboxService.enqueue(
+                NotificationOutbox.TYPE_FUEL_TRANSACTION,
+                vehicle.getOwnerPhoneNumber(),
+                notificationService.createFuelTransactionSMSMessage(
+                        vehicle.getRegistrationNumber(), fuelType, amount,
+                        station.getName(), FuelUnits.toLitres(deduction.getQuotaAfterMl()), savedTransaction.getId()),
+                savedTransaction.getId()
+        );
+
+        FuelPumpResult result = new FuelPumpResult(null, vehicle.getId(), true, "Fuel pump recorded",
+                savedTransaction.getId(), FuelUnits.toLitres(amountMl), FuelUnits.toLitres(deduction.getQuotaBeforeMl()),
+                FuelUnits.toLitres(deduction.getQuotaAfterMl()), false);
+        if (idempotencyKey != null) {
+            rememberAfterCommit(idempotencyKey, result);
+        }
+        return result;
+    }
+
+
+    /**
+     * Result of an earlier pump recorded with this idempotency key, or null if there is none.
+     * The bounded cache answers most retries; the unique column covers evicted keys.
+     * Keys are global, so clients must generate them as UUIDs. A key that was recorded for
+     * another vehicle is rejected rather than answered with that vehicle's result
+     * (vehicleId null skips the check).
+     */
+    public FuelPumpResult findPreviousResult(String idempotencyKey, Long vehicleId) {
+        FuelPumpResult previous = idempotencyCache.get(idempotencyKey);
+        if (previous == null) {
+            Optional<FuelTransaction> transaction = fuelTransactionRepository.findByIdempotencyKey(idempotencyKey);
+            if (!transaction.isPresent()) {
+                return null;
+            }
+            previous = toResult(transaction.get());
+            idempotencyCache.put(idempotencyKey, previous);
+        }
+
+        if (vehicleId != null && !vehicleId.equals(previous.getVehicleId())) {
+            throw new IllegalArgumentException(KEY_REUSED_MESSAGE);
+        }
+        return asReplay(previous, null);
+    }
+
+
+    /**
+     * Record a batch of queued dispenses in request order.
+     * Vehicles and stations are resolved with one projection query each, deductions are applied in
+     * order (so a vehicle's later items see its earlier deductions) and all accepted
+     * transactions are inserted with one JDBC batch. Rejected items do not abort the batch.
+     */
+    @Transactional
+    public List<FuelPumpResult> recordPumpBatch(List<FuelPumpRequest> requests) {
+        Map<Long, VehicleRepository.VehiclePumpView> vehicles = vehicleRepository
+                .findPumpViewsByIdIn(collectIds(requests, FuelPumpRequest::getVehicleId))
+                .stream().collect(Collectors.toMap(VehicleRepository.VehiclePumpView::getId, Function.identity()));
+        Map<Long, FuelStationRepository.StationPumpView> stations = fuelStationRepository
+                .findPumpViewsByIdIn(collectIds(requests, FuelPumpRequest::getStationId))
+                .stream().collect(Collectors.toMap(FuelStationRepository.StationPumpView::getId, Function.identity()));
+
+        Map<String, FuelPumpResult> knownResults = findPreviousResults(requests);
+
+        List<FuelPumpResult> results = new ArrayList<>(requests.size());
+        List<FuelPumpResult> accepted = new ArrayList<>();
+        List<FuelPumpRequest> acceptedRequests = new ArrayList<>();
+        List<FuelQuotaService.QuotaDeduction> acceptedDeductions = new ArrayList<>();
+        long timestamp = System.currentTimeMillis();
+
+        for (int i = 0; i < requests.size(); i++) {
+            FuelPumpRequest request = requests.get(i);
+            String idempotencyKey = request.getIdempotencyKey();
+
+            // Batch items are not bean-validated; a key too long for its column would fail the whole insert
+            if (idempotencyKey != null && idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+                results.add(new FuelPumpResult(i, request.getVehicleId(), false,
+                        "Idempotency key must be at most 64 characters", null, null, null, null, false));
+                continue;
+            }
+
+            // Replay of an earlier request (or a duplicate within this batch)
+            if (idempotencyKey != null && knownResults.containsKey(idempotencyKey)) {
+                FuelPumpResult previous = knownResults.get(idempotencyKey);
+                if (Objects.equals(previous.getVehicleId(), request.getVehicleId())) {
+                    results.add(asReplay(previous, i));
+                } else {
+                    results.add(new FuelPumpResult(i, request.getVehicleId(), false, KEY_REUSED_MESSAGE, null, null, null, null, false));
+                }
+                continue;
+            }
+
+            FuelPumpResult result = new FuelPumpResult(i, request.getVehicleId(), false, null, null, null, null, null, false);
+            results.add(result);
+
+            VehicleRepository.VehiclePumpView vehicle = request.getVehicleId() != null ? vehicles.get(request.getVehicleId()) : null;
+            if (vehicle == null) {
+                result.setMessage("Vehicle not found!");
+                continue;
+            }
+
+            if (request.getStationId() == null || !stations.containsKey(request.getStationId())) {
+                result.setMessage("Fuel station not found!");
+                continue;
+            }
+
+            String validationError = validatePump(vehicle.getFuelType(), request.getFuelType(), request.getAmount());
+            if (validationError != null) {
+                result.setMessage(validationError);
+                continue;
+            }
+
+            long amountMl = FuelUnits.toMillilitres(request.getAmount());
+            FuelQuotaService.QuotaDeduction deduction = fuelQuotaService.deductFuelAtomically(
+                    vehicle, vehicle.getFuelType(), amountMl);
+            result.setQuotaBefore(FuelUnits.toLitres(deduction.getQuotaBeforeMl()));
+            result.setQuotaAfter(FuelUnits.toLitres(deduction.getQuotaAfterMl()));
+            if (!deduction.isApplied()) {
+                result.setMessage("Insufficient quota! Remaining: " + result.getQuotaAfter() + "L");
+                continue;
+            }
+
+            result.setSuccess(true);
+            result.setMessage("Fuel pump recorded");
+            result.setAmount(FuelUnits.toLitres(amountMl));
+            accepted.add(result);
+            acceptedRequests.add(request);
+            acceptedDeductions.add(deduction);
+            if (idempotencyKey != null) {
+                knownResults.put(idempotencyKey, result);
+            }
+        }
+
+        if (!accepted.isEmpty()) {
+            insertTransactions(acceptedRequests, acceptedDeductions, accepted, vehicles, timestamp);
+            fuelRollupService.recordPumps(toPumpRecords(acceptedRequests, acceptedDeductions, vehicles, timestamp));
+            dashboardSnapshotCache.pumpsRecorded(collectIds(acceptedRequests, FuelPumpRequest::getStationId));
+            queueNotifications(acceptedRequests, accepted, vehicles, stations);
+
+            for (int i = 0; i < accepted.size(); i++) {
+                String idempotencyKey = acceptedRequests.get(i).getIdempotencyKey();
+                if (idempotencyKey != null) {
+                    rememberAfterCommit(idempotencyKey, accepted.get(i));
+                }
+            }
+        }
+
+        return results;
+    }
+
+
+    public String validatePump(String vehicleFuelType, String fuelType, Double amount) {
+        // Validate fuel type matches vehicle
+        if (fuelType == null || !vehicleFuelType.equalsIgnoreCase(fuelType)) {
+            return "Fuel type mismatch! Vehicle uses " + vehicleFuelType;
+        }
+
+        // Validate pump amount
+        if (amount == null || amount <= 0) {
+            return "Invalid fuel amount!";
+        }
+
+        if (amount < MIN_PUMP_AMOUNT) {
+            return "Minimum 1 liter required per transaction!";
+        }
+
+        if (amount > MAX_PUMP_AMOUNT) {
+            return "Maximum 100 liters allowed per transaction!";
+        }
+
+        return null;
+    }
+
+
+     //Insert accepted transactions in one JDBC batch and hand the generated IDs back to the results
+
+    private void insertTransactions(List<FuelPumpRequest> requests, List<FuelQuotaService.QuotaDeduction> deductions,
+                                    List<FuelPumpResult> results, Map<Long, VehicleRepository.VehiclePumpView> vehicles,
+                                    long timestamp) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_TRANSACTION_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (int i = 0; i < requests.size(); i++) {
+                    FuelPumpRequest request = requests.get(i);
+                    FuelQuotaService.QuotaDeduction deduction = deductions.get(i);
+                    statement.setLong(1, request.getVehicleId());
+                    statement.setLong(2, request.getStationId());
+                    statement.setString(3, vehicles.get(request.getVehicleId()).getFuelType());
+                    statement.setLong(4, deduction.getQuotaBeforeMl() - deduction.getQuotaAfterMl());
+                    statement.setLong(5, deduction.getQuotaBeforeMl());
+                    statement.setLong(6, deduction.getQuotaAfterMl());
+                    statement.setBoolean(7, false);
+                    statement.setLong(8, timestamp);
+                    statement.setString(9, request.getIdempotencyKey());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    int i = 0;
+                    while (keys.next() && i < results.size()) {
+                        results.get(i++).setTransactionId(keys.getLong(1));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    private static List<FuelRollupService.PumpRecord> toPumpRecords(List<FuelPumpRequest> requests,
+                                                                     List<FuelQuotaService.QuotaDeduction> deductions,
+                                                                     Map<Long, VehicleRepository.VehiclePumpView> vehicles,
+                                                                     long timestamp) {
+        List<FuelRollupService.PumpRecord> records = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            FuelPumpRequest request = requests.get(i);
+            FuelQuotaService.QuotaDeduction deduction = deductions.get(i);
+            records.add(new FuelRollupService.PumpRecord(request.getVehicleId(), request.getStationId(),
+                    vehicles.get(request.getVehicleId()).getFuelType(), deduction.getQuotaBeforeMl() - deduction.getQuotaAfterMl(), timestamp));
+        }
+        return records;
+    }
+
+    // Earlier results for every idempotency key in the batch: cache first, then one IN query
+    private Map<String, FuelPumpResult> findPreviousResults(List<FuelPumpRequest> requests) {
+        Map<String, FuelPumpResult> known = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+
+        for (FuelPumpRequest request : requests) {
+            String key = request.getIdempotencyKey();
+            if (key == null || known.containsKey(key)) {
+                continue;
+            }
+            FuelPumpResult cached = idempotencyCache.get(key);
+            if (cached != null) {
+                known.put(key, cached);
+            } else {
+                missing.add(key);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            for (FuelTransaction transaction : fuelTransactionRepository.findByIdempotencyKeyIn(missing)) {
+                FuelPumpResult result = toResult(transaction);
+                idempotencyCache.put(transaction.getIdempotencyKey(), result);
+                known.put(transaction.getIdempotencyKey(), result);
+            }
+        }
+
+        return known;
+    }
+
+    // Only cache results whose transaction actually committed
+    private void rememberAfterCommit(String idempotencyKey, FuelPumpResult result) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            idempotencyCache.put(idempotencyKey, result);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                idempotencyCache.put(idempotencyKey, result);
+            }
+        });
+    }
+
+    private static FuelPumpResult toResult(FuelTransaction transaction) {
+        return new FuelPumpResult(null, transaction.getVehicle().getId(), true, "Fuel pump recorded",
+                transaction.getId(), FuelUnits.toLitres(transaction.getAmountMl()),
+                FuelUnits.toLitres(transaction.getQuotaBeforeTransactionMl()),
+                FuelUnits.toLitres(transaction.getQuotaAfterTransactionMl()), false);
+    }
+
+    private static FuelPumpResult asReplay(FuelPumpResult original, Integer index) {
+        return new FuelPumpResult(index, original.getVehicleId(), true,
+                "Duplicate request - original result returned", original.getTransactionId(),
+                original.getAmount(), original.getQuotaBefore(), original.getQuotaAfter(), true);
+    }
+
+    private void queueNotifications(List<FuelPumpRequest> requests, List<FuelPumpResult> results,
+                                    Map<Long, VehicleRepository.VehiclePumpView> vehicles,
+                                    Map<Long, FuelStationRepository.StationPumpView> stations) {
+        List<NotificationOutbox> entries = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            FuelPumpRequest request = requests.get(i);
+            FuelPumpResult result = results.get(i);
+            VehicleRepository.VehiclePumpView vehicle = vehicles.get(request.getVehicleId());
+
+            NotificationOutbox entry = new NotificationOutbox();
+            entry.setNotificationType(NotificationOutbox.TYPE_FUEL_TRANSACTION);
+            entry.setPhoneNumber(vehicle.getOwnerPhoneNumber());
+            entry.setMessage(notificationService.createFuelTransactionSMSMessage(
+                    vehicle.getRegistrationNumber(), vehicle.getFuelType(), request.getAmount(),
+                    stations.get(request.getStationId()).getName(), result.getQuotaAfter(), result.getTransactionId()));
+            entry.setTransactionId(result.getTransactionId());
+            entries.add(entry);
+        }
+        notificationOutboxService.enqueueAll(entries);
+    }
+
+    private static Set<Long> collectIds(List<FuelPumpRequest> requests, Function<FuelPumpRequest, Long> idExtractor) {
+        Set<Long> ids = new HashSet<>();
+        for (FuelPumpRequest request : requests) {
+            Long id = idExtractor.apply(request);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+}
@@ -1,16 +1,25 @@
 package com.example.fuelQuotaManagementSystem.service;
 
 import com.example.fuelQuotaManagementSystem.entity.FuelQuota;
+import com.example.fuelQuotaManagementSystem.entity.NotificationOutbox;
+import com.example.fuelQuotaManagementSystem.entity.QuotaJob;
 import com.example.fuelQuotaManagementSystem.entity.Vehicle;
 import com.example.fuelQuotaManagementSystem.repository.FuelQuotaRepository;
 import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+import com.example.fuelQuotaManagementSystem.util.FuelUnits;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.ZoneId;
-import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,301 +35,373 @@ public class FuelQuotaService {
     @Autowired
     private NotificationService notificationService;
 
-    // Default monthly quota allocations (in liters)
-    private static final double PETROL_CAR_QUOTA = 60.0;
-    private static final double PETROL_MOTORCYCLE_QUOTA = 20.0;
-    private static final double PETROL_THREE_WHEELER_QUOTA = 40.0;
-    private static final double DIESEL_CAR_QUOTA = 80.0;
-    private static final double DIESEL_COMMERCIAL_QUOTA = 200.0;
+    @Autowired
+    private QuotaLedger quotaLedger;
+
+    @Autowired
+    private NotificationOutboxService notificationOutboxService;
+
+    @Autowired
+    private QuotaAllocationPolicy quotaAllocationPolicy;
+
+    @Autowired
+    private QuotaRolloverService quotaRolloverService;
+
+    @Autowired
+    private ClusterScheduler clusterScheduler;
+
+    // Lazy: the job service resets quotas through this service
+    @Lazy
+    @Autowired
+    private QuotaJobService quotaJobService;
+
+    // "lazy" (no job: getCurrentQuota materialises each period's row on first access),
+    // "bulk" (set-based QuotaRolloverService) or "per-vehicle" (QuotaJobService reset job, resetting in place)
+    @Value("${quota.rollover.mode:lazy}")
+    private String rolloverMode;
+
+    public static final String MONTHLY_RESET_JOB = "monthly-quota-reset";
 
     // Low quota warning thresholds (percentage)
-    private static final double LOW_QUOTA_THRESHOLD_PERCENTAGE = 20.0;
-    private static final double CRITICAL_QUOTA_THRESHOLD_PERCENTAGE = 10.0;
+    private static final long LOW_QUOTA_THRESHOLD_PERCENTAGE = 20;
+    private static final long CRITICAL_QUOTA_THRESHOLD_PERCENTAGE = 10;
 
     /**
      * AUTOMATIC QUOTA RESET - Runs on 1st of every month at 12:01 AM
-     * FOR TESTING: Change to "0 * * * * ?" to run every minute
-     * FOR PRODUCTION: Use "0 1 0 1 * ?" to run 1st of month at 12:01 AM
      */
-//    @Scheduled(cron = "0 * * * * ?") //for testing
-    @Scheduled(cron = "0 1 0 1 * ?") //for production
+    @Scheduled(cron = "0 1 0 1 * ?")
     public void automaticMonthlyQuotaReset() {
         LocalDate today = LocalDate.now();
 
-        // FOR TESTING: Run every minute
-        System.out.println("=== TESTING QUOTA RESET - " + java.time.LocalDateTime.now() + " ===");
+        // Lazy rollover: the period's quotas are created on first use
+        if ("lazy".equalsIgnoreCase(rolloverMode)) {
+            return;
+        }
 
-        // FOR PRODUCTION: Only run on 1st of month
-        // if (today.getDayOfMonth() != 1) {
-        //     return; // Exit if not 1st day of month
-        // }
+        // A per-vehicle reset job only starts on the quota ledger node, so leave the lease to that node
+        if ("per-vehicle".equalsIgnoreCase(rolloverMode) && quotaLedger.isRunningElsewhere()) {
+            return;
+        }
 
-        System.out.println("=== STARTING AUTOMATIC MONTHLY QUOTA RESET ===");
-        System.out.println("Date: " + today);
+        // Every node fires this cron; only the one holding the lease runs the period's reset
+        clusterScheduler.runExclusive(MONTHLY_RESET_JOB, YearMonth.from(today).toString(), () -> monthlyQuotaReset(today));
+    }
 
-        try {
-            List<Vehicle> allVehicles = vehicleRepository.findAll();
-            int successCount = 0;
-            int failCount = 0;
-
-            for (Vehicle vehicle : allVehicles) {
-                try {
-                    // Reset quota for this vehicle
-                    automaticMonthlyReset(vehicle, vehicle.getFuelType());
-                    successCount++;
-
-                    System.out.println("Reset quota for: " + vehicle.getRegistrationNumber());
-
-                } catch (Exception e) {
-                    failCount++;
-                    System.err.println("Failed to reset quota for: " + vehicle.getRegistrationNumber() +
-                            " - Error: " + e.getMessage());
-                }
-            }
+    private void monthlyQuotaReset(LocalDate today) {
+        if ("bulk".equalsIgnoreCase(rolloverMode)) {
+            quotaRolloverService.rollover(YearMonth.from(today));
+            return;
+        }
 
-            System.out.println("=== AUTOMATIC RESET COMPLETED ===");
-            System.out.println("Total vehicles: " + allVehicles.size());
-            System.out.println("Successfully reset: " + successCount);
-            System.out.println("Failed: " + failCount);
+        // "per-vehicle": a chunked, resumable reset job (progress under /api/admin/jobs)
+        QuotaJobService.JobProgress job = quotaJobService.startJob(QuotaJob.TYPE_MONTHLY_RESET, YearMonth.from(today),
+                null, null, null);
+        System.out.println("=== AUTOMATIC MONTHLY QUOTA RESET STARTED AS JOB " + job.getId() + " ===");
+    }
 
-        } catch (Exception e) {
-            System.err.println("ERROR in automatic quota reset: " + e.getMessage());
-            e.printStackTrace();
-        }
+    public FuelQuota getCurrentQuota(Vehicle vehicle, String fuelType) {
+        return getQuota(vehicle, fuelType, YearMonth.now());
     }
 
     /**
-     * Automatic monthly quota reset for a single vehicle
+     * Quotas are materialised lazily: the first access in a period creates that period's row
+     * from the allocation policy, and earlier periods' rows are kept as history. No job has
+     * to touch every vehicle when a month starts.
      */
-    private FuelQuota automaticMonthlyReset(Vehicle vehicle, String fuelType) {
-        try {
-            // Get current month boundaries
-            LocalDate now = LocalDate.now();
-            LocalDate startOfMonth = now.with(TemporalAdjusters.firstDayOfMonth());
-            LocalDate endOfMonth = now.with(TemporalAdjusters.lastDayOfMonth());
+    private FuelQuota getQuota(Vehicle vehicle, String fuelType, YearMonth period) {
+        Optional<FuelQuota> existingQuota = fuelQuotaRepository
+                .findByVehicleIdAndFuelTypeAndPeriod(vehicle.getId(), fuelType, period.toString());
 
-            long startTimestamp = startOfMonth.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-            long endTimestamp = endOfMonth.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (existingQuota.isPresent()) {
+            return existingQuota.get();
+        }
 
-            // Find and delete any existing quota
-            Optional<FuelQuota> existingQuota = fuelQuotaRepository
-                    .findByVehicleAndFuelTypeAndEndDateGreaterThanEqual(vehicle, fuelType, System.currentTimeMillis());
+        return createNewMonthlyQuota(vehicle, fuelType, period);
+    }
 
-            if (existingQuota.isPresent()) {
-                fuelQuotaRepository.delete(existingQuota.get());
-                System.out.println("Deleted old quota for: " + vehicle.getRegistrationNumber());
-            }
+    /**
+     * Insert-if-absent on the (vehicle_id, fuel_type, period) unique key: concurrent first
+     * scans of a vehicle all end up with the same row and no global lock is needed. Only the
+     * caller whose insert actually created the row registers it with the ledger, and other
+     * pumps only see that entry once the insert has committed.
+     */
+    private FuelQuota createNewMonthlyQuota(Vehicle vehicle, String fuelType, YearMonth period) {
+        long allocatedQuotaMl = calculateQuotaAllocation(vehicle.getVehicleType(), fuelType, vehicle.getEngineCapacity());
+        return createQuota(vehicle.getId(), vehicle.getRegistrationNumber(), fuelType, period, allocatedQuotaMl);
+    }
 
-            // Create fresh quota for the new month
-            FuelQuota newQuota = createNewMonthlyQuota(vehicle, fuelType, startTimestamp, endTimestamp);
+    // Same as getQuota for callers holding only the pump projection
+    private FuelQuota getQuota(VehicleRepository.VehiclePumpView vehicle, String fuelType, YearMonth period) {
+        Optional<FuelQuota> existingQuota = fuelQuotaRepository
+                .findByVehicleIdAndFuelTypeAndPeriod(vehicle.getId(), fuelType, period.toString());
 
-            // ✅ SEND SMS TO VEHICLE OWNER ONLY (No admin SMS)
-            try {
-                boolean smsSuccess = notificationService.sendNewQuotaAllocationNotification(
-                        vehicle.getOwner().getPhoneNumber(),
-                        vehicle.getOwner().getEmail(),
-                        vehicle.getRegistrationNumber(),
-                        newQuota.getAllocatedQuota(),
-                        now.getMonth().toString() + " " + now.getYear()
-                );
+        if (existingQuota.isPresent()) {
+            return existingQuota.get();
+        }
 
-                System.out.println("SMS sent to " + vehicle.getRegistrationNumber() + ": " + smsSuccess);
+        long allocatedQuotaMl = calculateQuotaAllocation(vehicle.getVehicleType(), fuelType, vehicle.getEngineCapacity());
+        return createQuota(vehicle.getId(), vehicle.getRegistrationNumber(), fuelType, period, allocatedQuotaMl);
+    }
 
-            } catch (Exception e) {
-                System.err.println("Failed to send SMS to: " + vehicle.getRegistrationNumber());
-            }
+    private FuelQuota createQuota(Long vehicleId, String registrationNumber, String fuelType, YearMonth period,
+                                  long allocatedQuotaMl) {
+        int inserted = fuelQuotaRepository.insertIfAbsent(vehicleId, fuelType, period.toString(), allocatedQuotaMl,
+                QuotaAllocationPolicy.MONTHLY, periodStart(period), periodEnd(period), System.currentTimeMillis());
 
-            return newQuota;
+        FuelQuota quota = fuelQuotaRepository
+                .findLatestByVehicleIdAndFuelTypeAndPeriod(vehicleId, fuelType, period.toString())
+                .orElseThrow(() -> new IllegalStateException("Quota could not be created for vehicle: " + registrationNumber));
 
-        } catch (Exception e) {
-            System.err.println("Error in automatic reset for: " + vehicle.getRegistrationNumber());
-            throw new RuntimeException("Automatic reset failed: " + e.getMessage());
+        if (inserted == 1 && quotaLedger.isEnabled()) {
+            quotaLedger.trackCreated(quota);
         }
+        return quota;
     }
-    
 
-    public FuelQuota getCurrentQuota(Vehicle vehicle, String fuelType) {
-        LocalDate now = LocalDate.now();
-        LocalDate startOfMonth = now.with(TemporalAdjusters.firstDayOfMonth());
-        LocalDate endOfMonth = now.with(TemporalAdjusters.lastDayOfMonth());
+    private FuelQuota resetInPlace(Vehicle vehicle, String fuelType, YearMonth period) {
+        long allocatedQuotaMl = calculateQuotaAllocation(vehicle.getVehicleType(), fuelType, vehicle.getEngineCapacity());
+        return resetInPlace(vehicle.getId(), vehicle.getRegistrationNumber(), fuelType, period, allocatedQuotaMl);
+    }
 
-        long startTimestamp = startOfMonth.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        long endTimestamp = endOfMonth.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    // Puts the period's balance back to its allocation without deleting the row, so a concurrent
+    // pump either deducts before the reset or from the fresh balance - never from a deleted row
+    private FuelQuota resetInPlace(Long vehicleId, String registrationNumber, String fuelType, YearMonth period,
+                                   long allocatedQuotaMl) {
+        int updated = fuelQuotaRepository.resetBalance(vehicleId, fuelType, period.toString(),
+                allocatedQuotaMl, System.currentTimeMillis());
+        if (updated == 0) {
+            return createQuota(vehicleId, registrationNumber, fuelType, period, allocatedQuotaMl);
+        }
 
-        Optional<FuelQuota> existingQuota = fuelQuotaRepository
-                .findByVehicleAndFuelTypeAndEndDateGreaterThanEqual(vehicle, fuelType, System.currentTimeMillis());
+        FuelQuota quota = fuelQuotaRepository
+                .findLatestByVehicleIdAndFuelTypeAndPeriod(vehicleId, fuelType, period.toString())
+                .orElseThrow(() -> new IllegalStateException("Quota disappeared during reset for vehicle: " + registrationNumber));
+        trackInLedger(quota);
+        return quota;
+    }
 
-        if (existingQuota.isPresent()) {
-            FuelQuota quota = existingQuota.get();
-            if (quota.getStartDate() >= startTimestamp && quota.getStartDate() <= endTimestamp) {
-                return quota;
-            }
+    // A reset inside a larger transaction (a bulk job chunk) only reaches the ledger once it has committed
+    private void trackInLedger(FuelQuota quota) {
+        if (!quotaLedger.isEnabled()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    quotaLedger.track(quota);
+                }
+            });
+            return;
         }
+        quotaLedger.track(quota);
+    }
 
-        return createNewMonthlyQuota(vehicle, fuelType, startTimestamp, endTimestamp);
+    private static long periodStart(YearMonth period) {
+        return period.atDay(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 
-    private FuelQuota createNewMonthlyQuota(Vehicle vehicle, String fuelType, long startDate, long endDate) {
-        FuelQuota quota = new FuelQuota();
-        quota.setVehicle(vehicle);
-        quota.setFuelType(fuelType);
-        quota.setAllocationPeriod("MONTHLY");
-        quota.setStartDate(startDate);
-        quota.setEndDate(endDate);
+    private static long periodEnd(YearMonth period) {
+        return period.atEndOfMonth().atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
 
-        double allocatedQuota = calculateQuotaAllocation(vehicle.getVehicleType(), fuelType, vehicle.getEngineCapacity());
-        quota.setAllocatedQuota(allocatedQuota);
-        quota.setRemainingQuota(allocatedQuota);
+    // Package-private for the JMH allocation benchmark
+    long calculateQuotaAllocation(String vehicleType, String fuelType, Double engineCapacity) {
+        return quotaAllocationPolicy.allocationMl(QuotaAllocationPolicy.MONTHLY, vehicleType, fuelType, engineCapacity);
+    }
 
-        return fuelQuotaRepository.save(quota);
+    public boolean deductFuel(Vehicle vehicle, String fuelType, double amountLiters) {
+        VehicleRepository.VehiclePumpView pumpView = vehicleRepository.findPumpViewById(vehicle.getId())
+                .orElseThrow(() -> new IllegalArgumentException("Vehicle not found!"));
+        return deductFuelAtomically(pumpView, fuelType, FuelUnits.toMillilitres(amountLiters)).isApplied();
     }
 
-    private double calculateQuotaAllocation(String vehicleType, String fuelType, Double engineCapacity) {
-        if ("Petrol".equalsIgnoreCase(fuelType)) {
-            switch (vehicleType.toLowerCase()) {
-                case "car":
-                    if (engineCapacity != null && engineCapacity > 1800) {
-                        return PETROL_CAR_QUOTA + 20.0;
-                    }
-                    return PETROL_CAR_QUOTA;
-                case "motorcycle":
-                    return PETROL_MOTORCYCLE_QUOTA;
-                case "three wheeler":
-                    return PETROL_THREE_WHEELER_QUOTA;
-                default:
-                    return PETROL_CAR_QUOTA;
-            }
-        } else if ("Diesel".equalsIgnoreCase(fuelType)) {
-            switch (vehicleType.toLowerCase()) {
-                case "car":
-                    return DIESEL_CAR_QUOTA;
-                case "bus":
-                case "lorry":
-                    return DIESEL_COMMERCIAL_QUOTA;
-                default:
-                    return DIESEL_CAR_QUOTA;
+    /**
+     * Deducts fuel with a single conditional UPDATE (remaining >= amount), so concurrent
+     * pumps on the same vehicle can never overdraw or lose each other's deductions.
+     * The post-deduction balance is read back while the row lock from the update is still
+     * held, which gives exact before/after values for the transaction record.
+     * Takes the pump projection; the full Vehicle is only loaded when this period's quota
+     * row still has to be created.
+     */
+    @Transactional
+    public QuotaDeduction deductFuelAtomically(VehicleRepository.VehiclePumpView vehicle, String fuelType, long amountMl) {
+        if (quotaLedger.isEnabled()) {
+            return deductFromLedger(vehicle, fuelType, amountMl);
+        }
+        quotaLedger.checkDatabaseDeductionAllowed();
+
+        long now = System.currentTimeMillis();
+        YearMonth period = YearMonth.now();
+        int updated = fuelQuotaRepository.deductIfSufficient(vehicle.getId(), fuelType, period.toString(), amountMl, now);
+
+        if (updated == 0) {
+            // Either this period's quota has not been materialised yet, or it does not cover the amount
+            FuelQuota quota = getQuota(loadVehicle(vehicle.getId()), fuelType, period);
+            if (quota.getRemainingQuotaMl() < amountMl) {
+                return QuotaDeduction.rejected(quota.getAllocatedQuotaMl(), quota.getRemainingQuotaMl());
             }
+            updated = fuelQuotaRepository.deductIfSufficient(vehicle.getId(), fuelType, period.toString(), amountMl, now);
+        }
+
+        FuelQuotaRepository.QuotaBalance balance = fuelQuotaRepository
+                .findBalance(vehicle.getId(), fuelType, period.toString())
+                .orElseThrow(() -> new IllegalStateException("No active quota for vehicle: " + vehicle.getRegistrationNumber()));
+
+        if (updated == 0) {
+            // Lost the race to another pump between the lookup and the retry
+            return QuotaDeduction.rejected(balance.getAllocatedQuotaMl(), balance.getRemainingQuotaMl());
         }
-        return PETROL_CAR_QUOTA;
+
+        long quotaAfterMl = balance.getRemainingQuotaMl();
+        long quotaBeforeMl = quotaAfterMl + amountMl;
+
+        checkAndSendLowQuotaWarning(vehicle.getRegistrationNumber(), vehicle.getOwnerPhoneNumber(), fuelType,
+                balance.getAllocatedQuotaMl(), quotaAfterMl, quotaBeforeMl);
+        return QuotaDeduction.applied(balance.getId(), balance.getAllocatedQuotaMl(), quotaBeforeMl, quotaAfterMl);
     }
 
-    public boolean deductFuel(Vehicle vehicle, String fuelType, double amountLiters) {
-        FuelQuota quota = getCurrentQuota(vehicle, fuelType);
+    private QuotaDeduction deductFromLedger(VehicleRepository.VehiclePumpView vehicle, String fuelType, long amountMl) {
+        QuotaLedger.Entry current;
+        long deducted;
+        do {
+            // A reset or allocation may replace the entry between the lookup and the deduction
+            current = getLedgerEntry(vehicle.getId(), fuelType);
+            deducted = current.tryDeduct(amountMl);
+        } while (deducted == QuotaLedger.RETIRED);
+
+        QuotaLedger.Entry entry = current;
+        long quotaBeforeMl = deducted;
+        if (quotaBeforeMl < 0) {
+            return QuotaDeduction.rejected(entry.getAllocatedMl(), entry.getRemainingMl());
+        }
+
+        // The ledger is not transactional - give the litres back if the pump transaction rolls back
+        // (e.g. a duplicate idempotency key hitting the unique index)
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        entry.refund(amountMl);
+                    }
+                }
+            });
+        }
 
-        if (quota.getRemainingQuota() >= amountLiters) {
-            double quotaBeforeDeduction = quota.getRemainingQuota();
-            quota.setRemainingQuota(quota.getRemainingQuota() - amountLiters);
-            fuelQuotaRepository.save(quota);
+        long quotaAfterMl = quotaBeforeMl - amountMl;
 
-            checkAndSendLowQuotaWarning(vehicle, quota, quotaBeforeDeduction);
-            return true;
+        checkAndSendLowQuotaWarning(vehicle.getRegistrationNumber(), vehicle.getOwnerPhoneNumber(), fuelType,
+                entry.getAllocatedMl(), quotaAfterMl, quotaBeforeMl);
+        return QuotaDeduction.applied(entry.getQuotaId(), entry.getAllocatedMl(), quotaBeforeMl, quotaAfterMl);
+    }
+
+    private QuotaLedger.Entry getLedgerEntry(Long vehicleId, String fuelType) {
+        QuotaLedger.Entry entry = quotaLedger.get(vehicleId, fuelType);
+        if (entry == null) {
+            // Not cached yet (new vehicle or new period) - load or create it once
+            entry = quotaLedger.trackIfAbsent(getCurrentQuota(loadVehicle(vehicleId), fuelType));
         }
-        return false;
+        return entry;
     }
 
-    private void checkAndSendLowQuotaWarning(Vehicle vehicle, FuelQuota quota, double quotaBeforeDeduction) {
-        double remainingQuota = quota.getRemainingQuota();
-        double allocatedQuota = quota.getAllocatedQuota();
-        double remainingPercentage = (remainingQuota / allocatedQuota) * 100;
-        double previousPercentage = (quotaBeforeDeduction / allocatedQuota) * 100;
+    private Vehicle loadVehicle(Long vehicleId) {
+        return vehicleRepository.findById(vehicleId)
+                .orElseThrow(() -> new IllegalArgumentException("Vehicle not found!"));
+    }
 
-        if (remainingPercentage <= CRITICAL_QUOTA_THRESHOLD_PERCENTAGE &&
-                previousPercentage > CRITICAL_QUOTA_THRESHOLD_PERCENTAGE) {
+    private void checkAndSendLowQuotaWarning(String registrationNumber, String phoneNumber, String fuelType,
+                                             long allocatedQuotaMl, long remainingQuotaMl, long quotaBeforeDeductionMl) {
+        if (crossedThreshold(allocatedQuotaMl, quotaBeforeDeductionMl, remainingQuotaMl, CRITICAL_QUOTA_THRESHOLD_PERCENTAGE)) {
 
-            sendCriticalQuotaWarning(vehicle, remainingQuota, quota.getFuelType());
+            queueQuotaWarning(registrationNumber, phoneNumber, remainingQuotaMl, fuelType, CRITICAL_QUOTA_THRESHOLD_PERCENTAGE);
         }
-        else if (remainingPercentage <= LOW_QUOTA_THRESHOLD_PERCENTAGE &&
-                previousPercentage > LOW_QUOTA_THRESHOLD_PERCENTAGE) {
+        else if (crossedThreshold(allocatedQuotaMl, quotaBeforeDeductionMl, remainingQuotaMl, LOW_QUOTA_THRESHOLD_PERCENTAGE)) {
 
-            sendLowQuotaWarning(vehicle, remainingQuota, quota.getFuelType());
+            queueQuotaWarning(registrationNumber, phoneNumber, remainingQuotaMl, fuelType, LOW_QUOTA_THRESHOLD_PERCENTAGE);
         }
     }
 
-    private boolean sendLowQuotaWarning(Vehicle vehicle, double remainingQuota, String fuelType) {
-        try {
-            return notificationService.sendLowQuotaWarning(
-                    vehicle.getOwner().getPhoneNumber(),
-                    vehicle.getOwner().getEmail(),
-                    vehicle.getRegistrationNumber(),
-                    remainingQuota,
-                    fuelType,
-                    LOW_QUOTA_THRESHOLD_PERCENTAGE
-            );
-        } catch (Exception e) {
-            System.err.println("Failed to send low quota warning: " + e.getMessage());
-            return false;
-        }
+    // remaining/allocated <= threshold% now but not before, compared in integer millilitres
+    private static boolean crossedThreshold(long allocatedMl, long beforeMl, long afterMl, long thresholdPercentage) {
+        long thresholdScaled = allocatedMl * thresholdPercentage;
+        return afterMl * 100 <= thresholdScaled && beforeMl * 100 > thresholdScaled;
     }
 
-    private boolean sendCriticalQuotaWarning(Vehicle vehicle, double remainingQuota, String fuelType) {
+    // Warnings go through the outbox so the pump never waits on the SMS provider
+    private void queueQuotaWarning(String registrationNumber, String phoneNumber, long remainingQuotaMl,
+                                   String fuelType, long threshold) {
         try {
-            return notificationService.sendLowQuotaWarning(
-                    vehicle.getOwner().getPhoneNumber(),
-                    vehicle.getOwner().getEmail(),
-                    vehicle.getRegistrationNumber(),
-                    remainingQuota,
-                    fuelType,
-                    CRITICAL_QUOTA_THRESHOLD_PERCENTAGE
+            notificationOutboxService.enqueue(
+                    NotificationOutbox.TYPE_LOW_QUOTA_WARNING,
+                    phoneNumber,
+                    notificationService.createLowQuotaWarningSMSMessage(
+                            registrationNumber, FuelUnits.toLitres(remainingQuotaMl), fuelType, threshold),
+                    null
             );
         } catch (Exception e) {
-            System.err.println("Failed to send critical quota warning: " + e.getMessage());
-            return false;
+            System.err.println("Failed to queue quota warning: " + e.getMessage());
         }
     }
 
-    public boolean hasSufficientQuota(Vehicle vehicle, String fuelType, double requestedAmount) {
-        FuelQuota quota = getCurrentQuota(vehicle, fuelType);
-        return quota.getRemainingQuota() >= requestedAmount;
+    public boolean hasSufficientQuota(Vehicle vehicle, String fuelType, long requestedAmountMl) {
+        return getRemainingQuotaMl(vehicle, fuelType) >= requestedAmountMl;
     }
 
-    public double getRemainingQuota(Vehicle vehicle, String fuelType) {
+    public long getRemainingQuotaMl(Vehicle vehicle, String fuelType) {
+        if (quotaLedger.isEnabled()) {
+            return getLedgerEntry(vehicle.getId(), fuelType).getRemainingMl();
+        }
         FuelQuota quota = getCurrentQuota(vehicle, fuelType);
-        return quota.getRemainingQuota();
+        return quota.getRemainingQuotaMl();
     }
 
     public FuelQuotaInfo getQuotaInfo(Vehicle vehicle, String fuelType) {
-        FuelQuota quota = getCurrentQuota(vehicle, fuelType);
+        return toQuotaInfo(vehicle.getId(), fuelType, getCurrentQuota(vehicle, fuelType));
+    }
+
+    // QR scan path: no Vehicle entity (qrCode TEXT column) or owner roles are loaded
+    public FuelQuotaInfo getQuotaInfo(VehicleRepository.VehiclePumpView vehicle, String fuelType) {
+        return toQuotaInfo(vehicle.getId(), fuelType, getQuota(vehicle, fuelType, YearMonth.now()));
+    }
+
+    private FuelQuotaInfo toQuotaInfo(Long vehicleId, String fuelType, FuelQuota quota) {
+        // The database row may lag behind the ledger by one flush interval
+        long remainingQuotaMl = quotaLedger.isEnabled()
+                ? getLedgerEntry(vehicleId, fuelType).getRemainingMl()
+                : quota.getRemainingQuotaMl();
 
         return new FuelQuotaInfo(
                 quota.getId(),
-                quota.getAllocatedQuota(),
-                quota.getRemainingQuota(),
-                quota.getAllocatedQuota() - quota.getRemainingQuota(),
+                quota.getAllocatedQuotaMl(),
+                remainingQuotaMl,
+                quota.getAllocatedQuotaMl() - remainingQuotaMl,
                 quota.getStartDate(),
                 quota.getEndDate(),
                 isQuotaExpiringSoon(quota),
-                getQuotaUsagePercentage(quota)
+                getQuotaUsagePercentage(quota.getAllocatedQuotaMl(), remainingQuotaMl)
         );
     }
 
     public FuelQuota resetQuota(Vehicle vehicle, String fuelType) {
         try {
-            Optional<FuelQuota> existingQuota = fuelQuotaRepository
-                    .findByVehicleAndFuelTypeAndEndDateGreaterThanEqual(vehicle, fuelType, System.currentTimeMillis());
-
-            if (existingQuota.isPresent()) {
-                fuelQuotaRepository.delete(existingQuota.get());
-            }
-
             LocalDate now = LocalDate.now();
-            LocalDate startOfMonth = now.with(TemporalAdjusters.firstDayOfMonth());
-            LocalDate endOfMonth = now.with(TemporalAdjusters.lastDayOfMonth());
-
-            long startTimestamp = startOfMonth.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-            long endTimestamp = endOfMonth.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            YearMonth period = YearMonth.from(now);
 
-            FuelQuota newQuota = createNewMonthlyQuota(vehicle, fuelType, startTimestamp, endTimestamp);
+            FuelQuota newQuota = resetInPlace(vehicle, fuelType, period);
 
+            // Sent by the throttled fan-out worker, not inline
             try {
-                notificationService.sendNewQuotaAllocationNotification(
+                notificationOutboxService.enqueue(
+                        NotificationOutbox.TYPE_QUOTA_ALLOCATION,
                         vehicle.getOwner().getPhoneNumber(),
-                        vehicle.getOwner().getEmail(),
-                        vehicle.getRegistrationNumber(),
-                        newQuota.getAllocatedQuota(),
-                        now.getMonth().toString() + " " + now.getYear()
+                        notificationService.createNewQuotaAllocationSMSMessage(vehicle.getRegistrationNumber(),
+                                FuelUnits.toLitres(newQuota.getAllocatedQuotaMl()),
+                                now.getMonth().toString() + " " + now.getYear()),
+                        null
                 );
             } catch (Exception e) {
-                System.err.println("Failed to send quota reset SMS: " + e.getMessage());
+                System.err.println("Failed to queue quota reset SMS: " + e.getMessage());
             }
 
             return newQuota;
@@ -330,35 +411,106 @@ public class FuelQuotaService {
         }
     }
 
+
+     //Reset one vehicle's quota from the allocation policy for a bulk job chunk; joins the chunk's
+     //transaction, so the SMS is queued in the outbox only if the chunk commits
+
+    public FuelQuota resetForJob(VehicleRepository.VehicleQuotaView vehicle, YearMonth period) {
+        long allocatedQuotaMl = calculateQuotaAllocation(vehicle.getVehicleType(), vehicle.getFuelType(), vehicle.getEngineCapacity());
+
+        FuelQuota quota = resetInPlace(vehicle.getId(), vehicle.getRegistrationNumber(), vehicle.getFuelType(),
+                period, allocatedQuotaMl);
+
+        String phoneNumber = vehicle.getOwnerPhoneNumber();
+        if (phoneNumber != null && !phoneNumber.trim().isEmpty()) {
+            notificationOutboxService.enqueue(
+                    NotificationOutbox.TYPE_QUOTA_ALLOCATION,
+                    phoneNumber,
+                    notificationService.createNewQuotaAllocationSMSMessage(vehicle.getRegistrationNumber(),
+                            FuelUnits.toLitres(quota.getAllocatedQuotaMl()),
+                            period.getMonth().toString() + " " + period.getYear()),
+                    null
+            );
+        }
+        return quota;
+    }
+
+
+     //Set-based allocation of a fixed amount for a bulk job chunk: one UPDATE for the period's existing
+     //quotas and one INSERT ... SELECT for the missing ones, with the filters in SQL. Returns the vehicles covered.
+
+    public int allocateForJob(YearMonth period, long firstVehicleId, long lastVehicleId,
+                              String vehicleType, String fuelType, long allocatedQuotaMl) {
+        long now = System.currentTimeMillis();
+        fuelQuotaRepository.allocateExisting(period.toString(), firstVehicleId, lastVehicleId,
+                vehicleType, fuelType, allocatedQuotaMl, now);
+        fuelQuotaRepository.allocateMissing(period.toString(), firstVehicleId, lastVehicleId,
+                vehicleType, fuelType, allocatedQuotaMl, QuotaAllocationPolicy.MONTHLY,
+                periodStart(period), periodEnd(period), now);
+
+        List<VehicleRepository.VehicleQuotaView> vehicles = vehicleRepository.findJobChunk(
+                firstVehicleId, lastVehicleId, vehicleType, fuelType);
+
+        String month = period.getMonth().toString() + " " + period.getYear();
+        List<NotificationOutbox> notifications = new ArrayList<>(vehicles.size());
+        List<Long> vehicleIds = new ArrayList<>(vehicles.size());
+        for (VehicleRepository.VehicleQuotaView vehicle : vehicles) {
+            vehicleIds.add(vehicle.getId());
+            if (vehicle.getOwnerPhoneNumber() == null || vehicle.getOwnerPhoneNumber().trim().isEmpty()) {
+                continue;
+            }
+            NotificationOutbox entry = new NotificationOutbox();
+            entry.setNotificationType(NotificationOutbox.TYPE_QUOTA_ALLOCATION);
+            entry.setPhoneNumber(vehicle.getOwnerPhoneNumber());
+            entry.setMessage(notificationService.createNewQuotaAllocationSMSMessage(vehicle.getRegistrationNumber(),
+                    FuelUnits.toLitres(allocatedQuotaMl), month));
+            notifications.add(entry);
+        }
+        if (!notifications.isEmpty()) {
+            notificationOutboxService.enqueueAll(notifications);
+        }
+
+        if (quotaLedger.isEnabled() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    quotaLedger.reload(period.toString(), vehicleIds);
+                }
+            });
+        }
+        return vehicles.size();
+    }
+
     private boolean isQuotaExpiringSoon(FuelQuota quota) {
         long threeDaysInMillis = 3 * 24 * 60 * 60 * 1000L;
         long currentTime = System.currentTimeMillis();
         return (quota.getEndDate() - currentTime) <= threeDaysInMillis;
     }
 
-    private double getQuotaUsagePercentage(FuelQuota quota) {
-        if (quota.getAllocatedQuota() == 0) return 0;
-        double usedQuota = quota.getAllocatedQuota() - quota.getRemainingQuota();
-        return (usedQuota / quota.getAllocatedQuota()) * 100;
+    private double getQuotaUsagePercentage(long allocatedQuotaMl, long remainingQuotaMl) {
+        if (allocatedQuotaMl == 0) return 0;
+        long usedQuotaMl = allocatedQuotaMl - remainingQuotaMl;
+        return (usedQuotaMl * 100.0) / allocatedQuotaMl;
     }
 
+    // Balances in millilitres; controllers convert to litres for the response DTOs
     public static class FuelQuotaInfo {
         private Long quotaId;
-        private double allocatedQuota;
-        private double remainingQuota;
-        private double usedQuota;
+        private long allocatedQuotaMl;
+        private long remainingQuotaMl;
+        private long usedQuotaMl;
         private long startDate;
         private long endDate;
         private boolean expiringSoon;
         private double usagePercentage;
 
-        public FuelQuotaInfo(Long quotaId, double allocatedQuota, double remainingQuota,
-                             double usedQuota, long startDate, long endDate,
+        public FuelQuotaInfo(Long quotaId, long allocatedQuotaMl, long remainingQuotaMl,
+                             long usedQuotaMl, long startDate, long endDate,
                              boolean expiringSoon, double usagePercentage) {
             this.quotaId = quotaId;
-            this.allocatedQuota = allocatedQuota;
-            this.remainingQuota = remainingQuota;
-            this.usedQuota = usedQuota;
+            this.allocatedQuotaMl = allocatedQuotaMl;
+            this.remainingQuotaMl = remainingQuotaMl;
+            this.usedQuotaMl = usedQuotaMl;
             this.startDate = startDate;
             this.endDate = endDate;
             this.expiringSoon = expiringSoon;
@@ -367,12 +519,44 @@ public class FuelQuotaService {
 
         // Getters
         public Long getQuotaId() { return quotaId; }
-        public double getAllocatedQuota() { return allocatedQuota; }
-        public double getRemainingQuota() { return remainingQuota; }
-        public double getUsedQuota() { return usedQuota; }
+        public long getAllocatedQuotaMl() { return allocatedQuotaMl; }
+        public long getRemainingQuotaMl() { return remainingQuotaMl; }
+        public long getUsedQuotaMl() { return usedQuotaMl; }
         public long getStartDate() { return startDate; }
         public long getEndDate() { return endDate; }
         public boolean isExpiringSoon() { return expiringSoon; }
         public double getUsagePercentage() { return usagePercentage; }
     }
-}
\ No newline at end of file
+
+    public static class QuotaDeduction {
+        private final boolean applied;
+        private final Long quotaId;
+        private final long allocatedQuotaMl;
+        private final long quotaBeforeMl;
+        private final long quotaAfterMl;
+
+        private QuotaDeduction(boolean applied, Long quotaId, long allocatedQuotaMl,
+                               long quotaBeforeMl, long quotaAfterMl) {
+            this.applied = applied;
+            this.quotaId = quotaId;
+            this.allocatedQuotaMl = allocatedQuotaMl;
+            this.quotaBeforeMl = quotaBeforeMl;
+            this.quotaAfterMl = quotaAfterMl;
+        }
+
+        static QuotaDeduction applied(Long quotaId, long allocatedQuotaMl, long quotaBeforeMl, long quotaAfterMl) {
+            return new QuotaDeduction(true, quotaId, allocatedQuotaMl, quotaBeforeMl, quotaAfterMl);
+        }
+
+        static QuotaDeduction rejected(long allocatedQuotaMl, long remainingQuotaMl) {
+            return new QuotaDeduction(false, null, allocatedQuotaMl, remainingQuotaMl, remainingQuotaMl);
+        }
+
+        // Getters
+        public boolean isApplied() { return applied; }
+        public Long getQuotaId() { return quotaId; }
+        public long getAllocatedQuotaMl() { return allocatedQuotaMl; }
+        public long getQuotaBeforeMl() { return quotaBeforeMl; }
+        public long getQuotaAfterMl() { return quotaAfterMl; }
+    }
+}
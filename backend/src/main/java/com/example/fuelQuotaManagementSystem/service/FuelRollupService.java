@@ -0,0 +1,209 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maintains daily_station_fuel_stats, the (day, station, fuel type) rollup of
+ * fuel_transactions that reports and dashboards read instead of the transactions.
+ *
+ * Pumps are added in the caller's transaction, so a rollup row always matches the
+ * committed transactions. Distinct vehicle counts are kept exact with one INSERT IGNORE per
+ * pump into daily_vehicle_visits, of the (day, vehicle, station) row and the vehicle's
+ * ANY_STATION row of the day: a vehicle's first pump at a station on a day adds to that
+ * station's vehicleCount, and its first pump anywhere that day (both rows inserted) adds to
+ * newVehicleCount. Visits older than analytics.rollup.visit-retention-days are pruned
+ * nightly. Pumps are also passed on to ConsumptionLeaderboardService, which keeps the
+ * per-vehicle consumption rollup.
+ */
+@Service
+public class FuelRollupService {
+
+    public static final String BACKFILL_JOB = "fuel-rollup-backfill";
+
+    // Station id of the visit row marking that a vehicle pumped somewhere on a day
+    public static final long ANY_STATION = 0L;
+
+    private static final String VISITS_SQL =
+            "INSERT IGNORE INTO daily_vehicle_visits (visit_date, vehicle_id, station_id) VALUES (?, ?, ?), (?, ?, ?)";
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO daily_station_fuel_stats (stat_date, station_id, fuel_type, transaction_count, amount_ml, " +
+                    "vehicle_count, new_vehicle_count, updated_at) VALUES ";
+
+    private static final String UPSERT_UPDATE_SQL =
+            " ON DUPLICATE KEY UPDATE transaction_count = transaction_count + VALUES(transaction_count), " +
+                    "amount_ml = amount_ml + VALUES(amount_ml), vehicle_count = vehicle_count + VALUES(vehicle_count), " +
+                    "new_vehicle_count = new_vehicle_count + VALUES(new_vehicle_count), updated_at = VALUES(updated_at)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ConsumptionLeaderboardService consumptionLeaderboardService;
+
+    @Autowired
+    private ClusterScheduler clusterScheduler;
+
+    @Value("${analytics.rollup.visit-retention-days:7}")
+    private int visitRetentionDays;
+
+    @Value("${analytics.rollup.prune-batch-size:10000}")
+    private int pruneBatchSize;
+
+
+     //Add one recorded pump to its day's rollup (call inside the pump's transaction)
+
+    public void recordPump(long vehicleId, long stationId, String fuelType, long amountMl, long timestamp) {
+        recordPumps(List.of(new PumpRecord(vehicleId, stationId, fuelType, amountMl, timestamp)));
+    }
+
+    public void recordPumps(List<PumpRecord> pumps) {
+        // Sorted so concurrent batches lock rollup rows in the same order
+        Map<String, long[]> deltas = new TreeMap<>();
+
+        for (PumpRecord pump : pumps) {
+            String date = toDate(pump.timestamp());
+            // 2: first pump of the day, 1: first at this station, 0: neither
+            int inserted = jdbcTemplate.update(VISITS_SQL, date, pump.vehicleId(), pump.stationId(),
+                    date, pump.vehicleId(), ANY_STATION);
+            boolean newAtStation = inserted >= 1;
+            boolean newToday = inserted == 2;
+
+            long[] delta = deltas.computeIfAbsent(date + "|" + pump.stationId() + "|" + pump.fuelType(), k -> new long[4]);
+            delta[0]++;
+            delta[1] += pump.amountMl();
+            delta[2] += newAtStation ? 1 : 0;
+            delta[3] += newToday ? 1 : 0;
+        }
+
+        // All rollup rows of the pumps in one statement
+        long now = System.currentTimeMillis();
+        List<Object> args = new ArrayList<>();
+        StringBuilder rows = new StringBuilder();
+        for (Map.Entry<String, long[]> entry : deltas.entrySet()) {
+            String[] key = entry.getKey().split("\\|", 3);
+            long[] delta = entry.getValue();
+            args.addAll(List.of(key[0], Long.parseLong(key[1]), key[2], delta[0], delta[1], delta[2], delta[3], now));
+            rows.append(rows.length() == 0 ? "(?, ?, ?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?, ?, ?)");
+        }
+        if (!args.isEmpty()) {
+            jdbcTemplate.update(UPSERT_SQL + rows + UPSERT_UPDATE_SQL, args.toArray());
+        }
+
+        consumptionLeaderboardService.recordPumps(pumps);
+    }
+
+    /**
+     * Recomputes the rollup rows of each day in [from, to] from fuel_transactions, one
+     * transaction per day. For backfilling and repair; pumps recorded on a day while it is
+     * being rebuilt may be missed, so rebuild past days or quiet hours.
+     */
+    public int rebuild(LocalDate from, LocalDate to) {
+        int days = 0;
+        for (LocalDate date = to; !date.isBefore(from); date = date.minusDays(1)) {
+            // Stop if the backfill's lease was lost mid-run (no-op for a manual rebuild)
+            clusterScheduler.checkLease();
+            rebuildDay(date);
+            days++;
+        }
+        return days;
+    }
+
+    // Nodes starting together would rebuild the same days; one backfills, the others skip
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        clusterScheduler.runExclusive(BACKFILL_JOB, LocalDate.now().toString(), this::backfill);
+    }
+
+    // Every day before the first rolled-up day (everything on a fresh table)
+    public int backfill() {
+        Long firstTimestamp = jdbcTemplate.queryForObject("SELECT MIN(timestamp) FROM fuel_transactions", Long.class);
+        if (firstTimestamp == null) {
+            return 0;
+        }
+
+        LocalDate from = LocalDate.parse(toDate(firstTimestamp));
+        String firstRolledUp = jdbcTemplate.queryForObject("SELECT MIN(stat_date) FROM daily_station_fuel_stats", String.class);
+        LocalDate to = firstRolledUp != null ? LocalDate.parse(firstRolledUp).minusDays(1) : LocalDate.now();
+        if (to.isBefore(from)) {
+            return 0;
+        }
+
+        System.out.println("Backfilling daily fuel rollups from " + from + " to " + to);
+        int days = rebuild(from, to);
+        System.out.println("Backfilled daily fuel rollups for " + days + " days");
+        return days;
+    }
+
+
+     //Drop visits that can no longer affect a distinct count - every night at 3:15 AM
+
+    @Scheduled(cron = "${analytics.rollup.prune-cron:0 15 3 * * ?}")
+    public void pruneVisits() {
+        String cutoff = LocalDate.now().minusDays(visitRetentionDays).toString();
+        long removed = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update("DELETE FROM daily_vehicle_visits WHERE visit_date < ? LIMIT ?", cutoff, pruneBatchSize);
+            removed += deleted;
+        } while (deleted == pruneBatchSize);
+
+        if (removed > 0) {
+            System.out.println("Pruned " + removed + " daily vehicle visits before " + cutoff);
+        }
+    }
+
+    private void rebuildDay(LocalDate date) {
+        String day = date.toString();
+        long start = date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long end = date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        boolean keepVisits = !date.isBefore(LocalDate.now().minusDays(visitRetentionDays));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM daily_station_fuel_stats WHERE stat_date = ?", day);
+            // A vehicle is "new" at the station of its first transaction of the day
+            jdbcTemplate.update("INSERT INTO daily_station_fuel_stats (stat_date, station_id, fuel_type, transaction_count, " +
+                            "amount_ml, vehicle_count, new_vehicle_count, updated_at) " +
+                            "SELECT ?, t.station_id, t.fuel_type, COUNT(*), SUM(t.amount_ml), COUNT(DISTINCT t.vehicle_id), " +
+                            "COUNT(DISTINCT CASE WHEN t.id = (SELECT MIN(f.id) FROM fuel_transactions f WHERE f.vehicle_id = t.vehicle_id " +
+                            "AND f.timestamp >= ? AND f.timestamp < ?) THEN t.vehicle_id END), ? " +
+                            "FROM fuel_transactions t WHERE t.timestamp >= ? AND t.timestamp < ? " +
+                            "GROUP BY t.station_id, t.fuel_type",
+                    day, start, end, System.currentTimeMillis(), start, end);
+
+            if (keepVisits) {
+                jdbcTemplate.update("INSERT IGNORE INTO daily_vehicle_visits (visit_date, vehicle_id, station_id) " +
+                        "SELECT DISTINCT ?, vehicle_id, station_id FROM fuel_transactions WHERE timestamp >= ? AND timestamp < ?",
+                        day, start, end);
+                jdbcTemplate.update("INSERT IGNORE INTO daily_vehicle_visits (visit_date, vehicle_id, station_id) " +
+                        "SELECT DISTINCT ?, vehicle_id, ? FROM fuel_transactions WHERE timestamp >= ? AND timestamp < ?",
+                        day, ANY_STATION, start, end);
+            }
+        });
+    }
+
+    private static String toDate(long timestamp) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()).toString();
+    }
+
+    public record PumpRecord(long vehicleId, long stationId, String fuelType, long amountMl, long timestamp) {
+    }
+}
@@ -3,15 +3,14 @@ package com.example.fuelQuotaManagementSystem.service;
 import com.example.fuelQuotaManagementSystem.dto.fuelStation.FuelStationRegistrationRequest;
 import com.example.fuelQuotaManagementSystem.dto.fuelStation.StationDashboardResponse;
 import com.example.fuelQuotaManagementSystem.entity.FuelStation;
-import com.example.fuelQuotaManagementSystem.entity.FuelTransaction;
 import com.example.fuelQuotaManagementSystem.entity.User;
+import com.example.fuelQuotaManagementSystem.repository.DailyStationFuelStatsRepository;
 import com.example.fuelQuotaManagementSystem.repository.FuelStationRepository;
-import com.example.fuelQuotaManagementSystem.repository.FuelTransactionRepository;
+import com.example.fuelQuotaManagementSystem.util.FuelUnits;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
-import java.time.ZoneId;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -23,7 +22,10 @@ public class FuelStationService {
     private FuelStationRepository fuelStationRepository;
 
     @Autowired
-    private FuelTransactionRepository fuelTransactionRepository;
+    private DailyStationFuelStatsRepository dailyStationFuelStatsRepository;
+
+    @Autowired
+    private DashboardSnapshotCache dashboardSnapshotCache;
 
 
     public FuelStation registerStation(FuelStationRegistrationRequest request, User owner) {
@@ -54,7 +56,9 @@ public class FuelStationService {
         station.setHasDiesel(request.getHasDiesel());
         station.setActive(true); // New stations are active by default
 
-        return fuelStationRepository.save(station);
+        FuelStation savedStation = fuelStationRepository.save(station);
+        dashboardSnapshotCache.registrationRecorded();
+        return savedStation;
     }
 
 
@@ -102,7 +106,9 @@ public class FuelStationService {
         station.setHasPetrol(request.getHasPetrol());
         station.setHasDiesel(request.getHasDiesel());
 
-        return fuelStationRepository.save(station);
+        FuelStation savedStation = fuelStationRepository.save(station);
+        dashboardSnapshotCache.stationChanged(stationId);
+        return savedStation;
     }
 
 
@@ -116,7 +122,9 @@ public class FuelStationService {
         FuelStation station = stationOptional.get();
         station.setActive(active);
 
-        return fuelStationRepository.save(station);
+        FuelStation savedStation = fuelStationRepository.save(station);
+        dashboardSnapshotCache.stationChanged(stationId);
+        return savedStation;
     }
 
 
@@ -144,49 +152,40 @@ public class FuelStationService {
     }
 
 
+    /**
+     * Served from a cached snapshot (see DashboardSnapshotCache); the snapshot carries the
+     * station's owner so the ownership check needs no query either.
+     */
     public StationDashboardResponse getStationDashboard(Long stationId, Long userId, boolean isAdmin) {
-        FuelStation station = getStationById(stationId, userId, isAdmin);
-
-        // Get today's date range
-        LocalDate today = LocalDate.now();
-        long startOfDay = today.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        long endOfDay = today.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        StationDashboardSnapshot snapshot = dashboardSnapshotCache.getStationDashboard(stationId,
+                () -> computeStationDashboard(stationId));
 
-        // Get all transactions for this station
-        List<FuelTransaction> allStationTransactions = fuelTransactionRepository.findAll().stream()
-                .filter(t -> t.getStation().getId().equals(stationId))
-                .collect(Collectors.toList());
+        if (!isAdmin && !snapshot.ownerId().equals(userId)) {
+            throw new SecurityException("Access denied: You don't own this fuel station!");
+        }
+        return snapshot.dashboard();
+    }
 
-        // Get today's transactions
-        List<FuelTransaction> todayTransactions = allStationTransactions.stream()
-                .filter(t -> t.getTimestamp() >= startOfDay && t.getTimestamp() <= endOfDay)
-                .collect(Collectors.toList());
+    private StationDashboardSnapshot computeStationDashboard(Long stationId) {
+        FuelStation station = fuelStationRepository.findById(stationId)
+                .orElseThrow(() -> new IllegalArgumentException("Fuel station not found!"));
 
-        // Calculate today's statistics
-        double todayPetrolDispensed = todayTransactions.stream()
-                .filter(t -> "Petrol".equalsIgnoreCase(t.getFuelType()))
-                .mapToDouble(FuelTransaction::getAmount)
-                .sum();
+        LocalDate today = LocalDate.now();
 
-        double todayDieselDispensed = todayTransactions.stream()
-                .filter(t -> "Diesel".equalsIgnoreCase(t.getFuelType()))
-                .mapToDouble(FuelTransaction::getAmount)
-                .sum();
+        // Today's and total statistics from the daily rollups
+        List<DailyStationFuelStatsRepository.FuelTotal> todayTotals = dailyStationFuelStatsRepository
+                .sumByFuelTypeForStation(stationId, today.toString(), today.toString());
+        List<DailyStationFuelStatsRepository.FuelTotal> allTotals = dailyStationFuelStatsRepository
+                .sumAllByFuelTypeForStation(stationId);
 
-        // Calculate total statistics
-        double totalFuelDispensed = allStationTransactions.stream()
-                .mapToDouble(FuelTransaction::getAmount)
-                .sum();
+        double todayPetrolDispensed = FuelUnits.toLitres(sumAmountMl(todayTotals, "Petrol"));
+        double todayDieselDispensed = FuelUnits.toLitres(sumAmountMl(todayTotals, "Diesel"));
 
-        double totalPetrolDispensed = allStationTransactions.stream()
-                .filter(t -> "Petrol".equalsIgnoreCase(t.getFuelType()))
-                .mapToDouble(FuelTransaction::getAmount)
-                .sum();
-
-        double totalDieselDispensed = allStationTransactions.stream()
-                .filter(t -> "Diesel".equalsIgnoreCase(t.getFuelType()))
-                .mapToDouble(FuelTransaction::getAmount)
-                .sum();
+        double totalPetrolDispensed = FuelUnits.toLitres(sumAmountMl(allTotals, "Petrol"));
+        double totalDieselDispensed = FuelUnits.toLitres(sumAmountMl(allTotals, "Diesel"));
+        double totalFuelDispensed = FuelUnits.toLitres(allTotals.stream()
+                .mapToLong(DailyStationFuelStatsRepository.FuelTotal::getAmountMl)
+                .sum());
 
         // Create dashboard response
         StationDashboardResponse dashboard = new StationDashboardResponse();
@@ -198,52 +197,40 @@ public class FuelStationService {
         dashboard.setIsActive(station.isActive());
 
         // Today's statistics
-        dashboard.setTodayTransactionCount(todayTransactions.size());
+        dashboard.setTodayTransactionCount((int) sumTransactionCount(todayTotals));
         dashboard.setTodayPetrolDispensed(todayPetrolDispensed);
         dashboard.setTodayDieselDispensed(todayDieselDispensed);
         dashboard.setTodayTotalDispensed(todayPetrolDispensed + todayDieselDispensed);
 
         // Total statistics
-        dashboard.setTotalTransactionCount(allStationTransactions.size());
+        dashboard.setTotalTransactionCount((int) sumTransactionCount(allTotals));
         dashboard.setTotalFuelDispensed(totalFuelDispensed);
         dashboard.setTotalPetrolDispensed(totalPetrolDispensed);
         dashboard.setTotalDieselDispensed(totalDieselDispensed);
 
         dashboard.setDate(today.toString());
 
-        return dashboard;
+        return new StationDashboardSnapshot(station.getOwner().getId(), dashboard);
     }
 
 
     public Object getStationStatistics(Long stationId, LocalDate startDate, LocalDate endDate, Long userId, boolean isAdmin) {
         FuelStation station = getStationById(stationId, userId, isAdmin);
 
-        long startTimestamp = startDate.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        long endTimestamp = endDate.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-
-        List<FuelTransaction> transactions = fuelTransactionRepository.findAll().stream()
-                .filter(t -> t.getStation().getId().equals(stationId) &&
-                        t.getTimestamp() >= startTimestamp &&
-                        t.getTimestamp() <= endTimestamp)
-                .collect(Collectors.toList());
+        List<DailyStationFuelStatsRepository.FuelTotal> totals = dailyStationFuelStatsRepository
+                .sumByFuelTypeForStation(stationId, startDate.toString(), endDate.toString());
 
         // Calculate statistics
-        double totalPetrol = transactions.stream()
-                .filter(t -> "Petrol".equalsIgnoreCase(t.getFuelType()))
-                .mapToDouble(FuelTransaction::getAmount)
-                .sum();
-
-        double totalDiesel = transactions.stream()
-                .filter(t -> "Diesel".equalsIgnoreCase(t.getFuelType()))
-                .mapToDouble(FuelTransaction::getAmount)
-                .sum();
+        double totalPetrol = FuelUnits.toLitres(sumAmountMl(totals, "Petrol"));
+        double totalDiesel = FuelUnits.toLitres(sumAmountMl(totals, "Diesel"));
+        long count = sumTransactionCount(totals);
 
         return new Object() {
             public final String stationName = station.getName();
             public final String registrationNumber = station.getRegistrationNumber();
             public final String periodStartDate  = startDate.toString();
             public final String periodEndDate  = endDate.toString();
-            public final Integer transactionCount = transactions.size();
+            public final Integer transactionCount = (int) count;
             public final Double totalPetrolDispensed = totalPetrol;
             public final Double totalDieselDispensed = totalDiesel;
             public final Double totalFuelDispensed = totalPetrol + totalDiesel;
@@ -251,6 +238,22 @@ public class FuelStationService {
     }
 
 
+    private static long sumAmountMl(List<DailyStationFuelStatsRepository.FuelTotal> totals, String fuelType) {
+        return totals.stream()
+                .filter(t -> fuelType.equalsIgnoreCase(t.getFuelType()))
+                .mapToLong(DailyStationFuelStatsRepository.FuelTotal::getAmountMl)
+                .sum();
+    }
+
+    private static long sumTransactionCount(List<DailyStationFuelStatsRepository.FuelTotal> totals) {
+        return totals.stream().mapToLong(DailyStationFuelStatsRepository.FuelTotal::getTransactionCount).sum();
+    }
+
+
+    private record StationDashboardSnapshot(Long ownerId, StationDashboardResponse dashboard) {
+    }
+
+
     public boolean isStationActiveAndExists(Long stationId) {
         Optional<FuelStation> stationOptional = fuelStationRepository.findById(stationId);
         return stationOptional.isPresent() && stationOptional.get().isActive();
@@ -0,0 +1,57 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.dto.FuelPumpResult;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, time-expiring cache of pump results by idempotency key.
+ * Answers most client retries without touching the database; the unique
+ * fuel_transactions.idempotency_key column remains the source of truth once
+ * an entry has been evicted or expired.
+ */
+@Component
+public class IdempotencyCache {
+
+    @Value("${pump.idempotency.cache-size:10000}")
+    private int maxEntries;
+
+    @Value("${pump.idempotency.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    private Map<String, CachedResult> entries;
+
+    @PostConstruct
+    public void init() {
+        // Access-ordered so the least recently used key is evicted first
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public synchronized FuelPumpResult get(String key) {
+        CachedResult cached = entries.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return cached.result;
+    }
+
+    public synchronized void put(String key, FuelPumpResult result) {
+        entries.put(key, new CachedResult(result, System.currentTimeMillis() + ttlMinutes * 60 * 1000));
+    }
+
+    private record CachedResult(FuelPumpResult result, long expiresAt) {
+    }
+}
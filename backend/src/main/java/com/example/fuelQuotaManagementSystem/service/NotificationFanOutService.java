@@ -0,0 +1,368 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.NotificationOutbox;
+import com.example.fuelQuotaManagementSystem.repository.NotificationOutboxRepository;
+import com.example.fuelQuotaManagementSystem.util.TokenBucket;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fan-out worker for month-start quota allocation SMS.
+ *
+ * Quota resets and the rollover only queue QUOTA_ALLOCATION rows in the notification
+ * outbox, so they finish in minutes however slow the SMS provider is. This worker claims
+ * due rows in batches and sends them at notification.fanout.rate-per-second (token
+ * bucket), with at most notification.fanout.max-in-flight requests open against the
+ * provider. A failed send goes back to the queue with exponential backoff until
+ * notification.fanout.max-attempts is reached.
+ *
+ * Only the node holding the sms-fanout lease in scheduler_leases dispatches, so the
+ * configured rate is the rate the provider sees from the whole cluster. The other nodes
+ * retry the lease every notification.fanout.lease-retry-ms and take over once the holder
+ * stops renewing it; a batch being sent when the lease is lost is still finished.
+ */
+@Service
+public class NotificationFanOutService {
+
+    public static final String LEASE_NAME = "sms-fanout";
+
+    @Autowired
+    private NotificationOutboxRepository notificationOutboxRepository;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ClusterScheduler clusterScheduler;
+
+    @Value("${notification.fanout.enabled:true}")
+    private boolean enabled;
+
+    @Value("${notification.fanout.rate-per-second:20}")
+    private double ratePerSecond;
+
+    @Value("${notification.fanout.max-in-flight:10}")
+    private int maxInFlight;
+
+    @Value("${notification.fanout.batch-size:500}")
+    private int batchSize;
+
+    @Value("${notification.fanout.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${notification.fanout.backoff-initial-ms:30000}")
+    private long backoffInitialMillis;
+
+    @Value("${notification.fanout.backoff-max-ms:1800000}")
+    private long backoffMaxMillis;
+
+    @Value("${notification.fanout.poll-interval-ms:1000}")
+    private long pollIntervalMillis;
+
+    // A throttled batch can take a while to send; a claim this old is treated as abandoned
+    @Value("${notification.fanout.claim-timeout-ms:1800000}")
+    private long claimTimeoutMillis;
+
+    // How often a node without the sms-fanout lease tries to take it
+    @Value("${notification.fanout.lease-retry-ms:30000}")
+    private long leaseRetryMillis;
+
+    private TokenBucket rateLimiter;
+    private Semaphore inFlight;
+    private ThreadPoolTaskExecutor senders;
+    private Thread dispatcher;
+    private volatile boolean running;
+    private volatile boolean leaseHeld;
+
+    // Since this node started
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+
+
+    @PostConstruct
+    public void start() {
+        rateLimiter = new TokenBucket(ratePerSecond, ratePerSecond);
+        inFlight = new Semaphore(maxInFlight);
+
+        senders = new ThreadPoolTaskExecutor();
+        senders.setCorePoolSize(maxInFlight);
+        senders.setMaxPoolSize(maxInFlight);
+        senders.setThreadNamePrefix("sms-fanout-");
+        senders.initialize();
+    }
+
+    // Rows queued before next_attempt_at existed become due at once
+    @EventListener(ApplicationReadyEvent.class)
+    public void startDispatcher() {
+        jdbcTemplate.update("UPDATE notification_outbox SET next_attempt_at = created_at " +
+                "WHERE notification_type = ? AND next_attempt_at IS NULL", NotificationOutbox.TYPE_QUOTA_ALLOCATION);
+
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "sms-fanout-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    // Rows claimed by an unfinished batch are released once their claim times out (releaseStaleClaims)
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+        senders.shutdown();
+    }
+
+
+     //Hand allocation notices whose claim timed out (their node died or hung) back to the queue - every minute
+
+    @Scheduled(fixedDelayString = "${notification.outbox.claim-sweep-ms:60000}", initialDelayString = "${notification.outbox.claim-sweep-ms:60000}")
+    public void releaseStaleClaims() {
+        if (!enabled) {
+            return;
+        }
+
+        long cutoff = System.currentTimeMillis() - claimTimeoutMillis;
+        Integer released = transactionTemplate.execute(status -> notificationOutboxRepository
+                .releaseStaleClaimsForType(NotificationOutbox.TYPE_QUOTA_ALLOCATION, cutoff));
+        if (released != null && released > 0) {
+            System.out.println("Released " + released + " allocation notices claimed more than " +
+                    claimTimeoutMillis + " ms ago");
+        }
+    }
+
+
+     //Outbox counts for allocation notices plus this node's send counters
+
+    public FanOutStats getStats() {
+        Map<String, Long> counts = new HashMap<>();
+        for (NotificationOutboxRepository.StatusCount count :
+                notificationOutboxRepository.countByStatusForType(NotificationOutbox.TYPE_QUOTA_ALLOCATION)) {
+            counts.put(count.getStatus(), count.getCount());
+        }
+
+        long queued = counts.getOrDefault(NotificationOutbox.STATUS_PENDING, 0L);
+        long inProgress = counts.getOrDefault(NotificationOutbox.STATUS_IN_PROGRESS, 0L);
+        Long etaSeconds = enabled ? (long) Math.ceil((queued + inProgress) / ratePerSecond) : null;
+
+        return new FanOutStats(enabled, queued, inProgress,
+                counts.getOrDefault(NotificationOutbox.STATUS_SENT, 0L),
+                counts.getOrDefault(NotificationOutbox.STATUS_FAILED, 0L),
+                sentCount.get(), failedCount.get(), retryCount.get(),
+                ratePerSecond, maxInFlight, etaSeconds);
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                if (!leaseHeld && !acquireLease()) {
+                    Thread.sleep(leaseRetryMillis);
+                    continue;
+                }
+
+                List<NotificationOutbox> batch = claimBatch();
+                if (batch.isEmpty()) {
+                    Thread.sleep(pollIntervalMillis);
+                    continue;
+                }
+                dispatch(batch);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("Notification fan-out error: " + e.getMessage());
+                try {
+                    Thread.sleep(pollIntervalMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean acquireLease() {
+        leaseHeld = clusterScheduler.holdLease(LEASE_NAME, () -> {
+            System.err.println("Lost the " + LEASE_NAME + " lease - another node may take over the allocation SMS");
+            leaseHeld = false;
+        });
+        if (leaseHeld) {
+            System.out.println("Sending allocation SMS from this node at " + ratePerSecond + "/s");
+        }
+        return leaseHeld;
+    }
+
+    private List<NotificationOutbox> claimBatch() {
+        String claimToken = UUID.randomUUID().toString();
+
+        return transactionTemplate.execute(status -> {
+            List<Long> ids = notificationOutboxRepository.findDueIdsByType(NotificationOutbox.TYPE_QUOTA_ALLOCATION,
+                    System.currentTimeMillis(), PageRequest.of(0, batchSize));
+            if (ids.isEmpty() || notificationOutboxRepository.claim(ids, claimToken, System.currentTimeMillis()) == 0) {
+                return Collections.<NotificationOutbox>emptyList();
+            }
+            return notificationOutboxRepository.findByClaimToken(claimToken);
+        });
+    }
+
+    private void dispatch(List<NotificationOutbox> batch) throws InterruptedException {
+        Queue<Long> sentIds = new ConcurrentLinkedQueue<>();
+        Queue<NotificationOutbox> failedEntries = new ConcurrentLinkedQueue<>();
+        List<Long> undeliverableIds = new ArrayList<>();
+
+        for (NotificationOutbox entry : batch) {
+            if (entry.getPhoneNumber() == null || entry.getPhoneNumber().trim().isEmpty()) {
+                undeliverableIds.add(entry.getId());
+                continue;
+            }
+
+            rateLimiter.acquire();
+            inFlight.acquire();
+            try {
+                senders.execute(() -> {
+                    try {
+                        if (send(entry)) {
+                            sentIds.add(entry.getId());
+                        } else {
+                            failedEntries.add(entry);
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        // Wait for the batch's last requests
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+
+        record(batch.get(0).getClaimToken(), new ArrayList<>(sentIds), new ArrayList<>(failedEntries), undeliverableIds);
+    }
+
+    private boolean send(NotificationOutbox entry) {
+        try {
+            return notificationService.sendSMS(entry.getPhoneNumber(), entry.getMessage());
+        } catch (Exception e) {
+            System.err.println("Failed to send allocation notice " + entry.getId() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void record(String claimToken, List<Long> sentIds, List<NotificationOutbox> failedEntries,
+                        List<Long> undeliverableIds) {
+        long now = System.currentTimeMillis();
+
+        List<Long> failedIds = new ArrayList<>(undeliverableIds);
+        // Rows with the same attempt count share a retry time
+        Map<Integer, List<Long>> retryIdsByAttempts = new HashMap<>();
+        int retries = 0;
+        for (NotificationOutbox entry : failedEntries) {
+            if (entry.getAttempts() + 1 < maxAttempts) {
+                retryIdsByAttempts.computeIfAbsent(entry.getAttempts(), attempts -> new ArrayList<>()).add(entry.getId());
+                retries++;
+            } else {
+                failedIds.add(entry.getId());
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!sentIds.isEmpty()) {
+                notificationOutboxRepository.updateStatus(sentIds, claimToken, NotificationOutbox.STATUS_SENT, now);
+            }
+            if (!failedIds.isEmpty()) {
+                notificationOutboxRepository.updateStatus(failedIds, claimToken, NotificationOutbox.STATUS_FAILED, now);
+            }
+            for (Map.Entry<Integer, List<Long>> retry : retryIdsByAttempts.entrySet()) {
+                notificationOutboxRepository.reschedule(retry.getValue(), claimToken, now + backoffMillis(retry.getKey()), now);
+            }
+        });
+
+        sentCount.addAndGet(sentIds.size());
+        failedCount.addAndGet(failedIds.size());
+        retryCount.addAndGet(retries);
+    }
+
+    // 30s, 60s, 120s, ... capped at notification.fanout.backoff-max-ms
+    private long backoffMillis(int previousAttempts) {
+        return Math.min(backoffMaxMillis, backoffInitialMillis << Math.min(previousAttempts, 20));
+    }
+
+    public static class FanOutStats {
+        private final boolean enabled;
+        private final long queued;
+        private final long inProgress;
+        private final long sent;
+        private final long failed;
+        private final long sentByThisNode;
+        private final long failedByThisNode;
+        private final long retriesScheduledByThisNode;
+        private final double ratePerSecond;
+        private final int maxInFlight;
+        private final Long etaSeconds;
+
+        public FanOutStats(boolean enabled, long queued, long inProgress, long sent, long failed,
+                           long sentByThisNode, long failedByThisNode, long retriesScheduledByThisNode,
+                           double ratePerSecond, int maxInFlight, Long etaSeconds) {
+            this.enabled = enabled;
+            this.queued = queued;
+            this.inProgress = inProgress;
+            this.sent = sent;
+            this.failed = failed;
+            this.sentByThisNode = sentByThisNode;
+            this.failedByThisNode = failedByThisNode;
+            this.retriesScheduledByThisNode = retriesScheduledByThisNode;
+            this.ratePerSecond = ratePerSecond;
+            this.maxInFlight = maxInFlight;
+            this.etaSeconds = etaSeconds;
+        }
+
+        // Getters
+        public boolean isEnabled() { return enabled; }
+        public long getQueued() { return queued; }
+        public long getInProgress() { return inProgress; }
+        public long getSent() { return sent; }
+        public long getFailed() { return failed; }
+        public long getSentByThisNode() { return sentByThisNode; }
+        public long getFailedByThisNode() { return failedByThisNode; }
+        public long getRetriesScheduledByThisNode() { return retriesScheduledByThisNode; }
+        public double getRatePerSecond() { return ratePerSecond; }
+        public int getMaxInFlight() { return maxInFlight; }
+        public Long getEtaSeconds() { return etaSeconds; }
+    }
+}
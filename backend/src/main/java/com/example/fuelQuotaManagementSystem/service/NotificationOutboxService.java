@@ -0,0 +1,260 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.NotificationOutbox;
+import com.example.fuelQuotaManagementSystem.repository.FuelTransactionRepository;
+import com.example.fuelQuotaManagementSystem.repository.NotificationOutboxRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Future;
+
+/**
+ * Transactional outbox for SMS notifications.
+ *
+ * Pump code only inserts an outbox row inside its own DB transaction, so the pump commits
+ * without waiting for the SMS provider. A scheduled drain claims pending rows in batches,
+ * sends them on a separate worker pool and then records the outcome (including
+ * fuel_transactions.notification_sent) with one bulk update per status. A failed send is
+ * retried with exponential backoff until notification.outbox.max-attempts is reached.
+ * Quota allocation notices are left to the throttled NotificationFanOutService, so a
+ * month-start backlog never delays pump receipts.
+ */
+@Service
+public class NotificationOutboxService {
+
+    @Autowired
+    private NotificationOutboxRepository notificationOutboxRepository;
+
+    @Autowired
+    private FuelTransactionRepository fuelTransactionRepository;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${notification.outbox.enabled:true}")
+    private boolean enabled;
+
+    @Value("${notification.outbox.workers:8}")
+    private int workerCount;
+
+    @Value("${notification.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${notification.outbox.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${notification.outbox.backoff-initial-ms:5000}")
+    private long backoffInitialMillis;
+
+    @Value("${notification.outbox.backoff-max-ms:300000}")
+    private long backoffMaxMillis;
+
+    // Longer than a batch can take to send; a claim this old is treated as abandoned
+    @Value("${notification.outbox.claim-timeout-ms:600000}")
+    private long claimTimeoutMillis;
+
+    private AsyncTaskExecutor workers;
+
+
+     //SMS sends block on the provider: one virtual thread per send when spring.threads.virtual.enabled
+     //is active (Java 21+), otherwise a fixed pool of notification.outbox.workers platform threads
+
+    @PostConstruct
+    public void startWorkers() {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            workers = new VirtualThreadTaskExecutor("notification-");
+            return;
+        }
+
+        ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+        pool.setCorePoolSize(workerCount);
+        pool.setMaxPoolSize(workerCount);
+        pool.setThreadNamePrefix("notification-");
+        pool.initialize();
+        workers = pool;
+    }
+
+    @PreDestroy
+    public void stopWorkers() {
+        if (workers instanceof ThreadPoolTaskExecutor pool) {
+            pool.shutdown();
+        }
+    }
+
+
+     //Queue an SMS; joins the caller's transaction so it commits (or rolls back) with it
+
+    public void enqueue(String notificationType, String phoneNumber, String message, Long transactionId) {
+        NotificationOutbox entry = new NotificationOutbox();
+        entry.setNotificationType(notificationType);
+        entry.setPhoneNumber(phoneNumber);
+        entry.setMessage(message);
+        entry.setTransactionId(transactionId);
+        entry.setStatus(NotificationOutbox.STATUS_PENDING);
+        entry.setNextAttemptAt(System.currentTimeMillis());
+        notificationOutboxRepository.save(entry);
+    }
+
+
+     //Queue many SMS with one JDBC batch (batch pump ingestion)
+
+    public void enqueueAll(List<NotificationOutbox> entries) {
+        long now = System.currentTimeMillis();
+        List<Object[]> rows = new ArrayList<>(entries.size());
+        for (NotificationOutbox entry : entries) {
+            rows.add(new Object[]{entry.getNotificationType(), entry.getPhoneNumber(), entry.getMessage(),
+                    entry.getTransactionId(), NotificationOutbox.STATUS_PENDING, 0, now, now});
+        }
+
+        jdbcTemplate.batchUpdate("INSERT INTO notification_outbox " +
+                "(notification_type, phone_number, message, transaction_id, status, attempts, next_attempt_at, created_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)", rows);
+    }
+
+
+     //Hand rows whose claim timed out (their worker died or hung) back to the queue - every minute
+
+    @Scheduled(fixedDelayString = "${notification.outbox.claim-sweep-ms:60000}", initialDelayString = "${notification.outbox.claim-sweep-ms:60000}")
+    public void releaseStaleClaims() {
+        if (!enabled) {
+            return;
+        }
+
+        long cutoff = System.currentTimeMillis() - claimTimeoutMillis;
+        Integer released = transactionTemplate.execute(status -> notificationOutboxRepository
+                .releaseStaleClaimsExcludingType(NotificationOutbox.TYPE_QUOTA_ALLOCATION, cutoff));
+        if (released != null && released > 0) {
+            System.out.println("Released " + released + " notification outbox rows claimed more than " +
+                    claimTimeoutMillis + " ms ago");
+        }
+    }
+
+
+    @Scheduled(fixedDelayString = "${notification.outbox.poll-interval-ms:500}")
+    public void drain() {
+        if (!enabled) {
+            return;
+        }
+
+        // Keep draining while batches come back full; failures wait out their backoff
+        List<NotificationOutbox> batch;
+        do {
+            batch = claimBatch();
+            if (batch.isEmpty() || processBatch(batch) == 0) {
+                break;
+            }
+        } while (batch.size() >= batchSize);
+    }
+
+    private List<NotificationOutbox> claimBatch() {
+        String claimToken = UUID.randomUUID().toString();
+
+        return transactionTemplate.execute(status -> {
+            List<Long> ids = notificationOutboxRepository.findDueIdsExcludingType(NotificationOutbox.TYPE_QUOTA_ALLOCATION,
+                    System.currentTimeMillis(), PageRequest.of(0, batchSize));
+            if (ids.isEmpty() || notificationOutboxRepository.claim(ids, claimToken, System.currentTimeMillis()) == 0) {
+                return Collections.<NotificationOutbox>emptyList();
+            }
+            return notificationOutboxRepository.findByClaimToken(claimToken);
+        });
+    }
+
+    private int processBatch(List<NotificationOutbox> batch) {
+        List<Future<Boolean>> results = new ArrayList<>(batch.size());
+        for (NotificationOutbox entry : batch) {
+            results.add(workers.submit(() -> send(entry)));
+        }
+
+        List<Long> sentIds = new ArrayList<>();
+        // Rows with the same attempt count share a retry time
+        Map<Integer, List<Long>> retryIdsByAttempts = new HashMap<>();
+        List<Long> failedIds = new ArrayList<>();
+        List<Long> sentTransactionIds = new ArrayList<>();
+
+        for (int i = 0; i < batch.size(); i++) {
+            NotificationOutbox entry = batch.get(i);
+            boolean sent;
+            try {
+                sent = results.get(i).get();
+            } catch (Exception e) {
+                sent = false;
+            }
+
+            if (sent) {
+                sentIds.add(entry.getId());
+                if (entry.getTransactionId() != null) {
+                    sentTransactionIds.add(entry.getTransactionId());
+                }
+            } else if (entry.getAttempts() + 1 < maxAttempts) {
+                retryIdsByAttempts.computeIfAbsent(entry.getAttempts(), attempts -> new ArrayList<>()).add(entry.getId());
+            } else {
+                failedIds.add(entry.getId());
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        String claimToken = batch.get(0).getClaimToken();
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!sentIds.isEmpty()) {
+                notificationOutboxRepository.updateStatus(sentIds, claimToken, NotificationOutbox.STATUS_SENT, now);
+            }
+            for (Map.Entry<Integer, List<Long>> retry : retryIdsByAttempts.entrySet()) {
+                notificationOutboxRepository.reschedule(retry.getValue(), claimToken, now + backoffMillis(retry.getKey()), now);
+            }
+            if (!failedIds.isEmpty()) {
+                notificationOutboxRepository.updateStatus(failedIds, claimToken, NotificationOutbox.STATUS_FAILED, now);
+            }
+            if (!sentTransactionIds.isEmpty()) {
+                fuelTransactionRepository.markNotificationsSent(sentTransactionIds);
+            }
+        });
+
+        return sentIds.size();
+    }
+
+    // 5s, 10s, 20s, ... capped at notification.outbox.backoff-max-ms
+    private long backoffMillis(int previousAttempts) {
+        return Math.min(backoffMaxMillis, backoffInitialMillis << Math.min(previousAttempts, 20));
+    }
+
+    private boolean send(NotificationOutbox entry) {
+        if (entry.getPhoneNumber() == null || entry.getPhoneNumber().trim().isEmpty()) {
+            System.out.println("No phone number provided for SMS notification");
+            return false;
+        }
+
+        try {
+            return notificationService.sendSMS(entry.getPhoneNumber(), entry.getMessage());
+        } catch (Exception e) {
+            System.err.println("Failed to send outbox notification " + entry.getId() + ": " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -138,10 +138,7 @@ public class NotificationService {
     public boolean sendLowQuotaWarning(String phoneNumber, String email, String vehicleRegNo,
                                        double remainingQuota, String fuelType, double warningThreshold) {
 
-        String smsMessage = String.format(
-                "Low Fuel Quota Alert: %s has only %.1fL %s remaining (below %.1fL threshold). Please refill soon!",
-                vehicleRegNo, remainingQuota, fuelType, warningThreshold
-        );
+        String smsMessage = createLowQuotaWarningSMSMessage(vehicleRegNo, remainingQuota, fuelType, warningThreshold);
 
         if (phoneNumber != null && !phoneNumber.trim().isEmpty()) {
             return sendSMS(phoneNumber, smsMessage);
@@ -173,10 +170,7 @@ public class NotificationService {
                                                       String vehicleRegNo, double allocatedQuota,
                                                       String month) {
 
-        String smsMessage = String.format(
-                "New Fuel Quota: Your %s has been allocated %.1fL quota for %s. Happy driving!",
-                vehicleRegNo, allocatedQuota, month
-        );
+        String smsMessage = createNewQuotaAllocationSMSMessage(vehicleRegNo, allocatedQuota, month);
 
         if (phoneNumber != null && !phoneNumber.trim().isEmpty()) {
             return sendSMS(phoneNumber, smsMessage);
@@ -215,7 +209,7 @@ public class NotificationService {
 
      //Create SMS message for fuel transaction
 
-    private String createFuelTransactionSMSMessage(String vehicleRegNo, String fuelType,
+    public String createFuelTransactionSMSMessage(String vehicleRegNo, String fuelType,
                                                    double amount, String stationName,
                                                    double remainingQuota, Long transactionId) {
         return String.format(
@@ -225,6 +219,27 @@ public class NotificationService {
     }
 
 
+     //Create SMS message for low quota warning
+
+    public String createLowQuotaWarningSMSMessage(String vehicleRegNo, double remainingQuota,
+                                                  String fuelType, double warningThreshold) {
+        return String.format(
+                "Low Fuel Quota Alert: %s has only %.1fL %s remaining (below %.1fL threshold). Please refill soon!",
+                vehicleRegNo, remainingQuota, fuelType, warningThreshold
+        );
+    }
+
+
+     //Create SMS message for a new monthly quota allocation
+
+    public String createNewQuotaAllocationSMSMessage(String vehicleRegNo, double allocatedQuota, String month) {
+        return String.format(
+                "New Fuel Quota: Your %s has been allocated %.1fL quota for %s. Happy driving!",
+                vehicleRegNo, allocatedQuota, month
+        );
+    }
+
+
      //Check if Twilio is properly configured
 
     private boolean isTwilioConfigured() {
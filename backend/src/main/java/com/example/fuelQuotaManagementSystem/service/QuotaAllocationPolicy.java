@@ -0,0 +1,344 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.QuotaAllocationRule;
+import com.example.fuelQuotaManagementSystem.entity.QuotaPolicyVersion;
+import com.example.fuelQuotaManagementSystem.repository.QuotaAllocationRuleRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Quota allocation policy compiled from the quota_allocation_rules table.
+ *
+ * Rules are compiled once into an immutable CompiledPolicy: every (period, vehicle type,
+ * fuel type) combination gets its own slot in flat arrays with the wildcard fallback
+ * already resolved, holding the engine capacity bands and their allocations. Evaluating
+ * the policy is a few hash lookups on the (cached) string hashes plus a scan of at most a
+ * handful of bands - no allocation and no case conversion for names spelled as in the
+ * rules, in lower case or in upper case.
+ *
+ * reload() compiles the current table and swaps the result in atomically; evaluations in
+ * flight keep using the policy they started with. A rule set that does not compile (e.g.
+ * no "*" / "*" default for a period) is rejected and the previous policy stays active.
+ *
+ * The reload endpoint also bumps quota_policy_version; every node checks that version every
+ * quota.policy.version-check-ms and reloads when it has changed, so a reload reaches the
+ * whole cluster. Default rules are seeded only by the node whose INSERT IGNORE created the
+ * version row, so nodes starting together do not seed them twice.
+ */
+@Component
+public class QuotaAllocationPolicy {
+
+    public static final String MONTHLY = "MONTHLY";
+
+    @Autowired
+    private QuotaAllocationRuleRepository quotaAllocationRuleRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Built-in defaults until the rule table has been read
+    private final AtomicReference<CompiledPolicy> current = new AtomicReference<>(compile(defaultRules(), 0L));
+
+    // quota_policy_version value the current policy was loaded at
+    private volatile long loadedVersion = -1;
+
+    @PostConstruct
+    public void load() {
+        int created = jdbcTemplate.update("INSERT IGNORE INTO quota_policy_version (id, version, updated_at) VALUES (?, 1, ?)",
+                QuotaPolicyVersion.ID, System.currentTimeMillis());
+        if (created == 1 && quotaAllocationRuleRepository.count() == 0) {
+            quotaAllocationRuleRepository.saveAll(defaultRules());
+            System.out.println("Seeded default quota allocation rules");
+        }
+        loadVersion(currentVersion());
+    }
+
+
+     //Reload on this node and tell the other nodes to reload too
+
+    public synchronized int reload() {
+        // Compiled first, so a rule set that is rejected here is never announced to the other nodes
+        List<QuotaAllocationRule> rules = quotaAllocationRuleRepository.findAll();
+        CompiledPolicy policy = compile(rules, System.currentTimeMillis());
+
+        jdbcTemplate.update("UPDATE quota_policy_version SET version = version + 1, updated_at = ? WHERE id = ?",
+                System.currentTimeMillis(), QuotaPolicyVersion.ID);
+        current.set(policy);
+        loadedVersion = currentVersion();
+
+        System.out.println("Quota allocation policy reloaded: " + rules.size() + " rules (version " + loadedVersion + ")");
+        return rules.size();
+    }
+
+
+     //Pick up a reload made on another node
+
+    @Scheduled(fixedDelayString = "${quota.policy.version-check-ms:30000}")
+    public synchronized void checkVersion() {
+        try {
+            long version = currentVersion();
+            if (version != loadedVersion) {
+                loadVersion(version);
+            }
+        } catch (Exception e) {
+            // Keep serving the previous policy; the next check retries
+            System.err.println("Quota allocation policy reload failed: " + e.getMessage());
+        }
+    }
+
+    // The version is read before the rules, so an update racing with this load is picked up by the next check
+    private int loadVersion(long version) {
+        List<QuotaAllocationRule> rules = quotaAllocationRuleRepository.findAll();
+        current.set(compile(rules, System.currentTimeMillis()));
+        loadedVersion = version;
+
+        System.out.println("Quota allocation policy loaded: " + rules.size() + " rules (version " + version + ")");
+        return rules.size();
+    }
+
+    private long currentVersion() {
+        return jdbcTemplate.queryForObject("SELECT version FROM quota_policy_version WHERE id = ?",
+                Long.class, QuotaPolicyVersion.ID);
+    }
+
+    public long allocationMl(String period, String vehicleType, String fuelType, Double engineCapacity) {
+        return current.get().allocationMl(period, vehicleType, fuelType, engineCapacity);
+    }
+
+    // Engine capacity bands in ascending order, for set-based allocation in SQL
+    public List<AllocationBand> bands(String period, String vehicleType, String fuelType) {
+        return current.get().bands(period, vehicleType, fuelType);
+    }
+
+    public long getLoadedAt() {
+        return current.get().loadedAt;
+    }
+
+    public int getRuleCount() {
+        return current.get().ruleCount;
+    }
+
+    // Previous hard-coded allocations, seeded into an empty rule table
+    static List<QuotaAllocationRule> defaultRules() {
+        return List.of(
+                new QuotaAllocationRule(MONTHLY, "Car", "Petrol", 1800.0, 60_000L),
+                new QuotaAllocationRule(MONTHLY, "Car", "Petrol", null, 80_000L),
+                new QuotaAllocationRule(MONTHLY, "Motorcycle", "Petrol", null, 20_000L),
+                new QuotaAllocationRule(MONTHLY, "Three Wheeler", "Petrol", null, 40_000L),
+                new QuotaAllocationRule(MONTHLY, QuotaAllocationRule.ANY, "Petrol", null, 60_000L),
+                new QuotaAllocationRule(MONTHLY, "Car", "Diesel", null, 80_000L),
+                new QuotaAllocationRule(MONTHLY, "Bus", "Diesel", null, 200_000L),
+                new QuotaAllocationRule(MONTHLY, "Lorry", "Diesel", null, 200_000L),
+                new QuotaAllocationRule(MONTHLY, QuotaAllocationRule.ANY, "Diesel", null, 80_000L),
+                new QuotaAllocationRule(MONTHLY, QuotaAllocationRule.ANY, QuotaAllocationRule.ANY, null, 60_000L)
+        );
+    }
+
+    static CompiledPolicy compile(List<QuotaAllocationRule> rules, long loadedAt) {
+        NameIndex periods = new NameIndex(false);
+        NameIndex vehicleTypes = new NameIndex(true);
+        NameIndex fuelTypes = new NameIndex(true);
+
+        Map<String, List<QuotaAllocationRule>> rulesByKey = new LinkedHashMap<>();
+        for (QuotaAllocationRule rule : rules) {
+            if (rule.getPeriod() == null || rule.getVehicleType() == null || rule.getFuelType() == null) {
+                throw new IllegalArgumentException("Quota allocation rule " + rule.getId() + " is missing period, vehicle type or fuel type");
+            }
+            if (rule.getQuotaMl() < 0) {
+                throw new IllegalArgumentException("Quota allocation rule " + rule.getId() + " has a negative quota");
+            }
+            int p = periods.register(rule.getPeriod());
+            int v = vehicleTypes.register(rule.getVehicleType());
+            int f = fuelTypes.register(rule.getFuelType());
+            rulesByKey.computeIfAbsent(p + "/" + v + "/" + f, key -> new ArrayList<>()).add(rule);
+        }
+
+        int cells = periods.size() * vehicleTypes.size() * fuelTypes.size();
+        double[][] maxCapacities = new double[cells][];
+        long[][] quotas = new long[cells][];
+
+        for (int p = 0; p < periods.size(); p++) {
+            for (int v = 0; v < vehicleTypes.size(); v++) {
+                for (int f = 0; f < fuelTypes.size(); f++) {
+                    // Most specific match wins: exact, any vehicle type, any fuel type, any of both
+                    List<QuotaAllocationRule> bands = rulesByKey.get(p + "/" + v + "/" + f);
+                    if (bands == null) bands = rulesByKey.get(p + "/0/" + f);
+                    if (bands == null) bands = rulesByKey.get(p + "/" + v + "/0");
+                    if (bands == null) bands = rulesByKey.get(p + "/0/0");
+                    if (bands == null) {
+                        throw new IllegalArgumentException("No \"*\" / \"*\" default rule for period " + periods.nameOf(p));
+                    }
+
+                    int cell = (p * vehicleTypes.size() + v) * fuelTypes.size() + f;
+                    compileBands(bands, cell, maxCapacities, quotas);
+                }
+            }
+        }
+
+        return new CompiledPolicy(periods.lookup, vehicleTypes.lookup, fuelTypes.lookup,
+                vehicleTypes.size(), fuelTypes.size(), maxCapacities, quotas, rules.size(), loadedAt);
+    }
+
+    private static void compileBands(List<QuotaAllocationRule> bands, int cell, double[][] maxCapacities, long[][] quotas) {
+        List<QuotaAllocationRule> sorted = new ArrayList<>(bands);
+        sorted.sort(Comparator.comparing(QuotaAllocationRule::getMaxEngineCapacity,
+                Comparator.nullsLast(Comparator.naturalOrder())));
+
+        double[] bounds = new double[sorted.size()];
+        long[] amounts = new long[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            Double max = sorted.get(i).getMaxEngineCapacity();
+            bounds[i] = max != null ? max : Double.POSITIVE_INFINITY;
+            amounts[i] = sorted.get(i).getQuotaMl();
+            if (i > 0 && bounds[i] == bounds[i - 1]) {
+                throw new IllegalArgumentException("Duplicate engine capacity band in quota allocation rules for " +
+                        sorted.get(i).getVehicleType() + " / " + sorted.get(i).getFuelType());
+            }
+        }
+        // The largest band is open-ended so every capacity gets an allocation
+        bounds[bounds.length - 1] = Double.POSITIVE_INFINITY;
+
+        maxCapacities[cell] = bounds;
+        quotas[cell] = amounts;
+    }
+
+    /**
+     * Immutable, array-indexed form of the rule table.
+     */
+    static final class CompiledPolicy {
+        private final Map<String, Integer> periods;
+        private final Map<String, Integer> vehicleTypes;
+        private final Map<String, Integer> fuelTypes;
+        private final int vehicleTypeCount;
+        private final int fuelTypeCount;
+        private final double[][] maxCapacities;
+        private final long[][] quotas;
+        private final int ruleCount;
+        private final long loadedAt;
+
+        private CompiledPolicy(Map<String, Integer> periods, Map<String, Integer> vehicleTypes, Map<String, Integer> fuelTypes,
+                               int vehicleTypeCount, int fuelTypeCount, double[][] maxCapacities, long[][] quotas,
+                               int ruleCount, long loadedAt) {
+            this.periods = periods;
+            this.vehicleTypes = vehicleTypes;
+            this.fuelTypes = fuelTypes;
+            this.vehicleTypeCount = vehicleTypeCount;
+            this.fuelTypeCount = fuelTypeCount;
+            this.maxCapacities = maxCapacities;
+            this.quotas = quotas;
+            this.ruleCount = ruleCount;
+            this.loadedAt = loadedAt;
+        }
+
+        long allocationMl(String period, String vehicleType, String fuelType, Double engineCapacity) {
+            int cell = cellOf(period, vehicleType, fuelType);
+
+            double capacity = engineCapacity != null ? engineCapacity : 0;
+            double[] bounds = maxCapacities[cell];
+            int band = 0;
+            while (capacity > bounds[band]) {
+                band++;
+            }
+            return quotas[cell][band];
+        }
+
+        List<AllocationBand> bands(String period, String vehicleType, String fuelType) {
+            int cell = cellOf(period, vehicleType, fuelType);
+
+            List<AllocationBand> bands = new ArrayList<>(quotas[cell].length);
+            double lower = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < quotas[cell].length; i++) {
+                bands.add(new AllocationBand(lower, maxCapacities[cell][i], quotas[cell][i]));
+                lower = maxCapacities[cell][i];
+            }
+            return bands;
+        }
+
+        private int cellOf(String period, String vehicleType, String fuelType) {
+            int p = indexOf(periods, period, -1);
+            if (p < 0) {
+                throw new IllegalArgumentException("No quota allocation rules for period: " + period);
+            }
+            return (p * vehicleTypeCount + indexOf(vehicleTypes, vehicleType, 0)) * fuelTypeCount
+                    + indexOf(fuelTypes, fuelType, 0);
+        }
+
+        private static int indexOf(Map<String, Integer> index, String name, int fallback) {
+            if (name == null) {
+                return fallback;
+            }
+            Integer i = index.get(name);
+            if (i == null) {
+                // Unusual casing only
+                i = index.get(name.toLowerCase(Locale.ROOT));
+            }
+            return i != null ? i : fallback;
+        }
+    }
+
+    /**
+     * Engine capacities in (minExclusive, maxInclusive] get quotaMl; a missing capacity counts as 0.
+     * The bounds are infinite for the first and last band.
+     */
+    public static final class AllocationBand {
+        private final double minExclusive;
+        private final double maxInclusive;
+        private final long quotaMl;
+
+        AllocationBand(double minExclusive, double maxInclusive, long quotaMl) {
+            this.minExclusive = minExclusive;
+            this.maxInclusive = maxInclusive;
+            this.quotaMl = quotaMl;
+        }
+
+        public double getMinExclusive() { return minExclusive; }
+        public double getMaxInclusive() { return maxInclusive; }
+        public long getQuotaMl() { return quotaMl; }
+    }
+
+    // Case-insensitive name -> dense index, with "*" fixed at index 0 where wildcards are allowed
+    private static final class NameIndex {
+        private final Map<String, Integer> lookup = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+
+        NameIndex(boolean wildcard) {
+            if (wildcard) {
+                register(QuotaAllocationRule.ANY);
+            }
+        }
+
+        int register(String name) {
+            String canonical = name.trim().toLowerCase(Locale.ROOT);
+            Integer index = lookup.get(canonical);
+            if (index == null) {
+                index = names.size();
+                names.add(canonical);
+                lookup.put(canonical, index);
+            }
+            lookup.put(name, index);
+            lookup.put(name.trim(), index);
+            lookup.put(canonical.toUpperCase(Locale.ROOT), index);
+            return index;
+        }
+
+        int size() {
+            return names.size();
+        }
+
+        String nameOf(int index) {
+            return names.get(index);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.QuotaPeriodSummary;
+import com.example.fuelQuotaManagementSystem.repository.QuotaPeriodSummaryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Closes quota periods: moves a finished month's rows from fuel_quotas into
+ * fuel_quota_history and writes its per-vehicle-type utilisation to quota_period_summaries.
+ *
+ * Rows move in quota id ranges of quota.archive.chunk-size, each copied (INSERT IGNORE)
+ * and deleted in one transaction, so fuel_quotas only holds open periods and a close that
+ * stops half-way can simply be run again. The summary is then rebuilt from the history
+ * table with one GROUP BY, which also folds in rows archived by an earlier run.
+ */
+@Service
+public class QuotaArchiveService {
+
+    public static final String PERIOD_CLOSE_JOB = "quota-period-close";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private QuotaPeriodSummaryRepository quotaPeriodSummaryRepository;
+
+    @Autowired
+    private QuotaLedger quotaLedger;
+
+    @Autowired
+    private ClusterScheduler clusterScheduler;
+
+    @Value("${quota.archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${quota.archive.chunk-size:5000}")
+    private int chunkSize;
+
+
+     //Close every finished period still in fuel_quotas - 1st of the month at 2:30 AM, after the rollover
+
+    @Scheduled(cron = "${quota.archive.cron:0 30 2 1 * ?}")
+    public void closeFinishedPeriods() {
+        // Left to the quota ledger node, the only one that can write back its pending deductions
+        if (!enabled || quotaLedger.isRunningElsewhere()) {
+            return;
+        }
+
+        List<String> periods = jdbcTemplate.queryForList(
+                "SELECT DISTINCT period FROM fuel_quotas WHERE period < ? ORDER BY period", String.class,
+                YearMonth.now().toString());
+        for (String period : periods) {
+            clusterScheduler.runExclusive(PERIOD_CLOSE_JOB, period, () -> closePeriod(YearMonth.parse(period)));
+        }
+    }
+
+    public CloseResult closePeriod(YearMonth period) {
+        if (!period.isBefore(YearMonth.now())) {
+            throw new IllegalArgumentException("Period " + period + " is still open");
+        }
+
+        if (quotaLedger.isRunningElsewhere()) {
+            throw new IllegalStateException("Another node runs the quota ledger; close period " + period + " on that node");
+        }
+
+        long startedAt = System.currentTimeMillis();
+        System.out.println("=== CLOSING QUOTA PERIOD " + period + " ===");
+
+        // The ledger's pending deductions reach the rows before they move, and no entry keeps serving them
+        quotaLedger.flushAndEvict(period.toString());
+
+        long archived = 0;
+        long lastId = 0;
+        while (true) {
+            Long chunkEnd = jdbcTemplate.queryForObject(
+                    "SELECT MAX(id) FROM (SELECT id FROM fuel_quotas WHERE period = ? AND id > ? ORDER BY id LIMIT ?) chunk",
+                    Long.class, period.toString(), lastId, chunkSize);
+            if (chunkEnd == null) {
+                break;
+            }
+            // Stop if the period-close lease was lost mid-run
+            clusterScheduler.checkLease();
+            archived += archiveChunk(period, lastId, chunkEnd);
+            lastId = chunkEnd;
+        }
+
+        List<QuotaPeriodSummary> summaries = summarize(period);
+
+        CloseResult result = new CloseResult(period.toString(), archived,
+                summaries.stream().mapToLong(QuotaPeriodSummary::getVehicleCount).sum(),
+                summaries.size(), System.currentTimeMillis() - startedAt);
+
+        System.out.println("=== QUOTA PERIOD " + period + " CLOSED ===");
+        System.out.println("Quotas archived: " + result.getQuotasArchived());
+        System.out.println("Quotas in history: " + result.getQuotasInHistory());
+        System.out.println("Took: " + result.getTookMillis() + " ms");
+        return result;
+    }
+
+    public List<QuotaPeriodSummary> getSummaries(YearMonth period) {
+        return quotaPeriodSummaryRepository.findByPeriodOrderByVehicleType(period.toString());
+    }
+
+    // Copies and deletes the period's quotas with ids in (afterId, lastId]; returns rows moved
+    private int archiveChunk(YearMonth period, long afterId, long lastId) {
+        long now = System.currentTimeMillis();
+
+        Integer moved = transactionTemplate.execute(status -> {
+            jdbcTemplate.update("INSERT IGNORE INTO fuel_quota_history (id, vehicle_id, vehicle_type, fuel_type, period, " +
+                            "allocated_quota_ml, used_quota_ml, created_at, closed_at) " +
+                            "SELECT q.id, q.vehicle_id, v.vehicle_type, q.fuel_type, q.period, q.allocated_quota_ml, " +
+                            "q.allocated_quota_ml - q.remaining_quota_ml, q.created_at, ? " +
+                            "FROM fuel_quotas q JOIN vehicles v ON v.id = q.vehicle_id " +
+                            "WHERE q.period = ? AND q.id > ? AND q.id <= ?",
+                    now, period.toString(), afterId, lastId);
+            return jdbcTemplate.update("DELETE FROM fuel_quotas WHERE period = ? AND id > ? AND id <= ?",
+                    period.toString(), afterId, lastId);
+        });
+        return moved != null ? moved : 0;
+    }
+
+    // Rebuilds the period's summary rows from its archived quotas
+    private List<QuotaPeriodSummary> summarize(YearMonth period) {
+        long now = System.currentTimeMillis();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM quota_period_summaries WHERE period = ?", period.toString());
+            jdbcTemplate.update("INSERT INTO quota_period_summaries (period, vehicle_type, vehicle_count, " +
+                            "allocated_quota_ml, used_quota_ml, fully_utilized_count, not_used_count, closed_at) " +
+                            "SELECT period, COALESCE(vehicle_type, 'Unknown'), COUNT(*), SUM(allocated_quota_ml), SUM(used_quota_ml), " +
+                            "SUM(CASE WHEN used_quota_ml >= allocated_quota_ml THEN 1 ELSE 0 END), " +
+                            "SUM(CASE WHEN used_quota_ml = 0 THEN 1 ELSE 0 END), ? " +
+                            "FROM fuel_quota_history WHERE period = ? GROUP BY period, COALESCE(vehicle_type, 'Unknown')",
+                    now, period.toString());
+        });
+        return getSummaries(period);
+    }
+
+    public static class CloseResult {
+        private final String period;
+        private final long quotasArchived;
+        private final long quotasInHistory;
+        private final int summaryRows;
+        private final long tookMillis;
+
+        public CloseResult(String period, long quotasArchived, long quotasInHistory, int summaryRows, long tookMillis) {
+            this.period = period;
+            this.quotasArchived = quotasArchived;
+            this.quotasInHistory = quotasInHistory;
+            this.summaryRows = summaryRows;
+            this.tookMillis = tookMillis;
+        }
+
+        // Getters
+        public String getPeriod() { return period; }
+        public long getQuotasArchived() { return quotasArchived; }
+        public long getQuotasInHistory() { return quotasInHistory; }
+        public int getSummaryRows() { return summaryRows; }
+        public long getTookMillis() { return tookMillis; }
+    }
+}
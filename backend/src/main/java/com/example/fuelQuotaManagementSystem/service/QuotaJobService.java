@@ -0,0 +1,539 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.QuotaJob;
+import com.example.fuelQuotaManagementSystem.entity.QuotaJobChunk;
+import com.example.fuelQuotaManagementSystem.repository.QuotaJobChunkRepository;
+import com.example.fuelQuotaManagementSystem.repository.QuotaJobRepository;
+import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+/**
+ * Chunked, resumable bulk quota jobs (reset all, bulk allocate, monthly reset).
+ *
+ * A coordinator thread per job pages the matching vehicle ids with keyset pagination and
+ * records each page as a QuotaJobChunk, advancing the job's checkpoint in the same
+ * transaction. Chunks run on a bounded worker pool; each chunk resets its vehicles, marks
+ * itself DONE and bumps the job counters in one transaction, so a chunk is applied exactly
+ * once. At most two chunks per worker are in flight, so paging never runs far ahead of the
+ * writers. A fixed-amount allocation covers each chunk with two set-based statements
+ * instead of one reset per vehicle.
+ *
+ * A node that restarts with a fixed quota.jobs.node-id resumes its RUNNING jobs: chunks that
+ * are not DONE run again, then paging continues from the checkpoint. The running node
+ * heartbeats its jobs every quota.jobs.heartbeat-ms; a job whose heartbeat is older than
+ * quota.jobs.orphan-timeout-ms (its node died, or came back under a new id) is adopted by
+ * any node and resumed there.
+ * Checkpoints are fenced on the job's owner and each chunk is claimed under its row lock
+ * before it is applied, so a node that lost a job cannot page or apply anything twice.
+ *
+ * Resets and allocations rewrite quota rows that the quota ledger serves from memory, and
+ * only the ledger node can reload them. While another node runs the ledger, jobs are
+ * neither started nor adopted here; they are left to the ledger node.
+ */
+@Service
+public class QuotaJobService {
+
+    @Autowired
+    private QuotaJobRepository quotaJobRepository;
+
+    @Autowired
+    private QuotaJobChunkRepository quotaJobChunkRepository;
+
+    @Autowired
+    private VehicleRepository vehicleRepository;
+
+    @Autowired
+    private FuelQuotaService fuelQuotaService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private QuotaLedger quotaLedger;
+
+    @Autowired
+    private ClusterScheduler clusterScheduler;
+
+    @Value("${quota.jobs.workers:4}")
+    private int workerCount;
+
+    @Value("${quota.jobs.chunk-size:500}")
+    private int chunkSize;
+
+    // Vehicles per chunk when a fixed amount is allocated with set-based statements
+    @Value("${quota.jobs.set-based-chunk-size:5000}")
+    private int setBasedChunkSize;
+
+    @Value("${quota.jobs.max-attempts:3}")
+    private int maxAttempts;
+
+    // Identifies the jobs this node owns and resumes after a restart; must be unique per running
+    // instance, so it defaults to the cluster scheduler's node id (host name and process id)
+    @Value("${quota.jobs.node-id:}")
+    private String configuredNodeId;
+
+    @Value("${quota.jobs.orphan-timeout-ms:120000}")
+    private long orphanTimeoutMillis;
+
+    private String nodeId;
+
+    // Jobs whose coordinator runs on this node; a job is removed once another node has adopted it
+    private final Set<Long> runningJobs = ConcurrentHashMap.newKeySet();
+    private ThreadPoolTaskExecutor coordinators;
+    private ThreadPoolTaskExecutor workers;
+
+
+    @PostConstruct
+    public void startWorkers() {
+        nodeId = configuredNodeId != null && !configuredNodeId.isBlank() ? configuredNodeId : clusterScheduler.getNodeId();
+
+        coordinators = new ThreadPoolTaskExecutor();
+        coordinators.setCorePoolSize(2);
+        coordinators.setMaxPoolSize(2);
+        coordinators.setThreadNamePrefix("quota-job-");
+        coordinators.initialize();
+
+        workers = new ThreadPoolTaskExecutor();
+        workers.setCorePoolSize(workerCount);
+        workers.setMaxPoolSize(workerCount);
+        workers.setThreadNamePrefix("quota-job-worker-");
+        workers.initialize();
+    }
+
+    // Running jobs stay RUNNING in the database and resume on the next start (or are adopted by another node)
+    @PreDestroy
+    public void stopWorkers() {
+        coordinators.shutdown();
+        workers.shutdown();
+    }
+
+
+     //Start a job; filters are matched case-insensitively, null (or "All" / "Both") meaning any
+
+    public JobProgress startJob(String jobType, YearMonth period, String vehicleType, String fuelType, Long allocatedQuotaMl) {
+        if (quotaLedger.isRunningElsewhere()) {
+            throw new IllegalStateException("Another node runs the quota ledger; start the " + jobType + " job on that node");
+        }
+
+        if (quotaJobRepository.existsByJobTypeAndPeriodAndStatus(jobType, period.toString(), QuotaJob.STATUS_RUNNING)) {
+            throw new IllegalStateException("A " + jobType + " job for " + period + " is already running");
+        }
+
+        QuotaJob job = new QuotaJob();
+        job.setRunningKey(jobType + ":" + period);
+        job.setJobType(jobType);
+        job.setStatus(QuotaJob.STATUS_RUNNING);
+        job.setPeriod(period.toString());
+        job.setVehicleTypeFilter(normaliseFilter(vehicleType, "All"));
+        job.setFuelTypeFilter(normaliseFilter(fuelType, "Both"));
+        job.setAllocatedQuotaMl(allocatedQuotaMl);
+        job.setNodeId(nodeId);
+        job.setTotalVehicles(vehicleRepository.countForJob(job.getVehicleTypeFilter(), job.getFuelTypeFilter()));
+        job.setStartedAt(System.currentTimeMillis());
+        job.setHeartbeatAt(job.getStartedAt());
+        try {
+            // The running_key unique key decides between nodes that passed the check above together
+            job = quotaJobRepository.save(job);
+        } catch (DataIntegrityViolationException e) {
+            throw new IllegalStateException("A " + jobType + " job for " + period + " is already running");
+        }
+
+        System.out.println("Started quota job " + job.getId() + " (" + jobType + ", " + period + ") for " +
+                job.getTotalVehicles() + " vehicles");
+        launch(job.getId());
+        return toProgress(job);
+    }
+
+
+     //Resume this node's jobs that were running when it stopped
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeJobs() {
+        for (QuotaJob job : quotaJobRepository.findByStatusAndNodeId(QuotaJob.STATUS_RUNNING, nodeId)) {
+            resume(job.getId());
+        }
+    }
+
+
+     //Keep this node's jobs alive and adopt jobs whose node stopped heartbeating
+
+    @Scheduled(fixedDelayString = "${quota.jobs.heartbeat-ms:30000}")
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        for (Long jobId : runningJobs) {
+            if (quotaJobRepository.heartbeat(jobId, nodeId, now) == 0) {
+                // Finished meanwhile, or adopted by another node after a long pause; the coordinator stops at its next page
+                runningJobs.remove(jobId);
+            }
+        }
+
+        for (QuotaJob job : quotaJobRepository.findOrphaned(now - orphanTimeoutMillis)) {
+            if (!runningJobs.contains(job.getId())) {
+                resume(job.getId());
+            }
+        }
+    }
+
+    private void resume(Long jobId) {
+        // Rows reset here would not reach another node's ledger, which keeps serving the old balances
+        if (quotaLedger.isRunningElsewhere()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (quotaJobRepository.adopt(jobId, nodeId, now - orphanTimeoutMillis, now) == 0) {
+            return;
+        }
+
+        QuotaJob job = transactionTemplate.execute(status -> {
+            QuotaJob current = quotaJobRepository.findById(jobId).orElseThrow();
+            // Rate and ETA are measured from the resume
+            current.setStartedAt(System.currentTimeMillis());
+            current.setProcessedAtStart(current.getProcessedVehicles());
+            return quotaJobRepository.save(current);
+        });
+
+        System.out.println("Resuming quota job " + job.getId() + " from vehicle id " + job.getLastChunkedVehicleId() +
+                " (" + job.getProcessedVehicles() + "/" + job.getTotalVehicles() + " processed)");
+        launch(job.getId());
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public List<JobProgress> getRecentJobs() {
+        return quotaJobRepository.findTop50ByOrderByIdDesc().stream()
+                .map(this::toProgress)
+                .collect(Collectors.toList());
+    }
+
+    public JobProgress getJob(Long jobId) {
+        return toProgress(quotaJobRepository.findById(jobId)
+                .orElseThrow(() -> new IllegalArgumentException("Quota job not found with ID: " + jobId)));
+    }
+
+     //Wait up to the timeout for a job to finish; returns its progress either way
+
+    public JobProgress awaitJob(Long jobId, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        JobProgress progress = getJob(jobId);
+        while (QuotaJob.STATUS_RUNNING.equals(progress.getStatus()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(Math.min(200, Math.max(deadline - System.currentTimeMillis(), 1)));
+            progress = getJob(jobId);
+        }
+        return progress;
+    }
+
+    private void launch(Long jobId) {
+        runningJobs.add(jobId);
+        coordinators.execute(() -> {
+            try {
+                run(jobId);
+            } finally {
+                runningJobs.remove(jobId);
+            }
+        });
+    }
+
+    private void run(Long jobId) {
+        // Bounds chunks queued or running for this job
+        int maxInFlight = workerCount * 2;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+
+        try {
+            QuotaJob job = quotaJobRepository.findById(jobId).orElseThrow();
+            int pageSize = job.getAllocatedQuotaMl() != null ? setBasedChunkSize : chunkSize;
+
+            // Chunks left unfinished (or failed) by an earlier run
+            for (QuotaJobChunk chunk : quotaJobChunkRepository.findByJobIdAndStatusNotOrderById(jobId, QuotaJobChunk.STATUS_DONE)) {
+                submit(job, chunk, inFlight);
+            }
+
+            long afterId = job.getLastChunkedVehicleId();
+            while (!job.isPagingComplete()) {
+                if (!runningJobs.contains(jobId)) {
+                    System.out.println("Quota job " + jobId + " was adopted by another node; stopping here");
+                    return;
+                }
+
+                List<Long> ids = vehicleRepository.findJobIdsAfter(afterId, job.getVehicleTypeFilter(),
+                        job.getFuelTypeFilter(), PageRequest.of(0, pageSize));
+
+                if (ids.isEmpty()) {
+                    transactionTemplate.executeWithoutResult(status ->
+                            quotaJobRepository.markPagingComplete(jobId, nodeId, System.currentTimeMillis()));
+                    break;
+                }
+
+                QuotaJobChunk chunk = new QuotaJobChunk();
+                chunk.setJobId(jobId);
+                chunk.setFirstVehicleId(ids.get(0));
+                chunk.setLastVehicleId(ids.get(ids.size() - 1));
+                chunk.setVehicleCount(ids.size());
+                chunk.setStatus(QuotaJobChunk.STATUS_PENDING);
+
+                // The chunk and the checkpoint commit together: after a crash every id is in exactly one chunk
+                long previousId = afterId;
+                QuotaJobChunk saved = transactionTemplate.execute(status -> {
+                    QuotaJobChunk created = quotaJobChunkRepository.save(chunk);
+                    if (quotaJobRepository.advanceCheckpoint(jobId, nodeId, previousId, created.getLastVehicleId(),
+                            System.currentTimeMillis()) == 0) {
+                        status.setRollbackOnly();
+                        return null;
+                    }
+                    return created;
+                });
+                if (saved == null) {
+                    System.out.println("Quota job " + jobId + " was adopted by another node; stopping here");
+                    return;
+                }
+
+                submit(job, saved, inFlight);
+                afterId = saved.getLastVehicleId();
+            }
+
+            // Wait for the last chunks
+            inFlight.acquire(maxInFlight);
+            finish(jobId);
+
+        } catch (InterruptedException e) {
+            // Shutting down: the job stays RUNNING and resumes on restart, or on another node once its heartbeat is stale
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Quota job " + jobId + " failed: " + e.getMessage());
+            e.printStackTrace();
+            markFailed(jobId, e.getMessage());
+        }
+    }
+
+    private void submit(QuotaJob job, QuotaJobChunk chunk, Semaphore inFlight) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            workers.execute(() -> {
+                try {
+                    processChunk(job, chunk);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void processChunk(QuotaJob job, QuotaJobChunk chunk) {
+        YearMonth period = YearMonth.parse(job.getPeriod());
+        // A chunk that failed in an earlier run was already counted as failed
+        long previouslyFailed = QuotaJobChunk.STATUS_FAILED.equals(chunk.getStatus()) ? chunk.getVehicleCount() : 0;
+        Exception lastError = null;
+
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            int attempts = attempt;
+            try {
+                boolean applied = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                    // Another node that adopted the job may have applied this chunk already
+                    if (quotaJobChunkRepository.claim(chunk.getId(), System.currentTimeMillis()) == 0) {
+                        return false;
+                    }
+                    int processed = applyChunk(job, chunk, period);
+
+                    long now = System.currentTimeMillis();
+                    quotaJobChunkRepository.updateStatus(chunk.getId(), QuotaJobChunk.STATUS_DONE, processed,
+                            attempts, null, now);
+                    quotaJobRepository.addProgress(job.getId(), processed, -previouslyFailed, now);
+                    return true;
+                }));
+                if (!applied) {
+                    System.out.println("Quota job " + job.getId() + " chunk " + chunk.getId() + " was already applied");
+                }
+                return;
+
+            } catch (Exception e) {
+                lastError = e;
+                System.err.println("Quota job " + job.getId() + " chunk " + chunk.getId() + " attempt " + attempt +
+                        " failed: " + e.getMessage());
+            }
+        }
+
+        String errorMessage = truncate(lastError.getMessage());
+        transactionTemplate.executeWithoutResult(status -> {
+            long now = System.currentTimeMillis();
+            if (quotaJobChunkRepository.claim(chunk.getId(), now) == 0) {
+                return;
+            }
+            quotaJobChunkRepository.updateStatus(chunk.getId(), QuotaJobChunk.STATUS_FAILED, chunk.getVehicleCount(),
+                    maxAttempts, errorMessage, now);
+            quotaJobRepository.addProgress(job.getId(), 0, chunk.getVehicleCount() - previouslyFailed, now);
+        });
+    }
+
+    // A fixed amount is applied set-based; policy allocations are resolved per vehicle
+    private int applyChunk(QuotaJob job, QuotaJobChunk chunk, YearMonth period) {
+        if (job.getAllocatedQuotaMl() != null) {
+            return fuelQuotaService.allocateForJob(period, chunk.getFirstVehicleId(), chunk.getLastVehicleId(),
+                    job.getVehicleTypeFilter(), job.getFuelTypeFilter(), job.getAllocatedQuotaMl());
+        }
+
+        List<VehicleRepository.VehicleQuotaView> vehicles = vehicleRepository.findJobChunk(
+                chunk.getFirstVehicleId(), chunk.getLastVehicleId(),
+                job.getVehicleTypeFilter(), job.getFuelTypeFilter());
+        for (VehicleRepository.VehicleQuotaView vehicle : vehicles) {
+            fuelQuotaService.resetForJob(vehicle, period);
+        }
+        return vehicles.size();
+    }
+
+    private void finish(Long jobId) {
+        QuotaJob job = transactionTemplate.execute(status -> {
+            QuotaJob current = quotaJobRepository.findById(jobId).orElseThrow();
+            if (!nodeId.equals(current.getNodeId()) || !QuotaJob.STATUS_RUNNING.equals(current.getStatus())) {
+                // Adopted by another node, which finishes it
+                return null;
+            }
+            boolean failedChunks = quotaJobChunkRepository.countByJobIdAndStatus(jobId, QuotaJobChunk.STATUS_FAILED) > 0;
+            current.setStatus(failedChunks ? QuotaJob.STATUS_COMPLETED_WITH_ERRORS : QuotaJob.STATUS_COMPLETED);
+            current.setFinishedAt(System.currentTimeMillis());
+            current.setRunningKey(null);
+            return quotaJobRepository.save(current);
+        });
+        if (job == null) {
+            return;
+        }
+
+        System.out.println("=== QUOTA JOB " + jobId + " " + job.getStatus() + " ===");
+        System.out.println("Processed: " + job.getProcessedVehicles() + ", failed: " + job.getFailedVehicles() +
+                ", took: " + (job.getFinishedAt() - job.getStartedAt()) + " ms");
+    }
+
+    private void markFailed(Long jobId, String errorMessage) {
+        try {
+            // Only while this node still owns the job; an adopter carries on with it
+            transactionTemplate.executeWithoutResult(status -> quotaJobRepository.findById(jobId)
+                    .filter(job -> nodeId.equals(job.getNodeId()))
+                    .ifPresent(job -> {
+                        job.setStatus(QuotaJob.STATUS_FAILED);
+                        job.setRunningKey(null);
+                        job.setErrorMessage(truncate(errorMessage));
+                        job.setFinishedAt(System.currentTimeMillis());
+                        quotaJobRepository.save(job);
+                    }));
+        } catch (Exception e) {
+            System.err.println("Could not mark quota job " + jobId + " as failed: " + e.getMessage());
+        }
+    }
+
+    private JobProgress toProgress(QuotaJob job) {
+        long end = job.getFinishedAt() != null ? job.getFinishedAt() : System.currentTimeMillis();
+        long elapsedMillis = job.getStartedAt() != null ? Math.max(end - job.getStartedAt(), 1) : 1;
+        long done = job.getProcessedVehicles() + job.getFailedVehicles();
+        long remaining = Math.max(job.getTotalVehicles() - done, 0);
+
+        double ratePerSecond = (job.getProcessedVehicles() - job.getProcessedAtStart()) * 1000.0 / elapsedMillis;
+        Long etaSeconds = QuotaJob.STATUS_RUNNING.equals(job.getStatus()) && ratePerSecond > 0
+                ? (long) Math.ceil(remaining / ratePerSecond)
+                : null;
+        double percentComplete = job.getTotalVehicles() > 0 ? done * 100.0 / job.getTotalVehicles() : 100.0;
+
+        return new JobProgress(job.getId(), job.getJobType(), job.getStatus(), job.getPeriod(),
+                job.getVehicleTypeFilter(), job.getFuelTypeFilter(), job.getNodeId(), job.getTotalVehicles(),
+                job.getProcessedVehicles(), job.getFailedVehicles(), Math.min(percentComplete, 100.0), ratePerSecond,
+                etaSeconds, job.getStartedAt(), job.getFinishedAt(), elapsedMillis, job.getErrorMessage());
+    }
+
+    private static String normaliseFilter(String filter, String any) {
+        if (filter == null || filter.isBlank() || any.equalsIgnoreCase(filter.trim())) {
+            return null;
+        }
+        return filter.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+
+    public static class JobProgress {
+        private final Long id;
+        private final String jobType;
+        private final String status;
+        private final String period;
+        private final String vehicleType;
+        private final String fuelType;
+        private final String nodeId;
+        private final long totalVehicles;
+        private final long processedVehicles;
+        private final long failedVehicles;
+        private final double percentComplete;
+        private final double vehiclesPerSecond;
+        private final Long etaSeconds;
+        private final Long startedAt;
+        private final Long finishedAt;
+        private final long elapsedMillis;
+        private final String errorMessage;
+
+        public JobProgress(Long id, String jobType, String status, String period, String vehicleType, String fuelType,
+                           String nodeId, long totalVehicles, long processedVehicles, long failedVehicles,
+                           double percentComplete, double vehiclesPerSecond, Long etaSeconds,
+                           Long startedAt, Long finishedAt, long elapsedMillis, String errorMessage) {
+            this.id = id;
+            this.jobType = jobType;
+            this.status = status;
+            this.period = period;
+            this.vehicleType = vehicleType;
+            this.fuelType = fuelType;
+            this.nodeId = nodeId;
+            this.totalVehicles = totalVehicles;
+            this.processedVehicles = processedVehicles;
+            this.failedVehicles = failedVehicles;
+            this.percentComplete = percentComplete;
+            this.vehiclesPerSecond = vehiclesPerSecond;
+            this.etaSeconds = etaSeconds;
+            this.startedAt = startedAt;
+            this.finishedAt = finishedAt;
+            this.elapsedMillis = elapsedMillis;
+            this.errorMessage = errorMessage;
+        }
+
+        // Getters
+        public Long getId() { return id; }
+        public String getJobType() { return jobType; }
+        public String getStatus() { return status; }
+        public String getPeriod() { return period; }
+        public String getVehicleType() { return vehicleType; }
+        public String getFuelType() { return fuelType; }
+        public String getNodeId() { return nodeId; }
+        public long getTotalVehicles() { return totalVehicles; }
+        public long getProcessedVehicles() { return processedVehicles; }
+        public long getFailedVehicles() { return failedVehicles; }
+        public double getPercentComplete() { return percentComplete; }
+        public double getVehiclesPerSecond() { return vehiclesPerSecond; }
+        public Long getEtaSeconds() { return etaSeconds; }
+        public Long getStartedAt() { return startedAt; }
+        public Long getFinishedAt() { return finishedAt; }
+        public long getElapsedMillis() { return elapsedMillis; }
+        public String getErrorMessage() { return errorMessage; }
+    }
+}
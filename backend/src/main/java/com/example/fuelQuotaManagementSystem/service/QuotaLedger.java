@@ -0,0 +1,492 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.FuelQuota;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional in-process quota ledger (quota.ledger.enabled=true).
+ *
+ * Balances are kept per (vehicleId, fuelType, period) as lock-free millilitre counters,
+ * so quota checks and deductions on the pump path never touch the database. The amounts
+ * deducted since the last flush are written back to fuel_quotas in JDBC batches by a
+ * write-behind flush, as relative updates, so a reset or allocation that rewrites a balance
+ * in the database is never overwritten by an older in-memory balance. When such a rewrite
+ * replaces an entry, the deductions it has not flushed yet belong to the old allocation and
+ * are dropped, as the rewrite drops them in the database.
+ *
+ * Loss window: deductions made since the last successful flush live only in memory.
+ * If the JVM dies, at most quota.ledger.flush-interval-ms worth of deductions (plus the
+ * flush in progress) is lost and those vehicles get that fuel back. A clean shutdown
+ * flushes everything.
+ *
+ * The ledger is the authority for remaining quota while enabled, so only one node may run
+ * it: it holds the quota-ledger lease in scheduler_leases. A node with the ledger enabled
+ * fails to start while another node holds the lease, and refuses deductions if it loses the
+ * lease later. Nodes without the ledger refuse deductions while another node holds it.
+ */
+@Component
+public class QuotaLedger {
+
+    public static final String LEASE_NAME = "quota-ledger";
+
+    // Returned by Entry.tryDeduct when the entry has been replaced; look the entry up again
+    public static final long RETIRED = -2;
+
+    // How long a pump waits for another transaction that is creating the same quota row
+    private static final long UNCOMMITTED_WAIT_SECONDS = 30;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ClusterScheduler clusterScheduler;
+
+    @Value("${quota.ledger.enabled:false}")
+    private boolean enabled;
+
+    @Value("${quota.ledger.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    private static final String LOAD_SELECT =
+            "SELECT id, vehicle_id, fuel_type, allocated_quota_ml, remaining_quota_ml, period FROM fuel_quotas ";
+
+    private final Map<LedgerKey, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<Entry> dirtyEntries = ConcurrentHashMap.newKeySet();
+
+    // Rows created by a transaction that has not committed yet; cached once it commits
+    private final Map<LedgerKey, Entry> uncommitted = new ConcurrentHashMap<>();
+
+    // Set once this node holds the ledger lease and has warm loaded
+    private volatile boolean active;
+
+    // On nodes without the ledger: another node holds the ledger lease
+    private volatile boolean heldElsewhere;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+     //Warm load every quota of the current period before traffic arrives
+
+    // Ahead of other ready listeners (e.g. resuming quota jobs), which check whether the ledger runs here
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmLoad() {
+        if (!enabled) {
+            checkLedgerLease();
+            return;
+        }
+
+        // Two ledgers would each hand out the full balance, so refuse to start next to another one
+        if (!clusterScheduler.holdLease(LEASE_NAME, this::deactivate)) {
+            throw new IllegalStateException("quota.ledger.enabled is set but another node holds the " + LEASE_NAME +
+                    " lease; only one node may run the quota ledger");
+        }
+
+        synchronized (this) {
+            load(jdbcTemplate.queryForList(LOAD_SELECT + "WHERE period = ?", YearMonth.now().toString()));
+            active = true;
+        }
+
+        System.out.println("Quota ledger warm load completed: " + entries.size() + " quotas cached");
+    }
+
+    // Lost the lease: another node may take it over, so stop serving balances and write back what is pending
+    private void deactivate() {
+        System.err.println("WARNING: quota ledger lease lost - this node refuses quota deductions until it is restarted");
+        active = false;
+        flush();
+        entries.clear();
+    }
+
+
+     //Nodes without the ledger watch its lease, so they never deduct next to a node that runs it
+
+    @Scheduled(fixedDelayString = "${quota.ledger.lease-check-ms:5000}")
+    public void checkLedgerLease() {
+        if (enabled) {
+            return;
+        }
+        heldElsewhere = clusterScheduler.isLeaseHeldElsewhere(LEASE_NAME);
+    }
+
+    // Called before a database deduction; the ledger node would not see it
+    public void checkDatabaseDeductionAllowed() {
+        if (heldElsewhere) {
+            throw new IllegalStateException("Another node runs the quota ledger; quotas cannot be deducted on this node");
+        }
+    }
+
+     //Whether another node runs the ledger, so only that node can write back its pending deductions
+
+    public boolean isRunningElsewhere() {
+        return enabled ? !active : clusterScheduler.isLeaseHeldElsewhere(LEASE_NAME);
+    }
+
+    private void requireActive() {
+        if (!active) {
+            throw new IllegalStateException("The quota ledger is not active on this node; quotas cannot be deducted");
+        }
+    }
+
+
+     //Re-read quotas rewritten in bulk (set-based allocation) so the ledger stops serving their old balances
+
+    public synchronized void reload(String period, List<Long> vehicleIds) {
+        if (!active || vehicleIds.isEmpty()) {
+            return;
+        }
+
+        for (int from = 0; from < vehicleIds.size(); from += flushBatchSize) {
+            List<Long> ids = vehicleIds.subList(from, Math.min(from + flushBatchSize, vehicleIds.size()));
+            List<Object> args = new ArrayList<>(ids.size() + 1);
+            args.add(period);
+            args.addAll(ids);
+
+            load(jdbcTemplate.queryForList(LOAD_SELECT + "WHERE period = ? AND vehicle_id IN (" +
+                    String.join(", ", Collections.nCopies(ids.size(), "?")) + ")", args.toArray()));
+        }
+    }
+
+    private void load(List<Map<String, Object>> rows) {
+        for (Map<String, Object> row : rows) {
+            LedgerKey key = new LedgerKey(
+                    ((Number) row.get("vehicle_id")).longValue(),
+                    (String) row.get("fuel_type"),
+                    (String) row.get("period"));
+            replace(key, new Entry(key,
+                    ((Number) row.get("id")).longValue(),
+                    ((Number) row.get("allocated_quota_ml")).longValue(),
+                    ((Number) row.get("remaining_quota_ml")).longValue()));
+        }
+    }
+
+    // Called holding the flush lock, so no flush is half way through the previous entry. Its unflushed
+    // deductions were made from the old allocation; the new balance, read from the database, replaces them
+    private void replace(LedgerKey key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null && previous != entry) {
+            previous.retire();
+        }
+    }
+
+
+    public Entry get(Long vehicleId, String fuelType) {
+        requireActive();
+        return entries.get(new LedgerKey(vehicleId, fuelType, YearMonth.now().toString()));
+    }
+
+
+     //Register (or replace) the balance of a quota row rewritten by a committed reset
+
+    public synchronized Entry track(FuelQuota quota) {
+        LedgerKey key = keyOf(quota);
+        Entry entry = newEntry(key, quota);
+        if (active) {
+            replace(key, entry);
+        }
+        return entry;
+    }
+
+
+     //Register a quota row the caller's transaction has just inserted
+
+    /**
+     * Until the transaction commits the entry is only handed to that transaction's thread; if it
+     * rolls back, the row is gone and the entry is dropped with the deductions made from it.
+     */
+    public Entry trackCreated(FuelQuota quota) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            // The insert has already committed
+            return track(quota);
+        }
+
+        LedgerKey key = keyOf(quota);
+        Entry entry = newEntry(key, quota);
+        entry.creator = Thread.currentThread();
+        while (true) {
+            Entry other;
+            synchronized (this) {
+                requireActive();
+                other = uncommitted.get(key);
+                if (other == null) {
+                    uncommitted.put(key, entry);
+                    break;
+                }
+            }
+            // A rolled back creation of the same row has not been cleaned up yet
+            other.awaitCommitOrRollback();
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                settle(key, entry, status == STATUS_COMMITTED);
+            }
+        });
+        return entry;
+    }
+
+    private synchronized void settle(LedgerKey key, Entry entry, boolean committed) {
+        uncommitted.remove(key, entry);
+        if (!committed) {
+            entry.retire();
+        } else if (active) {
+            replace(key, entry);
+        }
+        entry.creator = null;
+        entry.settled.countDown();
+    }
+
+
+     //Register a quota row read from the database unless another thread already cached it
+
+    public Entry trackIfAbsent(FuelQuota quota) {
+        LedgerKey key = keyOf(quota);
+        while (true) {
+            Entry other;
+            synchronized (this) {
+                requireActive();
+                Entry existing = entries.get(key);
+                if (existing != null) {
+                    return existing;
+                }
+                other = uncommitted.get(key);
+                if (other == null) {
+                    Entry entry = newEntry(key, quota);
+                    entries.put(key, entry);
+                    return entry;
+                }
+                if (other.creator == Thread.currentThread()) {
+                    return other;
+                }
+            }
+            // Created by another pump that has not committed: its balance may still be rolled back
+            other.awaitCommitOrRollback();
+        }
+    }
+
+    private Entry newEntry(LedgerKey key, FuelQuota quota) {
+        return new Entry(key, quota.getId(), quota.getAllocatedQuotaMl(), quota.getRemainingQuotaMl());
+    }
+
+    private static LedgerKey keyOf(FuelQuota quota) {
+        return new LedgerKey(quota.getVehicle().getId(), quota.getFuelType(), quota.getPeriod());
+    }
+
+
+     //Write-behind flush of changed balances
+
+    @Scheduled(fixedDelayString = "${quota.ledger.flush-interval-ms:1000}")
+    public synchronized void flush() {
+        if (!enabled || dirtyEntries.isEmpty()) {
+            return;
+        }
+
+        List<Entry> batch = new ArrayList<>(flushBatchSize);
+        List<Entry> notCommitted = new ArrayList<>();
+        Iterator<Entry> iterator = dirtyEntries.iterator();
+
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            // Remove before the pending amount is taken so a concurrent deduction re-marks the entry dirty
+            iterator.remove();
+            if (entry.creator != null) {
+                // Its row is still locked by the creating transaction
+                notCommitted.add(entry);
+                continue;
+            }
+            batch.add(entry);
+
+            if (batch.size() >= flushBatchSize) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+        dirtyEntries.addAll(notCommitted);
+
+        evictPastPeriods();
+    }
+
+
+     //Write back and drop a period's entries before its rows are archived
+
+    public synchronized void flushAndEvict(String period) {
+        // Past periods' flushed entries are evicted by the flush itself
+        flush();
+        entries.entrySet().removeIf(e -> {
+            if (!e.getKey().period().equals(period)) {
+                return false;
+            }
+            e.getValue().retire();
+            return true;
+        });
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void writeBatch(List<Entry> batch) {
+        long now = System.currentTimeMillis();
+        List<Entry> written = new ArrayList<>(batch.size());
+        List<Long> deltas = new ArrayList<>(batch.size());
+        List<Object[]> args = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            long deltaMl = entry.pendingMl.getAndSet(0);
+            // A retired entry's deductions belong to an allocation that has been replaced
+            if (deltaMl != 0 && !entry.retired) {
+                written.add(entry);
+                deltas.add(deltaMl);
+                args.add(new Object[]{deltaMl, now, entry.getQuotaId()});
+            }
+        }
+        if (args.isEmpty()) {
+            return;
+        }
+
+        int[] updated;
+        try {
+            updated = jdbcTemplate.batchUpdate("UPDATE fuel_quotas SET remaining_quota_ml = remaining_quota_ml - ?, updated_at = ? WHERE id = ?", args);
+        } catch (Exception e) {
+            System.err.println("Quota ledger flush failed for " + written.size() + " quotas: " + e.getMessage());
+            // Put the amounts back so the next flush retries them
+            for (int i = 0; i < written.size(); i++) {
+                written.get(i).pendingMl.addAndGet(deltas.get(i));
+            }
+            dirtyEntries.addAll(written);
+            return;
+        }
+
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                // The row is gone (archived, or its creation rolled back): stop serving a balance for it
+                Entry entry = written.get(i);
+                System.err.println("WARNING: quota " + entry.getQuotaId() + " no longer exists; dropped " +
+                        deltas.get(i) + " ml of ledger deductions");
+                entries.remove(entry.key, entry);
+                entry.retire();
+            }
+        }
+    }
+
+    private void evictPastPeriods() {
+        String currentPeriod = YearMonth.now().toString();
+        entries.entrySet().removeIf(e -> {
+            if (e.getKey().period().equals(currentPeriod) || e.getValue().pendingMl.get() != 0) {
+                return false;
+            }
+            e.getValue().retire();
+            return true;
+        });
+    }
+
+    private record LedgerKey(long vehicleId, String fuelType, String period) {
+    }
+
+    public class Entry {
+        private final LedgerKey key;
+        private final long quotaId;
+        private final long allocatedMl;
+        private final AtomicLong remainingMl;
+        // Deducted (net of refunds) since the last flush
+        private final AtomicLong pendingMl = new AtomicLong();
+        // Replaced or evicted: no longer deducts, and its pending amount is never flushed
+        private volatile boolean retired;
+        // Thread of the transaction that created the row, until that transaction completes
+        private volatile Thread creator;
+        private final CountDownLatch settled = new CountDownLatch(1);
+
+        private Entry(LedgerKey key, long quotaId, long allocatedMl, long remainingMl) {
+            this.key = key;
+            this.quotaId = quotaId;
+            this.allocatedMl = allocatedMl;
+            this.remainingMl = new AtomicLong(remainingMl);
+        }
+
+        /**
+         * Lock-free conditional deduction.
+         * Returns the balance before the deduction, -1 when the amount is not covered, or
+         * RETIRED when the entry has been replaced and the current one must be looked up.
+         */
+        public long tryDeduct(long amountMl) {
+            while (true) {
+                long current = remainingMl.get();
+                if (retired) {
+                    return RETIRED;
+                }
+                if (current < amountMl) {
+                    return -1;
+                }
+                if (remainingMl.compareAndSet(current, current - amountMl)) {
+                    pendingMl.addAndGet(amountMl);
+                    dirtyEntries.add(this);
+                    return current;
+                }
+            }
+        }
+
+        // Give back a deduction whose pump transaction rolled back
+        public void refund(long amountMl) {
+            if (retired) {
+                // Dropped together with the rest of the entry's pending deductions
+                return;
+            }
+            remainingMl.addAndGet(amountMl);
+            pendingMl.addAndGet(-amountMl);
+            dirtyEntries.add(this);
+        }
+
+        private void retire() {
+            retired = true;
+            // Fails the compare-and-set of any deduction racing with the retirement
+            remainingMl.set(Long.MIN_VALUE / 2);
+            pendingMl.set(0);
+            dirtyEntries.remove(this);
+        }
+
+        private void awaitCommitOrRollback() {
+            try {
+                if (!settled.await(UNCOMMITTED_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Timed out waiting for quota " + quotaId + " to be created");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for quota " + quotaId + " to be created");
+            }
+        }
+
+        public long getQuotaId() { return quotaId; }
+        public long getAllocatedMl() { return allocatedMl; }
+        public long getRemainingMl() { return remainingMl.get(); }
+    }
+}
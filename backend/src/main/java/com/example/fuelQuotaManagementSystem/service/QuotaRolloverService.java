@@ -0,0 +1,219 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.NotificationOutbox;
+import com.example.fuelQuotaManagementSystem.util.FuelUnits;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Set-based monthly rollover: creates every vehicle's quota for a period with bulk
+ * INSERT IGNORE ... SELECT statements instead of a lookup/delete/insert/SMS per vehicle.
+ *
+ * One statement runs per vehicle id range, (vehicle type, fuel type) combination and
+ * engine capacity band of the allocation policy. Each statement commits on its own, so no
+ * transaction spans the whole fleet. Rows that already exist (e.g. created lazily by a
+ * scan just after midnight) are left untouched, so the job can be re-run safely.
+ * "New quota" SMS are queued afterwards in JDBC batches through the notification outbox.
+ * The rows this job creates are marked allocation_notice_pending, and each batch of SMS is
+ * queued in the same transaction that clears the mark, so a run that dies before or while
+ * queueing leaves the rest to the next run, and rows created by scans never get the SMS.
+ */
+@Service
+public class QuotaRolloverService {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private QuotaAllocationPolicy quotaAllocationPolicy;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private NotificationOutboxService notificationOutboxService;
+
+    @Autowired
+    private ClusterScheduler clusterScheduler;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Vehicle id range covered by one INSERT ... SELECT
+    @Value("${quota.rollover.chunk-size:50000}")
+    private int chunkSize;
+
+    @Value("${quota.rollover.notification-batch-size:1000}")
+    private int notificationBatchSize;
+
+    public RolloverResult rollover(YearMonth period) {
+        long startedAt = System.currentTimeMillis();
+        System.out.println("=== STARTING BULK QUOTA ROLLOVER FOR " + period + " ===");
+
+        Map<String, Object> range = jdbcTemplate.queryForMap("SELECT MIN(id) AS min_id, MAX(id) AS max_id, COUNT(*) AS total, " +
+                "SUM(CASE WHEN vehicle_type IS NULL OR fuel_type IS NULL THEN 1 ELSE 0 END) AS skipped FROM vehicles");
+        long vehicles = ((Number) range.get("total")).longValue();
+        // No policy match without a vehicle and fuel type; the INSERT ... SELECT statements leave these out
+        long skipped = range.get("skipped") != null ? ((Number) range.get("skipped")).longValue() : 0;
+
+        long created = 0;
+        if (vehicles > 0) {
+            long minId = ((Number) range.get("min_id")).longValue();
+            long maxId = ((Number) range.get("max_id")).longValue();
+            List<Map<String, Object>> combinations = jdbcTemplate.queryForList(
+                    "SELECT DISTINCT vehicle_type, fuel_type FROM vehicles WHERE vehicle_type IS NOT NULL AND fuel_type IS NOT NULL");
+
+            for (long fromId = minId; fromId <= maxId; fromId += chunkSize) {
+                // Stop if the monthly reset's lease was lost mid-run
+                clusterScheduler.checkLease();
+                for (Map<String, Object> combination : combinations) {
+                    created += insertQuotas(period, (String) combination.get("vehicle_type"),
+                            (String) combination.get("fuel_type"), fromId, fromId + chunkSize);
+                }
+            }
+        }
+
+        long quotasCreatedAt = System.currentTimeMillis();
+        long notificationsQueued = queueAllocationNotifications(period);
+
+        // Every vehicle with both types gets a row from exactly one band, unless its row already existed
+        RolloverResult result = new RolloverResult(period.toString(), vehicles, created, vehicles - skipped - created,
+                skipped, notificationsQueued, quotasCreatedAt - startedAt, System.currentTimeMillis() - startedAt);
+
+        System.out.println("=== BULK QUOTA ROLLOVER FOR " + period + " COMPLETED ===");
+        System.out.println("Created: " + created + ", already present: " + result.getAlreadyPresent() +
+                ", skipped: " + skipped + ", SMS queued: " + notificationsQueued + ", took: " + result.getTotalMillis() + " ms");
+        return result;
+    }
+
+    private int insertQuotas(YearMonth period, String vehicleType, String fuelType, long fromId, long toId) {
+        long start = period.atDay(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long end = period.atEndOfMonth().atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        int inserted = 0;
+        for (QuotaAllocationPolicy.AllocationBand band : quotaAllocationPolicy.bands(QuotaAllocationPolicy.MONTHLY, vehicleType, fuelType)) {
+            StringBuilder sql = new StringBuilder("INSERT IGNORE INTO fuel_quotas (vehicle_id, fuel_type, period, " +
+                    "allocated_quota_ml, remaining_quota_ml, allocation_period, start_date, end_date, created_at, updated_at, " +
+                    "allocation_notice_pending) " +
+                    "SELECT v.id, v.fuel_type, ?, ?, ?, ?, ?, ?, ?, ?, TRUE FROM vehicles v " +
+                    "WHERE v.id >= ? AND v.id < ? AND v.vehicle_type = ? AND v.fuel_type = ?");
+            List<Object> args = new ArrayList<>(List.of(period.toString(), band.getQuotaMl(), band.getQuotaMl(),
+                    QuotaAllocationPolicy.MONTHLY, start, end, System.currentTimeMillis(), System.currentTimeMillis(),
+                    fromId, toId, vehicleType, fuelType));
+
+            // Missing engine capacity counts as 0, as in the policy
+            if (band.getMinExclusive() != Double.NEGATIVE_INFINITY) {
+                sql.append(" AND COALESCE(v.engine_capacity, 0) > ?");
+                args.add(band.getMinExclusive());
+            }
+            if (band.getMaxInclusive() != Double.POSITIVE_INFINITY) {
+                sql.append(" AND COALESCE(v.engine_capacity, 0) <= ?");
+                args.add(band.getMaxInclusive());
+            }
+
+            inserted += jdbcTemplate.update(sql.toString(), args.toArray());
+        }
+        return inserted;
+    }
+
+    // Keyset-paged over the period's rows still owed their SMS, whichever run created them
+    private long queueAllocationNotifications(YearMonth period) {
+        String month = period.getMonth().toString() + " " + period.getYear();
+        long queued = 0;
+        long lastId = 0;
+
+        while (true) {
+            clusterScheduler.checkLease();
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT q.id, q.allocated_quota_ml, v.registration_number, u.phone_number " +
+                            "FROM fuel_quotas q JOIN vehicles v ON v.id = q.vehicle_id JOIN users u ON u.id = v.owner_id " +
+                            "WHERE q.period = ? AND q.allocation_notice_pending = TRUE AND q.id > ? ORDER BY q.id LIMIT ?",
+                    period.toString(), lastId, notificationBatchSize);
+            if (rows.isEmpty()) {
+                return queued;
+            }
+
+            List<NotificationOutbox> entries = new ArrayList<>(rows.size());
+            List<Object[]> quotaIds = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                quotaIds.add(new Object[]{((Number) row.get("id")).longValue()});
+                String phoneNumber = (String) row.get("phone_number");
+                if (phoneNumber == null || phoneNumber.trim().isEmpty()) {
+                    entries.add(null);
+                    continue;
+                }
+                NotificationOutbox entry = new NotificationOutbox();
+                entry.setNotificationType(NotificationOutbox.TYPE_QUOTA_ALLOCATION);
+                entry.setPhoneNumber(phoneNumber);
+                entry.setMessage(notificationService.createNewQuotaAllocationSMSMessage(
+                        (String) row.get("registration_number"),
+                        FuelUnits.toLitres(((Number) row.get("allocated_quota_ml")).longValue()),
+                        month));
+                entries.add(entry);
+            }
+            // Unmarked and queued together. The read above takes no lock, so an overlapping run
+            // (a manual rollover during the cron's) may have read the same rows: only the rows this
+            // run's UPDATE unmarks are queued, so a row is never sent twice nor left marked once queued.
+            Integer queuedInBatch = transactionTemplate.execute(status -> {
+                int[] unmarked = jdbcTemplate.batchUpdate("UPDATE fuel_quotas SET allocation_notice_pending = NULL " +
+                        "WHERE id = ? AND allocation_notice_pending = TRUE", quotaIds);
+                List<NotificationOutbox> batch = new ArrayList<>(entries.size());
+                for (int i = 0; i < unmarked.length; i++) {
+                    if (unmarked[i] == 1 && entries.get(i) != null) {
+                        batch.add(entries.get(i));
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    notificationOutboxService.enqueueAll(batch);
+                }
+                return batch.size();
+            });
+            queued += queuedInBatch;
+
+            lastId = ((Number) rows.get(rows.size() - 1).get("id")).longValue();
+        }
+    }
+
+    public static class RolloverResult {
+        private final String period;
+        private final long vehicles;
+        private final long quotasCreated;
+        private final long alreadyPresent;
+        // Vehicles without a vehicle or fuel type, which get no quota
+        private final long skipped;
+        private final long notificationsQueued;
+        private final long quotaMillis;
+        private final long totalMillis;
+
+        public RolloverResult(String period, long vehicles, long quotasCreated, long alreadyPresent, long skipped,
+                              long notificationsQueued, long quotaMillis, long totalMillis) {
+            this.period = period;
+            this.vehicles = vehicles;
+            this.quotasCreated = quotasCreated;
+            this.alreadyPresent = alreadyPresent;
+            this.skipped = skipped;
+            this.notificationsQueued = notificationsQueued;
+            this.quotaMillis = quotaMillis;
+            this.totalMillis = totalMillis;
+        }
+
+        // Getters
+        public String getPeriod() { return period; }
+        public long getVehicles() { return vehicles; }
+        public long getQuotasCreated() { return quotasCreated; }
+        public long getAlreadyPresent() { return alreadyPresent; }
+        public long getSkipped() { return skipped; }
+        public long getNotificationsQueued() { return notificationsQueued; }
+        public long getQuotaMillis() { return quotaMillis; }
+        public long getTotalMillis() { return totalMillis; }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams fuel transactions of a date range as CSV or NDJSON, optionally gzipped.
+ *
+ * Rows are read through a forward-only, read-only cursor (MySQL streams them one at a time
+ * with fetch size Integer.MIN_VALUE) and written to the response as they arrive, so memory
+ * use does not depend on how many transactions are exported.
+ */
+@Service
+public class TransactionExportService {
+
+    public static final String FORMAT_CSV = "CSV";
+    public static final String FORMAT_NDJSON = "NDJSON";
+
+    private static final String EXPORT_SQL =
+            "SELECT t.id, v.registration_number, s.name AS station_name, t.fuel_type, t.amount_ml, t.timestamp, t.notification_sent " +
+                    "FROM fuel_transactions t JOIN vehicles v ON v.id = t.vehicle_id JOIN fuel_stations s ON s.id = t.station_id " +
+                    "WHERE t.timestamp >= ? AND t.timestamp < ? ORDER BY t.timestamp, t.id";
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    // One object per line: no separator between root values, each line ends with '\n'
+    private static final JsonFactory JSON_FACTORY = new JsonFactory().setRootValueSeparator(null);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Fetch size for databases other than MySQL
+    @Value("${export.fetch-size:1000}")
+    private int fetchSize;
+
+
+    public static boolean isSupportedFormat(String format) {
+        return FORMAT_CSV.equalsIgnoreCase(format) || FORMAT_NDJSON.equalsIgnoreCase(format);
+    }
+
+    public long export(LocalDate startDate, LocalDate endDate, String format, boolean gzip, OutputStream out) throws IOException {
+        long from = startDate.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long to = endDate.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        boolean ndjson = FORMAT_NDJSON.equalsIgnoreCase(format);
+
+        GZIPOutputStream gzipStream = gzip ? new GZIPOutputStream(out, 64 * 1024) : null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(gzip ? gzipStream : out, StandardCharsets.UTF_8), 64 * 1024);
+        JsonGenerator json = ndjson ? JSON_FACTORY.createGenerator(writer) : null;
+
+        if (!ndjson) {
+            writer.write("Transaction ID,Vehicle Registration,Station Name,Fuel Type,Amount,Date,Time,Notification Sent\n");
+        }
+
+        long[] rows = new long[1];
+        try {
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(EXPORT_SQL,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                boolean mysql = connection.getMetaData().getDatabaseProductName().toLowerCase().contains("mysql");
+                statement.setFetchSize(mysql ? Integer.MIN_VALUE : fetchSize);
+                statement.setLong(1, from);
+                statement.setLong(2, to);
+                return statement;
+            }, (RowCallbackHandler) resultSet -> {
+                try {
+                    if (ndjson) {
+                        writeJson(json, resultSet);
+                    } else {
+                        writeCsv(writer, resultSet);
+                    }
+                    rows[0]++;
+                } catch (IOException e) {
+                    // Usually the client went away; stops the query
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (json != null) {
+            json.flush();
+        }
+        writer.flush();
+        if (gzipStream != null) {
+            gzipStream.finish();
+        }
+        out.flush();
+        return rows[0];
+    }
+
+    private static void writeCsv(Writer writer, ResultSet row) throws IOException, SQLException {
+        LocalDateTime time = toLocalDateTime(row.getLong("timestamp"));
+
+        writer.write(Long.toString(row.getLong("id")));
+        writer.write(',');
+        writer.write(csvField(row.getString("registration_number")));
+        writer.write(',');
+        writer.write(csvField(row.getString("station_name")));
+        writer.write(',');
+        writer.write(csvField(row.getString("fuel_type")));
+        writer.write(',');
+        writer.write(litres(row.getLong("amount_ml")));
+        writer.write(',');
+        writer.write(time.toLocalDate().toString());
+        writer.write(',');
+        writer.write(TIME_FORMAT.format(time));
+        writer.write(',');
+        writer.write(row.getBoolean("notification_sent") ? "Yes" : "No");
+        writer.write('\n');
+    }
+
+    private static void writeJson(JsonGenerator json, ResultSet row) throws IOException, SQLException {
+        LocalDateTime time = toLocalDateTime(row.getLong("timestamp"));
+
+        json.writeStartObject();
+        json.writeNumberField("transactionId", row.getLong("id"));
+        json.writeStringField("vehicleRegistration", row.getString("registration_number"));
+        json.writeStringField("stationName", row.getString("station_name"));
+        json.writeStringField("fuelType", row.getString("fuel_type"));
+        json.writeFieldName("amount");
+        json.writeNumber(litres(row.getLong("amount_ml")));
+        json.writeStringField("date", time.toLocalDate().toString());
+        json.writeStringField("time", TIME_FORMAT.format(time));
+        json.writeNumberField("timestamp", row.getLong("timestamp"));
+        json.writeBooleanField("notificationSent", row.getBoolean("notification_sent"));
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    // Two decimals, as the export always had
+    private static String litres(long millilitres) {
+        return BigDecimal.valueOf(millilitres, 3).setScale(2, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static LocalDateTime toLocalDateTime(long timestamp) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.fuelQuotaManagementSystem.util;
+
+/**
+ * Quota balances and pump amounts are stored and computed as whole millilitres (long),
+ * so repeated deductions stay exact. Litres only appear at the API/SMS boundary.
+ */
+public final class FuelUnits {
+
+    public static final long MILLILITRES_PER_LITRE = 1000L;
+
+    private FuelUnits() {
+    }
+
+    public static long toMillilitres(double litres) {
+        return Math.round(litres * MILLILITRES_PER_LITRE);
+    }
+
+    public static double toLitres(long millilitres) {
+        return millilitres / (double) MILLILITRES_PER_LITRE;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.fuelQuotaManagementSystem.benchmark;
+
+import com.example.fuelQuotaManagementSystem.FuelQuotaManagementSystemApplication;
+import com.example.fuelQuotaManagementSystem.entity.FuelStation;
+import com.example.fuelQuotaManagementSystem.entity.User;
+import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import com.example.fuelQuotaManagementSystem.repository.FuelStationRepository;
+import com.example.fuelQuotaManagementSystem.repository.UserRepository;
+import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+import com.example.fuelQuotaManagementSystem.service.FuelQuotaService;
+import com.example.fuelQuotaManagementSystem.service.QRCodeService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Full backend started in-process on a random port with its own in-memory H2 database,
+ * plus helpers to seed vehicles/stations through the repositories and obtain JWTs.
+ * Shared by the benchmark and load-generation tests.
+ */
+public final class EmbeddedBackend implements AutoCloseable {
+
+	// Realistic national mix: mostly motorcycles and cars, some three wheelers and diesel commercial vehicles
+	private static final String[][] VEHICLE_MIX = {
+			{"Motorcycle", "Petrol"}, {"Motorcycle", "Petrol"}, {"Motorcycle", "Petrol"},
+			{"Car", "Petrol"}, {"Car", "Petrol"}, {"Car", "Diesel"},
+			{"Three Wheeler", "Petrol"}, {"Three Wheeler", "Petrol"},
+			{"Lorry", "Diesel"}, {"Bus", "Diesel"}
+	};
+
+	private static final int SEED_CHUNK = 1000;
+
+	private final ConfigurableApplicationContext context;
+	private final int port;
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private EmbeddedBackend(ConfigurableApplicationContext context) {
+		this.context = context;
+		this.port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+	}
+
+	public static EmbeddedBackend start(String databaseName, String... extraProperties) {
+		List<String> properties = new ArrayList<>(List.of(
+				"server.port=0",
+				"spring.datasource.url=jdbc:h2:mem:" + databaseName +
+						";MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=TIMESTAMP,VALUE;DB_CLOSE_DELAY=-1",
+				"spring.datasource.hikari.maximum-pool-size=50",
+				"spring.jpa.properties.hibernate.generate_statistics=false"));
+		properties.addAll(List.of(extraProperties));
+
+		return new EmbeddedBackend(new SpringApplicationBuilder(FuelQuotaManagementSystemApplication.class)
+				.properties(properties.toArray(new String[0]))
+				.run());
+	}
+
+	public String baseUrl() {
+		return "http://localhost:" + port;
+	}
+
+	public <T> T getBean(Class<T> type) {
+		return context.getBean(type);
+	}
+
+	/**
+	 * Seeds stations (owned by the default "station" user) and vehicles (owned by the default
+	 * "vehicle" user) and creates this period's quota for every vehicle.
+	 */
+	public Fleet seed(int vehicleCount, int stationCount) {
+		UserRepository userRepository = getBean(UserRepository.class);
+		VehicleRepository vehicleRepository = getBean(VehicleRepository.class);
+		FuelStationRepository fuelStationRepository = getBean(FuelStationRepository.class);
+		FuelQuotaService fuelQuotaService = getBean(FuelQuotaService.class);
+		QRCodeService qrCodeService = getBean(QRCodeService.class);
+
+		// Default users come from DataInitializer
+		User vehicleOwner = userRepository.findByUsername("vehicle").orElseThrow();
+		User stationOwner = userRepository.findByUsername("station").orElseThrow();
+
+		List<Long> stationIds = new ArrayList<>(stationCount);
+		for (int from = 0; from < stationCount; from += SEED_CHUNK) {
+			List<FuelStation> chunk = new ArrayList<>();
+			for (int i = from; i < Math.min(stationCount, from + SEED_CHUNK); i++) {
+				FuelStation station = new FuelStation();
+				station.setName("Load Station " + i);
+				station.setRegistrationNumber("LST" + i);
+				station.setCity("City " + (i % 25));
+				station.setOwner(stationOwner);
+				station.setHasPetrol(true);
+				station.setHasDiesel(true);
+				station.setActive(true);
+				chunk.add(station);
+			}
+			fuelStationRepository.saveAll(chunk).forEach(station -> stationIds.add(station.getId()));
+		}
+
+		List<FleetVehicle> vehicles = new ArrayList<>(vehicleCount);
+		for (int from = 0; from < vehicleCount; from += SEED_CHUNK) {
+			List<Vehicle> chunk = new ArrayList<>();
+			for (int i = from; i < Math.min(vehicleCount, from + SEED_CHUNK); i++) {
+				String[] kind = VEHICLE_MIX[i % VEHICLE_MIX.length];
+				Vehicle vehicle = new Vehicle();
+				vehicle.setRegistrationNumber("LD-" + i);
+				vehicle.setChassisNumber("LCH" + i);
+				vehicle.setVehicleType(kind[0]);
+				vehicle.setFuelType(kind[1]);
+				vehicle.setEngineCapacity(i % 7 == 0 ? 2000.0 : 1200.0);
+				vehicle.setOwner(vehicleOwner);
+				vehicle.setQrCode(qrCodeService.generateQRCode(vehicle));
+				chunk.add(vehicle);
+			}
+			for (Vehicle vehicle : vehicleRepository.saveAll(chunk)) {
+				fuelQuotaService.getCurrentQuota(vehicle, vehicle.getFuelType());
+				vehicles.add(new FleetVehicle(vehicle.getId(), vehicle.getRegistrationNumber(), vehicle.getFuelType(),
+						vehicle.getQrCode()));
+			}
+		}
+
+		return new Fleet(vehicles, stationIds);
+	}
+
+	public String login(String username, String password) throws Exception {
+		HttpResponse<String> response = HttpClient.newHttpClient().send(
+				HttpRequest.newBuilder(URI.create(baseUrl() + "/api/auth/signin"))
+						.header("Content-Type", "application/json")
+						.POST(HttpRequest.BodyPublishers.ofString(
+								objectMapper.writeValueAsString(Map.of("username", username, "password", password))))
+						.build(),
+				HttpResponse.BodyHandlers.ofString());
+		return (String) objectMapper.readValue(response.body(), Map.class).get("token");
+	}
+
+	@Override
+	public void close() {
+		context.close();
+	}
+
+	public record FleetVehicle(long id, String registrationNumber, String fuelType, String qrCode) {
+	}
+
+	public record Fleet(List<FleetVehicle> vehicles, List<Long> stationIds) {
+	}
+}
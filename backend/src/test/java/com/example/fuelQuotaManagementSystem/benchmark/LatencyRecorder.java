@@ -0,0 +1,98 @@
+package com.example.fuelQuotaManagementSystem.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram in microseconds.
+ *
+ * Log-linear buckets: exact below 64us, then 64 sub-buckets per power of two, so any
+ * reported percentile is within ~1.6% of the recorded value. Safe to share between
+ * thousands of client threads.
+ */
+public final class LatencyRecorder {
+
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	public void recordNanos(long nanos) {
+		record(nanos / 1_000);
+	}
+
+	public void record(long micros) {
+		long value = Math.max(0, micros);
+		counts.incrementAndGet(indexOf(value));
+		total.increment();
+		max.accumulate(value);
+	}
+
+	public long count() {
+		return total.sum();
+	}
+
+	public long maxMicros() {
+		return max.get();
+	}
+
+	// Smallest recorded bucket value at or above the given percentile (0-100)
+	public long percentileMicros(double percentile) {
+		long count = count();
+		if (count == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return Math.min(highestValueIn(i), maxMicros());
+			}
+		}
+		return maxMicros();
+	}
+
+	// Non-empty buckets in ascending order: highest value of the bucket (micros) -> count
+	public Map<Long, Long> buckets() {
+		Map<Long, Long> buckets = new LinkedHashMap<>();
+		for (int i = 0; i < BUCKETS; i++) {
+			long count = counts.get(i);
+			if (count > 0) {
+				buckets.put(highestValueIn(i), count);
+			}
+		}
+		return buckets;
+	}
+
+	public String summary(String label, double seconds) {
+		return String.format("%-28s %9d req %10.1f req/s   p50 %8.2f ms   p99 %8.2f ms   max %8.2f ms",
+				label, count(), count() / seconds,
+				percentileMicros(50) / 1000.0, percentileMicros(99) / 1000.0, maxMicros() / 1000.0);
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (magnitude - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+	}
+
+	static long highestValueIn(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int magnitude = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+		int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		return ((SUB_BUCKETS + subBucket + 1L) << (magnitude - SUB_BUCKET_BITS)) - 1;
+	}
+}
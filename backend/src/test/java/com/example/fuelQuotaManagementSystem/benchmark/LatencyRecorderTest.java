@@ -0,0 +1,98 @@
+package com.example.fuelQuotaManagementSystem.benchmark;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Not tagged: the load tools' percentiles are checked on every build
+class LatencyRecorderTest {
+
+	@Test
+	void emptyRecorderReportsZero() {
+		LatencyRecorder recorder = new LatencyRecorder();
+
+		assertEquals(0, recorder.count());
+		assertEquals(0, recorder.percentileMicros(99));
+		assertEquals(0, recorder.maxMicros());
+	}
+
+	@Test
+	void valuesBelowSixtyFourMicrosAreExact() {
+		LatencyRecorder recorder = new LatencyRecorder();
+		for (int micros = 1; micros <= 50; micros++) {
+			recorder.record(micros);
+		}
+
+		assertEquals(25, recorder.percentileMicros(50));
+		assertEquals(50, recorder.percentileMicros(100));
+		assertEquals(1, recorder.percentileMicros(0));
+	}
+
+	@Test
+	void percentilesStayWithinTheBucketError() {
+		LatencyRecorder recorder = new LatencyRecorder();
+		// 1 ms to 10 s
+		for (long micros = 1_000; micros <= 10_000_000; micros += 1_000) {
+			recorder.record(micros);
+		}
+
+		assertWithinBucketError(5_000_000, recorder.percentileMicros(50));
+		assertWithinBucketError(9_900_000, recorder.percentileMicros(99));
+		// Never above the largest recorded value
+		assertEquals(10_000_000, recorder.percentileMicros(100));
+		assertEquals(10_000_000, recorder.maxMicros());
+	}
+
+	@Test
+	void concurrentRecordsAreAllCounted() throws Exception {
+		LatencyRecorder recorder = new LatencyRecorder();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			for (int thread = 0; thread < 8; thread++) {
+				executor.submit(() -> {
+					for (int i = 0; i < 10_000; i++) {
+						recorder.recordNanos(2_000_000);
+					}
+				});
+			}
+		} finally {
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+		}
+
+		assertEquals(80_000, recorder.count());
+		assertWithinBucketError(2_000, recorder.percentileMicros(50));
+	}
+
+	@Test
+	void bucketsListTheNonEmptyBucketsInAscendingOrder() {
+		LatencyRecorder recorder = new LatencyRecorder();
+		recorder.record(5_000);
+		recorder.record(10);
+		recorder.record(10);
+		recorder.record(5_010);
+
+		// The report's histogram: upper bound of each bucket -> count
+		List<Map.Entry<Long, Long>> buckets = new ArrayList<>(recorder.buckets().entrySet());
+
+		assertEquals(2, buckets.size());
+		assertEquals(Map.entry(10L, 2L), buckets.get(0));
+		assertWithinBucketError(5_010, buckets.get(1).getKey());
+		assertEquals(2L, buckets.get(1).getValue());
+	}
+
+	// Buckets are 1/64 of their power of two wide
+	private static void assertWithinBucketError(long expectedMicros, long actualMicros) {
+		assertTrue(actualMicros >= expectedMicros && actualMicros <= expectedMicros * 1.016,
+				"Expected about " + expectedMicros + "us, was " + actualMicros + "us");
+	}
+
+}
@@ -0,0 +1,335 @@
+package com.example.fuelQuotaManagementSystem.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * National station network load generator for release regression checks.
+ *
+ * Starts the backend on an embedded H2 database, seeds N vehicles and M stations through the
+ * repositories, then runs two kinds of clients for a fixed time:
+ * - one thread per station: scan a random vehicle and pump (GET /quota/scan + POST /pump),
+ *   or pump straight from the QR code (POST /pump/scan), plus an occasional look at the
+ *   station's own transaction history
+ * - vehicle owner threads: check remaining quota and transaction history
+ *
+ * Prints throughput, a latency percentile ladder and status breakdown per endpoint and writes
+ * the same data as JSON to target/loadgen/. 4xx answers (e.g. quota exhausted) are counted as
+ * rejections, 5xx and transport failures as errors.
+ *
+ * Run: mvn test -Ploadgen
+ * Tune with -Dloadgen.vehicles, -Dloadgen.stations, -Dloadgen.owners, -Dloadgen.warmupSeconds,
+ * -Dloadgen.durationSeconds, -Dloadgen.stationThinkMillis, -Dloadgen.ownerThinkMillis.
+ * Gate with -Dloadgen.maxErrorRate (default 0.01) and compare against an earlier report with
+ * -Dloadgen.baseline=path/to/report.json (-Dloadgen.tolerance, default 0.25).
+ */
+@Tag("loadgen")
+class NationalLoadGenerator {
+
+	private static final int VEHICLES = Integer.getInteger("loadgen.vehicles", 20000);
+	private static final int STATIONS = Integer.getInteger("loadgen.stations", 500);
+	private static final int OWNERS = Integer.getInteger("loadgen.owners", 100);
+	private static final int WARMUP_SECONDS = Integer.getInteger("loadgen.warmupSeconds", 10);
+	private static final int DURATION_SECONDS = Integer.getInteger("loadgen.durationSeconds", 60);
+	private static final int STATION_THINK_MILLIS = Integer.getInteger("loadgen.stationThinkMillis", 20);
+	private static final int OWNER_THINK_MILLIS = Integer.getInteger("loadgen.ownerThinkMillis", 200);
+	private static final double MAX_ERROR_RATE = Double.parseDouble(System.getProperty("loadgen.maxErrorRate", "0.01"));
+	private static final String BASELINE = System.getProperty("loadgen.baseline");
+	private static final double TOLERANCE = Double.parseDouble(System.getProperty("loadgen.tolerance", "0.25"));
+
+	// Share of station visits that use the one-shot scan-and-pump endpoint
+	private static final double SCAN_PUMP_SHARE = 0.3;
+	// Every Nth station visit also loads the station's transaction history
+	private static final int STATION_HISTORY_EVERY = 50;
+
+	private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+	private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+	private final Map<String, EndpointStats> endpoints = new LinkedHashMap<>();
+
+	private final HttpClient client = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_1_1)
+			.connectTimeout(Duration.ofSeconds(10))
+			.build();
+
+	private volatile long measureFrom;
+	private volatile long deadline;
+
+	@Test
+	void simulateStationNetwork() throws Exception {
+		for (String endpoint : List.of("GET /quota/scan", "POST /pump", "POST /pump/scan",
+				"GET /transactions/station", "GET /quota/vehicle", "GET /transactions/vehicle")) {
+			endpoints.put(endpoint, new EndpointStats());
+		}
+
+		try (EmbeddedBackend backend = EmbeddedBackend.start("loadgen",
+				"server.tomcat.max-connections=" + (STATIONS + OWNERS) * 2,
+				"server.tomcat.accept-count=" + (STATIONS + OWNERS))) {
+
+			long seedStart = System.nanoTime();
+			EmbeddedBackend.Fleet fleet = backend.seed(VEHICLES, STATIONS);
+			System.out.printf("Seeded %d vehicles and %d stations in %.1fs%n",
+					VEHICLES, STATIONS, (System.nanoTime() - seedStart) / 1e9);
+
+			String stationToken = backend.login("station", "password");
+			String ownerToken = backend.login("vehicle", "password");
+			String baseUrl = backend.baseUrl() + "/api/fuel";
+
+			measureFrom = System.nanoTime() + WARMUP_SECONDS * 1_000_000_000L;
+			deadline = measureFrom + DURATION_SECONDS * 1_000_000_000L;
+			CountDownLatch done = new CountDownLatch(fleet.stationIds().size() + OWNERS);
+
+			for (Long stationId : fleet.stationIds()) {
+				startClient("station-" + stationId, done, () -> stationVisit(baseUrl, stationToken, stationId, fleet));
+			}
+			for (int i = 0; i < OWNERS; i++) {
+				startClient("owner-" + i, done, () -> ownerVisit(baseUrl, ownerToken, fleet));
+			}
+			done.await();
+		}
+
+		Map<String, Object> report = report();
+		printReport();
+		writeReport(report);
+
+		for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+			EndpointStats stats = entry.getValue();
+			assertTrue(stats.latency.count() > 0, "No requests completed for " + entry.getKey());
+			assertTrue(stats.errorRate() <= MAX_ERROR_RATE,
+					String.format("%s error rate %.4f above %.4f", entry.getKey(), stats.errorRate(), MAX_ERROR_RATE));
+		}
+		if (BASELINE != null) {
+			compareWithBaseline(new File(BASELINE));
+		}
+	}
+
+	private void startClient(String name, CountDownLatch done, Runnable visit) {
+		Thread thread = new Thread(() -> {
+			try {
+				while (System.nanoTime() < deadline) {
+					visit.run();
+				}
+			} finally {
+				done.countDown();
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// One vehicle served at the pump
+	private void stationVisit(String baseUrl, String token, Long stationId, EmbeddedBackend.Fleet fleet) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		EmbeddedBackend.FleetVehicle vehicle = fleet.vehicles().get(random.nextInt(fleet.vehicles().size()));
+		int litres = 1 + random.nextInt(3);
+
+		if (random.nextDouble() < SCAN_PUMP_SHARE) {
+			send("POST /pump/scan", post(baseUrl + "/pump/scan", token, String.format(
+					"{\"qrData\":\"%s\",\"stationId\":%d,\"amount\":%d}", vehicle.qrCode(), stationId, litres)));
+		} else {
+			send("GET /quota/scan", get(baseUrl + "/quota/scan/" + vehicle.registrationNumber(), token));
+			think(STATION_THINK_MILLIS);
+			send("POST /pump", post(baseUrl + "/pump", token, String.format(
+					"{\"vehicleId\":%d,\"stationId\":%d,\"fuelType\":\"%s\",\"amount\":%d}",
+					vehicle.id(), stationId, vehicle.fuelType(), litres)));
+		}
+
+		if (random.nextInt(STATION_HISTORY_EVERY) == 0) {
+			send("GET /transactions/station", get(baseUrl + "/transactions/station/" + stationId, token));
+		}
+		think(STATION_THINK_MILLIS);
+	}
+
+	// A vehicle owner checking the app
+	private void ownerVisit(String baseUrl, String token, EmbeddedBackend.Fleet fleet) {
+		EmbeddedBackend.FleetVehicle vehicle =
+				fleet.vehicles().get(ThreadLocalRandom.current().nextInt(fleet.vehicles().size()));
+
+		send("GET /quota/vehicle", get(baseUrl + "/quota/vehicle/" + vehicle.id(), token));
+		send("GET /transactions/vehicle", get(baseUrl + "/transactions/vehicle/" + vehicle.id(), token));
+		think(OWNER_THINK_MILLIS);
+	}
+
+	private void send(String endpoint, HttpRequest request) {
+		EndpointStats stats = endpoints.get(endpoint);
+		long start = System.nanoTime();
+		boolean measured = start >= measureFrom && start < deadline;
+		try {
+			int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+			if (measured) {
+				stats.latency.recordNanos(System.nanoTime() - start);
+				stats.countStatus(status);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			if (measured) {
+				stats.transportErrors.increment();
+			}
+		}
+	}
+
+	private HttpRequest get(String url, String token) {
+		return HttpRequest.newBuilder(URI.create(url))
+				.header("Authorization", "Bearer " + token)
+				.GET().build();
+	}
+
+	private HttpRequest post(String url, String token, String json) {
+		return HttpRequest.newBuilder(URI.create(url))
+				.header("Authorization", "Bearer " + token)
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(json))
+				.build();
+	}
+
+	private void think(int millis) {
+		if (millis <= 0) {
+			return;
+		}
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextInt(millis / 2, millis + millis / 2 + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private Map<String, Object> report() {
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("timestamp", System.currentTimeMillis());
+		report.put("java", Runtime.version().feature());
+		report.put("vehicles", VEHICLES);
+		report.put("stations", STATIONS);
+		report.put("owners", OWNERS);
+		report.put("durationSeconds", DURATION_SECONDS);
+
+		Map<String, Object> perEndpoint = new LinkedHashMap<>();
+		for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+			perEndpoint.put(entry.getKey(), entry.getValue().toMap());
+		}
+		report.put("endpoints", perEndpoint);
+		return report;
+	}
+
+	private void printReport() {
+		System.out.println();
+		System.out.printf("vehicles=%d stations=%d owners=%d warmup=%ds measured=%ds java=%d%n",
+				VEHICLES, STATIONS, OWNERS, WARMUP_SECONDS, DURATION_SECONDS, Runtime.version().feature());
+		for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+			EndpointStats stats = entry.getValue();
+			System.out.println(stats.latency.summary(entry.getKey(), DURATION_SECONDS));
+
+			StringBuilder ladder = new StringBuilder(String.format("%-28s", ""));
+			for (double percentile : PERCENTILES) {
+				ladder.append(String.format("   p%-4s %8.2f ms", format(percentile),
+						stats.latency.percentileMicros(percentile) / 1000.0));
+			}
+			System.out.println(ladder);
+			System.out.printf("%-28s   2xx %d   4xx %d   5xx %d   transport %d   error rate %.4f%n", "",
+					stats.ok.sum(), stats.rejected.sum(), stats.failed.sum(), stats.transportErrors.sum(),
+					stats.errorRate());
+		}
+	}
+
+	private void writeReport(Map<String, Object> report) throws Exception {
+		File directory = new File("target/loadgen");
+		directory.mkdirs();
+		File file = new File(directory, "loadgen-" + report.get("timestamp") + ".json");
+		objectMapper.writeValue(file, report);
+		System.out.println("Report written to " + file.getPath());
+	}
+
+	// Fails when throughput dropped or p99 grew by more than the tolerance compared to the baseline report
+	private void compareWithBaseline(File baselineFile) throws Exception {
+		JsonNode baseline = objectMapper.readTree(baselineFile).path("endpoints");
+		List<String> regressions = new ArrayList<>();
+
+		for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+			JsonNode previous = baseline.path(entry.getKey());
+			if (previous.isMissingNode()) {
+				continue;
+			}
+			Map<String, Object> current = entry.getValue().toMap();
+
+			double throughput = (double) current.get("throughput");
+			double previousThroughput = previous.path("throughput").asDouble();
+			if (throughput < previousThroughput * (1 - TOLERANCE)) {
+				regressions.add(String.format("%s throughput %.1f req/s vs %.1f", entry.getKey(), throughput, previousThroughput));
+			}
+
+			double p99 = (double) current.get("p99Millis");
+			double previousP99 = previous.path("p99Millis").asDouble();
+			if (previousP99 > 0 && p99 > previousP99 * (1 + TOLERANCE)) {
+				regressions.add(String.format("%s p99 %.2f ms vs %.2f", entry.getKey(), p99, previousP99));
+			}
+		}
+
+		regressions.forEach(regression -> System.out.println("REGRESSION " + regression));
+		assertTrue(regressions.isEmpty(), "Regressions against " + baselineFile + ": " + regressions);
+	}
+
+	private static String format(double percentile) {
+		return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+	}
+
+	private static final class EndpointStats {
+		private final LatencyRecorder latency = new LatencyRecorder();
+		private final LongAdder ok = new LongAdder();
+		private final LongAdder rejected = new LongAdder();
+		private final LongAdder failed = new LongAdder();
+		private final LongAdder transportErrors = new LongAdder();
+
+		void countStatus(int status) {
+			if (status < 400) {
+				ok.increment();
+			} else if (status < 500) {
+				rejected.increment();
+			} else {
+				failed.increment();
+			}
+		}
+
+		double errorRate() {
+			long total = latency.count() + transportErrors.sum();
+			return total == 0 ? 0 : (double) (failed.sum() + transportErrors.sum()) / total;
+		}
+
+		Map<String, Object> toMap() {
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("requests", latency.count());
+			map.put("throughput", latency.count() / (double) DURATION_SECONDS);
+			for (double percentile : PERCENTILES) {
+				map.put("p" + format(percentile).replace('.', '_') + "Millis", latency.percentileMicros(percentile) / 1000.0);
+			}
+			map.put("maxMillis", latency.maxMicros() / 1000.0);
+			map.put("ok", ok.sum());
+			map.put("rejected", rejected.sum());
+			map.put("failed", failed.sum());
+			map.put("transportErrors", transportErrors.sum());
+			map.put("errorRate", errorRate());
+
+			// Log-linear histogram, non-empty buckets only: upper bound in micros -> count
+			map.put("histogramMicros", latency.buckets());
+			return map;
+		}
+	}
+}
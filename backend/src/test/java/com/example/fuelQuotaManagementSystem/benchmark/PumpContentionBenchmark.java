@@ -0,0 +1,134 @@
+package com.example.fuelQuotaManagementSystem.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Platform vs virtual thread request execution under station contention.
+ *
+ * Boots the full application twice on an embedded H2 database (once per thread model),
+ * seeds vehicles with quotas, then lets every simulated station alternate
+ * GET /api/fuel/quota/scan/{regNo} and POST /api/fuel/pump on random vehicles for a fixed
+ * time. Prints throughput and p50/p99/max per endpoint and mode.
+ *
+ * Run: mvn test -Pbenchmark            (platform threads only, Java 17)
+ *      mvn test -Pbenchmark,java21     (both modes)
+ * Tune with -Dbench.stations, -Dbench.vehicles, -Dbench.warmupSeconds, -Dbench.durationSeconds.
+ */
+@Tag("benchmark")
+class PumpContentionBenchmark {
+
+	private static final int STATIONS = Integer.getInteger("bench.stations", 2000);
+	private static final int VEHICLES = Integer.getInteger("bench.vehicles", 5000);
+	private static final int WARMUP_SECONDS = Integer.getInteger("bench.warmupSeconds", 5);
+	private static final int DURATION_SECONDS = Integer.getInteger("bench.durationSeconds", 20);
+
+	@Test
+	void compareThreadModes() throws Exception {
+		List<String> report = new ArrayList<>();
+		report.add(String.format("stations=%d vehicles=%d warmup=%ds measured=%ds java=%d",
+				STATIONS, VEHICLES, WARMUP_SECONDS, DURATION_SECONDS, Runtime.version().feature()));
+
+		report.addAll(runMode(false));
+		if (Runtime.version().feature() >= 21) {
+			report.addAll(runMode(true));
+		} else {
+			report.add("virtual threads: skipped (needs a Java 21 runtime, run with -Pbenchmark,java21)");
+		}
+
+		System.out.println();
+		report.forEach(System.out::println);
+	}
+
+	private List<String> runMode(boolean virtualThreads) throws Exception {
+		String mode = virtualThreads ? "virtual" : "platform";
+
+		try (EmbeddedBackend backend = EmbeddedBackend.start("bench-" + mode,
+				"spring.threads.virtual.enabled=" + virtualThreads,
+				"server.tomcat.max-connections=" + (STATIONS * 2),
+				"server.tomcat.accept-count=" + STATIONS)) {
+
+			EmbeddedBackend.Fleet fleet = backend.seed(VEHICLES, STATIONS);
+			String token = backend.login("station", "password");
+
+			LatencyRecorder scan = new LatencyRecorder();
+			LatencyRecorder pump = new LatencyRecorder();
+			LongAdder errors = new LongAdder();
+
+			drive(backend.baseUrl(), token, fleet, scan, pump, errors);
+
+			assertTrue(scan.count() > 0 && pump.count() > 0, "No requests completed in " + mode + " mode");
+			return List.of(
+					scan.summary(mode + " GET  /quota/scan", DURATION_SECONDS),
+					pump.summary(mode + " POST /pump", DURATION_SECONDS),
+					String.format("%-28s %9d transport errors", mode, errors.sum()));
+		}
+	}
+
+	private void drive(String backendUrl, String token, EmbeddedBackend.Fleet fleet,
+					   LatencyRecorder scan, LatencyRecorder pump, LongAdder errors) throws InterruptedException {
+		HttpClient client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(Duration.ofSeconds(10))
+				.build();
+		String baseUrl = backendUrl + "/api/fuel";
+
+		long measureFrom = System.nanoTime() + WARMUP_SECONDS * 1_000_000_000L;
+		long deadline = measureFrom + DURATION_SECONDS * 1_000_000_000L;
+		List<EmbeddedBackend.FleetVehicle> vehicles = fleet.vehicles();
+		CountDownLatch done = new CountDownLatch(fleet.stationIds().size());
+
+		// One platform client thread per simulated station, so the client side is identical in both modes
+		for (Long stationId : fleet.stationIds()) {
+			Thread thread = new Thread(() -> {
+				try {
+					boolean scanNext = true;
+					while (System.nanoTime() < deadline) {
+						EmbeddedBackend.FleetVehicle vehicle = vehicles.get(ThreadLocalRandom.current().nextInt(vehicles.size()));
+						HttpRequest request = scanNext
+								? HttpRequest.newBuilder(URI.create(baseUrl + "/quota/scan/" + vehicle.registrationNumber()))
+										.header("Authorization", "Bearer " + token)
+										.GET().build()
+								: HttpRequest.newBuilder(URI.create(baseUrl + "/pump"))
+										.header("Authorization", "Bearer " + token)
+										.header("Content-Type", "application/json")
+										.POST(HttpRequest.BodyPublishers.ofString(String.format(
+												"{\"vehicleId\":%d,\"stationId\":%d,\"fuelType\":\"%s\",\"amount\":1}",
+												vehicle.id(), stationId, vehicle.fuelType())))
+										.build();
+
+						long start = System.nanoTime();
+						try {
+							client.send(request, HttpResponse.BodyHandlers.discarding());
+							if (start >= measureFrom) {
+								(scanNext ? scan : pump).recordNanos(System.nanoTime() - start);
+							}
+						} catch (Exception e) {
+							errors.increment();
+						}
+						scanNext = !scanNext;
+					}
+				} finally {
+					done.countDown();
+				}
+			}, "station-" + stationId);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		done.await();
+	}
+}
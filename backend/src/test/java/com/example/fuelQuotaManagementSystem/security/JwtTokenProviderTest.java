@@ -0,0 +1,56 @@
+package com.example.fuelQuotaManagementSystem.security;
+
+import io.jsonwebtoken.JwtException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The calls JwtTokenProviderBenchmark measures, checked for their results
+class JwtTokenProviderTest {
+
+	private final JwtTokenProvider jwtTokenProvider = new JwtTokenProvider();
+
+	private UserDetailsImpl userDetails;
+	private String token;
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(jwtTokenProvider, "jwtSecret", "test-secret-key-for-unit-tests-only-0123456789abcdef");
+		ReflectionTestUtils.setField(jwtTokenProvider, "jwtExpirationInMs", 86_400_000L);
+
+		userDetails = user("station_colombo_07");
+		token = jwtTokenProvider.generateToken(
+				new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities()));
+	}
+
+	@Test
+	void tokenCarriesTheUsernameAndValidatesForItsUserOnly() {
+		assertEquals("station_colombo_07", jwtTokenProvider.getUsernameFromToken(token));
+		assertTrue(jwtTokenProvider.validateToken(token, userDetails));
+		assertFalse(jwtTokenProvider.validateToken(token, user("station_kandy_02")));
+	}
+
+	@Test
+	void tokenSignedWithAnotherSecretIsRejected() {
+		JwtTokenProvider other = new JwtTokenProvider();
+		ReflectionTestUtils.setField(other, "jwtSecret", "another-secret-key-for-unit-tests-only-0123456789abcdef");
+		ReflectionTestUtils.setField(other, "jwtExpirationInMs", 86_400_000L);
+
+		assertThrows(JwtException.class, () -> other.getUsernameFromToken(token));
+	}
+
+	private static UserDetailsImpl user(String username) {
+		return new UserDetailsImpl(42L, username, username + "@stations.lk", "{noop}password",
+				List.of(new SimpleGrantedAuthority("ROLE_STATION_OWNER")));
+	}
+
+}
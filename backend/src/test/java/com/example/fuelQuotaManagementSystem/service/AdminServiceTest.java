@@ -0,0 +1,109 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.dto.FuelPumpRequest;
+import com.example.fuelQuotaManagementSystem.dto.admin.AdminDashboardResponse;
+import com.example.fuelQuotaManagementSystem.entity.FuelStation;
+import com.example.fuelQuotaManagementSystem.entity.Role;
+import com.example.fuelQuotaManagementSystem.entity.User;
+import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import com.example.fuelQuotaManagementSystem.repository.FuelStationRepository;
+import com.example.fuelQuotaManagementSystem.repository.UserRepository;
+import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+import com.example.fuelQuotaManagementSystem.support.TestFixtures;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class AdminServiceTest {
+
+	private static final double DELTA = 1e-6;
+
+	@Autowired
+	private AdminService adminService;
+
+	@Autowired
+	private FuelPumpService fuelPumpService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private FuelStationRepository fuelStationRepository;
+
+	@Test
+	void dashboardCountsWhatWasAdded() {
+		// The database is shared with the other tests, so only the differences are checked
+		AdminDashboardResponse before = computeDashboard();
+
+		User owner = user("dashowner", Role.ROLE_VEHICLE_OWNER);
+		user("dashadmin", Role.ROLE_ADMIN);
+		Vehicle car = TestFixtures.vehicle(vehicleRepository, owner, "DSH", "Car");
+		TestFixtures.vehicle(vehicleRepository, owner, "DSH", "Car");
+		TestFixtures.vehicle(vehicleRepository, owner, "DSH", "Motorcycle");
+		TestFixtures.vehicle(vehicleRepository, owner, "DSH", "Lorry");
+		FuelStation station = station(owner, true);
+		station(owner, false);
+
+		assertTrue(fuelPumpService.recordPump(new FuelPumpRequest(car.getId(), station.getId(), "Petrol", 10.0, null)).getSuccess());
+
+		AdminDashboardResponse after = computeDashboard();
+
+		assertEquals(before.getTotalUsers() + 2, after.getTotalUsers());
+		assertEquals(before.getTotalVehicleOwners() + 1, after.getTotalVehicleOwners());
+		assertEquals(before.getTotalStationOwners(), after.getTotalStationOwners());
+		assertEquals(before.getTotalAdmins() + 1, after.getTotalAdmins());
+
+		assertEquals(before.getTotalVehicles() + 4, after.getTotalVehicles());
+		assertEquals(before.getTotalCars() + 2, after.getTotalCars());
+		assertEquals(before.getTotalMotorcycles() + 1, after.getTotalMotorcycles());
+		assertEquals(before.getTotalThreeWheelers(), after.getTotalThreeWheelers());
+
+		assertEquals(before.getTotalStations() + 2, after.getTotalStations());
+		assertEquals(before.getActiveStations() + 1, after.getActiveStations());
+		assertEquals(before.getInactiveStations() + 1, after.getInactiveStations());
+
+		assertEquals(before.getTodayTransactions() + 1, after.getTodayTransactions());
+		assertEquals(before.getTodayPetrolDispensed() + 10, after.getTodayPetrolDispensed(), DELTA);
+		assertEquals(before.getTodayDieselDispensed(), after.getTodayDieselDispensed(), DELTA);
+		assertEquals(before.getTotalTransactions() + 1, after.getTotalTransactions());
+		assertEquals(before.getTotalFuelDispensed() + 10, after.getTotalFuelDispensed(), DELTA);
+
+		// The pump created the car's 60 L quota for this month
+		assertEquals(before.getCurrentMonthQuotaAllocated() + 60, after.getCurrentMonthQuotaAllocated(), DELTA);
+		assertEquals(before.getCurrentMonthQuotaUsed() + 10, after.getCurrentMonthQuotaUsed(), DELTA);
+		assertEquals(before.getCurrentMonthQuotaRemaining() + 50, after.getCurrentMonthQuotaRemaining(), DELTA);
+
+		// The pump's SMS is only queued in the outbox, which is not a failure
+		assertEquals(before.getFailedNotificationsToday(), after.getFailedNotificationsToday());
+	}
+
+	// Bypasses the snapshot cache
+	private AdminDashboardResponse computeDashboard() {
+		return ReflectionTestUtils.invokeMethod(adminService, "computeSystemDashboard");
+	}
+
+	private User user(String usernamePrefix, Role role) {
+		User user = TestFixtures.owner(userRepository, usernamePrefix);
+		user.getRoles().add(role);
+		return userRepository.save(user);
+	}
+
+	private FuelStation station(User owner, boolean active) {
+		FuelStation station = new FuelStation();
+		station.setName("Dashboard Test Station");
+		station.setRegistrationNumber("DST-" + TestFixtures.unique());
+		station.setOwner(owner);
+		station.setHasPetrol(true);
+		station.setActive(active);
+		return fuelStationRepository.save(station);
+	}
+
+}
@@ -0,0 +1,158 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.ScheduledJobRun;
+import com.example.fuelQuotaManagementSystem.repository.ScheduledJobRunRepository;
+import com.example.fuelQuotaManagementSystem.repository.SchedulerLeaseRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class ClusterSchedulerTest {
+
+	@Autowired
+	private SchedulerLeaseRepository schedulerLeaseRepository;
+
+	@Autowired
+	private ScheduledJobRunRepository scheduledJobRunRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private final List<ClusterScheduler> nodes = new ArrayList<>();
+
+	@AfterEach
+	void tearDown() {
+		nodes.forEach(ClusterScheduler::stop);
+	}
+
+	@Test
+	void leaseIsExclusiveUntilReleased() {
+		ClusterScheduler nodeA = node("node-a", 600_000);
+		ClusterScheduler nodeB = node("node-b", 600_000);
+		String job = "test-exclusive-" + System.nanoTime();
+
+		AtomicBoolean ranOnB = new AtomicBoolean();
+		boolean ranOnA = nodeA.runExclusive(job, "first", () ->
+				// Another node firing the same job while A holds the lease
+				ranOnB.set(onOtherThread(() -> nodeB.runExclusive(job, "second", () -> { }))));
+
+		assertTrue(ranOnA);
+		assertFalse(ranOnB.get());
+
+		// Released when A finished
+		assertTrue(nodeB.runExclusive(job, "second", () -> { }));
+		// An instance that succeeded does not run again
+		assertFalse(nodeA.runExclusive(job, "first", () -> { }));
+	}
+
+	@Test
+	void secondRunOnTheSameNodeIsRefusedWhileTheFirstHoldsTheLease() {
+		ClusterScheduler node = node("node-e", 600_000);
+		String job = "test-reentry-" + System.nanoTime();
+
+		AtomicBoolean secondRan = new AtomicBoolean();
+		AtomicBoolean secondRunStarted = new AtomicBoolean();
+		boolean firstRan = node.runExclusive(job, "instance", () -> {
+			// The same job fired again on this node (a second scheduler thread, a manual trigger)
+			secondRan.set(onOtherThread(() -> node.runExclusive(job, "instance", () -> secondRunStarted.set(true))));
+			// Its lease was neither taken again nor released under this run
+			node.checkLease();
+		});
+
+		assertTrue(firstRan);
+		assertFalse(secondRan.get());
+		assertFalse(secondRunStarted.get());
+		ScheduledJobRun run = scheduledJobRunRepository.findByJobNameAndInstanceKey(job, "instance").orElseThrow();
+		assertEquals(ScheduledJobRun.STATUS_SUCCEEDED, run.getStatus());
+		assertEquals(1, run.getAttempts());
+
+		// Held again once the first run has finished
+		assertTrue(node.runExclusive(job, "next", () -> { }));
+	}
+
+	@Test
+	void expiredLeaseIsTakenOverAndTheLoserCannotRecordItsRun() {
+		ClusterScheduler nodeA = node("node-a", 600_000);
+		ClusterScheduler nodeB = node("node-b", 600_000);
+		String job = "test-takeover-" + System.nanoTime();
+
+		AtomicBoolean ranOnB = new AtomicBoolean();
+		nodeA.runExclusive(job, "instance", () -> {
+			// A stalls long enough for its lease to expire; B takes over the same instance
+			expire(job);
+			ranOnB.set(onOtherThread(() -> nodeB.runExclusive(job, "instance", () -> { })));
+		});
+
+		assertTrue(ranOnB.get());
+		ScheduledJobRun run = scheduledJobRunRepository.findByJobNameAndInstanceKey(job, "instance").orElseThrow();
+		assertEquals("node-b", run.getNodeId());
+		assertEquals(ScheduledJobRun.STATUS_SUCCEEDED, run.getStatus());
+		assertEquals(2, run.getAttempts());
+	}
+
+	@Test
+	void jobAbortsOnceItsLeaseCannotBeRenewed() {
+		// Renewed every second
+		ClusterScheduler node = node("node-c", 3_000);
+		String job = "test-renewal-" + System.nanoTime();
+
+		AtomicReference<Exception> aborted = new AtomicReference<>();
+		node.runExclusive(job, "instance", () -> {
+			// Another node took the lease over while this one was paused
+			jdbcTemplate.update("UPDATE scheduler_leases SET owner = 'node-d' WHERE job_name = ?", job);
+			try {
+				Thread.sleep(1_500);
+				node.checkLease();
+			} catch (Exception e) {
+				aborted.set(e);
+			}
+		});
+
+		assertNotNull(aborted.get());
+		assertEquals(IllegalStateException.class, aborted.get().getClass());
+		ScheduledJobRun run = scheduledJobRunRepository.findByJobNameAndInstanceKey(job, "instance").orElseThrow();
+		assertEquals(ScheduledJobRun.STATUS_RUNNING, run.getStatus());
+	}
+
+	private ClusterScheduler node(String nodeId, long leaseMillis) {
+		ClusterScheduler node = new ClusterScheduler();
+		ReflectionTestUtils.setField(node, "schedulerLeaseRepository", schedulerLeaseRepository);
+		ReflectionTestUtils.setField(node, "scheduledJobRunRepository", scheduledJobRunRepository);
+		ReflectionTestUtils.setField(node, "leaseMillis", leaseMillis);
+		ReflectionTestUtils.setField(node, "configuredNodeId", nodeId);
+		node.start();
+		nodes.add(node);
+		return node;
+	}
+
+	private void expire(String job) {
+		jdbcTemplate.update("UPDATE scheduler_leases SET lease_until = ? WHERE job_name = ?",
+				System.currentTimeMillis() - 1, job);
+	}
+
+	private static boolean onOtherThread(Supplier<Boolean> call) {
+		try {
+			return CompletableFuture.supplyAsync(call).get(30, TimeUnit.SECONDS);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
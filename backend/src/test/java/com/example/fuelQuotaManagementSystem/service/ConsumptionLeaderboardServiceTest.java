@@ -0,0 +1,90 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class ConsumptionLeaderboardServiceTest {
+
+	@Autowired
+	private ConsumptionLeaderboardService consumptionLeaderboardService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void slideSubtractsOnlyTheDaysThatLeftTheWindow() {
+		LocalDate today = LocalDate.now();
+		// Ids no vehicle has, so other tests' pumps do not mix in
+		long stays = System.nanoTime();
+		long leaves = stays + 1;
+
+		daily(stays, today.minusDays(9), 1_000, 1);
+		daily(stays, today.minusDays(7), 2_000, 1);
+		// First day of a 7-day week
+		daily(stays, today.minusDays(6), 4_000, 2);
+		daily(stays, today, 8_000, 1);
+		daily(leaves, today.minusDays(8), 500, 1);
+
+		// The week window as it was built three days ago: it still starts at today - 9
+		jdbcTemplate.update("UPDATE leaderboard_windows SET start_date = ? WHERE window_name = ?",
+				today.minusDays(9).toString(), ConsumptionLeaderboardService.WINDOW_WEEK);
+		total(stays, 15_000, 5);
+		total(leaves, 500, 1);
+
+		consumptionLeaderboardService.slideWindows();
+
+		// The days before today - 6 are subtracted; today - 6 and today stay
+		assertEquals(List.of(12_000L, 3L), total(stays));
+		assertTrue(jdbcTemplate.queryForList("SELECT amount_ml FROM vehicle_consumption_totals " +
+				"WHERE window_name = ? AND vehicle_id = ?", ConsumptionLeaderboardService.WINDOW_WEEK, leaves).isEmpty());
+		assertEquals(today.minusDays(6).toString(), windowStart(ConsumptionLeaderboardService.WINDOW_WEEK));
+
+		// Sliding again the same day changes nothing
+		consumptionLeaderboardService.slideWindows();
+		assertEquals(List.of(12_000L, 3L), total(stays));
+	}
+
+	@Test
+	void windowsSpanAWeekMonthAndYearIncludingToday() {
+		consumptionLeaderboardService.slideWindows();
+
+		LocalDate today = LocalDate.now();
+		assertEquals(today.minusDays(6).toString(), windowStart(ConsumptionLeaderboardService.WINDOW_WEEK));
+		assertEquals(today.minusMonths(1).plusDays(1).toString(), windowStart(ConsumptionLeaderboardService.WINDOW_MONTH));
+		assertEquals(today.minusYears(1).plusDays(1).toString(), windowStart(ConsumptionLeaderboardService.WINDOW_YEAR));
+	}
+
+	private void daily(long vehicleId, LocalDate date, long amountMl, int transactions) {
+		jdbcTemplate.update("INSERT INTO daily_vehicle_consumption (vehicle_id, consumption_date, amount_ml, " +
+						"transaction_count, last_timestamp) VALUES (?, ?, ?, ?, ?)",
+				vehicleId, date.toString(), amountMl, transactions, System.currentTimeMillis());
+	}
+
+	private void total(long vehicleId, long amountMl, int transactions) {
+		jdbcTemplate.update("INSERT INTO vehicle_consumption_totals (window_name, vehicle_id, amount_ml, " +
+						"transaction_count, last_timestamp) VALUES (?, ?, ?, ?, ?)",
+				ConsumptionLeaderboardService.WINDOW_WEEK, vehicleId, amountMl, transactions, System.currentTimeMillis());
+	}
+
+	private List<Long> total(long vehicleId) {
+		Map<String, Object> row = jdbcTemplate.queryForMap("SELECT amount_ml, transaction_count FROM vehicle_consumption_totals " +
+				"WHERE window_name = ? AND vehicle_id = ?", ConsumptionLeaderboardService.WINDOW_WEEK, vehicleId);
+		return List.of(((Number) row.get("amount_ml")).longValue(), ((Number) row.get("transaction_count")).longValue());
+	}
+
+	private String windowStart(String window) {
+		return jdbcTemplate.queryForObject("SELECT start_date FROM leaderboard_windows WHERE window_name = ?",
+				String.class, window);
+	}
+
+}
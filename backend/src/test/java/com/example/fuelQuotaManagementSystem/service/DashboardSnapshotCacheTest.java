@@ -0,0 +1,105 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+class DashboardSnapshotCacheTest {
+
+	private static final Long STATION_ID = 1L;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	private DashboardSnapshotCache cache;
+	private final AtomicInteger stationComputations = new AtomicInteger();
+	private final AtomicInteger adminComputations = new AtomicInteger();
+
+	@BeforeEach
+	void setUp() {
+		// A long TTL, so only a dirty mark causes a recomputation
+		cache = new DashboardSnapshotCache();
+		ReflectionTestUtils.setField(cache, "enabled", true);
+		ReflectionTestUtils.setField(cache, "ttlMillis", 600_000L);
+		ReflectionTestUtils.setField(cache, "dirtyRefreshMillis", 0L);
+	}
+
+	@Test
+	void pumpMarksSnapshotsDirtyOnlyOnceItsTransactionCommits() {
+		assertEquals(1, stationDashboard());
+		assertEquals(1, adminDashboard());
+
+		transactionTemplate.executeWithoutResult(status -> {
+			cache.pumpRecorded(STATION_ID);
+			// Not dirty before the commit: a recomputation now could not see the pump yet
+			assertEquals(1, stationDashboard());
+		});
+
+		assertEquals(2, stationDashboard());
+		assertEquals(2, adminDashboard());
+		// Clean again until the next change
+		assertEquals(2, stationDashboard());
+	}
+
+	@Test
+	void rolledBackPumpLeavesSnapshotsClean() {
+		assertEquals(1, stationDashboard());
+
+		transactionTemplate.executeWithoutResult(status -> {
+			cache.pumpRecorded(STATION_ID);
+			status.setRollbackOnly();
+		});
+
+		assertEquals(1, stationDashboard());
+		assertEquals(1, stationComputations.get());
+	}
+
+	@Test
+	void dirtySnapshotIsRecomputedAtMostOncePerRefreshInterval() {
+		ReflectionTestUtils.setField(cache, "dirtyRefreshMillis", 600_000L);
+		assertEquals(1, stationDashboard());
+
+		transactionTemplate.executeWithoutResult(status -> cache.pumpRecorded(STATION_ID));
+
+		// Dirty, but computed less than dashboard.cache.dirty-refresh-ms ago
+		assertEquals(1, stationDashboard());
+
+		ReflectionTestUtils.setField(cache, "dirtyRefreshMillis", 0L);
+		assertEquals(2, stationDashboard());
+	}
+
+	@Test
+	void unknownStationLeavesNoSlotBehind() {
+		assertEquals(1, stationDashboard());
+
+		for (long stationId = 1_000; stationId < 1_100; stationId++) {
+			Long unknown = stationId;
+			assertThrows(IllegalArgumentException.class, () -> cache.getStationDashboard(unknown, () -> {
+				throw new IllegalArgumentException("Station not found");
+			}));
+		}
+
+		// Only the station that loaded keeps its snapshot
+		assertEquals(1, ((Map<?, ?>) ReflectionTestUtils.getField(cache, "slots")).size());
+		assertEquals(1, stationDashboard());
+	}
+
+	private int stationDashboard() {
+		return cache.getStationDashboard(STATION_ID, stationComputations::incrementAndGet);
+	}
+
+	private int adminDashboard() {
+		return cache.getAdminDashboard(adminComputations::incrementAndGet);
+	}
+
+}
@@ -0,0 +1,240 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.dto.FuelPumpRequest;
+import com.example.fuelQuotaManagementSystem.dto.FuelPumpResult;
+import com.example.fuelQuotaManagementSystem.entity.FuelStation;
+import com.example.fuelQuotaManagementSystem.entity.User;
+import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import com.example.fuelQuotaManagementSystem.repository.FuelStationRepository;
+import com.example.fuelQuotaManagementSystem.repository.UserRepository;
+import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+import com.example.fuelQuotaManagementSystem.support.TestFixtures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+@SpringBootTest
+class FuelPumpIdempotencyTest {
+
+	@Autowired
+	private FuelPumpService fuelPumpService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private FuelStationRepository fuelStationRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private Object originalCache;
+	private Object originalRollupService;
+	private Vehicle vehicle;
+	private Vehicle otherVehicle;
+	private FuelStation station;
+
+	@BeforeEach
+	void setUp() {
+		// A one-entry cache, so every other key has to come from the unique column
+		IdempotencyCache cache = new IdempotencyCache();
+		ReflectionTestUtils.setField(cache, "maxEntries", 1);
+		ReflectionTestUtils.setField(cache, "ttlMinutes", 30L);
+		cache.init();
+		originalCache = ReflectionTestUtils.getField(fuelPumpService, "idempotencyCache");
+		ReflectionTestUtils.setField(fuelPumpService, "idempotencyCache", cache);
+		originalRollupService = ReflectionTestUtils.getField(fuelPumpService, "fuelRollupService");
+
+		User owner = TestFixtures.owner(userRepository, "idem");
+		vehicle = TestFixtures.vehicle(vehicleRepository, owner, "IDA", "Car");
+		otherVehicle = TestFixtures.vehicle(vehicleRepository, owner, "IDB", "Car");
+
+		station = new FuelStation();
+		station.setName("Idempotency Test Station");
+		station.setRegistrationNumber("IST-" + TestFixtures.unique());
+		station.setOwner(owner);
+		station.setHasPetrol(true);
+		station.setActive(true);
+		station = fuelStationRepository.save(station);
+	}
+
+	@AfterEach
+	void tearDown() {
+		ReflectionTestUtils.setField(fuelPumpService, "idempotencyCache", originalCache);
+		ReflectionTestUtils.setField(fuelPumpService, "fuelRollupService", originalRollupService);
+	}
+
+	@Test
+	void replayReturnsOriginalResultWithoutDeducting() {
+		String key = UUID.randomUUID().toString();
+
+		FuelPumpResult first = fuelPumpService.recordPump(pump(vehicle, 10.0, key));
+		FuelPumpResult replay = fuelPumpService.recordPump(pump(vehicle, 10.0, key));
+
+		assertTrue(first.getSuccess());
+		assertTrue(replay.getReplayed());
+		assertEquals(first.getTransactionId(), replay.getTransactionId());
+		assertEquals(first.getQuotaAfter(), replay.getQuotaAfter());
+		assertEquals(1, transactionCount(key));
+		// Only the first request was deducted
+		assertEquals(50.0, fuelPumpService.recordPump(pump(vehicle, 1.0, null)).getQuotaBefore());
+	}
+
+	@Test
+	void evictedKeyIsAnsweredFromTheUniqueColumn() {
+		String key = UUID.randomUUID().toString();
+		FuelPumpResult first = fuelPumpService.recordPump(pump(vehicle, 10.0, key));
+
+		// Pushes the first key out of the one-entry cache
+		fuelPumpService.recordPump(pump(otherVehicle, 5.0, UUID.randomUUID().toString()));
+
+		FuelPumpResult replay = fuelPumpService.recordPump(pump(vehicle, 10.0, key));
+
+		assertTrue(replay.getReplayed());
+		assertEquals(first.getTransactionId(), replay.getTransactionId());
+		assertEquals(first.getQuotaBefore(), replay.getQuotaBefore());
+		assertEquals(first.getQuotaAfter(), replay.getQuotaAfter());
+		assertEquals(1, transactionCount(key));
+	}
+
+	@Test
+	void duplicateKeyWithinOneBatchIsRecordedOnce() {
+		String key = UUID.randomUUID().toString();
+
+		List<FuelPumpResult> results = fuelPumpService.recordPumpBatch(List.of(
+				pump(vehicle, 10.0, key),
+				pump(vehicle, 10.0, key),
+				pump(otherVehicle, 10.0, key)));
+
+		assertTrue(results.get(0).getSuccess());
+		assertFalse(results.get(0).getReplayed());
+
+		assertTrue(results.get(1).getReplayed());
+		assertEquals(1, results.get(1).getIndex());
+		assertEquals(results.get(0).getQuotaAfter(), results.get(1).getQuotaAfter());
+
+		// Same key from another vehicle is not answered with the first vehicle's result
+		assertFalse(results.get(2).getSuccess());
+		assertFalse(results.get(2).getReplayed());
+		assertEquals(otherVehicle.getId(), results.get(2).getVehicleId());
+
+		assertEquals(1, transactionCount(key));
+	}
+
+	@Test
+	void resentBatchIsAnsweredWithTheOriginalResults() {
+		String firstKey = UUID.randomUUID().toString();
+		String secondKey = UUID.randomUUID().toString();
+		List<FuelPumpRequest> batch = List.of(
+				pump(vehicle, 10.0, firstKey),
+				pump(vehicle, 100.0, UUID.randomUUID().toString()),
+				pump(otherVehicle, 5.0, secondKey));
+
+		List<FuelPumpResult> first = fuelPumpService.recordPumpBatch(batch);
+
+		// The over-quota item is rejected without aborting the rest
+		assertTrue(first.get(0).getSuccess());
+		assertFalse(first.get(1).getSuccess());
+		assertTrue(first.get(2).getSuccess());
+
+		List<FuelPumpResult> resent = fuelPumpService.recordPumpBatch(batch);
+
+		assertTrue(resent.get(0).getReplayed());
+		assertEquals(first.get(0).getTransactionId(), resent.get(0).getTransactionId());
+		assertEquals(first.get(0).getQuotaAfter(), resent.get(0).getQuotaAfter());
+		assertTrue(resent.get(2).getReplayed());
+		assertEquals(first.get(2).getTransactionId(), resent.get(2).getTransactionId());
+		// A rejected item recorded nothing, so it is tried again rather than replayed
+		assertFalse(resent.get(1).getReplayed());
+		assertFalse(resent.get(1).getSuccess());
+
+		assertEquals(1, transactionCount(firstKey));
+		assertEquals(1, transactionCount(secondKey));
+		assertEquals(50.0, fuelPumpService.recordPump(pump(vehicle, 1.0, null)).getQuotaBefore());
+		assertEquals(55.0, fuelPumpService.recordPump(pump(otherVehicle, 1.0, null)).getQuotaBefore());
+	}
+
+	@Test
+	void itemsFailingRequestValidationAreRejectedWithoutAbortingTheBatch() {
+		String key = UUID.randomUUID().toString();
+		List<FuelPumpResult> results = fuelPumpService.recordPumpBatch(List.of(
+				pump(vehicle, 0.5, null),
+				pump(vehicle, 10.0, "k".repeat(65)),
+				pump(otherVehicle, 5.0, key)));
+
+		// Below the 1 liter minimum of /pump, and a key too long for its column
+		assertFalse(results.get(0).getSuccess());
+		assertFalse(results.get(1).getSuccess());
+		assertTrue(results.get(2).getSuccess());
+
+		assertEquals(1, transactionCount(key));
+		assertEquals(60.0, fuelPumpService.recordPump(pump(vehicle, 1.0, null)).getQuotaBefore());
+	}
+
+	@Test
+	void failedBatchRecordsNothing() {
+		String firstKey = UUID.randomUUID().toString();
+		String secondKey = UUID.randomUUID().toString();
+		List<FuelPumpRequest> batch = List.of(pump(vehicle, 10.0, firstKey), pump(otherVehicle, 5.0, secondKey));
+
+		// Fails after the deductions and the transaction inserts
+		FuelRollupService failingRollups = mock(FuelRollupService.class);
+		doThrow(new IllegalStateException("rollup failed")).when(failingRollups).recordPumps(anyList());
+		ReflectionTestUtils.setField(fuelPumpService, "fuelRollupService", failingRollups);
+
+		assertThrows(IllegalStateException.class, () -> fuelPumpService.recordPumpBatch(batch));
+
+		assertEquals(0, transactionCount(firstKey));
+		assertEquals(0, transactionCount(secondKey));
+
+		// Sent again, the batch is recorded in full against untouched quotas, not replayed
+		ReflectionTestUtils.setField(fuelPumpService, "fuelRollupService", originalRollupService);
+		List<FuelPumpResult> retried = fuelPumpService.recordPumpBatch(batch);
+
+		assertTrue(retried.get(0).getSuccess());
+		assertFalse(retried.get(0).getReplayed());
+		assertEquals(60.0, retried.get(0).getQuotaBefore());
+		assertTrue(retried.get(1).getSuccess());
+		assertFalse(retried.get(1).getReplayed());
+		assertEquals(60.0, retried.get(1).getQuotaBefore());
+		assertEquals(1, transactionCount(firstKey));
+		assertEquals(1, transactionCount(secondKey));
+	}
+
+	@Test
+	void keyRecordedForAnotherVehicleIsRejected() {
+		String key = UUID.randomUUID().toString();
+		fuelPumpService.recordPump(pump(vehicle, 10.0, key));
+
+		assertThrows(IllegalArgumentException.class, () -> fuelPumpService.recordPump(pump(otherVehicle, 10.0, key)));
+		assertEquals(1, transactionCount(key));
+	}
+
+	private FuelPumpRequest pump(Vehicle vehicle, double amount, String idempotencyKey) {
+		return new FuelPumpRequest(vehicle.getId(), station.getId(), "Petrol", amount, idempotencyKey);
+	}
+
+	private int transactionCount(String idempotencyKey) {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM fuel_transactions WHERE idempotency_key = ?",
+				Integer.class, idempotencyKey);
+	}
+
+}
@@ -0,0 +1,149 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.dto.FuelPumpRequest;
+import com.example.fuelQuotaManagementSystem.dto.FuelPumpResult;
+import com.example.fuelQuotaManagementSystem.entity.FuelStation;
+import com.example.fuelQuotaManagementSystem.entity.User;
+import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import com.example.fuelQuotaManagementSystem.repository.FuelStationRepository;
+import com.example.fuelQuotaManagementSystem.repository.UserRepository;
+import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+import com.example.fuelQuotaManagementSystem.support.StatementCountingDataSource;
+import com.example.fuelQuotaManagementSystem.support.TestFixtures;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+// Its own context and database: the counting pool and Hibernate statistics stay out of the other tests
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:fuelquota-statements;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=TIMESTAMP,VALUE;DB_CLOSE_DELAY=-1",
+		"spring.datasource.type=com.example.fuelQuotaManagementSystem.support.StatementCountingDataSource",
+		"spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class FuelPumpServiceStatementCountTest {
+
+	@Autowired
+	private FuelPumpService fuelPumpService;
+
+	@Autowired
+	private FuelQuotaService fuelQuotaService;
+
+	@Autowired
+	private FuelRollupService fuelRollupService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private FuelStationRepository fuelStationRepository;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private User owner;
+	private Vehicle vehicle;
+
+	@BeforeEach
+	void setUp() {
+		owner = TestFixtures.owner(userRepository, "owner");
+
+		Vehicle unsaved = TestFixtures.newVehicle(owner, "CAR", "Car");
+		unsaved.setQrCode("x".repeat(4000));
+		vehicle = vehicleRepository.save(unsaved);
+
+		// Make sure this period's quota row exists so the pump takes the hot path
+		fuelQuotaService.getCurrentQuota(vehicle, "Petrol");
+	}
+
+	@AfterEach
+	void tearDown() {
+		ReflectionTestUtils.setField(fuelPumpService, "fuelRollupService", fuelRollupService);
+	}
+
+	@Test
+	void singlePumpUsesProjectionsOnly() {
+		// The pump itself, without the rollups it feeds
+		ReflectionTestUtils.setField(fuelPumpService, "fuelRollupService", mock(FuelRollupService.class));
+		FuelStation station = station();
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		StatementCountingDataSource.startCounting();
+		FuelPumpResult result = pump(station, 10.0);
+		int statements = StatementCountingDataSource.stopCounting();
+
+		assertTrue(result.getSuccess());
+		assertEquals(50.0, result.getQuotaAfter());
+
+		// Vehicle view, station view, conditional update, balance read, transaction insert, outbox insert
+		assertEquals(6, statements);
+		// No Vehicle/User/FuelStation entities or the owner's roles collection are loaded
+		assertEquals(0, statistics.getEntityLoadCount());
+		assertEquals(0, statistics.getCollectionLoadCount());
+	}
+
+	@Test
+	void rollupsAddFourStatementsPerPump() {
+		FuelStation first = station();
+		FuelStation second = station();
+
+		StatementCountingDataSource.startCounting();
+		assertTrue(pump(first, 10.0).getSuccess());
+		int statements = StatementCountingDataSource.stopCounting();
+
+		// The six of the pump, then the visits insert, the station stats, consumption totals and daily consumption upserts
+		assertEquals(10, statements);
+
+		// Same vehicle again at the same station, then at another station
+		assertTrue(pump(first, 5.0).getSuccess());
+		assertTrue(pump(second, 5.0).getSuccess());
+
+		assertEquals(List.of(2L, 1L, 1L), stats(first));
+		assertEquals(List.of(1L, 1L, 0L), stats(second));
+	}
+
+	private FuelStation station() {
+		FuelStation station = new FuelStation();
+		station.setName("Pump Test Station");
+		station.setRegistrationNumber("ST-" + TestFixtures.unique());
+		station.setOwner(owner);
+		station.setHasPetrol(true);
+		station.setActive(true);
+		return fuelStationRepository.save(station);
+	}
+
+	private FuelPumpResult pump(FuelStation station, double litres) {
+		return fuelPumpService.recordPump(new FuelPumpRequest(vehicle.getId(), station.getId(), "Petrol", litres, null));
+	}
+
+	// Today's transactions, distinct vehicles and new vehicles of a station
+	private List<Long> stats(FuelStation station) {
+		Map<String, Object> row = jdbcTemplate.queryForMap("SELECT transaction_count, vehicle_count, new_vehicle_count " +
+				"FROM daily_station_fuel_stats WHERE station_id = ? AND stat_date = ?", station.getId(), LocalDate.now().toString());
+		return List.of(((Number) row.get("transaction_count")).longValue(), ((Number) row.get("vehicle_count")).longValue(),
+				((Number) row.get("new_vehicle_count")).longValue());
+	}
+
+}
@@ -0,0 +1,132 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.dto.FuelPumpRequest;
+import com.example.fuelQuotaManagementSystem.dto.FuelPumpResult;
+import com.example.fuelQuotaManagementSystem.dto.ScanPumpRequest;
+import com.example.fuelQuotaManagementSystem.dto.ScanPumpResponse;
+import com.example.fuelQuotaManagementSystem.entity.FuelStation;
+import com.example.fuelQuotaManagementSystem.entity.User;
+import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import com.example.fuelQuotaManagementSystem.repository.FuelStationRepository;
+import com.example.fuelQuotaManagementSystem.repository.UserRepository;
+import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+import com.example.fuelQuotaManagementSystem.support.TestFixtures;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class FuelPumpServiceTest {
+
+	@Autowired
+	private FuelPumpService fuelPumpService;
+
+	@Autowired
+	private FuelQuotaService fuelQuotaService;
+
+	@Autowired
+	private QRCodeService qrCodeService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private FuelStationRepository fuelStationRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private Vehicle vehicle;
+	private FuelStation station;
+
+	@BeforeEach
+	void setUp() {
+		User owner = TestFixtures.owner(userRepository, "pump");
+		vehicle = TestFixtures.vehicle(vehicleRepository, owner, "PMP", "Car");
+
+		station = new FuelStation();
+		station.setName("Pump Service Test Station");
+		station.setRegistrationNumber("PST-" + TestFixtures.unique());
+		station.setOwner(owner);
+		station.setHasPetrol(true);
+		station.setActive(true);
+		station = fuelStationRepository.save(station);
+	}
+
+	@Test
+	void fractionalPumpsAddUpExactly() {
+		// 60 - 1.1 ten times is 48.999999999999986 in doubles
+		FuelPumpResult last = null;
+		for (int i = 0; i < 10; i++) {
+			last = fuelPumpService.recordPump(new FuelPumpRequest(vehicle.getId(), station.getId(), "Petrol", 1.1, null));
+			assertTrue(last.getSuccess());
+		}
+
+		assertEquals(50.1, last.getQuotaBefore());
+		assertEquals(49.0, last.getQuotaAfter());
+		assertEquals(49_000, fuelQuotaService.getRemainingQuotaMl(vehicle, "Petrol"));
+		assertEquals(11_000, jdbcTemplate.queryForObject("SELECT SUM(amount_ml) FROM fuel_transactions WHERE vehicle_id = ?",
+				Long.class, vehicle.getId()));
+		assertEquals(49_000, jdbcTemplate.queryForObject("SELECT remaining_quota_ml FROM fuel_quotas " +
+				"WHERE vehicle_id = ? AND period = ?", Long.class, vehicle.getId(), YearMonth.now().toString()));
+	}
+
+	@Test
+	void scanAndPumpRecordsThePumpOfTheScannedVehicle() {
+		String key = UUID.randomUUID().toString();
+		// No fuel type: the vehicle's own is used
+		ScanPumpRequest request = new ScanPumpRequest(qrCodeService.generateQRCode(vehicle), station.getId(), null, 10.0, key);
+
+		ScanPumpResponse response = fuelPumpService.scanAndPump(request);
+
+		assertEquals(vehicle.getId(), response.getVehicleId());
+		assertEquals(vehicle.getRegistrationNumber(), response.getRegistrationNumber());
+		assertEquals("Petrol", response.getFuelType());
+		assertEquals("Test Owner", response.getOwnerName());
+		assertEquals(10.0, response.getAmount());
+		assertEquals(60.0, response.getQuotaBefore());
+		assertEquals(50.0, response.getQuotaAfter());
+		assertFalse(response.getReplayed());
+
+		// A resent scan is answered from the first one, even if the retry asks for another amount
+		request.setAmount(25.0);
+		ScanPumpResponse replay = fuelPumpService.scanAndPump(request);
+
+		assertTrue(replay.getReplayed());
+		assertEquals(response.getTransactionId(), replay.getTransactionId());
+		assertEquals(10.0, replay.getAmount());
+		assertEquals(50.0, replay.getQuotaAfter());
+		assertEquals(50_000, fuelQuotaService.getRemainingQuotaMl(vehicle, "Petrol"));
+	}
+
+	@Test
+	void tamperedQrCodeIsRejectedWithoutPumping() {
+		Vehicle other = TestFixtures.vehicle(vehicleRepository, vehicle.getOwner(), "PMQ", "Car");
+		String json = new String(Base64.getDecoder().decode(qrCodeService.generateQRCode(vehicle)), StandardCharsets.UTF_8);
+		// Points the code at another vehicle without updating its hash
+		String tampered = Base64.getEncoder().encodeToString(json.replace(vehicle.getRegistrationNumber(),
+				other.getRegistrationNumber()).getBytes(StandardCharsets.UTF_8));
+
+		assertThrows(IllegalArgumentException.class, () -> fuelPumpService.scanAndPump(
+				new ScanPumpRequest(tampered, station.getId(), null, 10.0, null)));
+
+		assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM fuel_transactions WHERE vehicle_id IN (?, ?)",
+				Integer.class, vehicle.getId(), other.getId()));
+	}
+
+}
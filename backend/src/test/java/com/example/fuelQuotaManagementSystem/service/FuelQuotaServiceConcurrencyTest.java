@@ -0,0 +1,119 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.FuelQuota;
+import com.example.fuelQuotaManagementSystem.entity.User;
+import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import com.example.fuelQuotaManagementSystem.repository.UserRepository;
+import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+import com.example.fuelQuotaManagementSystem.support.TestFixtures;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+class FuelQuotaServiceConcurrencyTest {
+
+	private static final int THREADS = 8;
+
+	@Autowired
+	private FuelQuotaService fuelQuotaService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void concurrentFirstAccessCreatesOneQuotaRow() throws Exception {
+		User owner = TestFixtures.owner(userRepository, "race");
+		Vehicle saved = TestFixtures.vehicle(vehicleRepository, owner, "RCE", "Car");
+
+		// Every thread finds no row for this period and races to insert it
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<FuelQuota>> futures = new ArrayList<>();
+		try {
+			for (int i = 0; i < THREADS; i++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					return fuelQuotaService.getCurrentQuota(saved, "Petrol");
+				}));
+			}
+			start.countDown();
+
+			Set<Long> quotaIds = new HashSet<>();
+			for (Future<FuelQuota> future : futures) {
+				quotaIds.add(future.get(30, TimeUnit.SECONDS).getId());
+			}
+			assertEquals(1, quotaIds.size());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Integer rows = jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM fuel_quotas WHERE vehicle_id = ? AND fuel_type = ? AND period = ?",
+				Integer.class, saved.getId(), "Petrol", YearMonth.now().toString());
+		assertEquals(1, rows);
+	}
+
+	@Test
+	void concurrentPumpsNeverOverdrawTheQuota() throws Exception {
+		User owner = TestFixtures.owner(userRepository, "drain");
+		Vehicle saved = TestFixtures.vehicle(vehicleRepository, owner, "DRN", "Car");
+		VehicleRepository.VehiclePumpView vehicle = vehicleRepository.findPumpViewById(saved.getId()).orElseThrow();
+		fuelQuotaService.getCurrentQuota(saved, "Petrol");
+
+		// Twelve 10 L pumps against a 60 L quota
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<FuelQuotaService.QuotaDeduction>> futures = new ArrayList<>();
+		try {
+			for (int i = 0; i < 12; i++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					return fuelQuotaService.deductFuelAtomically(vehicle, "Petrol", 10_000);
+				}));
+			}
+			start.countDown();
+
+			Set<Long> balancesBefore = new HashSet<>();
+			int rejected = 0;
+			for (Future<FuelQuotaService.QuotaDeduction> future : futures) {
+				FuelQuotaService.QuotaDeduction deduction = future.get(30, TimeUnit.SECONDS);
+				if (deduction.isApplied()) {
+					assertEquals(deduction.getQuotaBeforeMl() - 10_000, deduction.getQuotaAfterMl());
+					balancesBefore.add(deduction.getQuotaBeforeMl());
+				} else {
+					rejected++;
+				}
+			}
+
+			// Each applied pump saw the balance the one before it left
+			assertEquals(Set.of(60_000L, 50_000L, 40_000L, 30_000L, 20_000L, 10_000L), balancesBefore);
+			assertEquals(6, rejected);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(0, fuelQuotaService.getRemainingQuotaMl(saved, "Petrol"));
+	}
+
+}
@@ -0,0 +1,93 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.FuelQuota;
+import com.example.fuelQuotaManagementSystem.entity.User;
+import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import com.example.fuelQuotaManagementSystem.repository.FuelQuotaRepository;
+import com.example.fuelQuotaManagementSystem.repository.UserRepository;
+import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+import com.example.fuelQuotaManagementSystem.support.TestFixtures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.YearMonth;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+@SpringBootTest
+class FuelQuotaServiceTest {
+
+	@Autowired
+	private FuelQuotaService fuelQuotaService;
+
+	@Autowired
+	private FuelQuotaRepository fuelQuotaRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private final YearMonth lastMonth = YearMonth.now().minusMonths(1);
+	private Vehicle vehicle;
+
+	@BeforeEach
+	void setUp() {
+		User owner = TestFixtures.owner(userRepository, "lazy");
+		vehicle = TestFixtures.vehicle(vehicleRepository, owner, "LZY", "Car");
+	}
+
+	@AfterEach
+	void tearDown() {
+		jdbcTemplate.update("DELETE FROM fuel_quotas WHERE vehicle_id = ?", vehicle.getId());
+	}
+
+	@Test
+	void firstAccessInAPeriodCreatesItsQuotaAndKeepsTheLastOne() {
+		// Last month's quota, partly used
+		long now = System.currentTimeMillis();
+		fuelQuotaRepository.insertIfAbsent(vehicle.getId(), "Petrol", lastMonth.toString(), 60_000L,
+				QuotaAllocationPolicy.MONTHLY, now, now, now);
+		jdbcTemplate.update("UPDATE fuel_quotas SET remaining_quota_ml = 5000 WHERE vehicle_id = ? AND period = ?",
+				vehicle.getId(), lastMonth.toString());
+		FuelQuota previous = fuelQuotaRepository
+				.findByVehicleIdAndFuelTypeAndPeriod(vehicle.getId(), "Petrol", lastMonth.toString()).orElseThrow();
+
+		FuelQuota current = fuelQuotaService.getCurrentQuota(vehicle, "Petrol");
+
+		assertEquals(YearMonth.now().toString(), current.getPeriod());
+		assertNotEquals(previous.getId(), current.getId());
+		assertEquals(60_000, current.getAllocatedQuotaMl());
+		assertEquals(60_000, current.getRemainingQuotaMl());
+		// Earlier periods stay as history
+		assertEquals(5_000, fuelQuotaRepository
+				.findByVehicleIdAndFuelTypeAndPeriod(vehicle.getId(), "Petrol", lastMonth.toString())
+				.orElseThrow().getRemainingQuotaMl());
+
+		// Later accesses use the same row
+		assertEquals(current.getId(), fuelQuotaService.getCurrentQuota(vehicle, "Petrol").getId());
+	}
+
+	@Test
+	void monthlyResetTouchesNoQuotaInLazyMode() {
+		fuelQuotaService.getCurrentQuota(vehicle, "Petrol");
+		jdbcTemplate.update("UPDATE fuel_quotas SET remaining_quota_ml = 5000 WHERE vehicle_id = ? AND period = ?",
+				vehicle.getId(), YearMonth.now().toString());
+		int jobs = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM quota_jobs", Integer.class);
+
+		fuelQuotaService.automaticMonthlyQuotaReset();
+
+		assertEquals(5_000, fuelQuotaService.getRemainingQuotaMl(vehicle, "Petrol"));
+		assertEquals(jobs, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM quota_jobs", Integer.class));
+	}
+
+}
@@ -0,0 +1,231 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.dto.admin.UsageTrendsData;
+import com.example.fuelQuotaManagementSystem.dto.fuelStation.StationDashboardResponse;
+import com.example.fuelQuotaManagementSystem.entity.FuelStation;
+import com.example.fuelQuotaManagementSystem.entity.User;
+import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import com.example.fuelQuotaManagementSystem.repository.FuelStationRepository;
+import com.example.fuelQuotaManagementSystem.repository.UserRepository;
+import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+import com.example.fuelQuotaManagementSystem.support.TestFixtures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+@SpringBootTest
+class FuelRollupServiceTest {
+
+	private static final double DELTA = 1e-6;
+
+	// Days no other test records pumps on
+	private static final LocalDate FIRST_DAY = LocalDate.of(2002, 6, 10);
+	private static final LocalDate SECOND_DAY = LocalDate.of(2002, 6, 11);
+
+	@Autowired
+	private FuelRollupService fuelRollupService;
+
+	@Autowired
+	private AdminService adminService;
+
+	@Autowired
+	private FuelStationService fuelStationService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private FuelStationRepository fuelStationRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private Object originalLeaderboardService;
+	private Vehicle first;
+	private Vehicle second;
+	private Vehicle diesel;
+	private FuelStation north;
+	private FuelStation south;
+
+	@BeforeEach
+	void setUp() {
+		// Old pumps would land in the all-time leaderboard other tests read
+		originalLeaderboardService = ReflectionTestUtils.getField(fuelRollupService, "consumptionLeaderboardService");
+		ReflectionTestUtils.setField(fuelRollupService, "consumptionLeaderboardService", mock(ConsumptionLeaderboardService.class));
+
+		User owner = TestFixtures.owner(userRepository, "rollup");
+		first = TestFixtures.vehicle(vehicleRepository, owner, "RLA", "Car");
+		second = TestFixtures.vehicle(vehicleRepository, owner, "RLB", "Car");
+		Vehicle dieselVehicle = TestFixtures.newVehicle(owner, "RLD", "Lorry");
+		dieselVehicle.setFuelType("Diesel");
+		diesel = vehicleRepository.save(dieselVehicle);
+		north = station(owner, "Rollup North " + TestFixtures.unique());
+		south = station(owner, "Rollup South " + TestFixtures.unique());
+
+		// One pump at a time, as /pump records them
+		pump(first, north, "Petrol", 10_000, FIRST_DAY.atTime(8, 0));
+		pump(first, north, "Petrol", 5_000, FIRST_DAY.atTime(9, 0));
+		pump(first, south, "Petrol", 20_000, FIRST_DAY.atTime(10, 0));
+		pump(second, south, "Petrol", 15_000, FIRST_DAY.atTime(11, 0));
+
+		// One batch, as /pump/batch records them
+		fuelRollupService.recordPumps(List.of(
+				transaction(first, south, "Petrol", 18_000, SECOND_DAY.atTime(8, 0)),
+				transaction(diesel, north, "Diesel", 30_000, SECOND_DAY.atTime(9, 0)),
+				transaction(diesel, north, "Diesel", 12_000, SECOND_DAY.atTime(10, 0))));
+	}
+
+	@AfterEach
+	void tearDown() {
+		ReflectionTestUtils.setField(fuelRollupService, "consumptionLeaderboardService", originalLeaderboardService);
+		jdbcTemplate.update("DELETE FROM fuel_transactions WHERE station_id IN (?, ?)", north.getId(), south.getId());
+		jdbcTemplate.update("DELETE FROM daily_station_fuel_stats WHERE stat_date BETWEEN ? AND ?",
+				FIRST_DAY.toString(), SECOND_DAY.toString());
+		jdbcTemplate.update("DELETE FROM daily_vehicle_visits WHERE visit_date BETWEEN ? AND ?",
+				FIRST_DAY.toString(), SECOND_DAY.toString());
+	}
+
+	@Test
+	void vehicleCountsAreDistinctPerStationAndNewOnlyAtTheFirstStationOfTheDay() {
+		List<Map<String, Object>> rows = rollupRows();
+
+		assertEquals(4, rows.size());
+		// The first vehicle pumped twice at north, then at south: counted at both, new only at north
+		assertRow(rows.get(0), FIRST_DAY, north, "Petrol", 2, 15_000, 1, 1);
+		assertRow(rows.get(1), FIRST_DAY, south, "Petrol", 2, 35_000, 2, 1);
+		assertRow(rows.get(2), SECOND_DAY, north, "Diesel", 2, 42_000, 1, 1);
+		// New again on the next day
+		assertRow(rows.get(3), SECOND_DAY, south, "Petrol", 1, 18_000, 1, 1);
+	}
+
+	@Test
+	void rebuildReproducesTheIncrementalRows() {
+		List<Map<String, Object>> incremental = rollupRows();
+
+		assertEquals(2, fuelRollupService.rebuild(FIRST_DAY, SECOND_DAY));
+
+		assertEquals(incremental, rollupRows());
+	}
+
+	@Test
+	void reportsAddUpTheRolledUpPumps() {
+		Object consumption = adminService.getFuelConsumptionReport(FIRST_DAY, SECOND_DAY, null);
+		assertEquals(68.0, (Double) field(consumption, "totalPetrolConsumed"), DELTA);
+		assertEquals(42.0, (Double) field(consumption, "totalDieselConsumed"), DELTA);
+		assertEquals(110.0, (Double) field(consumption, "totalFuelConsumed"), DELTA);
+		assertEquals(7, field(consumption, "totalTransactions"));
+		assertEquals(110.0 / 7, (Double) field(consumption, "averageFuelPerTransaction"), DELTA);
+		assertEquals(north.getName(), field(consumption, "mostActiveStations"));
+		assertEquals(SECOND_DAY.toString(), field(consumption, "peakConsumptionDay"));
+
+		Object dieselOnly = adminService.getFuelConsumptionReport(FIRST_DAY, SECOND_DAY, "diesel");
+		assertEquals(0.0, (Double) field(dieselOnly, "totalPetrolConsumed"), DELTA);
+		assertEquals(42.0, (Double) field(dieselOnly, "totalDieselConsumed"), DELTA);
+		assertEquals(2, field(dieselOnly, "totalTransactions"));
+
+		Object performance = adminService.getStationPerformanceReport(FIRST_DAY, SECOND_DAY);
+		assertEquals(7L, field(performance, "totalTransactions"));
+		assertEquals(110.0, (Double) field(performance, "totalFuelDispenseds"), DELTA);
+		assertEquals(north.getName(), field(performance, "topPerformingStation"));
+		assertEquals(south.getName(), field(performance, "leastActiveStations"));
+
+		@SuppressWarnings("unchecked")
+		List<UsageTrendsData> trends = (List<UsageTrendsData>) adminService.getSystemUsageTrends(FIRST_DAY, SECOND_DAY, "day");
+		assertEquals(2, trends.size());
+		assertTrend(trends.get(0), FIRST_DAY, 4, 50.0, 2, 2);
+		assertTrend(trends.get(1), SECOND_DAY, 3, 60.0, 2, 2);
+	}
+
+	@Test
+	void stationDashboardTotalsComeFromTheStationsRows() {
+		StationDashboardResponse northDashboard = fuelStationService.getStationDashboard(north.getId(), null, true);
+		assertEquals(4, northDashboard.getTotalTransactionCount());
+		assertEquals(15.0, northDashboard.getTotalPetrolDispensed(), DELTA);
+		assertEquals(42.0, northDashboard.getTotalDieselDispensed(), DELTA);
+		assertEquals(57.0, northDashboard.getTotalFuelDispensed(), DELTA);
+		// Nothing pumped today
+		assertEquals(0, northDashboard.getTodayTransactionCount());
+
+		StationDashboardResponse southDashboard = fuelStationService.getStationDashboard(south.getId(), null, true);
+		assertEquals(3, southDashboard.getTotalTransactionCount());
+		assertEquals(53.0, southDashboard.getTotalPetrolDispensed(), DELTA);
+		assertEquals(0.0, southDashboard.getTotalDieselDispensed(), DELTA);
+	}
+
+	private void pump(Vehicle vehicle, FuelStation station, String fuelType, long amountMl, LocalDateTime time) {
+		FuelRollupService.PumpRecord record = transaction(vehicle, station, fuelType, amountMl, time);
+		fuelRollupService.recordPump(record.vehicleId(), record.stationId(), fuelType, amountMl, record.timestamp());
+	}
+
+	// Inserted in time order, so transaction ids follow the timestamps as they do for live pumps
+	private FuelRollupService.PumpRecord transaction(Vehicle vehicle, FuelStation station, String fuelType, long amountMl,
+													 LocalDateTime time) {
+		long timestamp = time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		jdbcTemplate.update("INSERT INTO fuel_transactions (vehicle_id, station_id, fuel_type, amount_ml, " +
+						"quota_before_transaction_ml, quota_after_transaction_ml, notification_sent, timestamp) " +
+						"VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+				vehicle.getId(), station.getId(), fuelType, amountMl, 100_000L, 100_000L - amountMl, false, timestamp);
+		return new FuelRollupService.PumpRecord(vehicle.getId(), station.getId(), fuelType, amountMl, timestamp);
+	}
+
+	private List<Map<String, Object>> rollupRows() {
+		return new ArrayList<>(jdbcTemplate.queryForList("SELECT stat_date, station_id, fuel_type, transaction_count, " +
+						"amount_ml, vehicle_count, new_vehicle_count FROM daily_station_fuel_stats " +
+						"WHERE station_id IN (?, ?) ORDER BY stat_date, fuel_type, station_id",
+				north.getId(), south.getId()));
+	}
+
+	private static void assertRow(Map<String, Object> row, LocalDate date, FuelStation station, String fuelType,
+								  long transactions, long amountMl, long vehicles, long newVehicles) {
+		assertEquals(date.toString(), row.get("stat_date"));
+		assertEquals(station.getId(), ((Number) row.get("station_id")).longValue());
+		assertEquals(fuelType, row.get("fuel_type"));
+		assertEquals(transactions, ((Number) row.get("transaction_count")).longValue());
+		assertEquals(amountMl, ((Number) row.get("amount_ml")).longValue());
+		assertEquals(vehicles, ((Number) row.get("vehicle_count")).longValue());
+		assertEquals(newVehicles, ((Number) row.get("new_vehicle_count")).longValue());
+	}
+
+	private static void assertTrend(UsageTrendsData trend, LocalDate date, int transactions, double litres,
+									int vehicles, int stations) {
+		assertEquals(date.toString(), trend.getDate());
+		assertEquals(transactions, trend.getTransactionCount());
+		assertEquals(litres, trend.getFuelDispensed(), DELTA);
+		assertEquals(vehicles, trend.getUniqueVehicles());
+		assertEquals(stations, trend.getActiveStations());
+	}
+
+	// The reports are anonymous objects serialised from their public fields
+	private static Object field(Object report, String name) {
+		return ReflectionTestUtils.getField(report, name);
+	}
+
+	private FuelStation station(User owner, String name) {
+		FuelStation station = new FuelStation();
+		station.setName(name);
+		station.setRegistrationNumber("RST-" + TestFixtures.unique());
+		station.setOwner(owner);
+		station.setHasPetrol(true);
+		station.setHasDiesel(true);
+		station.setActive(true);
+		return fuelStationRepository.save(station);
+	}
+
+}
@@ -0,0 +1,135 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.NotificationOutbox;
+import com.example.fuelQuotaManagementSystem.repository.NotificationOutboxRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+class NotificationFanOutServiceTest {
+
+	private static final long BACKOFF_INITIAL = 60_000;
+	private static final long BACKOFF_MAX = 300_000;
+
+	@Autowired
+	private NotificationFanOutService notificationFanOutService;
+
+	@Autowired
+	private NotificationOutboxRepository notificationOutboxRepository;
+
+	private Object originalNotificationService;
+	private Object originalBackoffInitial;
+	private Object originalBackoffMax;
+
+	@BeforeEach
+	void setUp() {
+		NotificationService smsProvider = mock(NotificationService.class);
+		when(smsProvider.sendSMS(anyString(), anyString())).thenReturn(false);
+
+		originalNotificationService = ReflectionTestUtils.getField(notificationFanOutService, "notificationService");
+		originalBackoffInitial = ReflectionTestUtils.getField(notificationFanOutService, "backoffInitialMillis");
+		originalBackoffMax = ReflectionTestUtils.getField(notificationFanOutService, "backoffMaxMillis");
+		ReflectionTestUtils.setField(notificationFanOutService, "notificationService", smsProvider);
+		ReflectionTestUtils.setField(notificationFanOutService, "backoffInitialMillis", BACKOFF_INITIAL);
+		ReflectionTestUtils.setField(notificationFanOutService, "backoffMaxMillis", BACKOFF_MAX);
+	}
+
+	@AfterEach
+	void tearDown() {
+		ReflectionTestUtils.setField(notificationFanOutService, "notificationService", originalNotificationService);
+		ReflectionTestUtils.setField(notificationFanOutService, "backoffInitialMillis", originalBackoffInitial);
+		ReflectionTestUtils.setField(notificationFanOutService, "backoffMaxMillis", originalBackoffMax);
+	}
+
+	@Test
+	void dispatchesOnlyWhileHoldingTheFanOutLease() {
+		Object originalScheduler = ReflectionTestUtils.getField(notificationFanOutService, "clusterScheduler");
+		Object originalLeaseHeld = ReflectionTestUtils.getField(notificationFanOutService, "leaseHeld");
+		try {
+			ClusterScheduler heldElsewhere = mock(ClusterScheduler.class);
+			when(heldElsewhere.holdLease(eq(NotificationFanOutService.LEASE_NAME), any())).thenReturn(false);
+			ReflectionTestUtils.setField(notificationFanOutService, "clusterScheduler", heldElsewhere);
+			assertFalse((Boolean) ReflectionTestUtils.invokeMethod(notificationFanOutService, "acquireLease"));
+			assertFalse((Boolean) ReflectionTestUtils.getField(notificationFanOutService, "leaseHeld"));
+
+			ClusterScheduler free = mock(ClusterScheduler.class);
+			when(free.holdLease(eq(NotificationFanOutService.LEASE_NAME), any())).thenReturn(true);
+			ReflectionTestUtils.setField(notificationFanOutService, "clusterScheduler", free);
+			assertTrue((Boolean) ReflectionTestUtils.invokeMethod(notificationFanOutService, "acquireLease"));
+
+			// A failed renewal stops the dispatching until the lease is taken again
+			ArgumentCaptor<Runnable> onLost = ArgumentCaptor.forClass(Runnable.class);
+			verify(free).holdLease(eq(NotificationFanOutService.LEASE_NAME), onLost.capture());
+			onLost.getValue().run();
+			assertFalse((Boolean) ReflectionTestUtils.getField(notificationFanOutService, "leaseHeld"));
+		} finally {
+			ReflectionTestUtils.setField(notificationFanOutService, "clusterScheduler", originalScheduler);
+			ReflectionTestUtils.setField(notificationFanOutService, "leaseHeld", originalLeaseHeld);
+		}
+	}
+
+	@Test
+	void failedSendsBackOffExponentiallyUpToTheCapThenFail() {
+		// Saved as already claimed, so the running dispatcher leaves them to this test
+		String claimToken = UUID.randomUUID().toString();
+		Long first = claimed(claimToken, 0).getId();
+		Long third = claimed(claimToken, 2).getId();
+		Long fourth = claimed(claimToken, 3).getId();
+		Long last = claimed(claimToken, 4).getId();
+
+		ReflectionTestUtils.invokeMethod(notificationFanOutService, "dispatch",
+				notificationOutboxRepository.findByClaimToken(claimToken));
+
+		assertRetryAfter(first, 1, BACKOFF_INITIAL);
+		assertRetryAfter(third, 3, BACKOFF_INITIAL * 4);
+		// 8x the initial delay is past the cap
+		assertRetryAfter(fourth, 4, BACKOFF_MAX);
+
+		// The fifth failed attempt uses up notification.fanout.max-attempts
+		NotificationOutbox failed = notificationOutboxRepository.findById(last).orElseThrow();
+		assertEquals(NotificationOutbox.STATUS_FAILED, failed.getStatus());
+		assertEquals(5, failed.getAttempts());
+		assertNull(failed.getClaimToken());
+	}
+
+	private void assertRetryAfter(Long id, int attempts, long delayMillis) {
+		NotificationOutbox entry = notificationOutboxRepository.findById(id).orElseThrow();
+		assertEquals(NotificationOutbox.STATUS_PENDING, entry.getStatus());
+		assertEquals(attempts, entry.getAttempts());
+		assertNull(entry.getClaimToken());
+		assertEquals(delayMillis, entry.getNextAttemptAt() - entry.getProcessedAt());
+	}
+
+	private NotificationOutbox claimed(String claimToken, int attempts) {
+		NotificationOutbox entry = new NotificationOutbox();
+		entry.setNotificationType(NotificationOutbox.TYPE_QUOTA_ALLOCATION);
+		entry.setPhoneNumber("0770000010");
+		entry.setMessage("allocation " + UUID.randomUUID());
+		entry.setStatus(NotificationOutbox.STATUS_IN_PROGRESS);
+		entry.setAttempts(attempts);
+		entry.setNextAttemptAt(System.currentTimeMillis());
+		entry.setClaimToken(claimToken);
+		entry.setClaimedAt(System.currentTimeMillis());
+		return notificationOutboxRepository.save(entry);
+	}
+
+}
@@ -0,0 +1,167 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.NotificationOutbox;
+import com.example.fuelQuotaManagementSystem.repository.NotificationOutboxRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+class NotificationOutboxServiceTest {
+
+	private static final String DELIVERED_PHONE = "0770000001";
+	private static final String FAILING_PHONE = "0770000002";
+	private static final long BACKOFF_INITIAL = 60_000;
+
+	@Autowired
+	private NotificationOutboxService notificationOutboxService;
+
+	@Autowired
+	private NotificationOutboxRepository notificationOutboxRepository;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private Object originalNotificationService;
+	private Object originalBackoffInitial;
+	private NotificationService smsProvider;
+
+	@BeforeEach
+	void setUp() {
+		smsProvider = mock(NotificationService.class);
+		when(smsProvider.sendSMS(eq(DELIVERED_PHONE), anyString())).thenReturn(true);
+
+		originalNotificationService = ReflectionTestUtils.getField(notificationOutboxService, "notificationService");
+		originalBackoffInitial = ReflectionTestUtils.getField(notificationOutboxService, "backoffInitialMillis");
+		ReflectionTestUtils.setField(notificationOutboxService, "notificationService", smsProvider);
+		ReflectionTestUtils.setField(notificationOutboxService, "backoffInitialMillis", BACKOFF_INITIAL);
+		// The scheduled drain may now run alongside the test; claims keep the two apart
+		ReflectionTestUtils.setField(notificationOutboxService, "enabled", true);
+	}
+
+	@AfterEach
+	void tearDown() {
+		ReflectionTestUtils.setField(notificationOutboxService, "enabled", false);
+		ReflectionTestUtils.setField(notificationOutboxService, "notificationService", originalNotificationService);
+		ReflectionTestUtils.setField(notificationOutboxService, "backoffInitialMillis", originalBackoffInitial);
+	}
+
+	@Test
+	void drainSendsOnceAndRetriesWithBackoffUntilMaxAttempts() throws InterruptedException {
+		String delivered = "delivered " + UUID.randomUUID();
+		String failing = "failing " + UUID.randomUUID();
+		notificationOutboxService.enqueueAll(List.of(entry(DELIVERED_PHONE, delivered), entry(FAILING_PHONE, failing)));
+
+		NotificationOutbox retry = drainUntilAttempts(failing, 1);
+		assertEquals(NotificationOutbox.STATUS_PENDING, retry.getStatus());
+		assertEquals(BACKOFF_INITIAL, retry.getNextAttemptAt() - retry.getProcessedAt());
+
+		// Not due yet: draining again does not resend
+		notificationOutboxService.drain();
+		assertEquals(1, find(failing).getAttempts());
+
+		makeDue(failing);
+		retry = drainUntilAttempts(failing, 2);
+		assertEquals(NotificationOutbox.STATUS_PENDING, retry.getStatus());
+		assertEquals(BACKOFF_INITIAL * 2, retry.getNextAttemptAt() - retry.getProcessedAt());
+
+		makeDue(failing);
+		NotificationOutbox failed = drainUntilAttempts(failing, 3);
+		assertEquals(NotificationOutbox.STATUS_FAILED, failed.getStatus());
+
+		NotificationOutbox sent = find(delivered);
+		assertEquals(NotificationOutbox.STATUS_SENT, sent.getStatus());
+		assertEquals(1, sent.getAttempts());
+		assertEquals(null, sent.getClaimToken());
+
+		verify(smsProvider, times(1)).sendSMS(DELIVERED_PHONE, delivered);
+		verify(smsProvider, times(3)).sendSMS(FAILING_PHONE, failing);
+	}
+
+	@Test
+	void onlyTimedOutClaimsAreReleased() {
+		String abandoned = "abandoned " + UUID.randomUUID();
+		String active = "active " + UUID.randomUUID();
+		notificationOutboxService.enqueueAll(List.of(entry("0770000003", abandoned), entry("0770000004", active)));
+
+		long now = System.currentTimeMillis();
+		// Not due for an hour, so the scheduled drain leaves them to this test
+		jdbcTemplate.update("UPDATE notification_outbox SET next_attempt_at = ? WHERE message IN (?, ?)",
+				now + 3_600_000, abandoned, active);
+		String deadWorker = UUID.randomUUID().toString();
+		String liveWorker = UUID.randomUUID().toString();
+		transactionTemplate.executeWithoutResult(status -> {
+			notificationOutboxRepository.claim(List.of(find(abandoned).getId()), deadWorker, now - 3_600_000);
+			notificationOutboxRepository.claim(List.of(find(active).getId()), liveWorker, now);
+		});
+
+		notificationOutboxService.releaseStaleClaims();
+
+		// The live worker's row stays claimed; the dead worker's row is back in the queue
+		NotificationOutbox stillClaimed = find(active);
+		assertEquals(NotificationOutbox.STATUS_IN_PROGRESS, stillClaimed.getStatus());
+		assertEquals(liveWorker, stillClaimed.getClaimToken());
+		assertNotEquals(deadWorker, find(abandoned).getClaimToken());
+
+		// A late outcome from the dead worker no longer applies
+		Integer updated = transactionTemplate.execute(status -> notificationOutboxRepository.updateStatus(
+				List.of(find(abandoned).getId()), deadWorker, NotificationOutbox.STATUS_SENT, System.currentTimeMillis()));
+		assertEquals(0, updated);
+	}
+
+	private static NotificationOutbox entry(String phoneNumber, String message) {
+		NotificationOutbox entry = new NotificationOutbox();
+		entry.setNotificationType(NotificationOutbox.TYPE_FUEL_TRANSACTION);
+		entry.setPhoneNumber(phoneNumber);
+		entry.setMessage(message);
+		return entry;
+	}
+
+	// The scheduled drain runs alongside the test and may send the row first
+	private NotificationOutbox drainUntilAttempts(String message, int attempts) throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			NotificationOutbox entry = find(message);
+			if (entry.getAttempts() >= attempts && !NotificationOutbox.STATUS_IN_PROGRESS.equals(entry.getStatus())) {
+				assertEquals(attempts, entry.getAttempts());
+				return entry;
+			}
+			notificationOutboxService.drain();
+			Thread.sleep(20);
+		}
+		throw new AssertionError("Outbox row was not tried " + attempts + " times");
+	}
+
+	private void makeDue(String message) {
+		jdbcTemplate.update("UPDATE notification_outbox SET next_attempt_at = ? WHERE message = ?",
+				System.currentTimeMillis() - 1, message);
+	}
+
+	private NotificationOutbox find(String message) {
+		return notificationOutboxRepository.findAll().stream()
+				.filter(entry -> message.equals(entry.getMessage()))
+				.findFirst()
+				.orElseThrow();
+	}
+
+}
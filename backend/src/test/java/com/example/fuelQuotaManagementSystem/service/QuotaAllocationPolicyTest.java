@@ -0,0 +1,110 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.QuotaAllocationRule;
+import com.example.fuelQuotaManagementSystem.repository.QuotaAllocationRuleRepository;
+import com.example.fuelQuotaManagementSystem.support.TestFixtures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+class QuotaAllocationPolicyTest {
+
+	private static final String MONTHLY = QuotaAllocationPolicy.MONTHLY;
+
+	@Autowired
+	private QuotaAllocationPolicy quotaAllocationPolicy;
+
+	@Autowired
+	private QuotaAllocationRuleRepository quotaAllocationRuleRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private final List<QuotaAllocationRule> addedRules = new ArrayList<>();
+
+	@AfterEach
+	void tearDown() {
+		if (!addedRules.isEmpty()) {
+			quotaAllocationRuleRepository.deleteAll(addedRules);
+			quotaAllocationPolicy.reload();
+		}
+	}
+
+	@Test
+	void defaultRulesKeepThePreviousAllocations() {
+		QuotaAllocationPolicy.CompiledPolicy policy = QuotaAllocationPolicy.compile(QuotaAllocationPolicy.defaultRules(), 0L);
+
+		// Engine capacity bands, upper bound included
+		assertEquals(60_000, policy.allocationMl(MONTHLY, "Car", "Petrol", 1800.0));
+		assertEquals(80_000, policy.allocationMl(MONTHLY, "Car", "Petrol", 1800.1));
+		assertEquals(60_000, policy.allocationMl(MONTHLY, "Car", "Petrol", null));
+		// Names in any case
+		assertEquals(80_000, policy.allocationMl(MONTHLY, "car", "PETROL", 2400.0));
+		assertEquals(20_000, policy.allocationMl(MONTHLY, "Motorcycle", "Petrol", 150.0));
+		assertEquals(200_000, policy.allocationMl(MONTHLY, "Lorry", "diesel", 4000.0));
+		// Wildcards: any vehicle type for the fuel, then any of both
+		assertEquals(60_000, policy.allocationMl(MONTHLY, "Van", "Petrol", 2000.0));
+		assertEquals(80_000, policy.allocationMl(MONTHLY, "Van", "Diesel", 2000.0));
+		assertEquals(60_000, policy.allocationMl(MONTHLY, "Van", "Electric", null));
+
+		assertThrows(IllegalArgumentException.class, () -> policy.allocationMl("WEEKLY", "Car", "Petrol", 1500.0));
+	}
+
+	@Test
+	void ruleSetWithoutAnyDefaultDoesNotCompile() {
+		List<QuotaAllocationRule> rules = List.of(new QuotaAllocationRule(MONTHLY, "Car", "Petrol", null, 60_000L));
+
+		assertThrows(IllegalArgumentException.class, () -> QuotaAllocationPolicy.compile(rules, 0L));
+	}
+
+	@Test
+	void reloadReachesEveryNode() {
+		String vehicleType = "Reloadvan" + TestFixtures.unique();
+		QuotaAllocationPolicy otherNode = new QuotaAllocationPolicy();
+		ReflectionTestUtils.setField(otherNode, "quotaAllocationRuleRepository", quotaAllocationRuleRepository);
+		ReflectionTestUtils.setField(otherNode, "jdbcTemplate", jdbcTemplate);
+		otherNode.load();
+
+		addedRules.add(quotaAllocationRuleRepository.save(new QuotaAllocationRule(MONTHLY, vehicleType, "Petrol", null, 45_000L)));
+		// Saved but not reloaded yet
+		assertEquals(60_000, quotaAllocationPolicy.allocationMl(MONTHLY, vehicleType, "Petrol", 1500.0));
+
+		quotaAllocationPolicy.reload();
+
+		assertEquals(45_000, quotaAllocationPolicy.allocationMl(MONTHLY, vehicleType, "Petrol", 1500.0));
+		assertEquals(60_000, otherNode.allocationMl(MONTHLY, vehicleType, "Petrol", 1500.0));
+		otherNode.checkVersion();
+		assertEquals(45_000, otherNode.allocationMl(MONTHLY, vehicleType, "Petrol", 1500.0));
+	}
+
+	@Test
+	void rejectedReloadKeepsThePreviousPolicyEverywhere() {
+		String vehicleType = "Badvan" + TestFixtures.unique();
+		long version = policyVersion();
+		int ruleCount = quotaAllocationPolicy.getRuleCount();
+
+		addedRules.add(quotaAllocationRuleRepository.save(new QuotaAllocationRule(MONTHLY, vehicleType, "Petrol", null, -1L)));
+
+		assertThrows(IllegalArgumentException.class, () -> quotaAllocationPolicy.reload());
+
+		assertEquals(60_000, quotaAllocationPolicy.allocationMl(MONTHLY, vehicleType, "Petrol", 1500.0));
+		assertEquals(ruleCount, quotaAllocationPolicy.getRuleCount());
+		// Not announced, so the other nodes do not try to load it either
+		assertEquals(version, policyVersion());
+	}
+
+	private long policyVersion() {
+		return jdbcTemplate.queryForObject("SELECT version FROM quota_policy_version", Long.class);
+	}
+
+}
@@ -0,0 +1,176 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.QuotaPeriodSummary;
+import com.example.fuelQuotaManagementSystem.entity.User;
+import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import com.example.fuelQuotaManagementSystem.repository.FuelQuotaRepository;
+import com.example.fuelQuotaManagementSystem.repository.UserRepository;
+import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+import com.example.fuelQuotaManagementSystem.support.TestFixtures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+class QuotaArchiveServiceTest {
+
+	// A closed period no other test writes quotas for
+	private static final YearMonth PERIOD = YearMonth.of(2001, 3);
+
+	@Autowired
+	private QuotaArchiveService quotaArchiveService;
+
+	@Autowired
+	private FuelQuotaRepository fuelQuotaRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ClusterScheduler clusterScheduler;
+
+	private Object originalChunkSize;
+	private Object originalQuotaLedger;
+	private String suffix;
+	private User owner;
+
+	@BeforeEach
+	void setUp() {
+		// Two quotas per chunk, so the three quotas below take two chunks
+		originalChunkSize = ReflectionTestUtils.getField(quotaArchiveService, "chunkSize");
+		ReflectionTestUtils.setField(quotaArchiveService, "chunkSize", 2);
+		originalQuotaLedger = ReflectionTestUtils.getField(quotaArchiveService, "quotaLedger");
+
+		suffix = TestFixtures.unique();
+		owner = TestFixtures.owner(userRepository, "archive");
+	}
+
+	@AfterEach
+	void tearDown() {
+		ReflectionTestUtils.setField(quotaArchiveService, "chunkSize", originalChunkSize);
+		ReflectionTestUtils.setField(quotaArchiveService, "quotaLedger", originalQuotaLedger);
+		// Leave no quotas of the period behind for the other tests
+		jdbcTemplate.update("DELETE FROM fuel_quotas WHERE period = ?", PERIOD.toString());
+	}
+
+	@Test
+	void closingMovesQuotasToHistoryAndSummarisesEachVehicleType() {
+		String car = "Archivecar" + suffix;
+		String van = "Archivevan" + suffix;
+		quota(vehicle(car), 20_000, 0);
+		quota(vehicle(car), 20_000, 20_000);
+		quota(vehicle(van), 30_000, 10_000);
+
+		QuotaArchiveService.CloseResult result = quotaArchiveService.closePeriod(PERIOD);
+
+		assertEquals(3, result.getQuotasArchived());
+		assertEquals(3, result.getQuotasInHistory());
+		assertEquals(2, result.getSummaryRows());
+		assertEquals(0, queryForPeriod("SELECT COUNT(*) FROM fuel_quotas WHERE period = ?"));
+		assertEquals(3, queryForPeriod("SELECT COUNT(*) FROM fuel_quota_history WHERE period = ?"));
+		assertEquals(70_000, queryForPeriod("SELECT SUM(allocated_quota_ml) FROM fuel_quota_history WHERE period = ?"));
+		assertEquals(40_000, queryForPeriod("SELECT SUM(used_quota_ml) FROM fuel_quota_history WHERE period = ?"));
+
+		// One fully used and one untouched car quota
+		assertSummary(car, 2, 40_000, 20_000, 1, 1);
+		assertSummary(van, 1, 30_000, 20_000, 0, 0);
+
+		// A late quota is picked up by closing again, and the summary is rebuilt rather than added to
+		quota(vehicle(van), 10_000, 10_000);
+		QuotaArchiveService.CloseResult again = quotaArchiveService.closePeriod(PERIOD);
+
+		assertEquals(1, again.getQuotasArchived());
+		assertEquals(4, again.getQuotasInHistory());
+		assertEquals(4, queryForPeriod("SELECT COUNT(*) FROM fuel_quota_history WHERE period = ?"));
+		assertSummary(car, 2, 40_000, 20_000, 1, 1);
+		assertSummary(van, 2, 40_000, 20_000, 0, 1);
+	}
+
+	@Test
+	void closeWritesBackAndDropsTheLedgerEntriesOfThePeriod() {
+		QuotaLedger ledger = new QuotaLedger();
+		ReflectionTestUtils.setField(ledger, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(ledger, "clusterScheduler", clusterScheduler);
+		ReflectionTestUtils.setField(ledger, "enabled", true);
+		ReflectionTestUtils.setField(ledger, "flushBatchSize", 500);
+		ReflectionTestUtils.setField(ledger, "active", true);
+		ReflectionTestUtils.setField(quotaArchiveService, "quotaLedger", ledger);
+
+		Vehicle vehicle = vehicle("Archiveledger" + suffix);
+		quota(vehicle, 20_000, 20_000);
+		QuotaLedger.Entry entry = ledger.trackIfAbsent(fuelQuotaRepository
+				.findByVehicleIdAndFuelTypeAndPeriod(vehicle.getId(), "Petrol", PERIOD.toString()).orElseThrow());
+		// Pumped on the last day of the period, not flushed yet
+		entry.tryDeduct(5_000);
+
+		quotaArchiveService.closePeriod(PERIOD);
+
+		assertEquals(5_000, jdbcTemplate.queryForObject("SELECT used_quota_ml FROM fuel_quota_history WHERE vehicle_id = ?",
+				Long.class, vehicle.getId()));
+		assertEquals(QuotaLedger.RETIRED, entry.tryDeduct(1_000));
+	}
+
+	@Test
+	void periodIsNotClosedNextToAnotherNodesLedger() {
+		QuotaLedger ledger = mock(QuotaLedger.class);
+		when(ledger.isRunningElsewhere()).thenReturn(true);
+		ReflectionTestUtils.setField(quotaArchiveService, "quotaLedger", ledger);
+
+		quota(vehicle("Archiveremote" + suffix), 20_000, 0);
+
+		assertThrows(IllegalStateException.class, () -> quotaArchiveService.closePeriod(PERIOD));
+		assertEquals(1, queryForPeriod("SELECT COUNT(*) FROM fuel_quotas WHERE period = ?"));
+		verify(ledger, never()).flushAndEvict(PERIOD.toString());
+	}
+
+	private void assertSummary(String vehicleType, long vehicleCount, long allocatedMl, long usedMl,
+							   long fullyUtilized, long notUsed) {
+		List<QuotaPeriodSummary> summaries = quotaArchiveService.getSummaries(PERIOD);
+		QuotaPeriodSummary summary = summaries.stream()
+				.filter(row -> vehicleType.equals(row.getVehicleType()))
+				.findFirst()
+				.orElseThrow();
+		assertEquals(vehicleCount, summary.getVehicleCount());
+		assertEquals(allocatedMl, summary.getAllocatedQuotaMl());
+		assertEquals(usedMl, summary.getUsedQuotaMl());
+		assertEquals(fullyUtilized, summary.getFullyUtilizedCount());
+		assertEquals(notUsed, summary.getNotUsedCount());
+	}
+
+	private Vehicle vehicle(String vehicleType) {
+		return TestFixtures.vehicle(vehicleRepository, owner, "ARC", vehicleType);
+	}
+
+	private void quota(Vehicle vehicle, long allocatedMl, long remainingMl) {
+		long now = System.currentTimeMillis();
+		fuelQuotaRepository.insertIfAbsent(vehicle.getId(), "Petrol", PERIOD.toString(), allocatedMl,
+				QuotaAllocationPolicy.MONTHLY, now, now, now);
+		jdbcTemplate.update("UPDATE fuel_quotas SET remaining_quota_ml = ? WHERE vehicle_id = ? AND period = ?",
+				remainingMl, vehicle.getId(), PERIOD.toString());
+	}
+
+	private long queryForPeriod(String sql) {
+		return jdbcTemplate.queryForObject(sql, Long.class, PERIOD.toString());
+	}
+
+}
@@ -0,0 +1,233 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.QuotaJob;
+import com.example.fuelQuotaManagementSystem.entity.QuotaJobChunk;
+import com.example.fuelQuotaManagementSystem.entity.User;
+import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import com.example.fuelQuotaManagementSystem.repository.QuotaJobChunkRepository;
+import com.example.fuelQuotaManagementSystem.repository.QuotaJobRepository;
+import com.example.fuelQuotaManagementSystem.repository.UserRepository;
+import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+import com.example.fuelQuotaManagementSystem.support.TestFixtures;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+class QuotaJobServiceTest {
+
+	// Far from the current period, so the quota rows written here do not meet other tests
+	private static final String PERIOD = "2090-01";
+
+	@Autowired
+	private QuotaJobService quotaJobService;
+
+	@Autowired
+	private QuotaJobRepository quotaJobRepository;
+
+	@Autowired
+	private QuotaJobChunkRepository quotaJobChunkRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private String vehicleType;
+	private List<Vehicle> vehicles;
+
+	@BeforeEach
+	void setUp() {
+		vehicleType = "Jobtest" + TestFixtures.unique();
+		User owner = TestFixtures.owner(userRepository, "job");
+
+		vehicles = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			vehicles.add(TestFixtures.vehicle(vehicleRepository, owner, "JOB", vehicleType));
+		}
+	}
+
+	@Test
+	void orphanedJobIsAdoptedAndResumesAfterItsDoneChunks() throws Exception {
+		// A dead node chunked the first two vehicles and applied them, then stopped heartbeating
+		QuotaJob job = job("dead-node", System.currentTimeMillis() - 3_600_000);
+		job.setProcessedVehicles(2);
+		job.setLastChunkedVehicleId(vehicles.get(1).getId());
+		job = quotaJobRepository.save(job);
+		chunk(job.getId(), vehicles.get(0), vehicles.get(1), 2, QuotaJobChunk.STATUS_DONE);
+
+		quotaJobService.heartbeat();
+		QuotaJobService.JobProgress progress = quotaJobService.awaitJob(job.getId(), 30_000);
+
+		assertEquals(QuotaJob.STATUS_COMPLETED, progress.getStatus());
+		assertEquals(3, progress.getProcessedVehicles());
+		assertEquals(0, progress.getFailedVehicles());
+		assertEquals(quotaJobService.getNodeId(), progress.getNodeId());
+
+		// Only the vehicle after the checkpoint was applied; the DONE chunk did not run again
+		assertEquals(0, quotaRows(vehicles.get(0)));
+		assertEquals(0, quotaRows(vehicles.get(1)));
+		assertEquals(1, quotaRows(vehicles.get(2)));
+	}
+
+	@Test
+	void unfinishedChunkRunsAgainOnResume() throws Exception {
+		// Paging finished, but the node died before the second chunk committed
+		QuotaJob job = job("dead-node", null);
+		job.setProcessedVehicles(1);
+		job.setLastChunkedVehicleId(vehicles.get(2).getId());
+		job = quotaJobRepository.save(job);
+		chunk(job.getId(), vehicles.get(0), vehicles.get(0), 1, QuotaJobChunk.STATUS_DONE);
+		chunk(job.getId(), vehicles.get(1), vehicles.get(2), 2, QuotaJobChunk.STATUS_PENDING);
+
+		quotaJobService.heartbeat();
+		QuotaJobService.JobProgress progress = quotaJobService.awaitJob(job.getId(), 30_000);
+
+		assertEquals(QuotaJob.STATUS_COMPLETED, progress.getStatus());
+		assertEquals(3, progress.getProcessedVehicles());
+		assertEquals(0, quotaRows(vehicles.get(0)));
+		assertEquals(1, quotaRows(vehicles.get(1)));
+		assertEquals(1, quotaRows(vehicles.get(2)));
+		assertEquals(0, quotaJobChunkRepository.findByJobIdAndStatusNotOrderById(job.getId(), QuotaJobChunk.STATUS_DONE).size());
+	}
+
+	@Test
+	void jobWithFreshHeartbeatIsNotAdopted() {
+		QuotaJob job = quotaJobRepository.save(job("live-node", System.currentTimeMillis()));
+		try {
+			quotaJobService.heartbeat();
+
+			QuotaJob after = quotaJobRepository.findById(job.getId()).orElseThrow();
+			assertEquals("live-node", after.getNodeId());
+			assertEquals(0, after.getProcessedVehicles());
+		} finally {
+			job.setStatus(QuotaJob.STATUS_FAILED);
+			quotaJobRepository.save(job);
+		}
+	}
+
+	@Test
+	void bulkAllocateSetsExistingAndMissingQuotasOfMatchingVehiclesOnly() throws Exception {
+		Vehicle diesel = vehicles.get(2);
+		diesel.setFuelType("Diesel");
+		vehicleRepository.save(diesel);
+
+		Object originalChunkSize = ReflectionTestUtils.getField(quotaJobService, "setBasedChunkSize");
+		// One vehicle per chunk, so the two petrol vehicles go through separate statements
+		ReflectionTestUtils.setField(quotaJobService, "setBasedChunkSize", 1);
+		try {
+			// First run inserts the missing quotas
+			QuotaJobService.JobProgress first = bulkAllocate(20_000L);
+			assertEquals(QuotaJob.STATUS_COMPLETED, first.getStatus());
+			assertEquals(2, first.getProcessedVehicles());
+			assertQuota(vehicles.get(0), 20_000, 20_000);
+			assertQuota(vehicles.get(1), 20_000, 20_000);
+
+			jdbcTemplate.update("UPDATE fuel_quotas SET remaining_quota_ml = 5000 WHERE vehicle_id = ? AND period = ?",
+					vehicles.get(0).getId(), PERIOD);
+
+			// Second run updates the rows in place, resetting the used balance
+			QuotaJobService.JobProgress second = bulkAllocate(30_000L);
+			assertEquals(QuotaJob.STATUS_COMPLETED, second.getStatus());
+			assertEquals(2, second.getProcessedVehicles());
+			assertEquals(0, second.getFailedVehicles());
+		} finally {
+			ReflectionTestUtils.setField(quotaJobService, "setBasedChunkSize", originalChunkSize);
+		}
+
+		assertQuota(vehicles.get(0), 30_000, 30_000);
+		assertQuota(vehicles.get(1), 30_000, 30_000);
+		assertEquals(1, quotaRows(vehicles.get(0)));
+		assertEquals(1, quotaRows(vehicles.get(1)));
+		// Filtered out by fuel type
+		assertEquals(0, quotaRows(diesel));
+	}
+
+	@Test
+	void jobsAreLeftToTheNodeRunningTheLedger() {
+		jdbcTemplate.update("INSERT INTO scheduler_leases (job_name, owner, lease_until, acquired_at, renewed_at) " +
+				"VALUES (?, 'ledger-node', ?, ?, ?)", QuotaLedger.LEASE_NAME, System.currentTimeMillis() + 600_000,
+				System.currentTimeMillis(), System.currentTimeMillis());
+		QuotaJob orphan = job("dead-node", System.currentTimeMillis() - 3_600_000);
+		orphan.setJobType(QuotaJob.TYPE_BULK_ALLOCATE);
+		orphan.setAllocatedQuotaMl(20_000L);
+		orphan = quotaJobRepository.save(orphan);
+		QuotaJob orphanedReset = quotaJobRepository.save(job("dead-node", System.currentTimeMillis() - 3_600_000));
+		try {
+			assertThrows(IllegalStateException.class, () -> quotaJobService.startJob(QuotaJob.TYPE_BULK_ALLOCATE,
+					YearMonth.parse(PERIOD), vehicleType, "Petrol", 20_000L));
+			assertThrows(IllegalStateException.class, () -> quotaJobService.startJob(QuotaJob.TYPE_RESET_ALL,
+					YearMonth.parse(PERIOD), vehicleType, null, null));
+
+			// Not adopted either: only the ledger node can reload the rows they rewrite
+			quotaJobService.heartbeat();
+			assertEquals("dead-node", quotaJobRepository.findById(orphan.getId()).orElseThrow().getNodeId());
+			assertEquals("dead-node", quotaJobRepository.findById(orphanedReset.getId()).orElseThrow().getNodeId());
+			assertEquals(0, quotaRows(vehicles.get(0)));
+		} finally {
+			jdbcTemplate.update("DELETE FROM scheduler_leases WHERE job_name = ?", QuotaLedger.LEASE_NAME);
+			orphan.setStatus(QuotaJob.STATUS_FAILED);
+			quotaJobRepository.save(orphan);
+			orphanedReset.setStatus(QuotaJob.STATUS_FAILED);
+			quotaJobRepository.save(orphanedReset);
+		}
+	}
+
+	private QuotaJobService.JobProgress bulkAllocate(long allocatedQuotaMl) throws InterruptedException {
+		QuotaJobService.JobProgress started = quotaJobService.startJob(QuotaJob.TYPE_BULK_ALLOCATE,
+				YearMonth.parse(PERIOD), vehicleType, "Petrol", allocatedQuotaMl);
+		return quotaJobService.awaitJob(started.getId(), 30_000);
+	}
+
+	private void assertQuota(Vehicle vehicle, long allocatedMl, long remainingMl) {
+		Map<String, Object> quota = jdbcTemplate.queryForMap("SELECT allocated_quota_ml, remaining_quota_ml FROM fuel_quotas " +
+				"WHERE vehicle_id = ? AND fuel_type = ? AND period = ?", vehicle.getId(), "Petrol", PERIOD);
+		assertEquals(allocatedMl, ((Number) quota.get("allocated_quota_ml")).longValue());
+		assertEquals(remainingMl, ((Number) quota.get("remaining_quota_ml")).longValue());
+	}
+
+	private QuotaJob job(String nodeId, Long heartbeatAt) {
+		QuotaJob job = new QuotaJob();
+		job.setJobType(QuotaJob.TYPE_RESET_ALL);
+		job.setStatus(QuotaJob.STATUS_RUNNING);
+		job.setPeriod(PERIOD);
+		job.setVehicleTypeFilter(vehicleType.toLowerCase(Locale.ROOT));
+		job.setNodeId(nodeId);
+		job.setHeartbeatAt(heartbeatAt);
+		job.setTotalVehicles(vehicles.size());
+		job.setStartedAt(System.currentTimeMillis());
+		return job;
+	}
+
+	private void chunk(Long jobId, Vehicle first, Vehicle last, int vehicleCount, String status) {
+		QuotaJobChunk chunk = new QuotaJobChunk();
+		chunk.setJobId(jobId);
+		chunk.setFirstVehicleId(first.getId());
+		chunk.setLastVehicleId(last.getId());
+		chunk.setVehicleCount(vehicleCount);
+		chunk.setStatus(status);
+		quotaJobChunkRepository.save(chunk);
+	}
+
+	private int quotaRows(Vehicle vehicle) {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM fuel_quotas WHERE vehicle_id = ? AND period = ?",
+				Integer.class, vehicle.getId(), PERIOD);
+	}
+
+}
@@ -0,0 +1,210 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.FuelQuota;
+import com.example.fuelQuotaManagementSystem.entity.User;
+import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import com.example.fuelQuotaManagementSystem.repository.ScheduledJobRunRepository;
+import com.example.fuelQuotaManagementSystem.repository.SchedulerLeaseRepository;
+import com.example.fuelQuotaManagementSystem.repository.UserRepository;
+import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+import com.example.fuelQuotaManagementSystem.support.TestFixtures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class QuotaLedgerTest {
+
+	@Autowired
+	private FuelQuotaService fuelQuotaService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ClusterScheduler clusterScheduler;
+
+	@Autowired
+	private SchedulerLeaseRepository schedulerLeaseRepository;
+
+	@Autowired
+	private ScheduledJobRunRepository scheduledJobRunRepository;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	// A ledger of its own, so the application's (disabled) ledger and its schedule are not involved
+	private QuotaLedger ledger;
+	private Object originalQuotaLedger;
+	private User owner;
+	private Vehicle vehicle;
+	private FuelQuota quota;
+
+	@BeforeEach
+	void setUp() {
+		ledger = ledger(clusterScheduler, true);
+		ReflectionTestUtils.setField(ledger, "active", true);
+		originalQuotaLedger = ReflectionTestUtils.getField(fuelQuotaService, "quotaLedger");
+
+		owner = TestFixtures.owner(userRepository, "ledger");
+		vehicle = TestFixtures.vehicle(vehicleRepository, owner, "LDG", "Car");
+
+		quota = fuelQuotaService.getCurrentQuota(vehicle, "Petrol");
+		ledger.reload(YearMonth.now().toString(), List.of(vehicle.getId()));
+	}
+
+	@AfterEach
+	void tearDown() {
+		ReflectionTestUtils.setField(fuelQuotaService, "quotaLedger", originalQuotaLedger);
+	}
+
+	@Test
+	void flushWritesDeductionsNotBalances() {
+		QuotaLedger.Entry entry = ledger.get(vehicle.getId(), "Petrol");
+		entry.tryDeduct(10_000);
+
+		// An allocation rewrites the balance and commits before the ledger hears about it
+		rewriteBalance(100_000);
+		ledger.flush();
+
+		assertEquals(90_000, remainingMl());
+	}
+
+	@Test
+	void reloadDropsDeductionsOfTheReplacedAllocation() {
+		QuotaLedger.Entry entry = ledger.get(vehicle.getId(), "Petrol");
+		entry.tryDeduct(10_000);
+
+		rewriteBalance(100_000);
+		ledger.reload(YearMonth.now().toString(), List.of(vehicle.getId()));
+
+		// Pumped before the reset: not charged to the fresh allocation
+		assertEquals(100_000, ledger.get(vehicle.getId(), "Petrol").getRemainingMl());
+		ledger.flush();
+		assertEquals(100_000, remainingMl());
+	}
+
+	@Test
+	void replacedEntryNoLongerDeducts() {
+		QuotaLedger.Entry stale = ledger.get(vehicle.getId(), "Petrol");
+
+		rewriteBalance(100_000);
+		ledger.reload(YearMonth.now().toString(), List.of(vehicle.getId()));
+
+		// A pump that picked up the entry before the reload has to look it up again
+		assertEquals(QuotaLedger.RETIRED, stale.tryDeduct(5_000));
+		ledger.get(vehicle.getId(), "Petrol").tryDeduct(20_000);
+		ledger.flush();
+
+		assertEquals(80_000, remainingMl());
+	}
+
+	@Test
+	void quotaCreatedByARolledBackPumpIsNotCached() {
+		ReflectionTestUtils.setField(fuelQuotaService, "quotaLedger", ledger);
+		Vehicle uncached = TestFixtures.vehicle(vehicleRepository, owner, "LDN", "Car");
+		VehicleRepository.VehiclePumpView pumpView = vehicleRepository.findPumpViewById(uncached.getId()).orElseThrow();
+
+		transactionTemplate.executeWithoutResult(status -> {
+			assertTrue(fuelQuotaService.deductFuelAtomically(pumpView, "Petrol", 10_000).isApplied());
+			status.setRollbackOnly();
+		});
+
+		assertNull(ledger.get(uncached.getId(), "Petrol"));
+		assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM fuel_quotas WHERE vehicle_id = ?",
+				Long.class, uncached.getId()));
+
+		FuelQuotaService.QuotaDeduction deduction = transactionTemplate.execute(status ->
+				fuelQuotaService.deductFuelAtomically(pumpView, "Petrol", 10_000));
+		ledger.flush();
+
+		assertEquals(deduction.getQuotaAfterMl(), ledger.get(uncached.getId(), "Petrol").getRemainingMl());
+		assertEquals(deduction.getQuotaAfterMl(), jdbcTemplate.queryForObject(
+				"SELECT remaining_quota_ml FROM fuel_quotas WHERE id = ?", Long.class, deduction.getQuotaId()));
+	}
+
+	@Test
+	void flushEvictsAnEntryWhoseRowIsGone() {
+		ledger.get(vehicle.getId(), "Petrol").tryDeduct(10_000);
+		jdbcTemplate.update("DELETE FROM fuel_quotas WHERE id = ?", quota.getId());
+
+		ledger.flush();
+
+		assertNull(ledger.get(vehicle.getId(), "Petrol"));
+	}
+
+	@Test
+	void onlyOneNodeRunsTheLedger() {
+		// This node holds the lease; the ledger of a second node must not start next to it
+		QuotaLedger running = ledger(clusterScheduler, true);
+		running.warmLoad();
+
+		ClusterScheduler nodeB = new ClusterScheduler();
+		ReflectionTestUtils.setField(nodeB, "schedulerLeaseRepository", schedulerLeaseRepository);
+		ReflectionTestUtils.setField(nodeB, "scheduledJobRunRepository", scheduledJobRunRepository);
+		ReflectionTestUtils.setField(nodeB, "leaseMillis", 600_000L);
+		ReflectionTestUtils.setField(nodeB, "configuredNodeId", "ledger-node-b");
+		nodeB.start();
+		try {
+			assertThrows(IllegalStateException.class, () -> ledger(nodeB, true).warmLoad());
+
+			// Nor may it deduct in the database
+			QuotaLedger disabled = ledger(nodeB, false);
+			disabled.checkLedgerLease();
+			assertThrows(IllegalStateException.class, disabled::checkDatabaseDeductionAllowed);
+		} finally {
+			nodeB.stop();
+		}
+	}
+
+	@Test
+	void refundCancelsPendingDeduction() {
+		QuotaLedger.Entry entry = ledger.get(vehicle.getId(), "Petrol");
+		long before = remainingMl();
+
+		entry.tryDeduct(10_000);
+		entry.refund(10_000);
+		ledger.flush();
+
+		assertEquals(before, remainingMl());
+		assertEquals(before, entry.getRemainingMl());
+	}
+
+	private QuotaLedger ledger(ClusterScheduler node, boolean enabled) {
+		QuotaLedger nodeLedger = new QuotaLedger();
+		ReflectionTestUtils.setField(nodeLedger, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(nodeLedger, "clusterScheduler", node);
+		ReflectionTestUtils.setField(nodeLedger, "enabled", enabled);
+		ReflectionTestUtils.setField(nodeLedger, "flushBatchSize", 500);
+		return nodeLedger;
+	}
+
+	private void rewriteBalance(long balanceMl) {
+		jdbcTemplate.update("UPDATE fuel_quotas SET allocated_quota_ml = ?, remaining_quota_ml = ? WHERE id = ?",
+				balanceMl, balanceMl, quota.getId());
+	}
+
+	private long remainingMl() {
+		return jdbcTemplate.queryForObject("SELECT remaining_quota_ml FROM fuel_quotas WHERE id = ?", Long.class, quota.getId());
+	}
+
+}
@@ -0,0 +1,182 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.NotificationOutbox;
+import com.example.fuelQuotaManagementSystem.entity.User;
+import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import com.example.fuelQuotaManagementSystem.repository.FuelQuotaRepository;
+import com.example.fuelQuotaManagementSystem.repository.UserRepository;
+import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+import com.example.fuelQuotaManagementSystem.support.TestFixtures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.YearMonth;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+class QuotaRolloverServiceTest {
+
+	// Far from the current period, so the quota rows written here do not meet other tests
+	private static final YearMonth PERIOD = YearMonth.of(2091, 2);
+
+	@Autowired
+	private QuotaRolloverService quotaRolloverService;
+
+	@Autowired
+	private FuelQuotaRepository fuelQuotaRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private final long startedAt = System.currentTimeMillis();
+
+	@AfterEach
+	void tearDown() {
+		jdbcTemplate.update("DELETE FROM fuel_quotas WHERE period = ?", PERIOD.toString());
+		// The "new quota" SMS of the run, which no outbox test expects
+		jdbcTemplate.update("DELETE FROM notification_outbox WHERE notification_type = ? AND created_at >= ?",
+				NotificationOutbox.TYPE_QUOTA_ALLOCATION, startedAt);
+	}
+
+	@Test
+	void everyVehicleGetsItsBandsAllocationOnce() {
+		User owner = TestFixtures.owner(userRepository, "rollover");
+		Vehicle smallCar = vehicle(owner, "Car", 1500.0);
+		Vehicle largeCar = vehicle(owner, "Car", 2400.0);
+		Vehicle motorcycle = vehicle(owner, "Motorcycle", 150.0);
+		Vehicle scanned = vehicle(owner, "Car", 1500.0);
+
+		// Created lazily by a scan before the run, and already pumped from
+		long now = System.currentTimeMillis();
+		fuelQuotaRepository.insertIfAbsent(scanned.getId(), "Petrol", PERIOD.toString(), 60_000L,
+				QuotaAllocationPolicy.MONTHLY, now, now, now);
+		jdbcTemplate.update("UPDATE fuel_quotas SET remaining_quota_ml = 15000 WHERE vehicle_id = ? AND period = ?",
+				scanned.getId(), PERIOD.toString());
+
+		QuotaRolloverService.RolloverResult first = quotaRolloverService.rollover(PERIOD);
+
+		assertQuota(smallCar, 60_000, 60_000);
+		assertQuota(largeCar, 80_000, 80_000);
+		assertQuota(motorcycle, 20_000, 20_000);
+		assertQuota(scanned, 60_000, 15_000);
+		assertEquals(first.getVehicles(), first.getQuotasCreated() + first.getAlreadyPresent() + first.getSkipped());
+		// Every created quota has an owner with a phone number, so each gets its SMS
+		assertEquals(first.getQuotasCreated(), first.getNotificationsQueued());
+
+		// Running again creates nothing and sends nothing
+		QuotaRolloverService.RolloverResult again = quotaRolloverService.rollover(PERIOD);
+
+		assertEquals(0, again.getQuotasCreated());
+		assertEquals(0, again.getNotificationsQueued());
+		assertEquals(again.getVehicles() - again.getSkipped(), again.getAlreadyPresent());
+		assertQuota(scanned, 60_000, 15_000);
+	}
+
+	@Test
+	void rerunQueuesTheSmsOfARunThatDiedBeforeQueueingThem() {
+		User owner = TestFixtures.owner(userRepository, "rollover");
+		Vehicle car = vehicle(owner, "Car", 1500.0);
+		Vehicle motorcycle = vehicle(owner, "Motorcycle", 150.0);
+
+		// The run dies after inserting the quotas, while queueing their SMS
+		NotificationOutboxService failingOutbox = mock(NotificationOutboxService.class);
+		doThrow(new IllegalStateException("outbox down")).when(failingOutbox).enqueueAll(anyList());
+		Object originalOutbox = ReflectionTestUtils.getField(quotaRolloverService, "notificationOutboxService");
+		ReflectionTestUtils.setField(quotaRolloverService, "notificationOutboxService", failingOutbox);
+		try {
+			assertThrows(IllegalStateException.class, () -> quotaRolloverService.rollover(PERIOD));
+		} finally {
+			ReflectionTestUtils.setField(quotaRolloverService, "notificationOutboxService", originalOutbox);
+		}
+		assertQuota(car, 60_000, 60_000);
+		assertQuota(motorcycle, 20_000, 20_000);
+
+		// Created by a scan between the runs: no rollover SMS for it
+		Vehicle scanned = vehicle(owner, "Car", 1500.0);
+		long now = System.currentTimeMillis();
+		fuelQuotaRepository.insertIfAbsent(scanned.getId(), "Petrol", PERIOD.toString(), 60_000L,
+				QuotaAllocationPolicy.MONTHLY, now, now, now);
+
+		QuotaRolloverService.RolloverResult rerun = quotaRolloverService.rollover(PERIOD);
+
+		assertEquals(0, rerun.getQuotasCreated());
+		assertEquals(1, allocationSmsCount(car));
+		assertEquals(1, allocationSmsCount(motorcycle));
+		assertEquals(0, allocationSmsCount(scanned));
+
+		assertEquals(0, quotaRolloverService.rollover(PERIOD).getNotificationsQueued());
+		assertEquals(1, allocationSmsCount(car));
+	}
+
+	@Test
+	void overlappingRolloversQueueEachSmsOnce() {
+		User owner = TestFixtures.owner(userRepository, "rollover");
+		Vehicle car = vehicle(owner, "Car", 1500.0);
+		Vehicle motorcycle = vehicle(owner, "Motorcycle", 150.0);
+
+		// A second rollover (an admin's, during the cron's) starts once the first has read the rows owed their SMS
+		NotificationService originalNotificationService = (NotificationService) ReflectionTestUtils.getField(
+				quotaRolloverService, "notificationService");
+		NotificationService overlapping = mock(NotificationService.class);
+		QuotaRolloverService.RolloverResult[] second = new QuotaRolloverService.RolloverResult[1];
+		when(overlapping.createNewQuotaAllocationSMSMessage(anyString(), anyDouble(), anyString())).thenAnswer(invocation -> {
+			ReflectionTestUtils.setField(quotaRolloverService, "notificationService", originalNotificationService);
+			second[0] = quotaRolloverService.rollover(PERIOD);
+			return originalNotificationService.createNewQuotaAllocationSMSMessage(invocation.getArgument(0),
+					invocation.getArgument(1), invocation.getArgument(2));
+		});
+		ReflectionTestUtils.setField(quotaRolloverService, "notificationService", overlapping);
+		QuotaRolloverService.RolloverResult first;
+		try {
+			first = quotaRolloverService.rollover(PERIOD);
+		} finally {
+			ReflectionTestUtils.setField(quotaRolloverService, "notificationService", originalNotificationService);
+		}
+
+		// The second run queued what the first had read; the first queued none of it again
+		assertEquals(first.getQuotasCreated(), second[0].getNotificationsQueued());
+		assertEquals(0, first.getNotificationsQueued());
+		assertEquals(1, allocationSmsCount(car));
+		assertEquals(1, allocationSmsCount(motorcycle));
+	}
+
+	private int allocationSmsCount(Vehicle vehicle) {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notification_outbox WHERE notification_type = ? " +
+						"AND created_at >= ? AND message LIKE ?", Integer.class,
+				NotificationOutbox.TYPE_QUOTA_ALLOCATION, startedAt, "%" + vehicle.getRegistrationNumber() + "%");
+	}
+
+	private Vehicle vehicle(User owner, String vehicleType, double engineCapacity) {
+		Vehicle vehicle = TestFixtures.newVehicle(owner, "ROL", vehicleType);
+		vehicle.setEngineCapacity(engineCapacity);
+		return vehicleRepository.save(vehicle);
+	}
+
+	private void assertQuota(Vehicle vehicle, long allocatedMl, long remainingMl) {
+		assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM fuel_quotas WHERE vehicle_id = ? AND period = ?",
+				Integer.class, vehicle.getId(), PERIOD.toString()));
+		assertEquals(allocatedMl, jdbcTemplate.queryForObject("SELECT allocated_quota_ml FROM fuel_quotas " +
+				"WHERE vehicle_id = ? AND period = ?", Long.class, vehicle.getId(), PERIOD.toString()));
+		assertEquals(remainingMl, jdbcTemplate.queryForObject("SELECT remaining_quota_ml FROM fuel_quotas " +
+				"WHERE vehicle_id = ? AND period = ?", Long.class, vehicle.getId(), PERIOD.toString()));
+	}
+
+}
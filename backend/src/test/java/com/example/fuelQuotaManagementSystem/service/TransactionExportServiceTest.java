@@ -0,0 +1,146 @@
+package com.example.fuelQuotaManagementSystem.service;
+
+import com.example.fuelQuotaManagementSystem.entity.FuelStation;
+import com.example.fuelQuotaManagementSystem.entity.User;
+import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import com.example.fuelQuotaManagementSystem.repository.FuelStationRepository;
+import com.example.fuelQuotaManagementSystem.repository.UserRepository;
+import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+import com.example.fuelQuotaManagementSystem.support.TestFixtures;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class TransactionExportServiceTest {
+
+	// Days no other test records transactions on
+	private static final LocalDate START = LocalDate.of(2001, 5, 10);
+	private static final LocalDate END = LocalDate.of(2001, 5, 11);
+
+	@Autowired
+	private TransactionExportService transactionExportService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private FuelStationRepository fuelStationRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private Vehicle vehicle;
+	private List<Long> transactionIds;
+
+	@BeforeEach
+	void setUp() {
+		User owner = TestFixtures.owner(userRepository, "export");
+		vehicle = TestFixtures.vehicle(vehicleRepository, owner, "EXP", "Car");
+
+		FuelStation station = new FuelStation();
+		station.setName("Main St, \"North\"");
+		station.setRegistrationNumber("EST-" + TestFixtures.unique());
+		station.setOwner(owner);
+		station.setHasPetrol(true);
+		station.setActive(true);
+		station = fuelStationRepository.save(station);
+
+		transaction(station, 12_345, START.atTime(8, 15, 30), true);
+		// Last second of the range, then the first one after it
+		transaction(station, 5_000, END.atTime(23, 59, 59), false);
+		transaction(station, 1_000, END.plusDays(1).atStartOfDay(), false);
+
+		transactionIds = jdbcTemplate.queryForList("SELECT id FROM fuel_transactions WHERE vehicle_id = ? ORDER BY timestamp",
+				Long.class, vehicle.getId());
+	}
+
+	@AfterEach
+	void tearDown() {
+		jdbcTemplate.update("DELETE FROM fuel_transactions WHERE vehicle_id = ?", vehicle.getId());
+	}
+
+	@Test
+	void csvHoldsOneQuotedRowPerTransactionOfTheRange() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		long rows = transactionExportService.export(START, END, TransactionExportService.FORMAT_CSV, false, out);
+
+		String registration = vehicle.getRegistrationNumber();
+		assertEquals(2, rows);
+		assertEquals("Transaction ID,Vehicle Registration,Station Name,Fuel Type,Amount,Date,Time,Notification Sent\n" +
+						transactionIds.get(0) + "," + registration + ",\"Main St, \"\"North\"\"\",Petrol,12.35,2001-05-10,08:15:30,Yes\n" +
+						transactionIds.get(1) + "," + registration + ",\"Main St, \"\"North\"\"\",Petrol,5.00,2001-05-11,23:59:59,No\n",
+				out.toString(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void gzippedNdjsonHoldsOneObjectPerLine() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		long rows = transactionExportService.export(START, END, "ndjson", true, out);
+
+		String content;
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+			content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+		String[] lines = content.split("\n", -1);
+
+		assertEquals(2, rows);
+		// Two objects, each line ending with '\n'
+		assertEquals(3, lines.length);
+		assertEquals("", lines[2]);
+
+		ObjectMapper objectMapper = new ObjectMapper();
+		JsonNode first = objectMapper.readTree(lines[0]);
+		assertEquals(transactionIds.get(0).longValue(), first.get("transactionId").asLong());
+		assertEquals(vehicle.getRegistrationNumber(), first.get("vehicleRegistration").asText());
+		assertEquals("Main St, \"North\"", first.get("stationName").asText());
+		assertEquals("Petrol", first.get("fuelType").asText());
+		assertEquals("12.35", first.get("amount").decimalValue().toPlainString());
+		assertEquals("2001-05-10", first.get("date").asText());
+		assertEquals("08:15:30", first.get("time").asText());
+		assertEquals(toMillis(START.atTime(8, 15, 30)), first.get("timestamp").asLong());
+		assertTrue(first.get("notificationSent").asBoolean());
+
+		JsonNode second = objectMapper.readTree(lines[1]);
+		assertEquals(transactionIds.get(1).longValue(), second.get("transactionId").asLong());
+		assertEquals("23:59:59", second.get("time").asText());
+		assertFalse(second.get("notificationSent").asBoolean());
+	}
+
+	private void transaction(FuelStation station, long amountMl, LocalDateTime time, boolean notificationSent) {
+		jdbcTemplate.update("INSERT INTO fuel_transactions (vehicle_id, station_id, fuel_type, amount_ml, " +
+						"quota_before_transaction_ml, quota_after_transaction_ml, notification_sent, timestamp) " +
+						"VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+				vehicle.getId(), station.getId(), "Petrol", amountMl, 60_000L, 60_000L - amountMl, notificationSent,
+				toMillis(time));
+	}
+
+	private static long toMillis(LocalDateTime time) {
+		return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.example.fuelQuotaManagementSystem.support;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Set;
+
+/**
+ * Test data source that counts the JDBC statements a thread prepares, whether Hibernate or a
+ * JdbcTemplate issues them. Statements from scheduled jobs and other threads are not counted.
+ * Enabled per test class with spring.datasource.type, so other tests keep the plain pool.
+ */
+public class StatementCountingDataSource extends HikariDataSource {
+
+	private static final Set<String> STATEMENT_METHODS = Set.of("prepareStatement", "prepareCall", "createStatement");
+
+	private static final ThreadLocal<int[]> STATEMENTS = new ThreadLocal<>();
+
+	// Counts this thread's statements from now on
+	public static void startCounting() {
+		STATEMENTS.set(new int[1]);
+	}
+
+	// Statements this thread prepared since startCounting()
+	public static int stopCounting() {
+		int[] count = STATEMENTS.get();
+		STATEMENTS.remove();
+		return count != null ? count[0] : 0;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return counting(super.getConnection());
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return counting(super.getConnection(username, password));
+	}
+
+	private static Connection counting(Connection connection) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						default:
+							break;
+					}
+					int[] count = STATEMENTS.get();
+					if (count != null && STATEMENT_METHODS.contains(method.getName())) {
+						count[0]++;
+					}
+					try {
+						return method.invoke(connection, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.example.fuelQuotaManagementSystem.support;
+
+import com.example.fuelQuotaManagementSystem.entity.User;
+import com.example.fuelQuotaManagementSystem.entity.Vehicle;
+import com.example.fuelQuotaManagementSystem.repository.UserRepository;
+import com.example.fuelQuotaManagementSystem.repository.VehicleRepository;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owners and vehicles for the integration tests. The tests share one database, so
+ * usernames, e-mails, registration and chassis numbers get a unique suffix.
+ */
+public final class TestFixtures {
+
+	private static final AtomicLong SEQUENCE = new AtomicLong(System.nanoTime());
+
+	private TestFixtures() {
+	}
+
+	// A suffix no other fixture in this JVM has used
+	public static String unique() {
+		return String.valueOf(SEQUENCE.incrementAndGet());
+	}
+
+	public static User owner(UserRepository userRepository, String usernamePrefix) {
+		String suffix = unique();
+		User owner = new User();
+		owner.setUsername(usernamePrefix + suffix);
+		owner.setPassword("password");
+		owner.setEmail(usernamePrefix + suffix + "@example.com");
+		owner.setFullName("Test Owner");
+		owner.setPhoneNumber("0771234567");
+		return userRepository.save(owner);
+	}
+
+	// A 1500cc petrol vehicle, not saved yet, for tests that set more fields
+	public static Vehicle newVehicle(User owner, String registrationPrefix, String vehicleType) {
+		String suffix = unique();
+		Vehicle vehicle = new Vehicle();
+		vehicle.setRegistrationNumber(registrationPrefix + "-" + suffix);
+		vehicle.setChassisNumber("CH" + suffix);
+		vehicle.setVehicleType(vehicleType);
+		vehicle.setFuelType("Petrol");
+		vehicle.setEngineCapacity(1500.0);
+		vehicle.setOwner(owner);
+		return vehicle;
+	}
+
+	public static Vehicle vehicle(VehicleRepository vehicleRepository, User owner, String registrationPrefix,
+								  String vehicleType) {
+		return vehicleRepository.save(newVehicle(owner, registrationPrefix, vehicleType));
+	}
+
+}